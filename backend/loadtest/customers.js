@@ -0,0 +1,45 @@
+// Side-by-side load test for the platform vs virtual thread request modes.
+//
+// 1. build and start the api twice, with the java21 profile, and rate
+//    limiting left off (app.rate-limit.enabled), every VU is one address:
+//      mvn -Pjava21 package
+//      java -jar target/amigoscode-api-0.0.1-SNAPSHOT.jar --server.port=8081
+//      java -jar target/amigoscode-api-0.0.1-SNAPSHOT.jar --server.port=8082 --spring.threads.virtual.enabled=true
+// 2. run this script against each instance and compare http_reqs and the
+//    p(99) of http_req_duration:
+//      k6 run -e BASE_URL=http://localhost:8081 loadtest/customers.js
+//      k6 run -e BASE_URL=http://localhost:8082 loadtest/customers.js
+// 3. while it runs, watch pool waits and pinning through actuator:
+//      /actuator/metrics/hikaricp.connections.pending
+//      /actuator/metrics/hikaricp.connections.acquire
+//      /actuator/metrics/jvm.threads.virtual.pinned
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8081';
+
+export const options = {
+    scenarios: {
+        customers: {
+            executor: 'ramping-vus',
+            startVUs: 50,
+            stages: [
+                { duration: '30s', target: 400 },
+                { duration: '1m', target: 400 },
+                { duration: '15s', target: 0 },
+            ],
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+export function setup() {
+    const res = http.get(`${BASE_URL}/api/v1/customers/?limit=100`);
+    return { ids: res.json('customers').map(customer => customer.id) };
+}
+
+export default function (data) {
+    const id = data.ids[Math.floor(Math.random() * data.ids.length)];
+    const res = http.get(`${BASE_URL}/api/v1/customers/${id}`);
+    check(res, { 'status is 200': r => r.status === 200 });
+}
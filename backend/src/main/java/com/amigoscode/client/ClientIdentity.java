@@ -0,0 +1,152 @@
+package com.amigoscode.client;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// who sent a request, for whatever is kept per client: a configured API key
+// names its client; otherwise the client is its address, read through
+// X-Forwarded-For only as far as trusted proxies wrote it. A made-up key or
+// a forged header therefore never buys a caller a new identity
+@Component
+@EnableConfigurationProperties(ClientProperties.class)
+public class ClientIdentity {
+
+    static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    private static final Pattern IPV6 = Pattern.compile("[0-9A-Fa-f:.]*:[0-9A-Fa-f:.]*");
+
+    private final String apiKeyHeader;
+    private final Map<String, String> clientsByKey = new HashMap<>();
+    private final List<AddressRange> trustedProxies;
+
+    public ClientIdentity(ClientProperties properties) {
+        this.apiKeyHeader = properties.apiKeyHeader();
+        if (properties.apiKeys() != null) {
+            properties.apiKeys().forEach((client, key) -> {
+                if (key == null || key.isBlank()) {
+                    throw new IllegalArgumentException("client " + client + " has no API key");
+                }
+                if (clientsByKey.putIfAbsent(key, client) != null) {
+                    throw new IllegalArgumentException("clients " + client + " and "
+                            + clientsByKey.get(key) + " have the same API key");
+                }
+            });
+        }
+        this.trustedProxies = properties.trustedProxies() == null
+                ? List.of()
+                : properties.trustedProxies().stream().map(AddressRange::parse).toList();
+    }
+
+    public String of(HttpServletRequest request) {
+        return of(request.getHeader(apiKeyHeader), request.getRemoteAddr(), request.getHeader(FORWARDED_FOR_HEADER));
+    }
+
+    public String of(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return of(
+                request.getHeaders().getFirst(apiKeyHeader),
+                remoteAddress == null ? null : remoteAddress.getAddress().getHostAddress(),
+                request.getHeaders().getFirst(FORWARDED_FOR_HEADER)
+        );
+    }
+
+    // "key:<client>" or "address:<ip>", so a client name never passes for
+    // an address
+    String of(String apiKey, String remoteAddress, String forwardedFor) {
+        String client = apiKey == null ? null : clientsByKey.get(apiKey);
+        if (client != null) {
+            return "key:" + client;
+        }
+        return "address:" + address(remoteAddress, forwardedFor);
+    }
+
+    // like Tomcat's RemoteIpValve: the hops are read from the nearest back,
+    // and the first one not written by a trusted proxy is the client
+    private String address(String remoteAddress, String forwardedFor) {
+        InetAddress client = parse(remoteAddress);
+        if (client == null || forwardedFor == null || !trusted(client)) {
+            return remoteAddress;
+        }
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            InetAddress hop = parse(hops[i].strip());
+            if (hop == null) {
+                break;
+            }
+            client = hop;
+            if (!trusted(hop)) {
+                break;
+            }
+        }
+        return client.getHostAddress();
+    }
+
+    private boolean trusted(InetAddress address) {
+        for (AddressRange range : trustedProxies) {
+            if (range.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // literals only, a host name in a header must not cost a DNS lookup
+    static InetAddress parse(String address) {
+        if (address == null || !(IPV4.matcher(address).matches() || IPV6.matcher(address).matches())) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(address);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    record AddressRange(byte[] network, int prefixLength) {
+
+        // "10.0.0.0/8", or a single address
+        static AddressRange parse(String range) {
+            int slash = range.indexOf('/');
+            InetAddress network = ClientIdentity.parse(slash < 0 ? range.strip() : range.substring(0, slash).strip());
+            if (network == null) {
+                throw new IllegalArgumentException("trusted proxy " + range + " is not an address or CIDR range");
+            }
+            int bits = network.getAddress().length * 8;
+            int prefixLength = slash < 0 ? bits : Integer.parseInt(range.substring(slash + 1).strip());
+            if (prefixLength < 0 || prefixLength > bits) {
+                throw new IllegalArgumentException("trusted proxy " + range + " has an invalid prefix length");
+            }
+            return new AddressRange(network.getAddress(), prefixLength);
+        }
+
+        boolean contains(InetAddress address) {
+            byte[] bytes = address.getAddress();
+            if (bytes.length != network.length) {
+                return false;
+            }
+            int full = prefixLength / 8;
+            for (int i = 0; i < full; i++) {
+                if (bytes[i] != network[i]) {
+                    return false;
+                }
+            }
+            int rest = prefixLength % 8;
+            if (rest == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - rest);
+            return (bytes[full] & mask) == (network[full] & mask);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.amigoscode.client;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+import java.util.Map;
+
+@ConfigurationProperties("app.clients")
+public record ClientProperties(
+        @DefaultValue("X-API-Key") String apiKeyHeader,
+        // client name to its key; a key that is not here names no one
+        Map<String, String> apiKeys,
+        // addresses or CIDR ranges of the load balancers and proxies whose
+        // X-Forwarded-For is believed; none by default
+        List<String> trustedProxies
+) {
+}
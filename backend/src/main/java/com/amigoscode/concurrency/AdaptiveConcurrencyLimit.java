@@ -0,0 +1,133 @@
+package com.amigoscode.concurrency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// how many calls may be in flight at once, moved by the latency they see,
+// after the gradient limits of Netflix's concurrency-limits. Every window the
+// average latency is compared with a baseline averaged over many windows:
+// while calls are as fast as the baseline the limit grows by its square
+// root, and once they slow down past the tolerance it shrinks in proportion,
+// down to half per window. A call over the limit is refused at once rather
+// than queued behind the others
+final class AdaptiveConcurrencyLimit {
+
+    private static final double MIN_GRADIENT = 0.5;
+
+    // a baseline this far above the latency has drifted up under load
+    private static final double DRIFT_RATIO = 2.0;
+
+    private static final double DRIFT_DECAY = 0.95;
+
+    private final ConcurrencyLimitProperties.Limit bounds;
+    private final long windowNanos;
+    private final int windowSamples;
+    private final int baselineWindows;
+    private final double tolerance;
+    private final double smoothing;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final LongAdder windowLatencyNanos = new LongAdder();
+    private final LongAdder windowCount = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong windowStart;
+    private final ReentrantLock update = new ReentrantLock();
+    private volatile int limit;
+    // guarded by update
+    private double estimatedLimit;
+    private double baselineNanos;
+    private long windows;
+
+    AdaptiveConcurrencyLimit(ConcurrencyLimitProperties properties,
+                             ConcurrencyLimitProperties.Limit bounds,
+                             long nowNanos) {
+        if (bounds.min() < 1 || bounds.min() > bounds.max()
+                || bounds.initial() < bounds.min() || bounds.initial() > bounds.max()) {
+            throw new IllegalArgumentException("a concurrency limit needs 1 <= min <= initial <= max");
+        }
+        this.bounds = bounds;
+        this.windowNanos = properties.window().toNanos();
+        this.windowSamples = properties.windowSamples();
+        this.baselineWindows = properties.baselineWindows();
+        this.tolerance = properties.tolerance();
+        this.smoothing = properties.smoothing();
+        this.windowStart = new AtomicLong(nowNanos);
+        this.limit = bounds.initial();
+        this.estimatedLimit = bounds.initial();
+    }
+
+    // false when the limit is reached; a call let in has to be released
+    boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+        return true;
+    }
+
+    void release(long startNanos, long nowNanos) {
+        inFlight.decrementAndGet();
+        windowLatencyNanos.add(nowNanos - startNanos);
+        windowCount.increment();
+        long start = windowStart.get();
+        if (nowNanos - start >= windowNanos
+                && windowCount.sum() >= windowSamples
+                && update.tryLock()) {
+            try {
+                // the window may have been closed while we waited for the lock
+                if (windowStart.compareAndSet(start, nowNanos)) {
+                    closeWindow();
+                }
+            } finally {
+                update.unlock();
+            }
+        }
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    long rejected() {
+        return rejected.sum();
+    }
+
+    private void closeWindow() {
+        long count = windowCount.sumThenReset();
+        long latencyNanos = windowLatencyNanos.sumThenReset();
+        int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+        if (count == 0) {
+            return;
+        }
+        double averageNanos = Math.max(1, latencyNanos / (double) count);
+
+        // a plain average until there are baselineWindows of them
+        windows++;
+        baselineNanos += (averageNanos - baselineNanos) / Math.min(windows, baselineWindows);
+        if (baselineNanos / averageNanos > DRIFT_RATIO) {
+            baselineNanos *= DRIFT_DECAY;
+        }
+
+        // with most of the limit unused the latency says nothing about it
+        if (maxInFlight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * baselineNanos / averageNanos));
+        double next = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        next = estimatedLimit * (1 - smoothing) + next * smoothing;
+        estimatedLimit = Math.max(bounds.min(), Math.min(bounds.max(), next));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -0,0 +1,20 @@
+package com.amigoscode.concurrency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(value = "app.concurrency-limit.enabled", havingValue = "true")
+@EnableConfigurationProperties(ConcurrencyLimitProperties.class)
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    public CustomerServiceConcurrencyLimitAspect customerServiceConcurrencyLimitAspect(
+            ConcurrencyLimitProperties properties,
+            MeterRegistry meterRegistry) {
+        return new CustomerServiceConcurrencyLimitAspect(properties, meterRegistry);
+    }
+}
@@ -0,0 +1,32 @@
+package com.amigoscode.concurrency;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("app.concurrency-limit")
+public record ConcurrencyLimitProperties(
+        boolean enabled,
+        @DefaultValue Limit reads,
+        @DefaultValue Limit writes,
+        // latencies are averaged over a window of at least this long and
+        // this many calls before the limit moves
+        @DefaultValue("1s") Duration window,
+        @DefaultValue("10") int windowSamples,
+        // how many windows the baseline latency is averaged over
+        @DefaultValue("60") int baselineWindows,
+        // how much slower than the baseline calls may get before the limit
+        // comes down
+        @DefaultValue("1.5") double tolerance,
+        // the share of a new estimate the limit moves by
+        @DefaultValue("0.2") double smoothing
+) {
+
+    public record Limit(
+            @DefaultValue("20") int initial,
+            @DefaultValue("4") int min,
+            @DefaultValue("200") int max
+    ) {
+    }
+}
@@ -0,0 +1,77 @@
+package com.amigoscode.concurrency;
+
+import com.amigoscode.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// holds CustomerService calls to an adaptive limit on how many may run at
+// once, one for the read-only transactions and one for the rest, so slow
+// writes do not take the room of cheap reads. Outside the transaction, so a
+// refused call never opens one. The export is left out: it runs as long as
+// its client takes to read, which says nothing about the database
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CustomerServiceConcurrencyLimitAspect {
+
+    private final AdaptiveConcurrencyLimit reads;
+    private final AdaptiveConcurrencyLimit writes;
+    private final Map<Method, AdaptiveConcurrencyLimit> limits = new ConcurrentHashMap<>();
+
+    public CustomerServiceConcurrencyLimitAspect(ConcurrencyLimitProperties properties, MeterRegistry meterRegistry) {
+        long now = System.nanoTime();
+        this.reads = new AdaptiveConcurrencyLimit(properties, properties.reads(), now);
+        this.writes = new AdaptiveConcurrencyLimit(properties, properties.writes(), now);
+        register(meterRegistry, "read", reads);
+        register(meterRegistry, "write", writes);
+    }
+
+    @Around("execution(public * com.amigoscode.customer.CustomerService.*(..))"
+            + " && !execution(* com.amigoscode.customer.CustomerService.exportCustomers(..))")
+    public Object limitConcurrency(ProceedingJoinPoint joinPoint) throws Throwable {
+        AdaptiveConcurrencyLimit limit = limits.computeIfAbsent(
+                ((MethodSignature) joinPoint.getSignature()).getMethod(), this::limitOf);
+        if (!limit.tryAcquire()) {
+            throw new ServiceUnavailableException(
+                    "too many customer %s in progress, try again later".formatted(limit == reads ? "reads" : "writes"));
+        }
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            limit.release(start, System.nanoTime());
+        }
+    }
+
+    private AdaptiveConcurrencyLimit limitOf(Method method) {
+        Transactional transactional = AnnotatedElementUtils.findMergedAnnotation(method, Transactional.class);
+        return transactional != null && transactional.readOnly() ? reads : writes;
+    }
+
+    private static void register(MeterRegistry meterRegistry, String type, AdaptiveConcurrencyLimit limit) {
+        Gauge.builder("customer.concurrency.limit", limit, AdaptiveConcurrencyLimit::limit)
+                .description("CustomerService calls allowed in flight at once")
+                .tag("type", type)
+                .register(meterRegistry);
+        Gauge.builder("customer.concurrency.in.flight", limit, AdaptiveConcurrencyLimit::inFlight)
+                .description("CustomerService calls in flight")
+                .tag("type", type)
+                .register(meterRegistry);
+        FunctionCounter.builder("customer.concurrency.rejected", limit, AdaptiveConcurrencyLimit::rejected)
+                .description("CustomerService calls refused, the limit was reached")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+}
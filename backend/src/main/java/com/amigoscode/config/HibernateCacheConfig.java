@@ -0,0 +1,71 @@
+package com.amigoscode.config;
+
+import com.amigoscode.customer.Customer;
+import com.amigoscode.customer.CustomerCacheProperties;
+import com.amigoscode.customer.CustomerRepository;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+// second-level cache regions for the jpa DAO, bounded the same way as the
+// customer cache in front of the jdbc DAO
+@Configuration
+@EnableConfigurationProperties(CustomerCacheProperties.class)
+public class HibernateCacheConfig {
+
+    private static final String QUERY_RESULTS_REGION = "default-query-results-region";
+
+    private static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    private static final long QUERY_RESULTS_MAXIMUM_SIZE = 10_000;
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CustomerCacheProperties properties) {
+        return hibernateProperties -> hibernateProperties.put(
+                ConfigSettings.CACHE_MANAGER,
+                cacheManager(properties)
+        );
+    }
+
+    // Hibernate closes the manager with the session factory, so every
+    // session factory gets its own instead of the provider-wide default
+    private static CacheManager cacheManager(CustomerCacheProperties properties) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(
+                        URI.create("hibernate-" + UUID.randomUUID()),
+                        HibernateCacheConfig.class.getClassLoader()
+                );
+
+        cacheManager.createCache(Customer.CACHE_REGION,
+                region(properties.maximumSize(), properties.timeToLive()));
+        cacheManager.createCache(CustomerRepository.EMAIL_EXISTS_CACHE_REGION,
+                region(QUERY_RESULTS_MAXIMUM_SIZE, properties.timeToLive()));
+        cacheManager.createCache(QUERY_RESULTS_REGION,
+                region(QUERY_RESULTS_MAXIMUM_SIZE, properties.timeToLive()));
+        // cached query results are only valid while the table timestamps they
+        // are checked against stay around, so this region is never evicted
+        cacheManager.createCache(UPDATE_TIMESTAMPS_REGION, new CaffeineConfiguration<>());
+        return cacheManager;
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maximumSize, Duration timeToLive) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maximumSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(timeToLive.toNanos()));
+        // Hibernate stores disassembled, immutable entries; copying them buys nothing
+        configuration.setStoreByValue(false);
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+}
@@ -0,0 +1,55 @@
+package com.amigoscode.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.util.StringUtils;
+
+// the pool is deliberately not exposed as a ConnectionFactory bean: its
+// presence would make Spring Boot skip the JDBC DataSource that Flyway and
+// the blocking DAOs still need
+@Configuration
+@Profile("reactive")
+public class ReactiveDatabaseConfig implements DisposableBean {
+
+    private ConnectionPool connectionPool;
+
+    @Bean
+    public DatabaseClient reactiveDatabaseClient(
+            @Value("${spring.r2dbc.url:}") String r2dbcUrl,
+            @Value("${spring.r2dbc.username:${spring.datasource.username}}") String username,
+            @Value("${spring.r2dbc.password:${spring.datasource.password}}") String password,
+            @Value("${spring.r2dbc.pool.max-size:20}") int maxSize,
+            @Value("${spring.datasource.url}") String jdbcUrl) {
+        String url = StringUtils.hasText(r2dbcUrl)
+                ? r2dbcUrl
+                : jdbcUrl.replaceFirst("^jdbc:", "r2dbc:");
+
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url)
+                .mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+
+        connectionPool = new ConnectionPool(
+                ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                        .maxSize(maxSize)
+                        .build()
+        );
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionPool != null) {
+            connectionPool.dispose();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.datasource.ReplicaRoutingDataSource;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// read-through cache for single customers in front of another CustomerDao;
+// Caffeine's W-TinyLFU policy keeps the frequently read ids under the size bound.
+// Registered as "cached" by CustomerDaoConfig
+public class CachingCustomerDao implements CustomerDao {
+
+    private final CustomerDao customerDao;
+    private final Cache<Long, Optional<Customer>> customers;
+
+    public CachingCustomerDao(CustomerDao customerDao,
+                              CustomerCacheProperties properties,
+                              MeterRegistry meterRegistry) {
+        this(customerDao, properties, Ticker.systemTicker());
+        CaffeineCacheMetrics.monitor(meterRegistry, customers, "customers");
+    }
+
+    CachingCustomerDao(CustomerDao customerDao, CustomerCacheProperties properties, Ticker ticker) {
+        this.customerDao = customerDao;
+        this.customers = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .expireAfter(expiry(properties))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return customerDao.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomers(Long afterId, int limit) {
+        return customerDao.selectCustomers(afterId, limit);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search) {
+        return customerDao.searchCustomers(search);
+    }
+
+    @Override
+    public List<CustomerMatch> fuzzySearchCustomers(String name, int limit) {
+        return customerDao.fuzzySearchCustomers(name, limit);
+    }
+
+    @Override
+    public Map<Integer, Long> selectAgeCounts() {
+        return customerDao.selectAgeCounts();
+    }
+
+    @Override
+    public int reconcileAgeCounts() {
+        return customerDao.reconcileAgeCounts();
+    }
+
+    @Override
+    public int sequenceChanges(int limit) {
+        return customerDao.sequenceChanges(limit);
+    }
+
+    @Override
+    public List<CustomerChange> selectChanges(long afterOffset, int limit) {
+        return customerDao.selectChanges(afterOffset, limit);
+    }
+
+    @Override
+    public CustomerChangeOffsets selectChangeOffsets() {
+        return customerDao.selectChangeOffsets();
+    }
+
+    @Override
+    public int pruneChanges(Instant before, int limit) {
+        return customerDao.pruneChanges(before, limit);
+    }
+
+    @Override
+    public void streamAllCustomers(Consumer<Customer> consumer) {
+        customerDao.streamAllCustomers(consumer);
+    }
+
+    // the load runs inside the cache's compute, so an invalidation racing it
+    // waits for the load and then removes what it read; it also skips read
+    // replicas, whose lag could otherwise be cached for the whole time to live
+    @Override
+    public Optional<Customer> selectCustomerById(Long customerId) {
+        return customers.get(customerId, id -> ReplicaRoutingDataSource.onPrimary(
+                () -> customerDao.selectCustomerById(id)));
+    }
+
+    @Override
+    public Long insertCustomer(Customer customer) {
+        Long id = customerDao.insertCustomer(customer);
+        // someone may have looked the id up before it existed
+        customers.invalidate(id);
+        return id;
+    }
+
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        Set<String> inserted = customerDao.insertCustomers(customers);
+        // the new ids are not known here, so forget every cached miss
+        this.customers.asMap().values().removeIf(Optional::isEmpty);
+        return inserted;
+    }
+
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        return customerDao.existsPersonWithEmail(email);
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return customerDao.selectExistingEmails(emails);
+    }
+
+    @Override
+    public void deleteCustomerById(Long customerId) {
+        try {
+            customerDao.deleteCustomerById(customerId);
+        } finally {
+            customers.invalidate(customerId);
+        }
+    }
+
+    @Override
+    public boolean existsCustomerById(Long customerId) {
+        Optional<Customer> cached = customers.getIfPresent(customerId);
+        return cached != null ? cached.isPresent() : customerDao.existsCustomerById(customerId);
+    }
+
+    @Override
+    public CustomerChangeMarker selectChangeMarker() {
+        return customerDao.selectChangeMarker();
+    }
+
+    @Override
+    public Customer updateCustomer(Customer update) {
+        try {
+            return customerDao.updateCustomer(update);
+        } finally {
+            customers.invalidate(update.getId());
+        }
+    }
+
+    // for changes made by other nodes, see CustomerInvalidationListener
+    void evict(Collection<Long> customerIds) {
+        customers.invalidateAll(customerIds);
+    }
+
+    void evictAll() {
+        customers.invalidateAll();
+    }
+
+    CacheStats stats() {
+        return customers.stats();
+    }
+
+    private static Expiry<Long, Optional<Customer>> expiry(CustomerCacheProperties properties) {
+        long found = properties.timeToLive().toNanos();
+        long notFound = properties.notFoundTimeToLive().toNanos();
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(Long id, Optional<Customer> customer, long currentTime) {
+                return customer.isPresent() ? found : notFound;
+            }
+
+            @Override
+            public long expireAfterUpdate(Long id, Optional<Customer> customer,
+                                          long currentTime, long currentDuration) {
+                return expireAfterCreate(id, customer, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(Long id, Optional<Customer> customer,
+                                        long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+}
@@ -1,10 +1,25 @@
 package com.amigoscode.customer;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.UpdateTimestamp;
 
+import java.time.Instant;
 import java.util.Objects;
 
 @Entity
+// a Customer and its score, for the native fuzzy name search
+@SqlResultSetMapping(
+        name = Customer.MATCH_MAPPING,
+        entities = @EntityResult(entityClass = Customer.class),
+        columns = @ColumnResult(name = "score", type = Double.class)
+)
+@Cacheable
+// read-write keeps the cached state consistent with concurrent updates
+// through soft locks; the version column already guards lost updates
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Customer.CACHE_REGION)
 @Table(
         name = "customer",
         uniqueConstraints = {
@@ -16,6 +31,10 @@ import java.util.Objects;
 )
 public class Customer {
 
+    public static final String CACHE_REGION = "customer";
+
+    static final String MATCH_MAPPING = "CustomerMatch";
+
     @Id
     @SequenceGenerator(
             name = "customer_id_seq",
@@ -43,6 +62,22 @@ public class Customer {
     )
     private Integer age;
 
+    @Version
+    @Column(
+            nullable = false
+    )
+    @JsonIgnore
+    private Long version;
+
+    @UpdateTimestamp
+    @Column(
+            name = "updated_at",
+            nullable = false,
+            columnDefinition = "timestamptz"
+    )
+    @JsonIgnore
+    private Instant updatedAt;
+
     public Customer(){}
 
     public Customer(Long id, String name, String email, Integer age) {
@@ -90,6 +125,22 @@ public class Customer {
         this.age = age;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
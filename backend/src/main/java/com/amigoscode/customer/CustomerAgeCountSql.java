@@ -0,0 +1,43 @@
+package com.amigoscode.customer;
+
+// customer_age_count (see V7) for the sql daos; the triggers keep it, the
+// daos only read and reconcile it
+final class CustomerAgeCountSql {
+
+    // one row per age and slot, a few thousand rows at most
+    static final String SELECT = """
+            SELECT age, sum(customers) AS customers
+            FROM customer_age_count
+            GROUP BY age
+            HAVING sum(customers) <> 0
+            """;
+
+    // taken before RECONCILE in its transaction: two recounts from the same
+    // snapshot would both add the same drift, so a node that finds the lock
+    // taken skips the round. Under read committed the recount after the lock
+    // sees what the previous holder corrected
+    static final String TRY_LOCK = """
+            SELECT pg_try_advisory_xact_lock(hashtext('customer_age_count_reconcile'))
+            """;
+
+    // one statement, so the recount and the kept counts come from the same
+    // snapshot and writes committing meanwhile are in neither; the
+    // difference is added to what is kept by then, which commutes with the
+    // triggers' own additions
+    static final String RECONCILE = """
+            INSERT INTO customer_age_count (age, slot, customers)
+            SELECT age, 0, sum(customers)
+            FROM (
+                SELECT age, count(*) AS customers FROM customer GROUP BY age
+                UNION ALL
+                SELECT age, -customers FROM customer_age_count
+            ) drift
+            GROUP BY age
+            HAVING sum(customers) <> 0
+            ON CONFLICT (age, slot) DO UPDATE
+            SET customers = customer_age_count.customers + EXCLUDED.customers
+            """;
+
+    private CustomerAgeCountSql() {
+    }
+}
@@ -0,0 +1,83 @@
+package com.amigoscode.customer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+// customers per age for the in-memory daos, counted next to their writes
+// with an adder per age, so writers never wait on each other and a read is
+// one pass over the ages. A store whose writes are not under a lock brackets
+// them with writeStarted and writeFinished, so that reconcile can tell
+// whether a recount raced one of them
+final class CustomerAgeCounts {
+
+    private final Map<Integer, LongAdder> customersByAge = new ConcurrentHashMap<>();
+    private final AtomicLong writesStarted = new AtomicLong();
+    private final AtomicLong writesFinished = new AtomicLong();
+
+    void added(int age) {
+        adder(age).increment();
+    }
+
+    void removed(int age) {
+        adder(age).decrement();
+    }
+
+    void changed(int from, int to) {
+        if (from != to) {
+            removed(from);
+            added(to);
+        }
+    }
+
+    void writeStarted() {
+        writesStarted.incrementAndGet();
+    }
+
+    void writeFinished() {
+        writesFinished.incrementAndGet();
+    }
+
+    Map<Integer, Long> snapshot() {
+        Map<Integer, Long> customers = new TreeMap<>();
+        customersByAge.forEach((age, adder) -> {
+            long sum = adder.sum();
+            if (sum != 0) {
+                customers.put(age, sum);
+            }
+        });
+        return customers;
+    }
+
+    // recounts from a scan handing over every customer's age and corrects
+    // the adders by the difference; the number of ages that were off, or -1
+    // when a write was in flight, the scan and the adders could then
+    // disagree about it and the next reconcile tries again
+    int reconcile(Consumer<IntConsumer> scan) {
+        long finished = writesFinished.get();
+        if (writesStarted.get() != finished) {
+            return -1;
+        }
+        Map<Integer, Long> kept = snapshot();
+        Map<Integer, Long> counted = new HashMap<>();
+        scan.accept(age -> counted.merge(age, 1L, Long::sum));
+        if (writesStarted.get() != finished) {
+            return -1;
+        }
+
+        Map<Integer, Long> drift = new HashMap<>(counted);
+        kept.forEach((age, customers) -> drift.merge(age, -customers, Long::sum));
+        drift.values().removeIf(customers -> customers == 0);
+        drift.forEach((age, customers) -> adder(age).add(customers));
+        return drift.size();
+    }
+
+    private LongAdder adder(int age) {
+        return customersByAge.computeIfAbsent(age, ignored -> new LongAdder());
+    }
+}
@@ -0,0 +1,570 @@
+package com.amigoscode.customer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// write-ahead log of customer rows in memory-mapped segment files. Each record
+// is framed as [length][crc32c][type][payload]; a zero length ends a segment.
+// Writers append under a lock and then wait until an fsync covers their
+// record, and one fsync covers every writer that queued behind it. Closed
+// segments are folded into a snapshot in the background, so a restart loads
+// the snapshot and replays only the segments written after it
+class CustomerAppendLog implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomerAppendLog.class);
+
+    private static final Pattern SEGMENT = Pattern.compile("segment-(\\d{20})\\.log");
+
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d{20})\\.snap");
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private static final byte UPSERT = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final byte END = 3;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int compactAfterSegments;
+    // a ReentrantLock rather than synchronized, so virtual threads waiting on
+    // an fsync do not pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private final ScheduledExecutorService compactor;
+    private final boolean created;
+
+    private Segment current;
+    private long firstSegment;
+    private long durable;
+    private boolean syncing;
+    private long syncs;
+
+    private CustomerAppendLog(CustomerLogProperties properties, boolean created) {
+        this.directory = properties.directory();
+        this.segmentSize = Math.toIntExact(properties.segmentSize().toBytes());
+        this.compactAfterSegments = properties.compactAfterSegments();
+        this.created = created;
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "customer-log-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // replays the snapshot and every later segment into the callbacks, in
+    // write order, and returns a log ready for appends
+    static CustomerAppendLog open(CustomerLogProperties properties,
+                                  Consumer<Customer> upserts,
+                                  LongConsumer deletes) {
+        try {
+            Files.createDirectories(properties.directory());
+            TreeMap<Long, Path> snapshots = list(properties.directory(), SNAPSHOT);
+            TreeMap<Long, Path> segments = list(properties.directory(), SEGMENT);
+            CustomerAppendLog log = new CustomerAppendLog(properties, snapshots.isEmpty() && segments.isEmpty());
+
+            long start = System.nanoTime();
+            long records = 0;
+            long firstSegment = 0;
+            if (!snapshots.isEmpty()) {
+                firstSegment = snapshots.lastKey();
+                records += readSnapshot(snapshots.lastEntry().getValue(), upserts);
+            }
+            // left behind when a compaction was interrupted before cleaning up
+            for (Path stale : snapshots.headMap(firstSegment).values()) {
+                Files.deleteIfExists(stale);
+            }
+            for (Path stale : segments.headMap(firstSegment).values()) {
+                Files.deleteIfExists(stale);
+            }
+
+            List<Long> replay = List.copyOf(segments.tailMap(firstSegment).keySet());
+            for (long index : replay) {
+                boolean last = index == replay.get(replay.size() - 1);
+                Segment segment = Segment.open(log.segmentPath(index), index, log.segmentSize);
+                try {
+                    records += segment.replay(upserts, deletes, last);
+                } finally {
+                    if (!last) {
+                        segment.close();
+                    }
+                }
+                if (last) {
+                    log.current = segment;
+                }
+            }
+            if (log.current == null) {
+                log.current = Segment.open(log.segmentPath(firstSegment), firstSegment, log.segmentSize);
+            }
+            log.firstSegment = firstSegment;
+            log.durable = log.current.position();
+
+            LOGGER.info("replayed {} customer log records from {} in {}ms",
+                    records, properties.directory(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            long interval = properties.compactionInterval().toMillis();
+            log.compactor.scheduleWithFixedDelay(log::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+            return log;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // true when the directory held no log, i.e. this is the first start
+    boolean created() {
+        return created;
+    }
+
+    // the returned position is durable once awaitDurable(position) returns
+    long appendUpsert(Customer customer) {
+        byte[] name = customer.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] email = customer.getEmail().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = record(UPSERT, 3 * Long.BYTES + 3 * Integer.BYTES + name.length + email.length);
+        record.putLong(customer.getId())
+                .putLong(customer.getVersion())
+                .putLong(toNanos(customer.getUpdatedAt()))
+                .putInt(customer.getAge())
+                .putInt(name.length).put(name)
+                .putInt(email.length).put(email);
+        return append(seal(record));
+    }
+
+    long appendDelete(long customerId) {
+        ByteBuffer record = record(DELETE, Long.BYTES);
+        record.putLong(customerId);
+        return append(seal(record));
+    }
+
+    // group commit: the first waiter fsyncs everything appended so far while
+    // later ones wait for it, then whoever is still not covered goes next
+    void awaitDurable(long position) {
+        lock.lock();
+        try {
+            while (durable < position) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                Segment segment = current;
+                int from = segment.synced;
+                int to = segment.offset();
+                long target = segment.position();
+                lock.unlock();
+                try {
+                    segment.force(from, to);
+                } finally {
+                    lock.lock();
+                    syncing = false;
+                    synced.signalAll();
+                }
+                segment.synced = Math.max(segment.synced, to);
+                durable = Math.max(durable, target);
+                syncs++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long syncs() {
+        lock.lock();
+        try {
+            return syncs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // folds the snapshot and all closed segments into a new snapshot; the live
+    // segment is left alone, so appends carry on meanwhile
+    void compact() throws IOException {
+        long upTo;
+        lock.lock();
+        try {
+            upTo = current.index;
+        } finally {
+            lock.unlock();
+        }
+        if (upTo - firstSegment < compactAfterSegments) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Map<Long, byte[]> live = new HashMap<>();
+        Path previous = snapshotPath(firstSegment);
+        if (Files.exists(previous)) {
+            scan(previous, (type, record) -> live.put(record.getLong(HEADER_BYTES + 1), bytes(record)), true);
+        }
+        for (long index = firstSegment; index < upTo; index++) {
+            scan(segmentPath(index), (type, record) -> {
+                long id = record.getLong(HEADER_BYTES + 1);
+                if (type == UPSERT) {
+                    live.put(id, bytes(record));
+                } else {
+                    live.remove(id);
+                }
+            }, false);
+        }
+
+        Path snapshot = snapshotPath(upTo);
+        Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            for (byte[] record : live.values()) {
+                if (buffer.remaining() < record.length) {
+                    drain(channel, buffer);
+                }
+                if (record.length > buffer.capacity()) {
+                    channel.write(ByteBuffer.wrap(record));
+                } else {
+                    buffer.put(record);
+                }
+            }
+            ByteBuffer end = record(END, Long.BYTES);
+            end.putLong(live.size());
+            drain(channel, buffer);
+            channel.write(seal(end));
+            channel.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+
+        Files.deleteIfExists(previous);
+        for (long index = firstSegment; index < upTo; index++) {
+            Files.deleteIfExists(segmentPath(index));
+        }
+        firstSegment = upTo;
+        LOGGER.info("compacted customer log into {} with {} customers in {}ms",
+                snapshot.getFileName(), live.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            current.forceAll();
+            current.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("could not compact customer log in {}", directory, e);
+        }
+    }
+
+    private long append(ByteBuffer record) {
+        if (record.remaining() > segmentSize) {
+            throw new IllegalArgumentException("customer record does not fit into a log segment");
+        }
+        lock.lock();
+        try {
+            if (current.remaining() < record.remaining()) {
+                roll();
+            }
+            return current.append(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the full segment is synced before the next one takes writes, so the
+    // durable position only ever has to follow the current segment; all of
+    // it, since a group fsync of its tail may still be running
+    private void roll() {
+        current.forceAll();
+        current.close();
+        long index = current.index + 1;
+        current = Segment.open(segmentPath(index), index, segmentSize);
+        durable = current.position();
+        syncDirectory();
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve("segment-%020d.log".formatted(index));
+    }
+
+    private Path snapshotPath(long index) {
+        return directory.resolve("snapshot-%020d.snap".formatted(index));
+    }
+
+    private static long readSnapshot(Path snapshot, Consumer<Customer> upserts) throws IOException {
+        long[] records = {0};
+        scan(snapshot, (type, record) -> {
+            upserts.accept(decode(record));
+            records[0]++;
+        }, true);
+        return records[0];
+    }
+
+    // visits UPSERT and DELETE records; a snapshot must end with an END
+    // record that counts them, a closed segment must not be torn
+    private static void scan(Path path, RecordVisitor visitor, boolean snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int position = 0;
+            long records = 0;
+            while (true) {
+                int length = validRecordLength(buffer, position);
+                if (length <= 0) {
+                    if (length < 0 || snapshot) {
+                        throw new IllegalStateException("%s is corrupt at offset %d".formatted(path, position));
+                    }
+                    return;
+                }
+                ByteBuffer record = buffer.slice(position, HEADER_BYTES + length);
+                byte type = record.get(HEADER_BYTES);
+                if (type == END) {
+                    if (record.getLong(HEADER_BYTES + 1) != records) {
+                        throw new IllegalStateException("%s is missing records".formatted(path));
+                    }
+                    return;
+                }
+                visitor.visit(type, record);
+                records++;
+                position += HEADER_BYTES + length;
+            }
+        }
+    }
+
+    // the payload length of the record at position, 0 at the end of the
+    // data and -1 when the record is torn or fails its checksum
+    private static int validRecordLength(ByteBuffer buffer, int position) {
+        if (buffer.limit() - position < HEADER_BYTES) {
+            return 0;
+        }
+        int length = buffer.getInt(position);
+        if (length == 0) {
+            return 0;
+        }
+        if (length < 0 || length > buffer.limit() - position - HEADER_BYTES) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(position + HEADER_BYTES, length));
+        return (int) crc.getValue() == buffer.getInt(position + Integer.BYTES) ? length : -1;
+    }
+
+    private static Customer decode(ByteBuffer record) {
+        int position = HEADER_BYTES + 1;
+        long id = record.getLong(position);
+        long version = record.getLong(position + Long.BYTES);
+        long updatedAt = record.getLong(position + 2 * Long.BYTES);
+        int age = record.getInt(position + 3 * Long.BYTES);
+        position += 3 * Long.BYTES + Integer.BYTES;
+        String name = string(record, position);
+        position += Integer.BYTES + record.getInt(position);
+        String email = string(record, position);
+
+        Customer customer = new Customer(id, name, email, age);
+        customer.setVersion(version);
+        customer.setUpdatedAt(Instant.ofEpochSecond(0, updatedAt));
+        return customer;
+    }
+
+    private static String string(ByteBuffer record, int position) {
+        byte[] bytes = new byte[record.getInt(position)];
+        record.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer record(byte type, int payloadBytes) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + 1 + payloadBytes);
+        record.position(HEADER_BYTES);
+        record.put(type);
+        return record;
+    }
+
+    private static ByteBuffer seal(ByteBuffer record) {
+        int length = record.position() - HEADER_BYTES;
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), HEADER_BYTES, length);
+        record.putInt(0, length);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.flip();
+    }
+
+    private static byte[] bytes(ByteBuffer record) {
+        byte[] bytes = new byte[record.limit()];
+        record.get(0, bytes);
+        return bytes;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long toNanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    private static TreeMap<Long, Path> list(Path directory, Pattern pattern) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.forEach(path -> {
+                Matcher matcher = pattern.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), path);
+                }
+            });
+        }
+        return files;
+    }
+
+    private interface RecordVisitor {
+        void visit(byte type, ByteBuffer record);
+    }
+
+    // one preallocated, memory-mapped segment file; the buffer position is
+    // where the next record goes
+    private static final class Segment {
+
+        private final long index;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int synced;
+
+        private Segment(long index, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path path, long index, int size) {
+            try {
+                FileChannel channel = FileChannel.open(path,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                long mapped = Math.max(size, channel.size());
+                return new Segment(index, path, channel,
+                        channel.map(FileChannel.MapMode.READ_WRITE, 0, mapped));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // moves the write position past the last valid record; a torn record
+        // is only expected at the end of the last segment, where it is wiped
+        long replay(Consumer<Customer> upserts, LongConsumer deletes, boolean last) {
+            int position = 0;
+            long records = 0;
+            while (true) {
+                int length = validRecordLength(buffer, position);
+                if (length < 0) {
+                    if (!last) {
+                        throw new IllegalStateException("%s is corrupt at offset %d".formatted(path, position));
+                    }
+                    LOGGER.warn("discarding torn customer log tail in {} at offset {}", path, position);
+                    for (int i = position; i < buffer.limit(); i++) {
+                        buffer.put(i, (byte) 0);
+                    }
+                    force(position, buffer.limit());
+                    break;
+                }
+                if (length == 0) {
+                    break;
+                }
+                ByteBuffer record = buffer.slice(position, HEADER_BYTES + length);
+                if (record.get(HEADER_BYTES) == UPSERT) {
+                    upserts.accept(decode(record));
+                } else {
+                    deletes.accept(record.getLong(HEADER_BYTES + 1));
+                }
+                records++;
+                position += HEADER_BYTES + length;
+            }
+            buffer.position(position);
+            synced = position;
+            return records;
+        }
+
+        long append(ByteBuffer record) {
+            buffer.put(record);
+            return position();
+        }
+
+        // positions order across segments: segment index high, offset low
+        long position() {
+            return (index << 32) | buffer.position();
+        }
+
+        int offset() {
+            return buffer.position();
+        }
+
+        int remaining() {
+            return buffer.remaining();
+        }
+
+        void force(int from, int to) {
+            if (to > from) {
+                buffer.force(from, to - from);
+            }
+        }
+
+        void forceAll() {
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.amigoscode.customer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+record CustomerBatchPlan(
+        List<Customer> customers,
+        List<CustomerRegistrationResult> results
+) {
+
+    static CustomerBatchPlan of(List<CustomerRigistrationRequest> requests, Set<String> existingEmails) {
+        Set<String> takenEmails = new HashSet<>(existingEmails);
+        List<Customer> customers = new ArrayList<>();
+        List<CustomerRegistrationResult> results = new ArrayList<>(requests.size());
+        for (CustomerRigistrationRequest request : requests) {
+            // add() also rejects an email repeated within the same batch
+            if(!takenEmails.add(request.email())){
+                results.add(new CustomerRegistrationResult(
+                        request.email(), CustomerRegistrationResult.Status.EMAIL_TAKEN));
+                continue;
+            }
+            customers.add(new Customer(
+                    request.name(),
+                    request.email(),
+                    request.age()
+            ));
+            results.add(new CustomerRegistrationResult(
+                    request.email(), CustomerRegistrationResult.Status.CREATED));
+        }
+        return new CustomerBatchPlan(customers, results);
+    }
+
+    // the results once the customers were inserted: one the dao skipped had
+    // its email taken after the check, by a concurrent registration
+    List<CustomerRegistrationResult> resultsAfter(Set<String> insertedEmails) {
+        return results.stream()
+                .map(result -> result.status() == CustomerRegistrationResult.Status.CREATED
+                        && !insertedEmails.contains(result.email())
+                        ? new CustomerRegistrationResult(result.email(), CustomerRegistrationResult.Status.EMAIL_TAKEN)
+                        : result)
+                .toList();
+    }
+}
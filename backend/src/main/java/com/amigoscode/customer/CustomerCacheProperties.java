@@ -0,0 +1,14 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("app.customer-cache")
+public record CustomerCacheProperties(
+        @DefaultValue("100000") long maximumSize,
+        @DefaultValue("10m") Duration timeToLive,
+        @DefaultValue("5s") Duration notFoundTimeToLive
+) {
+}
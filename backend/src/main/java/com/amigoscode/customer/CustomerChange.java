@@ -0,0 +1,20 @@
+package com.amigoscode.customer;
+
+import java.time.Instant;
+
+// one entry of the customer outbox; offsets grow in commit order, customer
+// is the state after the change and null for a delete
+public record CustomerChange(
+        long offset,
+        Type type,
+        Long customerId,
+        Customer customer,
+        Instant changedAt
+) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
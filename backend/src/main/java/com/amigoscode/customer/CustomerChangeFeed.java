@@ -0,0 +1,213 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// serves the /changes stream from the outbox. Every stream has a thread that
+// fetches up to batch-size changes after the offset its consumer has seen,
+// sends them as one event and fetches again. A send blocks while the
+// consumer is behind on reading, so a slow consumer gets fewer, bigger
+// batches and nothing is held for it but the batch being sent. Streams that
+// have caught up wait for one shared poll of the newest offset instead of
+// each querying the outbox
+@Component
+@EnableConfigurationProperties(CustomerChangesProperties.class)
+public class CustomerChangeFeed implements InitializingBean, DisposableBean {
+
+    static final String CHANGES_EVENT = "changes";
+    // the consumer's offset was pruned or is unknown: it has to read the
+    // customers again and carry on from the event's id. Changes sent after
+    // it may already be in what it reads, they carry the whole customer, so
+    // applying them again is harmless
+    static final String RESET_EVENT = "reset";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomerChangeFeed.class);
+
+    private final CustomerDao customerDao;
+    private final CustomerChangesProperties properties;
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final Counter sentChanges;
+    private final Counter resets;
+    private final Object headLock = new Object();
+    // the newest offset the poll found, guarded by headLock
+    private long head;
+    private ThreadPoolExecutor streams;
+    private ScheduledExecutorService scheduler;
+
+    public CustomerChangeFeed(@Qualifier("cached") CustomerDao customerDao,
+                              CustomerChangesProperties properties,
+                              MeterRegistry meterRegistry) {
+        this.customerDao = customerDao;
+        this.properties = properties;
+        this.sentChanges = Counter.builder("customer.changes.sent")
+                .description("Changes sent to /changes streams")
+                .register(meterRegistry);
+        this.resets = Counter.builder("customer.changes.resets")
+                .description("Streams told to read the customers again, their offset could not be resumed from")
+                .register(meterRegistry);
+        Gauge.builder("customer.changes.streams", openStreams, AtomicInteger::get)
+                .description("Open /changes streams")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        AtomicInteger threads = new AtomicInteger();
+        // no queue: a stream gets a thread or is turned away
+        streams = new ThreadPoolExecutor(
+                0, properties.maxStreams(), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "customer-changes-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "customer-changes-poll");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.pollInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::pollQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // interrupts the streams waiting for changes
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        streams.shutdownNow();
+    }
+
+    // without an offset only changes from now on are sent
+    public SseEmitter subscribe(Long after) {
+        return subscribe(after, new SseEmitter());
+    }
+
+    SseEmitter subscribe(Long after, SseEmitter emitter) {
+        AtomicBoolean open = new AtomicBoolean(true);
+        emitter.onCompletion(() -> open.set(false));
+        emitter.onTimeout(() -> open.set(false));
+        emitter.onError(e -> open.set(false));
+        try {
+            streams.execute(() -> stream(after, emitter, open));
+        } catch (RejectedExecutionException e) {
+            throw new ServiceUnavailableException("too many change streams, try again later");
+        }
+        return emitter;
+    }
+
+    void poll() {
+        // numbered whether anyone streams them or not, so no backlog builds
+        // up for the next stream to wait on
+        customerDao.sequenceChanges(properties.sequenceBatchSize());
+        if (openStreams.get() == 0) {
+            return;
+        }
+        long latest = customerDao.selectChangeOffsets().latest();
+        synchronized (headLock) {
+            if (latest > head) {
+                head = latest;
+                headLock.notifyAll();
+            }
+        }
+    }
+
+    private void stream(Long after, SseEmitter emitter, AtomicBoolean open) {
+        openStreams.incrementAndGet();
+        try {
+            long offset = start(after, emitter);
+            while (open.get()) {
+                List<CustomerChange> batch = customerDao.selectChanges(offset, properties.batchSize());
+                // read after the batch: whatever was pruned before it was
+                // fetched shows in the watermark
+                CustomerChangeOffsets offsets = customerDao.selectChangeOffsets();
+                if (offset < offsets.pruned()) {
+                    offset = reset(emitter, offsets);
+                } else if (!batch.isEmpty()) {
+                    offset = batch.get(batch.size() - 1).offset();
+                    emitter.send(SseEmitter.event()
+                            .id(Long.toString(offset))
+                            .name(CHANGES_EVENT)
+                            .data(batch, MediaType.APPLICATION_JSON));
+                    sentChanges.increment(batch.size());
+                } else if (!awaitChangesAfter(offset)) {
+                    // finds a consumer that went away while nothing changed
+                    emitter.send(SseEmitter.event().comment(""));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("customer change stream closed by the consumer", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        } catch (RuntimeException e) {
+            LOGGER.warn("customer change stream failed", e);
+            emitter.completeWithError(e);
+        } finally {
+            openStreams.decrementAndGet();
+        }
+    }
+
+    private long start(Long after, SseEmitter emitter) throws IOException {
+        CustomerChangeOffsets offsets = customerDao.selectChangeOffsets();
+        if (after == null) {
+            return offsets.latest();
+        }
+        if (offsets.canResumeFrom(after)) {
+            return after;
+        }
+        return reset(emitter, offsets);
+    }
+
+    private long reset(SseEmitter emitter, CustomerChangeOffsets offsets) throws IOException {
+        emitter.send(SseEmitter.event()
+                .id(Long.toString(offsets.latest()))
+                .name(RESET_EVENT)
+                .data(offsets, MediaType.APPLICATION_JSON));
+        resets.increment();
+        return offsets.latest();
+    }
+
+    // false when the heartbeat interval passed first
+    private boolean awaitChangesAfter(long offset) throws InterruptedException {
+        long deadline = System.nanoTime() + properties.heartbeatInterval().toNanos();
+        synchronized (headLock) {
+            while (head <= offset) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(headLock, remaining);
+            }
+            return true;
+        }
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            LOGGER.warn("could not number or read the newest customer changes", e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.amigoscode.customer;
+
+import java.time.Instant;
+
+public record CustomerChangeMarker(
+        long version,
+        Instant changedAt
+) {
+}
@@ -0,0 +1,16 @@
+package com.amigoscode.customer;
+
+// the newest offset pruned from the outbox, changes are only kept after it,
+// and the newest offset there is; both 0 while nothing was recorded
+public record CustomerChangeOffsets(
+        long pruned,
+        long latest
+) {
+
+    // whether a consumer that has seen up to offset can resume without
+    // missing anything; an offset past the latest is from another outbox,
+    // e.g. an in-memory one from before a restart
+    boolean canResumeFrom(long offset) {
+        return offset >= pruned && offset <= latest;
+    }
+}
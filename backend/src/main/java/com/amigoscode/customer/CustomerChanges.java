@@ -0,0 +1,33 @@
+package com.amigoscode.customer;
+
+import java.util.Objects;
+
+final class CustomerChanges {
+
+    private CustomerChanges() {
+    }
+
+    // copies every non-null field of update that differs from target and
+    // reports whether anything was copied
+    static boolean apply(Customer target, Customer update) {
+        boolean changes = false;
+
+        if(update.getName() != null && !update.getName().equals(target.getName())){
+            target.setName(update.getName());
+            changes = true;
+        }
+        if(update.getEmail() != null && !update.getEmail().equals(target.getEmail())){
+            target.setEmail(update.getEmail());
+            changes = true;
+        }
+        if(update.getAge() != null && !update.getAge().equals(target.getAge())){
+            target.setAge(update.getAge());
+            changes = true;
+        }
+        return changes;
+    }
+
+    static boolean changesEmail(Customer existing, Customer update) {
+        return update.getEmail() != null && !Objects.equals(update.getEmail(), existing.getEmail());
+    }
+}
@@ -0,0 +1,19 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("app.customer-changes")
+public record CustomerChangesProperties(
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("1s") Duration pollInterval,
+        @DefaultValue("15s") Duration heartbeatInterval,
+        @DefaultValue("100") int maxStreams,
+        @DefaultValue("7d") Duration retention,
+        @DefaultValue("1m") Duration pruneInterval,
+        @DefaultValue("1000") int pruneBatchSize,
+        @DefaultValue("10000") int sequenceBatchSize
+) {
+}
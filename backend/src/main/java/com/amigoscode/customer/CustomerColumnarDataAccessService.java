@@ -0,0 +1,556 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// in-memory store laid out in columns: one primitive array per field and the
+// name and email of a row next to each other in a UTF-8 arena, about 40 bytes
+// per row plus the text instead of a Customer object graph. Ids are dense, a
+// customer's row is its id - 1, so no id index is needed; emails are indexed
+// by an open-addressing table of row numbers. Customer objects are only built
+// for callers and the outbox, which every change is recorded in under the
+// write lock
+@Repository("columnar")
+@EnableConfigurationProperties(CustomerColumnarProperties.class)
+public class CustomerColumnarDataAccessService implements CustomerDao {
+
+    private static final int DELETED = -1;
+
+    private static final int EMPTY_SLOT = 0;
+
+    private static final int TOMBSTONE = -1;
+
+    private static final int STREAM_BATCH_SIZE = 1000;
+
+    private final CustomerColumnarProperties properties;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+    private final AtomicReference<CustomerChangeMarker> changeMarker = new AtomicReference<>(
+            new CustomerChangeMarker(0, Instant.now())
+    );
+    // read without the lock
+    private final CustomerAgeCounts ageCounts = new CustomerAgeCounts();
+    private final CustomerOutbox outbox = new CustomerOutbox();
+
+    private Utf8Arena arena;
+    private int rows;
+    private int liveRows;
+    private int[] ages;
+    // DELETED marks a deleted row
+    private int[] versions;
+    private long[] updatedAtNanos;
+    private long[] textAddresses;
+    private int[] nameLengths;
+    private int[] emailLengths;
+    // row + 1 per used slot
+    private int[] emailSlots;
+    private int usedEmailSlots;
+
+    public CustomerColumnarDataAccessService(CustomerColumnarProperties properties) {
+        this.properties = properties;
+        int capacity = Math.max(16, properties.initialCapacity());
+        this.arena = newArena();
+        this.ages = new int[capacity];
+        this.versions = new int[capacity];
+        this.updatedAtNanos = new long[capacity];
+        this.textAddresses = new long[capacity];
+        this.nameLengths = new int[capacity];
+        this.emailLengths = new int[capacity];
+        this.emailSlots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        List<Customer> customers = new ArrayList<>();
+        streamAllCustomers(customers::add);
+        return customers;
+    }
+
+    @Override
+    public List<Customer> selectCustomers(Long afterId, int limit) {
+        readLock.lock();
+        try {
+            List<Customer> customers = new ArrayList<>(Math.min(limit, liveRows));
+            for (long row = Math.max(0, afterId); row < rows && customers.size() < limit; row++) {
+                if (versions[(int) row] != DELETED) {
+                    customers.add(toCustomer((int) row));
+                }
+            }
+            return customers;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // a full scan; the age range is checked on the column before a Customer
+    // is built for the remaining filters
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search) {
+        int minAge = search.minAge() == null ? Integer.MIN_VALUE : search.minAge();
+        int maxAge = search.maxAge() == null ? Integer.MAX_VALUE : search.maxAge();
+        List<Customer> customers = new ArrayList<>();
+        readLock.lock();
+        try {
+            for (int row = 0; row < rows; row++) {
+                if (versions[row] == DELETED || ages[row] < minAge || ages[row] > maxAge) {
+                    continue;
+                }
+                Customer customer = toCustomer(row);
+                if (search.matches(customer)) {
+                    customers.add(customer);
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        customers.sort(search.comparator());
+        return customers.subList(0, Math.min(search.limit(), customers.size()));
+    }
+
+    @Override
+    public List<CustomerMatch> fuzzySearchCustomers(String name, int limit) {
+        List<CustomerMatch> matches = new ArrayList<>();
+        readLock.lock();
+        try {
+            Set<String> dictionary = new HashSet<>();
+            for (int row = 0; row < rows; row++) {
+                if (versions[row] != DELETED) {
+                    dictionary.addAll(FuzzyNameMatcher.words(arena.read(textAddresses[row], 0, nameLengths[row])));
+                }
+            }
+            FuzzyNameMatcher matcher = new FuzzyNameMatcher(name, dictionary);
+            for (int row = 0; row < rows; row++) {
+                if (versions[row] == DELETED) {
+                    continue;
+                }
+                long address = textAddresses[row];
+                double score = matcher.score(arena.read(address, 0, nameLengths[row]));
+                if (score >= 0) {
+                    matches.add(new CustomerMatch(toCustomer(row), score));
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        matches.sort(CustomerMatch.RANKING);
+        return matches.subList(0, Math.min(limit, matches.size()));
+    }
+
+    // hands out batches, so a slow consumer does not hold the lock
+    @Override
+    public void streamAllCustomers(Consumer<Customer> consumer) {
+        int row = 0;
+        List<Customer> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+        do {
+            batch.clear();
+            readLock.lock();
+            try {
+                for (; row < rows && batch.size() < STREAM_BATCH_SIZE; row++) {
+                    if (versions[row] != DELETED) {
+                        batch.add(toCustomer(row));
+                    }
+                }
+            } finally {
+                readLock.unlock();
+            }
+            batch.forEach(consumer);
+        } while (!batch.isEmpty());
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Long customerId) {
+        readLock.lock();
+        try {
+            int row = liveRow(customerId);
+            return row < 0 ? Optional.empty() : Optional.of(toCustomer(row));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Long insertCustomer(Customer customer) {
+        byte[] name = utf8(customer.getName());
+        byte[] email = utf8(customer.getEmail());
+        writeLock.lock();
+        try {
+            if (findEmail(email) >= 0) {
+                throw new DuplicateResourceException("email already taken");
+            }
+            int row = append(name, email, customer.getAge(), now());
+            long id = row + 1L;
+            outbox.created(toCustomer(row));
+            customer.setId(id);
+            markChanged();
+            return id;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // like the database batch, a customer whose email is taken is skipped;
+    // an appended row is in the email index at once, so that includes an
+    // email repeated within the batch
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        List<byte[]> names = new ArrayList<>(customers.size());
+        List<byte[]> emails = new ArrayList<>(customers.size());
+        customers.forEach(customer -> {
+            names.add(utf8(customer.getName()));
+            emails.add(utf8(customer.getEmail()));
+        });
+        Set<String> inserted = new HashSet<>();
+        writeLock.lock();
+        try {
+            long now = now();
+            for (int i = 0; i < customers.size(); i++) {
+                if (findEmail(emails.get(i)) >= 0) {
+                    continue;
+                }
+                int row = append(names.get(i), emails.get(i), customers.get(i).getAge(), now);
+                outbox.created(toCustomer(row));
+                customers.get(i).setId(row + 1L);
+                inserted.add(customers.get(i).getEmail());
+            }
+            if (!inserted.isEmpty()) {
+                markChanged();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return inserted;
+    }
+
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        byte[] bytes = utf8(email);
+        readLock.lock();
+        try {
+            return findEmail(bytes) >= 0;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        Set<String> existing = new HashSet<>();
+        readLock.lock();
+        try {
+            for (String email : emails) {
+                if (findEmail(utf8(email)) >= 0) {
+                    existing.add(email);
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return existing;
+    }
+
+    @Override
+    public void deleteCustomerById(Long customerId) {
+        writeLock.lock();
+        try {
+            int row = liveRow(customerId);
+            if (row < 0) {
+                return;
+            }
+            removeEmail(row);
+            arena.release(nameLengths[row] + emailLengths[row]);
+            versions[row] = DELETED;
+            liveRows--;
+            ageCounts.removed(ages[row]);
+            outbox.deleted(customerId);
+            markChanged();
+            compactIfSparse();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean existsCustomerById(Long customerId) {
+        readLock.lock();
+        try {
+            return liveRow(customerId) >= 0;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Customer updateCustomer(Customer update) {
+        writeLock.lock();
+        try {
+            int row = liveRow(update.getId());
+            if (row < 0) {
+                throw new ResourceNotFoundException(
+                        "customer with id [%s] not found".formatted(update.getId()));
+            }
+            if (update.getVersion() != null && update.getVersion() != versions[row]) {
+                throw new PreconditionFailedException(
+                        "customer with id [%s] has been modified".formatted(update.getId()));
+            }
+
+            Customer existing = toCustomer(row);
+            Customer customer = toCustomer(row);
+            if (!CustomerChanges.apply(customer, update)) {
+                throw new NoDataChangeException("no data changes founded");
+            }
+            boolean changesEmail = CustomerChanges.changesEmail(existing, update);
+            byte[] email = utf8(customer.getEmail());
+            if (changesEmail && findEmail(email) >= 0) {
+                throw new DuplicateResourceException("email already taken");
+            }
+
+            if (!customer.getName().equals(existing.getName()) || changesEmail) {
+                if (changesEmail) {
+                    removeEmail(row);
+                }
+                arena.release(nameLengths[row] + emailLengths[row]);
+                writeText(row, utf8(customer.getName()), email);
+                if (changesEmail) {
+                    addEmail(row, Utf8Arena.hash(email));
+                }
+            }
+            ageCounts.changed(ages[row], customer.getAge());
+            ages[row] = customer.getAge();
+            versions[row]++;
+            updatedAtNanos[row] = now();
+            markChanged();
+            compactIfSparse();
+            Customer updated = toCustomer(row);
+            outbox.updated(updated);
+            return updated;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public CustomerChangeMarker selectChangeMarker() {
+        return changeMarker.get();
+    }
+
+    @Override
+    public Map<Integer, Long> selectAgeCounts() {
+        return ageCounts.snapshot();
+    }
+
+    // writes are under the write lock, so under the read lock the recount
+    // and the counts agree
+    @Override
+    public int reconcileAgeCounts() {
+        readLock.lock();
+        try {
+            return ageCounts.reconcile(counted -> {
+                for (int row = 0; row < rows; row++) {
+                    if (versions[row] != DELETED) {
+                        counted.accept(ages[row]);
+                    }
+                }
+            });
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // the outbox gives changes their offset as they are recorded
+    @Override
+    public int sequenceChanges(int limit) {
+        return 0;
+    }
+
+    @Override
+    public List<CustomerChange> selectChanges(long afterOffset, int limit) {
+        return outbox.after(afterOffset, limit);
+    }
+
+    @Override
+    public CustomerChangeOffsets selectChangeOffsets() {
+        return outbox.offsets();
+    }
+
+    @Override
+    public int pruneChanges(Instant before, int limit) {
+        return outbox.prune(before, limit);
+    }
+
+    // bytes held by the columns, the email index and the arena, whether on or off heap
+    long footprintBytes() {
+        readLock.lock();
+        try {
+            return (long) ages.length * Integer.BYTES
+                    + (long) versions.length * Integer.BYTES
+                    + (long) updatedAtNanos.length * Long.BYTES
+                    + (long) textAddresses.length * Long.BYTES
+                    + (long) nameLengths.length * Integer.BYTES
+                    + (long) emailLengths.length * Integer.BYTES
+                    + (long) emailSlots.length * Integer.BYTES
+                    + arena.capacityBytes();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private int append(byte[] name, byte[] email, int age, long updatedAt) {
+        if (rows == ages.length) {
+            grow();
+        }
+        int row = rows++;
+        ages[row] = age;
+        versions[row] = 0;
+        updatedAtNanos[row] = updatedAt;
+        writeText(row, name, email);
+        addEmail(row, Utf8Arena.hash(email));
+        liveRows++;
+        ageCounts.added(age);
+        return row;
+    }
+
+    private void writeText(int row, byte[] name, byte[] email) {
+        textAddresses[row] = arena.append(name, email);
+        nameLengths[row] = name.length;
+        emailLengths[row] = email.length;
+    }
+
+    private Customer toCustomer(int row) {
+        long address = textAddresses[row];
+        Customer customer = new Customer(
+                row + 1L,
+                arena.read(address, 0, nameLengths[row]),
+                arena.read(address, nameLengths[row], emailLengths[row]),
+                ages[row]
+        );
+        customer.setVersion((long) versions[row]);
+        customer.setUpdatedAt(Instant.ofEpochSecond(0, updatedAtNanos[row]));
+        return customer;
+    }
+
+    private int liveRow(Long customerId) {
+        if (customerId == null || customerId < 1 || customerId > rows) {
+            return -1;
+        }
+        int row = (int) (customerId - 1);
+        return versions[row] == DELETED ? -1 : row;
+    }
+
+    private int findEmail(byte[] email) {
+        int mask = emailSlots.length - 1;
+        for (int slot = Utf8Arena.hash(email) & mask; emailSlots[slot] != EMPTY_SLOT; slot = (slot + 1) & mask) {
+            int row = emailSlots[slot] - 1;
+            if (emailSlots[slot] != TOMBSTONE
+                    && arena.matches(textAddresses[row], nameLengths[row], emailLengths[row], email)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private void addEmail(int row, int hash) {
+        // keeps probe chains short, tombstones included
+        if ((usedEmailSlots + 1) * 2 > emailSlots.length) {
+            rehashEmails(Math.max(emailSlots.length, Integer.highestOneBit(Math.max(1, liveRows) * 4 - 1) << 1));
+        }
+        int mask = emailSlots.length - 1;
+        int slot = hash & mask;
+        while (emailSlots[slot] != EMPTY_SLOT && emailSlots[slot] != TOMBSTONE) {
+            slot = (slot + 1) & mask;
+        }
+        if (emailSlots[slot] == EMPTY_SLOT) {
+            usedEmailSlots++;
+        }
+        emailSlots[slot] = row + 1;
+    }
+
+    private void removeEmail(int row) {
+        int mask = emailSlots.length - 1;
+        int slot = arena.hash(textAddresses[row], nameLengths[row], emailLengths[row]) & mask;
+        while (emailSlots[slot] != row + 1) {
+            slot = (slot + 1) & mask;
+        }
+        emailSlots[slot] = TOMBSTONE;
+    }
+
+    private void rehashEmails(int capacity) {
+        emailSlots = new int[capacity];
+        usedEmailSlots = 0;
+        int mask = capacity - 1;
+        for (int row = 0; row < rows; row++) {
+            if (versions[row] == DELETED) {
+                continue;
+            }
+            int slot = arena.hash(textAddresses[row], nameLengths[row], emailLengths[row]) & mask;
+            while (emailSlots[slot] != EMPTY_SLOT) {
+                slot = (slot + 1) & mask;
+            }
+            emailSlots[slot] = row + 1;
+            usedEmailSlots++;
+        }
+    }
+
+    private void grow() {
+        int capacity = ages.length + (ages.length >> 1);
+        ages = Arrays.copyOf(ages, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        updatedAtNanos = Arrays.copyOf(updatedAtNanos, capacity);
+        textAddresses = Arrays.copyOf(textAddresses, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        emailLengths = Arrays.copyOf(emailLengths, capacity);
+    }
+
+    // updates and deletes leave dead text behind; once it is most of the
+    // arena the live text is copied into a fresh one
+    private void compactIfSparse() {
+        if (arena.usedBytes() < 4L * properties.arenaChunkSize().toBytes()
+                || arena.liveBytes() * 2 > arena.usedBytes()) {
+            return;
+        }
+        Utf8Arena compacted = newArena();
+        for (int row = 0; row < rows; row++) {
+            if (versions[row] != DELETED) {
+                textAddresses[row] = compacted.copy(arena, textAddresses[row], nameLengths[row] + emailLengths[row]);
+            }
+        }
+        arena = compacted;
+    }
+
+    private Utf8Arena newArena() {
+        return new Utf8Arena(Math.toIntExact(properties.arenaChunkSize().toBytes()), properties.offHeap());
+    }
+
+    private void markChanged() {
+        changeMarker.updateAndGet(marker ->
+                new CustomerChangeMarker(marker.version() + 1, Instant.now()));
+    }
+
+    private static long now() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
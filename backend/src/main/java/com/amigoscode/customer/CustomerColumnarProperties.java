@@ -0,0 +1,13 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties("app.customer-columnar")
+public record CustomerColumnarProperties(
+        boolean offHeap,
+        @DefaultValue("1024") int initialCapacity,
+        @DefaultValue("1MB") DataSize arenaChunkSize
+) {
+}
@@ -1,32 +1,155 @@
 package com.amigoscode.customer;
 
+import com.amigoscode.client.ClientIdentity;
+import com.amigoscode.idempotency.IdempotentRequests;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 @RestController
 @RequestMapping("api/v1/customers/")
+@Profile("!reactive")
 public class CustomerController {
 
+    private static final byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
+
     private final CustomerService customerService;
 
-    public CustomerController(CustomerService customerService) {
+    private final CustomerChangeFeed customerChangeFeed;
+
+    private final IdempotentRequests idempotentRequests;
+
+    private final ClientIdentity clientIdentity;
+
+    private final ObjectMapper objectMapper;
+
+    public CustomerController(CustomerService customerService,
+                              CustomerChangeFeed customerChangeFeed,
+                              IdempotentRequests idempotentRequests,
+                              ClientIdentity clientIdentity,
+                              ObjectMapper objectMapper) {
         this.customerService = customerService;
+        this.customerChangeFeed = customerChangeFeed;
+        this.idempotentRequests = idempotentRequests;
+        this.clientIdentity = clientIdentity;
+        this.objectMapper = objectMapper;
     }
 
-    @GetMapping
-    public List<Customer> getCustomers(){
+    @GetMapping(params = {"!limit", "!after"})
+    public List<Customer> getCustomers(WebRequest webRequest){
+        if(isNotModified(webRequest)){
+            return null;
+        }
         return customerService.getAllCustomers();
     }
 
+    @GetMapping
+    public CustomerPage getCustomers(
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "after", required = false) Long after,
+            WebRequest webRequest){
+        if(isNotModified(webRequest)){
+            return null;
+        }
+        return customerService.getCustomers(after, limit);
+    }
+
+    @GetMapping("search")
+    public CustomerSearchPage searchCustomers(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "email", required = false) String email,
+            @RequestParam(value = "minAge", required = false) Integer minAge,
+            @RequestParam(value = "maxAge", required = false) Integer maxAge,
+            @RequestParam(value = "sort", defaultValue = "id") String sort,
+            @RequestParam(value = "direction", defaultValue = "asc") String direction,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", defaultValue = "50") int limit){
+        return customerService.searchCustomers(name, email, minAge, maxAge, sort, direction, after, limit);
+    }
+
+    @GetMapping("search/fuzzy")
+    public List<CustomerMatch> fuzzySearchCustomers(
+            @RequestParam("name") String name,
+            @RequestParam(value = "limit", defaultValue = "20") int limit){
+        return customerService.fuzzySearchCustomers(name, limit);
+    }
+
+    @GetMapping("stats")
+    public CustomerStats getCustomerStats(){
+        return customerService.getCustomerStats();
+    }
+
+    // a reconnecting EventSource sends the id of the last event it got as
+    // Last-Event-ID, it takes precedence over after
+    @GetMapping(path = "changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId){
+        return customerChangeFeed.subscribe(lastEventId != null ? lastEventId : after);
+    }
+
+    @GetMapping("export")
+    public ResponseEntity<StreamingResponseBody> exportCustomers(){
+        StreamingResponseBody body = outputStream ->
+                // a failed write (e.g. the client went away) aborts the
+                // database cursor and hands the connection back to the pool
+                customerService.exportCustomers(customer -> {
+                    try {
+                        outputStream.write(objectMapper.writeValueAsBytes(customer));
+                        outputStream.write(NEW_LINE);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @GetMapping("{customerId}")
-    public Customer getCustomer(@PathVariable("customerId") Long customerId){
-        return customerService.getCustomer(customerId);
+    public ResponseEntity<Customer> getCustomer(@PathVariable("customerId") Long customerId){
+        Customer customer = customerService.getCustomer(customerId);
+        // If-None-Match / If-Modified-Since are evaluated against these
+        // headers before the body is written, so a 304 skips serialization
+        return ResponseEntity.ok()
+                .eTag(CustomerETags.of(customer))
+                .lastModified(customer.getUpdatedAt())
+                .body(customer);
     }
 
+    // a retry from the same client with the same Idempotency-Key gets the
+    // first answer replayed
     @PostMapping
-    public void registerCustomer(@RequestBody CustomerRigistrationRequest request){
-        customerService.addCustomer(request);
+    public ResponseEntity<CustomerRegistrationResponse> registerCustomer(
+            @RequestHeader(value = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            @RequestBody CustomerRigistrationRequest request,
+            HttpServletRequest httpRequest){
+        return idempotentRequests.execute(
+                clientIdentity.of(httpRequest),
+                idempotencyKey,
+                List.of("register", request),
+                CustomerRegistrationResponse.class,
+                () -> ResponseEntity.ok(new CustomerRegistrationResponse(customerService.addCustomer(request)))
+        );
+    }
+
+    @PostMapping("batch")
+    public List<CustomerRegistrationResult> registerCustomers(@RequestBody List<CustomerRigistrationRequest> requests){
+        return customerService.addCustomers(requests);
     }
 
     @DeleteMapping("{customerId}")
@@ -35,7 +158,36 @@ public class CustomerController {
     }
 
     @PutMapping("{customerId}")
-    public void updateCustomer(@PathVariable("customerId") Long customerId, @RequestBody CustomerRigistrationRequest request){
-        customerService.updateCustomer(customerId, request);
+    public ResponseEntity<Customer> updateCustomer(
+            @PathVariable("customerId") Long customerId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            @RequestBody CustomerRigistrationRequest request,
+            HttpServletRequest httpRequest){
+        return idempotentRequests.execute(
+                clientIdentity.of(httpRequest),
+                idempotencyKey,
+                Arrays.asList("update", customerId, ifMatch, request),
+                Customer.class,
+                () -> {
+                    Customer customer = customerService.updateCustomerMatching(
+                            customerId, request, CustomerETags.expectedVersions(ifMatch)
+                    );
+                    return ResponseEntity.ok()
+                            .eTag(CustomerETags.of(customer))
+                            .lastModified(customer.getUpdatedAt())
+                            .body(customer);
+                }
+        );
+    }
+
+    // the marker is read before the rows, so a tag can at worst be older
+    // than the data it is sent with, never newer
+    private boolean isNotModified(WebRequest webRequest) {
+        CustomerChangeMarker marker = customerService.getChangeMarker();
+        return webRequest.checkNotModified(
+                CustomerETags.of(marker),
+                marker.changedAt().toEpochMilli()
+        );
     }
 }
@@ -1,15 +1,44 @@
 package com.amigoscode.customer;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface CustomerDao {
 
     List<Customer> selectAllCustomers();
+    List<Customer> selectCustomers(Long afterId, int limit);
+    List<Customer> searchCustomers(CustomerSearch search);
+    List<CustomerMatch> fuzzySearchCustomers(String name, int limit);
+    void streamAllCustomers(Consumer<Customer> consumer);
     Optional<Customer> selectCustomerById(Long customerId);
-    void insertCustomer(Customer customer);
+    Long insertCustomer(Customer customer);
+    // skips the customers whose email is already taken; the emails of the
+    // customers it inserted
+    Set<String> insertCustomers(List<Customer> customers);
     boolean existsPersonWithEmail(String email);
+    Set<String> selectExistingEmails(Collection<String> emails);
     void deleteCustomerById(Long customerId);
     boolean existsCustomerById(Long customerId);
-    void updateCustomer(Customer customer);
+    CustomerChangeMarker selectChangeMarker();
+    Customer updateCustomer(Customer update);
+    // customers per age, ages without customers left out; kept up to date by
+    // every write, so reading it never scans the customers
+    Map<Integer, Long> selectAgeCounts();
+    // recounts the ages and corrects the kept counts; how many ages were off,
+    // -1 when the recount had to be skipped
+    int reconcileAgeCounts();
+    // the outbox: every change in commit order, recorded with the write.
+    // Changes are read once they have an offset; numbers up to limit of the
+    // committed changes that have none yet, how many were numbered
+    int sequenceChanges(int limit);
+    List<CustomerChange> selectChanges(long afterOffset, int limit);
+    CustomerChangeOffsets selectChangeOffsets();
+    // removes up to limit of the oldest changes made before the given time;
+    // how many were removed
+    int pruneChanges(Instant before, int limit);
 }
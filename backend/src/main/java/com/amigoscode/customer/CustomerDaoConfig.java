@@ -0,0 +1,49 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
+
+// the decorators around the dao that stores the customers, composed here
+// rather than in the decorators: "cached" caches single customers in front
+// of "bloom", which answers email checks in front of app.customer-dao.store.
+// CustomerService picks the whole chain, or any one dao, by its qualifier
+@Configuration
+@EnableConfigurationProperties({
+        CustomerDaoProperties.class,
+        CustomerCacheProperties.class,
+        EmailFilterProperties.class
+})
+public class CustomerDaoConfig {
+
+    private static final Set<String> DECORATORS = Set.of("cached", "bloom");
+
+    @Bean("bloom")
+    public EmailFilteringCustomerDao emailFilteringCustomerDao(CustomerDaoProperties properties,
+                                                               BeanFactory beanFactory,
+                                                               EmailFilterProperties emailFilterProperties,
+                                                               MeterRegistry meterRegistry) {
+        if (DECORATORS.contains(properties.store())) {
+            throw new IllegalStateException(
+                    "app.customer-dao.store must name a dao that stores customers, not [%s]"
+                            .formatted(properties.store()));
+        }
+        return new EmailFilteringCustomerDao(
+                beanFactory.getBean(properties.store(), CustomerDao.class),
+                emailFilterProperties,
+                meterRegistry
+        );
+    }
+
+    @Bean("cached")
+    public CachingCustomerDao cachingCustomerDao(@Qualifier("bloom") CustomerDao customerDao,
+                                                 CustomerCacheProperties properties,
+                                                 MeterRegistry meterRegistry) {
+        return new CachingCustomerDao(customerDao, properties, meterRegistry);
+    }
+}
@@ -0,0 +1,11 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties("app.customer-dao")
+public record CustomerDaoProperties(
+        // the bean name of the dao that stores the customers: jdbc, jpa, list or columnar
+        @DefaultValue("jdbc") String store
+) {
+}
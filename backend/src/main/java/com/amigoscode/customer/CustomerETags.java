@@ -0,0 +1,46 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.PreconditionFailedException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class CustomerETags {
+
+    private CustomerETags() {
+    }
+
+    static String of(Customer customer) {
+        return "\"" + customer.getVersion() + "\"";
+    }
+
+    static String of(CustomerChangeMarker marker) {
+        return "\"customers-" + marker.version() + "\"";
+    }
+
+    // the versions If-Match lists, compared strongly: a weak tag, or one that
+    // is no version, matches nothing. Empty means the update is
+    // unconditional (no If-Match, or If-Match: *)
+    static List<Long> expectedVersions(String ifMatch) {
+        if(ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")){
+            return List.of();
+        }
+
+        List<Long> versions = new ArrayList<>();
+        for(String tag : ifMatch.split(",")){
+            tag = tag.trim();
+            if(tag.length() < 3 || !tag.startsWith("\"") || !tag.endsWith("\"")){
+                continue;
+            }
+            try {
+                versions.add(Long.parseLong(tag.substring(1, tag.length() - 1)));
+            } catch (NumberFormatException e) {
+                // another resource's tag
+            }
+        }
+        if(versions.isEmpty()){
+            throw new PreconditionFailedException("If-Match [%s] does not match any version".formatted(ifMatch));
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,31 @@
+package com.amigoscode.customer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// one customer_changes notification (see V8): the change marker version of
+// the write, when it was sent and the ids it changed, or all of them
+record CustomerInvalidation(
+        long version,
+        long sentAtMillis,
+        boolean all,
+        List<Long> customerIds
+) {
+
+    static CustomerInvalidation parse(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("invalid customer change notification: " + payload);
+        }
+        long version = Long.parseLong(parts[0]);
+        long sentAtMillis = Long.parseLong(parts[1]);
+        if (parts[2].equals("*")) {
+            return new CustomerInvalidation(version, sentAtMillis, true, List.of());
+        }
+        List<Long> customerIds = new ArrayList<>();
+        for (String id : parts[2].split(",")) {
+            customerIds.add(Long.parseLong(id));
+        }
+        return new CustomerInvalidation(version, sentAtMillis, false, customerIds);
+    }
+}
@@ -0,0 +1,236 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// keeps this node's caches in step with writes other nodes handle: a
+// dedicated connection, outside the pool, LISTENs for the ids V8's triggers
+// NOTIFY on commit and evicts them from the customer cache and hibernate's
+// second-level cache. Whatever arrived while evicting is handled as one
+// batch. Notifications sent while the connection was down are lost, so after
+// reconnecting the change marker version tells whether any were missed, and
+// then everything is evicted
+@Component
+@EnableConfigurationProperties(CustomerInvalidationProperties.class)
+public class CustomerInvalidationListener implements InitializingBean, DisposableBean {
+
+    static final String CHANNEL = "customer_changes";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomerInvalidationListener.class);
+
+    private final DataSource dataSource;
+    private final CachingCustomerDao customerCache;
+    private final Cache secondLevelCache;
+    private final CustomerInvalidationProperties properties;
+    private final Timer lag;
+    private final Counter evictedCustomers;
+    private final Counter missedChanges;
+    // the newest change marker version seen, -1 before the first connection
+    private volatile long version = -1;
+    private volatile boolean connected;
+    private volatile boolean running;
+    private volatile Connection connection;
+    private Thread thread;
+
+    @Autowired
+    public CustomerInvalidationListener(DataSourceProperties dataSourceProperties,
+                                        CachingCustomerDao customerCache,
+                                        EntityManagerFactory entityManagerFactory,
+                                        CustomerInvalidationProperties properties,
+                                        MeterRegistry meterRegistry) {
+        this(
+                dataSourceProperties.initializeDataSourceBuilder().type(SimpleDriverDataSource.class).build(),
+                customerCache,
+                entityManagerFactory.unwrap(SessionFactory.class).getCache(),
+                properties,
+                meterRegistry
+        );
+    }
+
+    CustomerInvalidationListener(DataSource dataSource,
+                                 CachingCustomerDao customerCache,
+                                 Cache secondLevelCache,
+                                 CustomerInvalidationProperties properties,
+                                 MeterRegistry meterRegistry) {
+        this.dataSource = dataSource;
+        this.customerCache = customerCache;
+        this.secondLevelCache = secondLevelCache;
+        this.properties = properties;
+        this.lag = Timer.builder("customer.cache.invalidation.lag")
+                .description("Time from a customer change to its eviction from this node's caches")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.evictedCustomers = Counter.builder("customer.cache.invalidation.evicted")
+                .description("Customers evicted because a change was notified")
+                .register(meterRegistry);
+        this.missedChanges = Counter.builder("customer.cache.invalidation.missed")
+                .description("Reconnects after which every cached customer was evicted")
+                .register(meterRegistry);
+        Gauge.builder("customer.cache.invalidation.connected", this, listener -> listener.connected ? 1 : 0)
+                .description("Whether change notifications are being received")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.enabled()) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::listen, "customer-invalidation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // closing the connection wakes the thread from its poll
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        closeQuietly(connection);
+        if (thread != null) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection listening = dataSource.getConnection()) {
+                connection = listening;
+                try (Statement statement = listening.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                catchUp(listening);
+                connected = true;
+                poll(listening);
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    LOGGER.warn("lost customer change notifications, reconnecting in {}",
+                            properties.reconnectDelay(), e);
+                }
+            } finally {
+                connected = false;
+                connection = null;
+            }
+            pause(properties.reconnectDelay());
+        }
+    }
+
+    // whatever changed between losing the last connection and listening on
+    // this one was never notified; listening first means nothing is lost
+    // between the two
+    private void catchUp(Connection listening) throws SQLException {
+        long current;
+        try (Statement statement = listening.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT version FROM customer_change_marker")) {
+            resultSet.next();
+            current = resultSet.getLong(1);
+        }
+        if (version >= 0 && current != version) {
+            LOGGER.info("customers changed while change notifications were lost, evicting every cached customer");
+            missedChanges.increment();
+            evictAll();
+        }
+        version = Math.max(version, current);
+    }
+
+    private void poll(Connection listening) throws SQLException {
+        PGConnection notifications = listening.unwrap(PGConnection.class);
+        int timeout = (int) properties.pollTimeout().toMillis();
+        while (running) {
+            PGNotification[] received = notifications.getNotifications(timeout);
+            if (received == null || received.length == 0) {
+                // a dropped connection does not always fail the poll
+                if (!listening.isValid((int) TimeUnit.MILLISECONDS.toSeconds(timeout) + 1)) {
+                    throw new SQLException("customer change notification connection is no longer valid");
+                }
+                continue;
+            }
+            evict(received);
+        }
+    }
+
+    private void evict(PGNotification[] received) {
+        Set<Long> customerIds = new HashSet<>();
+        boolean all = false;
+        long now = System.currentTimeMillis();
+        for (PGNotification notification : received) {
+            CustomerInvalidation invalidation = CustomerInvalidation.parse(notification.getParameter());
+            all |= invalidation.all();
+            customerIds.addAll(invalidation.customerIds());
+            version = Math.max(version, invalidation.version());
+            // the database's clock against ours, so skew shows up here too
+            lag.record(Math.max(0, now - invalidation.sentAtMillis()), TimeUnit.MILLISECONDS);
+        }
+        if (all) {
+            evictAll();
+            return;
+        }
+        customerCache.evict(customerIds);
+        customerIds.forEach(id -> secondLevelCache.evictEntityData(Customer.class, id.intValue()));
+        // cached query results are checked against this node's own table
+        // timestamps, which another node's write never touches
+        secondLevelCache.evictQueryRegion(CustomerRepository.EMAIL_EXISTS_CACHE_REGION);
+        secondLevelCache.evictDefaultQueryRegion();
+        evictedCustomers.increment(customerIds.size());
+    }
+
+    private void evictAll() {
+        customerCache.evictAll();
+        secondLevelCache.evictEntityData(Customer.class);
+        secondLevelCache.evictQueryRegion(CustomerRepository.EMAIL_EXISTS_CACHE_REGION);
+        secondLevelCache.evictDefaultQueryRegion();
+    }
+
+    private void pause(Duration delay) {
+        if (!running) {
+            return;
+        }
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.debug("could not close the customer change notification connection", e);
+        }
+    }
+}
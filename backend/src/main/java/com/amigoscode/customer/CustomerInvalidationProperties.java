@@ -0,0 +1,14 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("app.customer-invalidation")
+public record CustomerInvalidationProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("5s") Duration reconnectDelay,
+        @DefaultValue("10s") Duration pollTimeout
+) {
+}
@@ -1,36 +1,131 @@
 package com.amigoscode.customer;
 
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Repository("jdbc")
 public class CustomerJDBCDataAccessService implements  CustomerDao{
 
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
 
     private final CustomerRowMapper customerRowMapper;
 
+    private final TransactionTemplate transactionTemplate;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
     public CustomerJDBCDataAccessService(JdbcTemplate jdbcTemplate, CustomerRowMapper customerRowMapper) {
         this.jdbcTemplate = jdbcTemplate;
         this.customerRowMapper = customerRowMapper;
+        DataSourceTransactionManager transactionManager =
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource());
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
     }
 
 
     @Override
     public List<Customer> selectAllCustomers() {
-        var sql = "select id, name, email, age from customer";
+        var sql = "select id, name, email, age, version, updated_at from customer";
 
         List<Customer> customers = jdbcTemplate.query(sql, customerRowMapper);
 
         return customers;
     }
 
+    @Override
+    public List<Customer> selectCustomers(Long afterId, int limit) {
+        var sql = """
+                SELECT id, name, email, age, version, updated_at
+                FROM customer
+                WHERE id > ?
+                ORDER BY id
+                LIMIT ?
+                """;
+
+        return jdbcTemplate.query(sql, customerRowMapper, afterId, limit);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search) {
+        CustomerSearchQuery query = CustomerSearchQuery.of(search);
+        return jdbcTemplate.query(query.sql(), customerRowMapper, query.args().toArray());
+    }
+
+    @Override
+    public List<CustomerMatch> fuzzySearchCustomers(String name, int limit) {
+        return FuzzyNameSearch.run(
+                name,
+                limit,
+                query -> jdbcTemplate.query(
+                        query.sql(),
+                        (rs, rowNum) -> new CustomerMatch(customerRowMapper.mapRow(rs, rowNum), rs.getDouble("score")),
+                        query.args().toArray()
+                ),
+                query -> jdbcTemplate.query(
+                        query.sql(),
+                        (rs, rowNum) -> new FuzzyNameMatcher.Correction(rs.getString("word"), rs.getDouble("similarity")),
+                        query.args().toArray()
+                )
+        );
+    }
+
+    @Override
+    public void streamAllCustomers(Consumer<Customer> consumer) {
+        var sql = "select id, name, email, age, version, updated_at from customer";
+
+        // postgres only uses a server-side cursor (honouring the fetch size)
+        // when auto-commit is off, hence the surrounding transaction
+        readOnlyTransactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.query(
+                        connection -> {
+                            PreparedStatement statement = connection.prepareStatement(
+                                    sql,
+                                    ResultSet.TYPE_FORWARD_ONLY,
+                                    ResultSet.CONCUR_READ_ONLY
+                            );
+                            statement.setFetchSize(STREAM_FETCH_SIZE);
+                            return statement;
+                        },
+                        (RowCallbackHandler) rs -> consumer.accept(
+                                customerRowMapper.mapRow(rs, rs.getRow())
+                        )
+                )
+        );
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Long customerId) {
-        var sql = "select id, name, email, age from customer where id = ?";
+        var sql = "select id, name, email, age, version, updated_at from customer where id = ?";
 
         return jdbcTemplate
                 .query(sql, customerRowMapper, customerId)
@@ -39,17 +134,64 @@ public class CustomerJDBCDataAccessService implements  CustomerDao{
     }
 
     @Override
-    public void insertCustomer(Customer customer) {
+    public Long insertCustomer(Customer customer) {
         var sql = """
                 INSERT INTO customer (name, email, age)
                 VALUES (?, ?, ?)
+                ON CONFLICT (email) DO NOTHING
+                RETURNING id
+                """;
+        Long id = jdbcTemplate.query(
+                        sql,
+                        (rs, rowNum) -> rs.getLong("id"),
+                        customer.getName(),
+                        customer.getEmail(),
+                        customer.getAge())
+                .stream()
+                .findFirst()
+                .orElseThrow(() -> new DuplicateResourceException("email already taken"));
+        customer.setId(id);
+        return id;
+    }
+
+    // one statement per chunk of arrays; a customer whose email was taken
+    // after the caller checked, e.g. by a concurrent registration, is skipped
+    // by the conflict clause instead of failing the whole batch
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        var sql = """
+                INSERT INTO customer (name, email, age)
+                SELECT * FROM unnest(?::text[], ?::text[], ?::int[])
+                ON CONFLICT (email) DO NOTHING
+                RETURNING id, email
                 """;
-        int update = jdbcTemplate.update(
-                sql,
-                customer.getName(),
-                customer.getEmail(),
-                customer.getAge());
-        System.out.println("jdbcTemplate.update = " + update);
+        Map<String, Customer> customersByEmail = new HashMap<>();
+        customers.forEach(customer -> customersByEmail.putIfAbsent(customer.getEmail(), customer));
+        Set<String> inserted = new HashSet<>();
+        // one transaction so that a failed chunk leaves none of the batch behind
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < customers.size(); from += INSERT_BATCH_SIZE) {
+                List<Customer> chunk = customers.subList(from, Math.min(customers.size(), from + INSERT_BATCH_SIZE));
+                jdbcTemplate.query(
+                        connection -> {
+                            PreparedStatement statement = connection.prepareStatement(sql);
+                            statement.setArray(1, connection.createArrayOf(
+                                    "text", chunk.stream().map(Customer::getName).toArray()));
+                            statement.setArray(2, connection.createArrayOf(
+                                    "text", chunk.stream().map(Customer::getEmail).toArray()));
+                            statement.setArray(3, connection.createArrayOf(
+                                    "int4", chunk.stream().map(Customer::getAge).toArray()));
+                            return statement;
+                        },
+                        (RowCallbackHandler) rs -> {
+                            String email = rs.getString("email");
+                            customersByEmail.get(email).setId(rs.getLong("id"));
+                            inserted.add(email);
+                        }
+                );
+            }
+        });
+        return inserted;
     }
 
     @Override
@@ -60,6 +202,20 @@ public class CustomerJDBCDataAccessService implements  CustomerDao{
         return count != null && count > 0;
     }
 
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        var sql = "select email from customer where email = any(?)";
+
+        return new HashSet<>(jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(sql);
+                    statement.setArray(1, connection.createArrayOf("text", emails.toArray()));
+                    return statement;
+                },
+                (rs, rowNum) -> rs.getString("email")
+        ));
+    }
+
     @Override
     public void deleteCustomerById(Long customerId) {
         var sql = "DELETE FROM customer WHERE id = ?";
@@ -80,22 +236,160 @@ public class CustomerJDBCDataAccessService implements  CustomerDao{
     }
 
     @Override
-    public void updateCustomer(Customer customer) {
+    public CustomerChangeMarker selectChangeMarker() {
+        var sql = "select version, changed_at from customer_change_marker";
 
-        if(customer.getName() != null) {
-            String sql = "update customer set name=? where id = ?";
-            int result  = jdbcTemplate.update(sql, customer.getName(), customer.getId());
-            System.out.println("update customer name result = " + result);
+        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> new CustomerChangeMarker(
+                rs.getLong("version"),
+                rs.getTimestamp("changed_at").toInstant()
+        ));
+    }
+
+    @Override
+    public Map<Integer, Long> selectAgeCounts() {
+        Map<Integer, Long> customersByAge = new TreeMap<>();
+        jdbcTemplate.query(CustomerAgeCountSql.SELECT, (RowCallbackHandler) rs ->
+                customersByAge.put(rs.getInt("age"), rs.getLong("customers")));
+        return customersByAge;
+    }
+
+    @Override
+    public int reconcileAgeCounts() {
+        return transactionTemplate.execute(status ->
+                Boolean.TRUE.equals(jdbcTemplate.queryForObject(CustomerAgeCountSql.TRY_LOCK, Boolean.class))
+                        ? jdbcTemplate.update(CustomerAgeCountSql.RECONCILE)
+                        : -1);
+    }
+
+    @Override
+    public int sequenceChanges(int limit) {
+        Integer sequenced = jdbcTemplate.queryForObject(CustomerOutboxSql.SEQUENCE, Integer.class, limit);
+        return sequenced == null ? 0 : sequenced;
+    }
+
+    @Override
+    public List<CustomerChange> selectChanges(long afterOffset, int limit) {
+        return jdbcTemplate.query(
+                CustomerOutboxSql.SELECT_AFTER,
+                (rs, rowNum) -> CustomerOutboxSql.change(
+                        rs.getLong("feed_offset"),
+                        rs.getString("operation"),
+                        rs.getLong("customer_id"),
+                        rs.getString("name"),
+                        rs.getString("email"),
+                        rs.getObject("age", Integer.class),
+                        rs.getObject("version", Long.class),
+                        CustomerOutboxSql.instant(rs.getTimestamp("updated_at")),
+                        rs.getTimestamp("created_at").toInstant()
+                ),
+                afterOffset,
+                limit
+        );
+    }
+
+    @Override
+    public CustomerChangeOffsets selectChangeOffsets() {
+        return jdbcTemplate.queryForObject(CustomerOutboxSql.SELECT_OFFSETS, (rs, rowNum) -> new CustomerChangeOffsets(
+                rs.getLong("pruned"),
+                rs.getLong("latest")
+        ));
+    }
+
+    @Override
+    public int pruneChanges(Instant before, int limit) {
+        Integer pruned = jdbcTemplate.queryForObject(
+                CustomerOutboxSql.PRUNE, Integer.class, Timestamp.from(before), limit);
+        return pruned == null ? 0 : pruned;
+    }
+
+    @Override
+    public Customer updateCustomer(Customer update) {
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+
+        if(update.getName() != null) {
+            columns.add("name");
+            values.add(update.getName());
+        }
+        if(update.getEmail() != null) {
+            columns.add("email");
+            values.add(update.getEmail());
+        }
+        if(update.getAge() != null) {
+            columns.add("age");
+            values.add(update.getAge());
+        }
+        if(columns.isEmpty()) {
+            throw new NoDataChangeException("no data changes founded");
         }
-        if(customer.getEmail() != null) {
-            String sql = "update customer set email=? where id = ?";
-            int result  = jdbcTemplate.update(sql, customer.getEmail(), customer.getId());
-            System.out.println("update customer email result = " + result);
+
+        String versionCheck = update.getVersion() == null ? "" : " AND version = ?";
+
+        // the update only fires when a column really differs (and the version
+        // still matches); otherwise the second branch returns the row as the
+        // statement first saw it, so that "not found", "stale version" and
+        // "no change" can be told apart without another round trip. The update
+        // tests the row itself, so after waiting for a concurrent writer it
+        // checks that writer's version and values; "differs" tells whether the
+        // row it saw at the start still asked for a change
+        var sql = """
+                WITH current AS (
+                    SELECT id, name, email, age, version, updated_at FROM customer
+                    WHERE id = ?
+                ), updated AS (
+                    UPDATE customer SET %s, version = version + 1, updated_at = now()
+                    WHERE id = ? AND (%s)%s
+                    RETURNING id, name, email, age, version, updated_at
+                )
+                SELECT id, name, email, age, version, updated_at,
+                       true AS changed, true AS differs FROM updated
+                UNION ALL
+                SELECT id, name, email, age, version, updated_at,
+                       false AS changed, (%s) AS differs FROM current
+                WHERE NOT EXISTS (SELECT 1 FROM updated)
+                """.formatted(
+                columns.stream().map(column -> column + " = ?").collect(Collectors.joining(", ")),
+                columns.stream().map(column -> column + " IS DISTINCT FROM ?").collect(Collectors.joining(" OR ")),
+                versionCheck,
+                columns.stream().map(column -> "current." + column + " IS DISTINCT FROM ?").collect(Collectors.joining(" OR "))
+        );
+
+        List<Object> args = new ArrayList<>();
+        args.add(update.getId());
+        args.addAll(values);
+        args.add(update.getId());
+        args.addAll(values);
+        if(update.getVersion() != null) {
+            args.add(update.getVersion());
         }
-        if(customer.getAge() != null) {
-            String sql = "update customer set age=? where id = ?";
-            int result  = jdbcTemplate.update(sql, customer.getAge(), customer.getId());
-            System.out.println("update customer age result = " + result);
+        args.addAll(values);
+
+        List<CustomerUpdateRow> result;
+        try {
+            result = jdbcTemplate.query(
+                    sql,
+                    (rs, rowNum) -> new CustomerUpdateRow(
+                            customerRowMapper.mapRow(rs, rowNum),
+                            rs.getBoolean("changed"),
+                            rs.getBoolean("differs")
+                    ),
+                    args.toArray()
+            );
+        } catch (DuplicateKeyException e) {
+            throw new DuplicateResourceException("email already taken");
+        }
+
+        CustomerUpdateRow row = result.stream()
+                .findFirst()
+                .orElseThrow(() -> new ResourceNotFoundException(
+                        "customer with id [%s] not found".formatted(update.getId())));
+        if(!row.changed()) {
+            if(row.modifiedSince(update.getVersion())) {
+                throw new PreconditionFailedException(
+                        "customer with id [%s] has been modified".formatted(update.getId()));
+            }
+            throw new NoDataChangeException("no data changes founded");
         }
+        return row.customer();
     }
 }
@@ -1,17 +1,45 @@
 package com.amigoscode.customer;
 
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Query;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 @Repository("jpa")
 public class CustomerJPADataAccessService implements CustomerDao{
 
+    private static final int STREAM_PAGE_SIZE = 500;
+
     private final CustomerRepository customerRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final EntityManager entityManager;
 
-    public CustomerJPADataAccessService(CustomerRepository customerRepository) {
+    public CustomerJPADataAccessService(CustomerRepository customerRepository,
+                                        EntityManagerFactory entityManagerFactory) {
         this.customerRepository = customerRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        this.entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
     }
 
     @Override
@@ -19,14 +47,100 @@ public class CustomerJPADataAccessService implements CustomerDao{
         return customerRepository.findAll();
     }
 
+    @Override
+    public List<Customer> selectCustomers(Long afterId, int limit) {
+        return customerRepository.findByIdGreaterThanOrderByIdAsc(
+                afterId, PageRequest.ofSize(limit)
+        );
+    }
+
+    // derived queries cannot express the pattern operators the name index
+    // needs, so this runs the same SQL as the jdbc dao as a native query
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Customer> searchCustomers(CustomerSearch search) {
+        CustomerSearchQuery searchQuery = CustomerSearchQuery.of(search);
+        return bind(entityManager.createNativeQuery(searchQuery.sql(), Customer.class), searchQuery)
+                .getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<CustomerMatch> fuzzySearchCustomers(String name, int limit) {
+        return FuzzyNameSearch.run(
+                name,
+                limit,
+                searchQuery -> ((List<Object[]>) bind(
+                        entityManager.createNativeQuery(searchQuery.sql(), Customer.MATCH_MAPPING), searchQuery
+                ).getResultList()).stream()
+                        .map(row -> new CustomerMatch((Customer) row[0], ((Number) row[1]).doubleValue()))
+                        .toList(),
+                searchQuery -> ((List<Object[]>) bind(
+                        entityManager.createNativeQuery(searchQuery.sql()), searchQuery
+                ).getResultList()).stream()
+                        .map(row -> new FuzzyNameMatcher.Correction((String) row[0], ((Number) row[1]).doubleValue()))
+                        .toList()
+        );
+    }
+
+    private static Query bind(Query query, CustomerSearchQuery searchQuery) {
+        for (int i = 0; i < searchQuery.args().size(); i++) {
+            query.setParameter(i + 1, searchQuery.args().get(i));
+        }
+        return query;
+    }
+
+    @Override
+    public void streamAllCustomers(Consumer<Customer> consumer) {
+        // walk the table page by page; the export runs in one transaction,
+        // whose persistence context would keep every page it loaded, so each
+        // page is detached once it has been handed on
+        Long afterId = 0L;
+        List<Customer> page;
+        do {
+            page = selectCustomers(afterId, STREAM_PAGE_SIZE);
+            page.forEach(consumer);
+            page.forEach(entityManager::detach);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == STREAM_PAGE_SIZE);
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Long customerId) {
         return customerRepository.findById(customerId.intValue());
     }
 
     @Override
-    public void insertCustomer(Customer customer) {
-        customerRepository.save(customer);
+    public Long insertCustomer(Customer customer) {
+        Long id = customerRepository.insertIfEmailAbsent(
+                        customer.getName(),
+                        customer.getEmail(),
+                        customer.getAge())
+                .orElseThrow(() -> new DuplicateResourceException("email already taken"));
+        // the native insert runs as a query, so Hibernate does not see the
+        // table change and would keep serving a cached "email not taken"
+        entityManagerFactory.unwrap(SessionFactory.class)
+                .getCache()
+                .evictQueryRegion(CustomerRepository.EMAIL_EXISTS_CACHE_REGION);
+        customer.setId(id);
+        return id;
+    }
+
+    // one native statement, which skips an email taken since the caller
+    // checked instead of failing the batch the way saveAll would
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        Set<String> inserted = new HashSet<>(customerRepository.insertIfEmailsAbsent(
+                customers.stream().map(Customer::getName).toArray(String[]::new),
+                customers.stream().map(Customer::getEmail).toArray(String[]::new),
+                customers.stream().map(Customer::getAge).toArray(Integer[]::new)
+        ));
+        entityManagerFactory.unwrap(SessionFactory.class)
+                .getCache()
+                .evictQueryRegion(CustomerRepository.EMAIL_EXISTS_CACHE_REGION);
+        return inserted;
     }
 
     @Override
@@ -34,6 +148,11 @@ public class CustomerJPADataAccessService implements CustomerDao{
         return customerRepository.existsCustomerByEmail(email);
     }
 
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return customerRepository.findEmailsIn(emails);
+    }
+
     @Override
     public void deleteCustomerById(Long customerId) {
         customerRepository.deleteById(customerId.intValue());
@@ -45,7 +164,109 @@ public class CustomerJPADataAccessService implements CustomerDao{
     }
 
     @Override
-    public void updateCustomer(Customer customer) {
-        customerRepository.save(customer);
+    public CustomerChangeMarker selectChangeMarker() {
+        CustomerRepository.ChangeMarkerView marker = customerRepository.findChangeMarker();
+        return new CustomerChangeMarker(
+                marker.getVersion(),
+                Instant.ofEpochMilli(marker.getChangedAtMillis())
+        );
+    }
+
+    @Override
+    @Transactional
+    public Customer updateCustomer(Customer update) {
+        // loaded and flushed in one transaction, so the entity stays managed
+        // and save() does not pay for a merge SELECT
+        Customer customer = customerRepository.findById(update.getId().intValue())
+                .orElseThrow(() -> new ResourceNotFoundException(
+                        "customer with id [%s] not found".formatted(update.getId())));
+
+        if(update.getVersion() != null && !update.getVersion().equals(customer.getVersion())){
+            throw new PreconditionFailedException(
+                    "customer with id [%s] has been modified".formatted(update.getId()));
+        }
+        if(!CustomerChanges.apply(customer, update)){
+            throw new NoDataChangeException("no data changes founded");
+        }
+
+        try {
+            return customerRepository.saveAndFlush(customer);
+        } catch (OptimisticLockingFailureException e) {
+            throw new PreconditionFailedException(
+                    "customer with id [%s] has been modified".formatted(update.getId()));
+        } catch (DataIntegrityViolationException e) {
+            throw new DuplicateResourceException("email already taken");
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Integer, Long> selectAgeCounts() {
+        Map<Integer, Long> customersByAge = new TreeMap<>();
+        ((List<Object[]>) entityManager.createNativeQuery(CustomerAgeCountSql.SELECT).getResultList())
+                .forEach(row -> customersByAge.put(((Number) row[0]).intValue(), ((Number) row[1]).longValue()));
+        return customersByAge;
+    }
+
+    // without a query space hibernate would treat the native update as
+    // touching every table and evict the whole second-level cache
+    @Override
+    @Transactional
+    public int reconcileAgeCounts() {
+        if (!(Boolean) entityManager.createNativeQuery(CustomerAgeCountSql.TRY_LOCK, Boolean.class).getSingleResult()) {
+            return -1;
+        }
+        return entityManager.createNativeQuery(CustomerAgeCountSql.RECONCILE)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace("customer_age_count")
+                .executeUpdate();
+    }
+
+    // a select to hibernate as well, run on the primary
+    @Override
+    @Transactional
+    public int sequenceChanges(int limit) {
+        return ((Number) entityManager.createNativeQuery(CustomerOutboxSql.SEQUENCE)
+                .setParameter(1, limit)
+                .getSingleResult()).intValue();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<CustomerChange> selectChanges(long afterOffset, int limit) {
+        return ((List<Object[]>) entityManager.createNativeQuery(CustomerOutboxSql.SELECT_AFTER)
+                .setParameter(1, afterOffset)
+                .setParameter(2, limit)
+                .getResultList()).stream()
+                .map(row -> CustomerOutboxSql.change(
+                        ((Number) row[0]).longValue(),
+                        (String) row[1],
+                        ((Number) row[2]).longValue(),
+                        (String) row[3],
+                        (String) row[4],
+                        row[5] == null ? null : ((Number) row[5]).intValue(),
+                        row[6] == null ? null : ((Number) row[6]).longValue(),
+                        CustomerOutboxSql.instant(row[7]),
+                        CustomerOutboxSql.instant(row[8])
+                ))
+                .toList();
+    }
+
+    @Override
+    public CustomerChangeOffsets selectChangeOffsets() {
+        Object[] row = (Object[]) entityManager.createNativeQuery(CustomerOutboxSql.SELECT_OFFSETS)
+                .getSingleResult();
+        return new CustomerChangeOffsets(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+    }
+
+    // a select to hibernate, so no second-level cache region is evicted; it
+    // deletes, so it needs a read-write transaction
+    @Override
+    @Transactional
+    public int pruneChanges(Instant before, int limit) {
+        return ((Number) entityManager.createNativeQuery(CustomerOutboxSql.PRUNE)
+                .setParameter(1, before)
+                .setParameter(2, limit)
+                .getSingleResult()).intValue();
     }
 }
@@ -1,76 +1,441 @@
 package com.amigoscode.customer;
 
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+// in-memory store: a hash index by id for lookups, a sorted id set for paging
+// and a unique email index; stored customers are never modified, an update
+// swaps in a new instance inside the id's map bin so concurrent writers to the
+// same customer queue up instead of overwriting each other. Customers per
+// age are counted as they are stored and removed, and every change is
+// recorded in the outbox before it becomes visible. With
+// app.customer-log enabled every change is also written to an append log that
+// is replayed on startup
 @Repository("list")
-public class CustomerListDataAccessService implements CustomerDao{
-
+@EnableConfigurationProperties(CustomerLogProperties.class)
+public class CustomerListDataAccessService implements CustomerDao, DisposableBean {
 
     //db
-    private static List<Customer> customers;
-
-    static{
-        customers = new ArrayList<>();
-        Customer alex = new Customer(
-                1L,
-                "Alex",
-                "@alex.com",
-                15
-        );
-        customers.add(alex);
+    private final Map<Long, Customer> customersById = new ConcurrentHashMap<>();
 
-        Customer jamila = new Customer(
-                2L,
-                "Jamila",
-                "@jamila.com",
-                14
-        );
-        customers.add(jamila);
+    private final NavigableSet<Long> ids = new ConcurrentSkipListSet<>();
+
+    private final Map<String, Long> idsByEmail = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastId = new AtomicLong();
+
+    private final CustomerAgeCounts ageCounts = new CustomerAgeCounts();
+
+    private final CustomerOutbox outbox = new CustomerOutbox();
+
+    private final AtomicReference<CustomerChangeMarker> changeMarker;
+
+    // null when nothing is persisted
+    private final CustomerAppendLog log;
+
+    public CustomerListDataAccessService() {
+        this(new CustomerLogProperties(false, null, null, 0, null));
+    }
+
+    @Autowired
+    public CustomerListDataAccessService(CustomerLogProperties logProperties) {
+        Instant now = Instant.now();
+        changeMarker = new AtomicReference<>(new CustomerChangeMarker(0, now));
+        log = logProperties.enabled()
+                ? CustomerAppendLog.open(logProperties, this::restore, this::forget)
+                : null;
+        if(log == null || log.created()){
+            seed(new Customer(
+                    "Alex",
+                    "@alex.com",
+                    15
+            ), now);
+            seed(new Customer(
+                    "Jamila",
+                    "@jamila.com",
+                    14
+            ), now);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if(log != null){
+            log.close();
+        }
     }
 
     @Override
     public List<Customer> selectAllCustomers() {
+        List<Customer> customers = new ArrayList<>(customersById.size());
+        streamAllCustomers(customers::add);
         return customers;
     }
 
+    @Override
+    public List<Customer> selectCustomers(Long afterId, int limit) {
+        List<Customer> customers = new ArrayList<>(Math.min(limit, customersById.size()));
+        for(Long id : ids.tailSet(afterId, false)){
+            if(customers.size() == limit){
+                break;
+            }
+            Customer customer = customersById.get(id);
+            // deleted after the id set was read
+            if(customer != null){
+                customers.add(customer);
+            }
+        }
+        return customers;
+    }
+
+    // a full scan; fine for the sizes this store is meant for
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search) {
+        List<Customer> customers = new ArrayList<>();
+        streamAllCustomers(customer -> {
+            if(search.matches(customer)){
+                customers.add(customer);
+            }
+        });
+        customers.sort(search.comparator());
+        return customers.subList(0, Math.min(search.limit(), customers.size()));
+    }
+
+    // two full scans, the first collects the words that misspelled searched
+    // words are corrected to
+    @Override
+    public List<CustomerMatch> fuzzySearchCustomers(String name, int limit) {
+        Set<String> dictionary = new HashSet<>();
+        streamAllCustomers(customer -> dictionary.addAll(FuzzyNameMatcher.words(customer.getName())));
+        FuzzyNameMatcher matcher = new FuzzyNameMatcher(name, dictionary);
+        List<CustomerMatch> matches = new ArrayList<>();
+        streamAllCustomers(customer -> {
+            double score = matcher.score(customer.getName());
+            if(score >= 0){
+                matches.add(new CustomerMatch(customer, score));
+            }
+        });
+        matches.sort(CustomerMatch.RANKING);
+        return matches.subList(0, Math.min(limit, matches.size()));
+    }
+
+    @Override
+    public void streamAllCustomers(Consumer<Customer> consumer) {
+        for(Long id : ids){
+            Customer customer = customersById.get(id);
+            if(customer != null){
+                consumer.accept(customer);
+            }
+        }
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Long customerId) {
-        return customers
-                .stream()
-                .filter(customer -> customer.getId().equals(customerId))
-                .findFirst();
+        return Optional.ofNullable(customersById.get(customerId));
+    }
+
+    // logged before it becomes visible, so no later change to the customer
+    // can reach the log ahead of its insert
+    @Override
+    public Long insertCustomer(Customer customer) {
+        ageCounts.writeStarted();
+        try {
+            long id = lastId.incrementAndGet();
+            if(idsByEmail.putIfAbsent(customer.getEmail(), id) != null){
+                throw new DuplicateResourceException("email already taken");
+            }
+            Customer stored = copy(id, customer, Instant.now());
+            long position;
+            try {
+                position = logUpsert(stored);
+            } catch (RuntimeException e) {
+                idsByEmail.remove(customer.getEmail(), id);
+                throw e;
+            }
+            outbox.created(stored);
+            store(stored);
+            customer.setId(id);
+            markChanged();
+            awaitDurable(position);
+            return id;
+        } finally {
+            ageCounts.writeFinished();
+        }
     }
 
+    // like the database batch: the emails are reserved first and a customer
+    // whose email is taken is skipped; if logging fails the reserved emails
+    // are released again. One fsync covers the batch
     @Override
-    public void insertCustomer(Customer customer) {
-        customers.add(customer);
+    public Set<String> insertCustomers(List<Customer> customers) {
+        ageCounts.writeStarted();
+        try {
+            List<Customer> accepted = new ArrayList<>(customers.size());
+            List<Long> newIds = new ArrayList<>(customers.size());
+            for(Customer customer : customers){
+                long id = lastId.incrementAndGet();
+                if(idsByEmail.putIfAbsent(customer.getEmail(), id) == null){
+                    accepted.add(customer);
+                    newIds.add(id);
+                }
+            }
+
+            Instant now = Instant.now();
+            List<Customer> stored = new ArrayList<>(accepted.size());
+            long position = -1;
+            try {
+                for(int i = 0; i < accepted.size(); i++){
+                    stored.add(copy(newIds.get(i), accepted.get(i), now));
+                    position = logUpsert(stored.get(i));
+                }
+            } catch (RuntimeException e) {
+                release(accepted, newIds);
+                throw e;
+            }
+            Set<String> inserted = new HashSet<>();
+            for(int i = 0; i < stored.size(); i++){
+                outbox.created(stored.get(i));
+                store(stored.get(i));
+                accepted.get(i).setId(newIds.get(i));
+                inserted.add(stored.get(i).getEmail());
+            }
+            if(!stored.isEmpty()){
+                markChanged();
+            }
+            awaitDurable(position);
+            return inserted;
+        } finally {
+            ageCounts.writeFinished();
+        }
     }
 
     @Override
     public boolean existsPersonWithEmail(String email) {
-        return customers.stream().anyMatch(
-                c -> c.getEmail().equals(email)
-        );
+        return idsByEmail.containsKey(email);
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return emails.stream()
+                .filter(idsByEmail::containsKey)
+                .collect(Collectors.toSet());
     }
 
     @Override
     public void deleteCustomerById(Long customerId) {
-        customers.removeIf(customer -> customer.getId().equals(customerId));
+        ageCounts.writeStarted();
+        try {
+            long[] position = {-1};
+            Customer[] removed = new Customer[1];
+            customersById.computeIfPresent(customerId, (id, existing) -> {
+                position[0] = logDelete(id);
+                outbox.deleted(id);
+                removed[0] = existing;
+                return null;
+            });
+            if(removed[0] != null){
+                ids.remove(customerId);
+                idsByEmail.remove(removed[0].getEmail(), customerId);
+                ageCounts.removed(removed[0].getAge());
+                markChanged();
+                awaitDurable(position[0]);
+            }
+        } finally {
+            ageCounts.writeFinished();
+        }
     }
 
     @Override
     public boolean existsCustomerById(Long customerId) {
-        return customers.stream().anyMatch(customer -> customer.getId().equals(customerId));
+        return customersById.containsKey(customerId);
+    }
+
+    // runs inside compute, so the checks, the log append and the swap are
+    // atomic per customer; an exception leaves the stored customer as it was
+    @Override
+    public Customer updateCustomer(Customer update) {
+        ageCounts.writeStarted();
+        try {
+            long[] position = {-1};
+            Customer updated = customersById.compute(update.getId(), (id, existing) -> {
+                if(existing == null){
+                    throw new ResourceNotFoundException(
+                            "customer with id [%s] not found".formatted(id));
+                }
+                if(update.getVersion() != null && !update.getVersion().equals(existing.getVersion())){
+                    throw new PreconditionFailedException(
+                            "customer with id [%s] has been modified".formatted(id));
+                }
+
+                Customer customer = new Customer(
+                        existing.getId(),
+                        existing.getName(),
+                        existing.getEmail(),
+                        existing.getAge()
+                );
+                if(!CustomerChanges.apply(customer, update)){
+                    throw new NoDataChangeException("no data changes founded");
+                }
+                customer.setVersion(existing.getVersion() + 1);
+                customer.setUpdatedAt(Instant.now());
+
+                boolean changesEmail = CustomerChanges.changesEmail(existing, update);
+                if(changesEmail && idsByEmail.putIfAbsent(update.getEmail(), id) != null){
+                    throw new DuplicateResourceException("email already taken");
+                }
+                try {
+                    position[0] = logUpsert(customer);
+                } catch (RuntimeException e) {
+                    if(changesEmail){
+                        idsByEmail.remove(update.getEmail(), id);
+                    }
+                    throw e;
+                }
+                if(changesEmail){
+                    idsByEmail.remove(existing.getEmail(), id);
+                }
+                ageCounts.changed(existing.getAge(), customer.getAge());
+                outbox.updated(customer);
+                return customer;
+            });
+            markChanged();
+            awaitDurable(position[0]);
+            return updated;
+        } finally {
+            ageCounts.writeFinished();
+        }
+    }
+
+    @Override
+    public CustomerChangeMarker selectChangeMarker() {
+        return changeMarker.get();
+    }
+
+    @Override
+    public Map<Integer, Long> selectAgeCounts() {
+        return ageCounts.snapshot();
+    }
+
+    @Override
+    public int reconcileAgeCounts() {
+        return ageCounts.reconcile(ages -> streamAllCustomers(customer -> ages.accept(customer.getAge())));
     }
 
+    // the outbox gives changes their offset as they are recorded
     @Override
-    public void updateCustomer(Customer customer) {
-        deleteCustomerById(customer.getId().longValue());
-        insertCustomer(customer);
+    public int sequenceChanges(int limit) {
+        return 0;
+    }
+
+    @Override
+    public List<CustomerChange> selectChanges(long afterOffset, int limit) {
+        return outbox.after(afterOffset, limit);
+    }
+
+    @Override
+    public CustomerChangeOffsets selectChangeOffsets() {
+        return outbox.offsets();
+    }
+
+    @Override
+    public int pruneChanges(Instant before, int limit) {
+        return outbox.prune(before, limit);
+    }
+
+    // seed customers are logged too, so a restart finds them without reseeding
+    private void seed(Customer customer, Instant updatedAt) {
+        long id = lastId.incrementAndGet();
+        idsByEmail.put(customer.getEmail(), id);
+        Customer stored = copy(id, customer, updatedAt);
+        store(stored);
+        awaitDurable(logUpsert(stored));
+    }
+
+    // replay callbacks: later records for an id replace earlier ones
+    private void restore(Customer customer) {
+        Customer previous = customersById.put(customer.getId(), customer);
+        if(previous != null){
+            idsByEmail.remove(previous.getEmail(), previous.getId());
+            ageCounts.removed(previous.getAge());
+        }
+        ageCounts.added(customer.getAge());
+        ids.add(customer.getId());
+        idsByEmail.put(customer.getEmail(), customer.getId());
+        lastId.accumulateAndGet(customer.getId(), Math::max);
+    }
+
+    private void forget(long customerId) {
+        Customer removed = customersById.remove(customerId);
+        if(removed != null){
+            ids.remove(customerId);
+            idsByEmail.remove(removed.getEmail(), customerId);
+            ageCounts.removed(removed.getAge());
+        }
+    }
+
+    private void release(List<Customer> customers, List<Long> newIds) {
+        for(int i = 0; i < newIds.size(); i++){
+            idsByEmail.remove(customers.get(i).getEmail(), newIds.get(i));
+        }
+    }
+
+    private long logUpsert(Customer customer) {
+        return log == null ? -1 : log.appendUpsert(customer);
+    }
+
+    private long logDelete(long customerId) {
+        return log == null ? -1 : log.appendDelete(customerId);
+    }
+
+    private void awaitDurable(long position) {
+        if(log != null){
+            log.awaitDurable(position);
+        }
+    }
+
+    private static Customer copy(long id, Customer customer, Instant updatedAt) {
+        Customer stored = new Customer(
+                id,
+                customer.getName(),
+                customer.getEmail(),
+                customer.getAge()
+        );
+        stored.setVersion(0L);
+        stored.setUpdatedAt(updatedAt);
+        return stored;
+    }
+
+    private void store(Customer customer) {
+        customersById.put(customer.getId(), customer);
+        ids.add(customer.getId());
+        ageCounts.added(customer.getAge());
+    }
+
+    private void markChanged() {
+        changeMarker.updateAndGet(marker ->
+                new CustomerChangeMarker(marker.version() + 1, Instant.now()));
     }
 
 }
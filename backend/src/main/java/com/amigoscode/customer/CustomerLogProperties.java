@@ -0,0 +1,18 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@ConfigurationProperties("app.customer-log")
+public record CustomerLogProperties(
+        boolean enabled,
+        @DefaultValue("data/customer-log") Path directory,
+        @DefaultValue("64MB") DataSize segmentSize,
+        @DefaultValue("4") int compactAfterSegments,
+        @DefaultValue("1m") Duration compactionInterval
+) {
+}
@@ -0,0 +1,17 @@
+package com.amigoscode.customer;
+
+import java.util.Comparator;
+
+// a fuzzy search hit; score is 2 when the name contains every searched word,
+// 1 when every searched word starts a word of the name and otherwise, for a
+// name containing corrections of the misspelled words, the trigram word
+// similarity of the search to the name (below 1)
+public record CustomerMatch(
+        Customer customer,
+        double score
+) {
+
+    static final Comparator<CustomerMatch> RANKING = Comparator
+            .comparingDouble(CustomerMatch::score).reversed()
+            .thenComparing(match -> match.customer().getId());
+}
@@ -0,0 +1,77 @@
+package com.amigoscode.customer;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// the outbox of the in-memory daos. Offsets are taken and entries added
+// under one lock, so a reader that sees an offset sees every one below it.
+// A store records a change while the customer cannot be changed by anyone
+// else yet, so two changes to one customer are recorded in the order they
+// were made. Nothing is persisted, offsets start over with the store
+final class CustomerOutbox {
+
+    private final ConcurrentNavigableMap<Long, CustomerChange> changes = new ConcurrentSkipListMap<>();
+    // guarded by this
+    private long latest;
+    private volatile long pruned;
+
+    void created(Customer customer) {
+        record(CustomerChange.Type.CREATED, customer.getId(), customer);
+    }
+
+    void updated(Customer customer) {
+        record(CustomerChange.Type.UPDATED, customer.getId(), customer);
+    }
+
+    void deleted(long customerId) {
+        record(CustomerChange.Type.DELETED, customerId, null);
+    }
+
+    List<CustomerChange> after(long offset, int limit) {
+        List<CustomerChange> found = new ArrayList<>(Math.min(limit, 64));
+        for (CustomerChange change : changes.tailMap(offset, false).values()) {
+            if (found.size() == limit) {
+                break;
+            }
+            found.add(change);
+        }
+        return found;
+    }
+
+    // pruned first: an offset read after it can only be newer
+    CustomerChangeOffsets offsets() {
+        long prunedThrough = pruned;
+        synchronized (this) {
+            return new CustomerChangeOffsets(prunedThrough, latest);
+        }
+    }
+
+    // the oldest entries first; they were recorded in offset order, so the
+    // first one not old enough ends the batch
+    int prune(Instant before, int limit) {
+        int removed = 0;
+        Iterator<Map.Entry<Long, CustomerChange>> oldest = changes.entrySet().iterator();
+        while (removed < limit && oldest.hasNext()) {
+            Map.Entry<Long, CustomerChange> entry = oldest.next();
+            if (!entry.getValue().changedAt().isBefore(before)) {
+                break;
+            }
+            // the watermark moves first, a reader that misses the entry
+            // then knows it did
+            pruned = Math.max(pruned, entry.getKey());
+            oldest.remove();
+            removed++;
+        }
+        return removed;
+    }
+
+    private synchronized void record(CustomerChange.Type type, long customerId, Customer customer) {
+        latest++;
+        changes.put(latest, new CustomerChange(latest, type, customerId, customer, Instant.now()));
+    }
+}
@@ -0,0 +1,82 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// drops outbox changes older than the retention every prune interval. Each
+// batch is a statement of its own, so no delete holds its locks or its share
+// of the WAL for long, and a busy table is never left with one huge delete
+// to vacuum
+@Component
+@EnableConfigurationProperties(CustomerChangesProperties.class)
+public class CustomerOutboxPruner implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomerOutboxPruner.class);
+
+    private final CustomerDao customerDao;
+    private final CustomerChangesProperties properties;
+    private final Counter prunedChanges;
+    private ScheduledExecutorService scheduler;
+
+    public CustomerOutboxPruner(@Qualifier("cached") CustomerDao customerDao,
+                                CustomerChangesProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.customerDao = customerDao;
+        this.properties = properties;
+        this.prunedChanges = Counter.builder("customer.outbox.pruned")
+                .description("Changes pruned from the customer outbox")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "customer-outbox-prune");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.pruneInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::pruneQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    // until a batch comes back short; how many were pruned
+    long prune() {
+        Instant before = Instant.now().minus(properties.retention());
+        long total = 0;
+        int pruned;
+        do {
+            pruned = customerDao.pruneChanges(before, properties.pruneBatchSize());
+            prunedChanges.increment(pruned);
+            total += pruned;
+        } while (pruned == properties.pruneBatchSize() && !Thread.currentThread().isInterrupted());
+        return total;
+    }
+
+    private void pruneQuietly() {
+        try {
+            long pruned = prune();
+            if (pruned > 0) {
+                LOGGER.debug("pruned {} customer changes", pruned);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("could not prune the customer outbox", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.amigoscode.customer;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+// customer_outbox (see V9 and V11) for the sql daos; the triggers fill it,
+// the daos number, read and prune it
+final class CustomerOutboxSql {
+
+    static final String SEQUENCE = "SELECT customer_outbox_sequence(?)";
+
+    static final String SELECT_AFTER = """
+            SELECT feed_offset, operation, customer_id, name, email, age, version, updated_at, created_at
+            FROM customer_outbox
+            WHERE feed_offset > ?
+            ORDER BY feed_offset
+            LIMIT ?
+            """;
+
+    static final String SELECT_OFFSETS = """
+            SELECT through AS pruned,
+                   greatest(through, coalesce((SELECT max(feed_offset) FROM customer_outbox), 0)) AS latest
+            FROM customer_outbox_pruned
+            """;
+
+    // the oldest rows first, through the created_at index; the watermark
+    // moves in the same statement, so a reader never sees rows gone without
+    // it. Changes not numbered yet were never read, they are left for later
+    static final String PRUNE = """
+            WITH pruned AS (
+                DELETE FROM customer_outbox
+                WHERE id IN (
+                    SELECT id FROM customer_outbox
+                    WHERE created_at < ? AND feed_offset IS NOT NULL
+                    ORDER BY created_at
+                    LIMIT ?
+                )
+                RETURNING feed_offset
+            ), watermark AS (
+                UPDATE customer_outbox_pruned
+                SET through = greatest(through, (SELECT max(feed_offset) FROM pruned))
+                WHERE EXISTS (SELECT 1 FROM pruned)
+            )
+            SELECT count(*) FROM pruned
+            """;
+
+    private CustomerOutboxSql() {
+    }
+
+    static CustomerChange change(long offset,
+                                 String operation,
+                                 long customerId,
+                                 String name,
+                                 String email,
+                                 Integer age,
+                                 Long version,
+                                 Instant updatedAt,
+                                 Instant changedAt) {
+        CustomerChange.Type type = CustomerChange.Type.valueOf(operation);
+        Customer customer = null;
+        if (type != CustomerChange.Type.DELETED) {
+            customer = new Customer(customerId, name, email, age);
+            customer.setVersion(version);
+            customer.setUpdatedAt(updatedAt);
+        }
+        return new CustomerChange(offset, type, customerId, customer, changedAt);
+    }
+
+    // native queries hand timestamps back as whatever the driver and
+    // hibernate agreed on
+    static Instant instant(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toInstant();
+        }
+        if (value instanceof OffsetDateTime offsetDateTime) {
+            return offsetDateTime.toInstant();
+        }
+        return (Instant) value;
+    }
+}
@@ -0,0 +1,20 @@
+package com.amigoscode.customer;
+
+import java.util.List;
+
+public record CustomerPage(
+        List<Customer> customers,
+        Long nextCursor
+) {
+
+    // rows holds up to limit + 1 customers; the extra one only tells us
+    // that another page exists
+    static CustomerPage of(List<Customer> rows, int limit) {
+        if(rows.size() <= limit){
+            return new CustomerPage(rows, null);
+        }
+
+        List<Customer> page = rows.subList(0, limit);
+        return new CustomerPage(page, page.get(limit - 1).getId());
+    }
+}
@@ -0,0 +1,378 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import io.r2dbc.spi.Readable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+@Repository("r2dbc")
+@Profile("reactive")
+public class CustomerR2DBCDataAccessService implements ReactiveCustomerDao {
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private final DatabaseClient databaseClient;
+
+    public CustomerR2DBCDataAccessService(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Flux<Customer> selectAllCustomers() {
+        var sql = "select id, name, email, age, version, updated_at from customer";
+
+        // rows are pulled in fetch-size chunks as the subscriber demands them,
+        // and cancelling the subscription releases the connection
+        return databaseClient.sql(sql)
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE))
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .all();
+    }
+
+    @Override
+    public Flux<Customer> selectCustomers(Long afterId, int limit) {
+        var sql = """
+                SELECT id, name, email, age, version, updated_at
+                FROM customer
+                WHERE id > :afterId
+                ORDER BY id
+                LIMIT :limit
+                """;
+
+        return databaseClient.sql(sql)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .all();
+    }
+
+    @Override
+    public Flux<Customer> searchCustomers(CustomerSearch search) {
+        return query(CustomerSearchQuery.of(search))
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .all();
+    }
+
+    // the tiers of FuzzyNameSearch#run, each queried once the previous one
+    // left the page short
+    @Override
+    public Mono<List<CustomerMatch>> fuzzySearchCustomers(String name, int limit) {
+        List<String> searched = FuzzyNameMatcher.words(name).stream().distinct().toList();
+        if (searched.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        return matches(FuzzyNameSearch.wholeWordMatches(searched, limit))
+                .flatMap(found -> found.size() >= limit ? Mono.just(found) : Flux.fromIterable(searched)
+                        .concatMap(word -> words(FuzzyNameSearch.prefixedWords(word))
+                                .map(expansions -> expansions.stream()
+                                        .map(FuzzyNameMatcher.Correction::word)
+                                        .toList()))
+                        .collectList()
+                        .flatMap(expansions -> expansions.stream().anyMatch(List::isEmpty)
+                                ? Mono.just(found)
+                                : matches(FuzzyNameSearch.prefixMatches(searched, expansions, limit - found.size()))
+                                        .map(more -> concat(found, more))))
+                .flatMap(found -> found.size() >= limit ? Mono.just(found) : Flux.fromIterable(searched)
+                        .concatMap(word -> words(FuzzyNameSearch.nearestWords(word)).map(FuzzyNameMatcher::best))
+                        .collectList()
+                        .flatMap(corrections -> corrections.stream().anyMatch(List::isEmpty)
+                                ? Mono.just(found)
+                                : matches(FuzzyNameSearch.correctedMatches(
+                                        name, searched, corrections, limit - found.size()))
+                                        .map(more -> concat(found, more))))
+                .map(found -> {
+                    List<CustomerMatch> ranked = new ArrayList<>(found);
+                    ranked.sort(CustomerMatch.RANKING);
+                    return ranked;
+                });
+    }
+
+    @Override
+    public Mono<Customer> selectCustomerById(Long customerId) {
+        var sql = "select id, name, email, age, version, updated_at from customer where id = :id";
+
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .one();
+    }
+
+    @Override
+    public Mono<Long> insertCustomer(Customer customer) {
+        var sql = """
+                INSERT INTO customer (name, email, age)
+                VALUES (:name, :email, :age)
+                ON CONFLICT (email) DO NOTHING
+                RETURNING id
+                """;
+
+        return databaseClient.sql(sql)
+                .bind("name", customer.getName())
+                .bind("email", customer.getEmail())
+                .bind("age", customer.getAge())
+                .map(row -> row.get("id", Long.class))
+                .one()
+                .switchIfEmpty(Mono.error(() -> new DuplicateResourceException("email already taken")))
+                .doOnNext(customer::setId);
+    }
+
+    @Override
+    public Mono<Set<String>> insertCustomers(List<Customer> customers) {
+        // a single statement; an email taken since the caller checked is
+        // skipped by the conflict clause rather than failing the batch
+        var sql = """
+                INSERT INTO customer (name, email, age)
+                SELECT * FROM unnest(:names::text[], :emails::text[], :ages::int[])
+                ON CONFLICT (email) DO NOTHING
+                RETURNING email
+                """;
+
+        return databaseClient.sql(sql)
+                .bind("names", customers.stream().map(Customer::getName).toArray(String[]::new))
+                .bind("emails", customers.stream().map(Customer::getEmail).toArray(String[]::new))
+                .bind("ages", customers.stream().map(Customer::getAge).toArray(Integer[]::new))
+                .map(row -> row.get("email", String.class))
+                .all()
+                .collect(HashSet::new, Set::add);
+    }
+
+    @Override
+    public Mono<Boolean> existsPersonWithEmail(String email) {
+        var sql = "select exists(select 1 from customer where email = :email)";
+
+        return databaseClient.sql(sql)
+                .bind("email", email)
+                .map(row -> row.get(0, Boolean.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Set<String>> selectExistingEmails(Collection<String> emails) {
+        var sql = "select email from customer where email = any(:emails)";
+
+        return databaseClient.sql(sql)
+                .bind("emails", emails.toArray(String[]::new))
+                .map(row -> row.get("email", String.class))
+                .all()
+                .collect(HashSet::new, Set::add);
+    }
+
+    @Override
+    public Mono<Void> deleteCustomerById(Long customerId) {
+        var sql = "DELETE FROM customer WHERE id = :id";
+
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .then();
+    }
+
+    @Override
+    public Mono<Boolean> existsCustomerById(Long customerId) {
+        var sql = "select exists(select 1 from customer where id = :id)";
+
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .map(row -> row.get(0, Boolean.class))
+                .one();
+    }
+
+    @Override
+    public Mono<CustomerChangeMarker> selectChangeMarker() {
+        var sql = "select version, changed_at from customer_change_marker";
+
+        return databaseClient.sql(sql)
+                .map(row -> new CustomerChangeMarker(
+                        row.get("version", Long.class),
+                        row.get("changed_at", OffsetDateTime.class).toInstant()
+                ))
+                .one();
+    }
+
+    @Override
+    public Mono<Customer> updateCustomer(Customer update) {
+        List<String> columns = new ArrayList<>();
+
+        if(update.getName() != null) {
+            columns.add("name");
+        }
+        if(update.getEmail() != null) {
+            columns.add("email");
+        }
+        if(update.getAge() != null) {
+            columns.add("age");
+        }
+        if(columns.isEmpty()) {
+            return Mono.error(new NoDataChangeException("no data changes founded"));
+        }
+
+        String versionCheck = update.getVersion() == null ? "" : " AND version = :version";
+
+        // same single round trip as the JDBC dao: see
+        // CustomerJDBCDataAccessService#updateCustomer
+        var sql = """
+                WITH current AS (
+                    SELECT id, name, email, age, version, updated_at FROM customer
+                    WHERE id = :id
+                ), updated AS (
+                    UPDATE customer SET %s, version = version + 1, updated_at = now()
+                    WHERE id = :id AND (%s)%s
+                    RETURNING id, name, email, age, version, updated_at
+                )
+                SELECT id, name, email, age, version, updated_at,
+                       true AS changed, true AS differs FROM updated
+                UNION ALL
+                SELECT id, name, email, age, version, updated_at,
+                       false AS changed, (%s) AS differs FROM current
+                WHERE NOT EXISTS (SELECT 1 FROM updated)
+                """.formatted(
+                columns.stream().map(column -> column + " = :" + column).collect(Collectors.joining(", ")),
+                columns.stream().map(column -> column + " IS DISTINCT FROM :" + column).collect(Collectors.joining(" OR ")),
+                versionCheck,
+                columns.stream().map(column -> "current." + column + " IS DISTINCT FROM :" + column).collect(Collectors.joining(" OR "))
+        );
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql).bind("id", update.getId());
+        if(update.getName() != null) {
+            spec = spec.bind("name", update.getName());
+        }
+        if(update.getEmail() != null) {
+            spec = spec.bind("email", update.getEmail());
+        }
+        if(update.getAge() != null) {
+            spec = spec.bind("age", update.getAge());
+        }
+        if(update.getVersion() != null) {
+            spec = spec.bind("version", update.getVersion());
+        }
+
+        return spec
+                .map(row -> new CustomerUpdateRow(
+                        mapCustomer(row),
+                        row.get("changed", Boolean.class),
+                        row.get("differs", Boolean.class)
+                ))
+                .one()
+                .onErrorMap(DuplicateKeyException.class,
+                        e -> new DuplicateResourceException("email already taken"))
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException(
+                        "customer with id [%s] not found".formatted(update.getId()))))
+                .flatMap(row -> {
+                    if(row.changed()) {
+                        return Mono.just(row.customer());
+                    }
+                    if(row.modifiedSince(update.getVersion())) {
+                        return Mono.error(new PreconditionFailedException(
+                                "customer with id [%s] has been modified".formatted(update.getId())));
+                    }
+                    return Mono.error(new NoDataChangeException("no data changes founded"));
+                });
+    }
+
+    @Override
+    public Mono<Map<Integer, Long>> selectAgeCounts() {
+        return databaseClient.sql(CustomerAgeCountSql.SELECT)
+                .map(row -> Map.entry(
+                        row.get("age", Integer.class),
+                        row.get("customers", Number.class).longValue()
+                ))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue, TreeMap::new);
+    }
+
+    @Override
+    public Flux<CustomerChange> selectChanges(long afterOffset, int limit) {
+        return query(new CustomerSearchQuery(CustomerOutboxSql.SELECT_AFTER, List.of(afterOffset, limit)))
+                .map(row -> CustomerOutboxSql.change(
+                        row.get("feed_offset", Long.class),
+                        row.get("operation", String.class),
+                        row.get("customer_id", Long.class),
+                        row.get("name", String.class),
+                        row.get("email", String.class),
+                        row.get("age", Integer.class),
+                        row.get("version", Long.class),
+                        CustomerOutboxSql.instant(row.get("updated_at", OffsetDateTime.class)),
+                        row.get("created_at", OffsetDateTime.class).toInstant()
+                ))
+                .all();
+    }
+
+    @Override
+    public Mono<CustomerChangeOffsets> selectChangeOffsets() {
+        return databaseClient.sql(CustomerOutboxSql.SELECT_OFFSETS)
+                .map(row -> new CustomerChangeOffsets(
+                        row.get("pruned", Long.class),
+                        row.get("latest", Long.class)
+                ))
+                .one();
+    }
+
+    // the sql shared with the jdbc dao has ? placeholders, the driver takes $n
+    private DatabaseClient.GenericExecuteSpec query(CustomerSearchQuery query) {
+        StringBuilder sql = new StringBuilder();
+        int index = 0;
+        for (char c : query.sql().toCharArray()) {
+            if (c == '?') {
+                sql.append('$').append(++index);
+            } else {
+                sql.append(c);
+            }
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < query.args().size(); i++) {
+            spec = spec.bind(i, query.args().get(i));
+        }
+        return spec;
+    }
+
+    private Mono<List<CustomerMatch>> matches(CustomerSearchQuery query) {
+        return query(query)
+                .map(row -> new CustomerMatch(mapCustomer(row), row.get("score", Number.class).doubleValue()))
+                .all()
+                .collectList();
+    }
+
+    private Mono<List<FuzzyNameMatcher.Correction>> words(CustomerSearchQuery query) {
+        return query(query)
+                .map(row -> new FuzzyNameMatcher.Correction(
+                        row.get("word", String.class),
+                        row.get("similarity", Number.class).doubleValue()
+                ))
+                .all()
+                .collectList();
+    }
+
+    private static List<CustomerMatch> concat(List<CustomerMatch> found, List<CustomerMatch> more) {
+        List<CustomerMatch> all = new ArrayList<>(found);
+        all.addAll(more);
+        return all;
+    }
+
+    private static Customer mapCustomer(Readable row) {
+        Customer customer = new Customer(
+                row.get("id", Long.class),
+                row.get("name", String.class),
+                row.get("email", String.class),
+                row.get("age", Integer.class)
+        );
+        customer.setVersion(row.get("version", Long.class));
+        customer.setUpdatedAt(row.get("updated_at", OffsetDateTime.class).toInstant());
+        return customer;
+    }
+}
@@ -0,0 +1,6 @@
+package com.amigoscode.customer;
+
+public record CustomerRegistrationResponse(
+        Long id
+) {
+}
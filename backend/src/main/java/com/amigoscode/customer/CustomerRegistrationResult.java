@@ -0,0 +1,12 @@
+package com.amigoscode.customer;
+
+public record CustomerRegistrationResult(
+        String email,
+        Status status
+) {
+
+    public enum Status {
+        CREATED,
+        EMAIL_TAKEN
+    }
+}
@@ -1,11 +1,67 @@
 package com.amigoscode.customer;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 public interface CustomerRepository
         extends JpaRepository<Customer, Integer> {
 
+    String EMAIL_EXISTS_CACHE_REGION = "customer-email-exists";
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = EMAIL_EXISTS_CACHE_REGION)
+    })
     boolean existsCustomerByEmail(String email);
-    boolean existsCustomerById(Long id);
+    @Transactional
+    @Query(value = """
+            INSERT INTO customer (name, email, age)
+            VALUES (:name, :email, :age)
+            ON CONFLICT (email) DO NOTHING
+            RETURNING id
+            """, nativeQuery = true)
+    Optional<Long> insertIfEmailAbsent(@Param("name") String name,
+                                       @Param("email") String email,
+                                       @Param("age") Integer age);
+    @Transactional
+    @Query(value = """
+            INSERT INTO customer (name, email, age)
+            SELECT * FROM unnest(CAST(:names AS text[]), CAST(:emails AS text[]), CAST(:ages AS int[]))
+            ON CONFLICT (email) DO NOTHING
+            RETURNING email
+            """, nativeQuery = true)
+    List<String> insertIfEmailsAbsent(@Param("names") String[] names,
+                                      @Param("emails") String[] emails,
+                                      @Param("ages") Integer[] ages);
+    @Query("select c.email from Customer c where c.email in :emails")
+    Set<String> findEmailsIn(@Param("emails") Collection<String> emails);
+    // a lookup by id is answered from the second-level cache, a derived
+    // exists query would go to the database every time
+    default boolean existsCustomerById(Long id) {
+        return findById(id.intValue()).isPresent();
+    }
+    List<Customer> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    @Query(value = """
+            SELECT version AS "version",
+                   CAST(extract(epoch FROM changed_at) * 1000 AS bigint) AS "changedAtMillis"
+            FROM customer_change_marker
+            """, nativeQuery = true)
+    ChangeMarkerView findChangeMarker();
+
+    interface ChangeMarkerView {
+        Long getVersion();
+        Long getChangedAtMillis();
+    }
 
 }
@@ -16,6 +16,8 @@ public class CustomerRowMapper implements RowMapper<Customer> {
                 rs.getString("email"),
                 rs.getInt("age")
         );
+        customer.setVersion(rs.getLong("version"));
+        customer.setUpdatedAt(rs.getTimestamp("updated_at").toInstant());
         return customer;
     }
 }
@@ -0,0 +1,59 @@
+package com.amigoscode.customer;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+// filters, order and keyset position of a customer search; limit is the
+// number of rows the dao returns
+public record CustomerSearch(
+        String namePrefix,
+        String email,
+        Integer minAge,
+        Integer maxAge,
+        Sort sort,
+        boolean descending,
+        CustomerSearchCursor after,
+        int limit
+) {
+
+    public enum Sort {
+        ID, NAME, AGE
+    }
+
+    // the rest is for the in-memory daos and mirrors CustomerSearchQuery
+
+    boolean matches(Customer customer) {
+        return (namePrefix == null || customer.getName().startsWith(namePrefix))
+                && (email == null || customer.getEmail().toLowerCase(Locale.ROOT).equals(email.toLowerCase(Locale.ROOT)))
+                && (minAge == null || customer.getAge() >= minAge)
+                && (maxAge == null || customer.getAge() <= maxAge)
+                && (after == null || comparator().compare(customer, after.toCustomer()) > 0);
+    }
+
+    Comparator<Customer> comparator() {
+        Comparator<Customer> ascending = switch (sort) {
+            case ID -> Comparator.comparing(Customer::getId);
+            case NAME -> Comparator.comparing(Customer::getName, CustomerSearch::compareCodePoints)
+                    .thenComparing(Customer::getId);
+            case AGE -> Comparator.comparing(Customer::getAge)
+                    .thenComparing(Customer::getId);
+        };
+        return descending ? ascending.reversed() : ascending;
+    }
+
+    // the order of text_pattern_ops, which compares the UTF-8 bytes
+    static int compareCodePoints(String left, String right) {
+        int i = 0;
+        int j = 0;
+        while (i < left.length() && j < right.length()) {
+            int a = left.codePointAt(i);
+            int b = right.codePointAt(j);
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        return Integer.compare(left.length() - i, right.length() - j);
+    }
+}
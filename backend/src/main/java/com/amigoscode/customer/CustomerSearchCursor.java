@@ -0,0 +1,56 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.RequestValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// the sort key and id of the last customer on a page; clients get it as an
+// opaque token and hand it back to fetch the next page
+public record CustomerSearchCursor(
+        long id,
+        String name,
+        Integer age
+) {
+
+    static CustomerSearchCursor of(Customer customer) {
+        return new CustomerSearchCursor(customer.getId(), customer.getName(), customer.getAge());
+    }
+
+    String encode(CustomerSearch.Sort sort) {
+        String token = switch (sort) {
+            case ID -> "i:" + id;
+            case AGE -> "a:" + age + ":" + id;
+            // the name goes last, it may contain the separator
+            case NAME -> "n:" + id + ":" + name;
+        };
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static CustomerSearchCursor decode(String token, CustomerSearch.Sort sort) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split(":", 3);
+            return switch (sort) {
+                case ID -> expect(parts, "i", 2, new CustomerSearchCursor(Long.parseLong(parts[1]), null, null));
+                case AGE -> expect(parts, "a", 3,
+                        new CustomerSearchCursor(Long.parseLong(parts[2]), null, Integer.parseInt(parts[1])));
+                case NAME -> expect(parts, "n", 3, new CustomerSearchCursor(Long.parseLong(parts[1]), parts[2], null));
+            };
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new RequestValidationException("invalid cursor");
+        }
+    }
+
+    Customer toCustomer() {
+        return new Customer(id, name, null, age);
+    }
+
+    private static CustomerSearchCursor expect(String[] parts, String sort, int length, CustomerSearchCursor cursor) {
+        // a cursor from a search with a different sort cannot be continued
+        if (parts.length != length || !parts[0].equals(sort)) {
+            throw new RequestValidationException("invalid cursor");
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,20 @@
+package com.amigoscode.customer;
+
+import java.util.List;
+
+public record CustomerSearchPage(
+        List<Customer> customers,
+        String nextCursor
+) {
+
+    // rows holds up to limit + 1 customers; the extra one only tells us
+    // that another page exists
+    static CustomerSearchPage of(List<Customer> rows, int limit, CustomerSearch.Sort sort) {
+        if(rows.size() <= limit){
+            return new CustomerSearchPage(rows, null);
+        }
+
+        List<Customer> page = rows.subList(0, limit);
+        return new CustomerSearchPage(page, CustomerSearchCursor.of(page.get(limit - 1)).encode(sort));
+    }
+}
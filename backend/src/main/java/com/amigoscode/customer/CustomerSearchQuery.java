@@ -0,0 +1,82 @@
+package com.amigoscode.customer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// SQL for a CustomerSearch. Every filter and keyset condition is sargable
+// on the V5 indexes: the name prefix and the name order use the
+// text_pattern_ops index through its own operators (~<~, ~>=~, ...), the
+// age range and order use (age, id) and the email lookup lower(email)
+record CustomerSearchQuery(
+        String sql,
+        List<Object> args
+) {
+
+    static CustomerSearchQuery of(CustomerSearch search) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+
+        if(search.namePrefix() != null){
+            conditions.add("name LIKE ?");
+            args.add(escapeLike(search.namePrefix()) + "%");
+        }
+        if(search.email() != null){
+            conditions.add("lower(email) = lower(?)");
+            args.add(search.email());
+        }
+        if(search.minAge() != null){
+            conditions.add("age >= ?");
+            args.add(search.minAge());
+        }
+        if(search.maxAge() != null){
+            conditions.add("age <= ?");
+            args.add(search.maxAge());
+        }
+
+        CustomerSearchCursor after = search.after();
+        boolean descending = search.descending();
+        if(after != null){
+            switch (search.sort()) {
+                case ID -> {
+                    conditions.add(descending ? "id < ?" : "id > ?");
+                    args.add(after.id());
+                }
+                case AGE -> {
+                    conditions.add(descending ? "(age, id) < (?, ?)" : "(age, id) > (?, ?)");
+                    args.add(after.age());
+                    args.add(after.id());
+                }
+                // no row comparison for the pattern operators; the first
+                // condition bounds the index range, the second skips the
+                // names equal to the cursor's that were already returned
+                case NAME -> {
+                    conditions.add(descending
+                            ? "name ~<=~ ? AND (name ~<~ ? OR id < ?)"
+                            : "name ~>=~ ? AND (name ~>~ ? OR id > ?)");
+                    args.add(after.name());
+                    args.add(after.name());
+                    args.add(after.id());
+                }
+            }
+        }
+
+        String order = switch (search.sort()) {
+            case ID -> descending ? "id DESC" : "id";
+            case AGE -> descending ? "age DESC, id DESC" : "age, id";
+            case NAME -> descending ? "name USING ~>~, id DESC" : "name USING ~<~, id";
+        };
+        args.add(search.limit());
+
+        String sql = "select id, name, email, age, version, updated_at from customer"
+                + (conditions.isEmpty() ? "" : " where " + String.join(" AND ", conditions))
+                + " order by " + order
+                + " limit ?";
+        return new CustomerSearchQuery(sql, args);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -1,27 +1,84 @@
 package com.amigoscode.customer;
 
-import com.amigoscode.exception.DuplicateResourceException;
 import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.RequestValidationException;
 import com.amigoscode.exception.ResourceNotFoundException;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
 
 @Service
 public class CustomerService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int MAX_BATCH_SIZE = 10_000;
+
+    private static final int MIN_FUZZY_SEARCH_LENGTH = 3;
+
     private final CustomerDao customerDao;
 
-    public CustomerService(@Qualifier("jdbc") CustomerDao customerDao) {
+    public CustomerService(@Qualifier("cached") CustomerDao customerDao) {
         this.customerDao = customerDao;
     }
 
 
+    @Transactional(readOnly = true)
     public List<Customer> getAllCustomers(){
         return customerDao.selectAllCustomers();
     }
 
+    @Transactional(readOnly = true)
+    public CustomerPage getCustomers(Long after, int limit){
+        validatePageLimit(limit);
+
+        // fetch one extra row so we know whether another page exists
+        List<Customer> customers = customerDao.selectCustomers(
+                after == null ? 0L : after, limit + 1
+        );
+        return CustomerPage.of(customers, limit);
+    }
+
+    @Transactional(readOnly = true)
+    public CustomerSearchPage searchCustomers(String name,
+                                              String email,
+                                              Integer minAge,
+                                              Integer maxAge,
+                                              String sort,
+                                              String direction,
+                                              String after,
+                                              int limit){
+        CustomerSearch search = toSearch(name, email, minAge, maxAge, sort, direction, after, limit);
+        return CustomerSearchPage.of(customerDao.searchCustomers(search), limit, search.sort());
+    }
+
+    @Transactional(readOnly = true)
+    public List<CustomerMatch> fuzzySearchCustomers(String name, int limit){
+        validatePageLimit(limit);
+        return customerDao.fuzzySearchCustomers(toFuzzySearchName(name), limit);
+    }
+
+    @Transactional(readOnly = true)
+    public CustomerChangeMarker getChangeMarker(){
+        return customerDao.selectChangeMarker();
+    }
+
+    @Transactional(readOnly = true)
+    public CustomerStats getCustomerStats(){
+        return CustomerStats.of(customerDao.selectAgeCounts());
+    }
+
+    @Transactional(readOnly = true)
+    public void exportCustomers(Consumer<Customer> consumer){
+        customerDao.streamAllCustomers(consumer);
+    }
+
+    @Transactional(readOnly = true)
     public Customer getCustomer(Long customerId){
 
         return customerDao.selectCustomerById(customerId)
@@ -31,18 +88,33 @@ public class CustomerService {
         );
     }
 
-    public void addCustomer(CustomerRigistrationRequest request){
-        String email = request.email();
-        if(customerDao.existsPersonWithEmail(email)){
-            throw new DuplicateResourceException("email already taken");
-        }
-
+    public Long addCustomer(CustomerRigistrationRequest request){
         Customer customer = new Customer(
                 request.name(),
                 request.email(),
                 request.age()
         );
-        customerDao.insertCustomer(customer);
+        // the dao rejects a taken email atomically with the insert
+        return customerDao.insertCustomer(customer);
+    }
+
+    public List<CustomerRegistrationResult> addCustomers(List<CustomerRigistrationRequest> requests){
+        validateBatchSize(requests.size());
+        if(requests.isEmpty()){
+            return List.of();
+        }
+
+        CustomerBatchPlan plan = CustomerBatchPlan.of(
+                requests,
+                customerDao.selectExistingEmails(
+                        requests.stream().map(CustomerRigistrationRequest::email).toList()
+                )
+        );
+
+        if(plan.customers().isEmpty()){
+            return plan.results();
+        }
+        return plan.resultsAfter(customerDao.insertCustomers(plan.customers()));
     }
 
     public void deleteCustomer(Long customerId){
@@ -52,32 +124,115 @@ public class CustomerService {
         customerDao.deleteCustomerById(customerId);
     }
 
-    public void updateCustomer(Long customerId, CustomerRigistrationRequest request){
-        Customer customer = getCustomer(customerId);
+    public Customer updateCustomer(Long customerId, CustomerRigistrationRequest request){
+        return updateCustomer(customerId, request, null);
+    }
 
-        boolean changes = false;
+    public Customer updateCustomer(Long customerId, CustomerRigistrationRequest request, Long expectedVersion){
+        // the dao detects a missing customer, an unchanged row and a taken
+        // email itself, so a PUT costs a single round trip
+        return customerDao.updateCustomer(toUpdate(customerId, request, expectedVersion));
+    }
 
-        if(request.name() != null && !request.name().equals(customer.getName())){
-            customer.setName(request.name());
-            changes = true;
+    // If-Match may list several versions, the dao checks one: each is tried
+    // in turn, a version the customer is not at fails without writing
+    public Customer updateCustomerMatching(Long customerId,
+                                           CustomerRigistrationRequest request,
+                                           List<Long> expectedVersions){
+        if(expectedVersions.isEmpty()){
+            return updateCustomer(customerId, request);
         }
-        if(request.email() != null && !request.email().equals(customer.getEmail())){
-            if(customerDao.existsPersonWithEmail(request.email())){
-                throw new DuplicateResourceException("email already taken");
+        for(int i = 0; ; i++){
+            try {
+                return updateCustomer(customerId, request, expectedVersions.get(i));
+            } catch (PreconditionFailedException e) {
+                if(i == expectedVersions.size() - 1){
+                    throw e;
+                }
             }
+        }
+    }
 
-            customer.setEmail(request.email());
-            changes = true;
+    static void validatePageLimit(int limit){
+        if(limit < 1 || limit > MAX_PAGE_SIZE){
+            throw new RequestValidationException(
+                    "limit must be between 1 and %s".formatted(MAX_PAGE_SIZE));
         }
-        if(request.age() != null && !request.age().equals(customer.getAge())){
-            customer.setAge(request.age());
-            changes = true;
+    }
+
+    // asks for one more than limit, so the page knows whether another follows
+    static CustomerSearch toSearch(String name,
+                                   String email,
+                                   Integer minAge,
+                                   Integer maxAge,
+                                   String sort,
+                                   String direction,
+                                   String after,
+                                   int limit){
+        validatePageLimit(limit);
+        if(minAge != null && maxAge != null && minAge > maxAge){
+            throw new RequestValidationException("minAge must not be greater than maxAge");
         }
-        if(!changes){
+        CustomerSearch.Sort sortBy = parseSort(sort);
+        boolean descending = parseDirection(direction);
+
+        return new CustomerSearch(
+                name == null || name.isEmpty() ? null : name,
+                email == null || email.isEmpty() ? null : email,
+                minAge,
+                maxAge,
+                sortBy,
+                descending,
+                after == null ? null : CustomerSearchCursor.decode(after, sortBy),
+                limit + 1
+        );
+    }
+
+    static String toFuzzySearchName(String name){
+        // shorter searches have too few trigrams to be selective
+        if(name == null || name.strip().length() < MIN_FUZZY_SEARCH_LENGTH){
+            throw new RequestValidationException(
+                    "name must have at least %s characters".formatted(MIN_FUZZY_SEARCH_LENGTH));
+        }
+        return name.strip();
+    }
+
+    private static CustomerSearch.Sort parseSort(String sort){
+        try {
+            return CustomerSearch.Sort.valueOf(sort.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RequestValidationException("sort must be one of id, name, age");
+        }
+    }
+
+    private static boolean parseDirection(String direction){
+        return switch (direction.toLowerCase(Locale.ROOT)) {
+            case "asc" -> false;
+            case "desc" -> true;
+            default -> throw new RequestValidationException("direction must be asc or desc");
+        };
+    }
+
+    static void validateBatchSize(int size){
+        if(size > MAX_BATCH_SIZE){
+            throw new RequestValidationException(
+                    "batch must not contain more than %s customers".formatted(MAX_BATCH_SIZE));
+        }
+    }
+
+    static Customer toUpdate(Long customerId, CustomerRigistrationRequest request, Long expectedVersion){
+        if(request.name() == null && request.email() == null && request.age() == null){
             throw new NoDataChangeException("no data changes founded");
         }
 
-        customerDao.updateCustomer(customer);
+        Customer update = new Customer(
+                customerId,
+                request.name(),
+                request.email(),
+                request.age()
+        );
+        update.setVersion(expectedVersion);
+        return update;
     }
 
 }
@@ -0,0 +1,61 @@
+package com.amigoscode.customer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+public record CustomerStats(
+        long count,
+        Integer minAge,
+        Integer maxAge,
+        Double meanAge,
+        List<AgeBucket> ageHistogram
+) {
+
+    static final int AGE_BUCKET_WIDTH = 10;
+
+    public record AgeBucket(
+            int fromAge,
+            int toAge,
+            long customers
+    ) {
+    }
+
+    // one pass over the distinct ages, however many customers there are;
+    // ages are not range checked, so only buckets with customers are listed
+    static CustomerStats of(Map<Integer, Long> customersByAge) {
+        SortedMap<Integer, Long> buckets = new TreeMap<>();
+        long count = 0;
+        long ageSum = 0;
+        Integer minAge = null;
+        Integer maxAge = null;
+        for(Map.Entry<Integer, Long> entry : customersByAge.entrySet()){
+            int age = entry.getKey();
+            long customers = entry.getValue();
+            if(customers <= 0){
+                continue;
+            }
+            count += customers;
+            ageSum += age * customers;
+            minAge = minAge == null ? age : Math.min(minAge, age);
+            maxAge = maxAge == null ? age : Math.max(maxAge, age);
+            buckets.merge(Math.floorDiv(age, AGE_BUCKET_WIDTH), customers, Long::sum);
+        }
+        if(count == 0){
+            return new CustomerStats(0, null, null, null, List.of());
+        }
+
+        List<AgeBucket> histogram = new ArrayList<>(buckets.size());
+        buckets.forEach((bucket, customers) -> {
+            long fromAge = (long) bucket * AGE_BUCKET_WIDTH;
+            histogram.add(new AgeBucket(
+                    (int) fromAge,
+                    (int) Math.min(Integer.MAX_VALUE, fromAge + AGE_BUCKET_WIDTH - 1),
+                    customers
+            ));
+        });
+        return new CustomerStats(count, minAge, maxAge, (double) ageSum / count, histogram);
+    }
+}
@@ -0,0 +1,12 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("app.customer-stats")
+public record CustomerStatsProperties(
+        @DefaultValue("1h") Duration reconcileInterval
+) {
+}
@@ -0,0 +1,76 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// the age counts behind the stats are kept by every write and should never
+// drift, but a bug, a disabled trigger or a hand-edited table would make them
+// wrong for good; recounting every reconcile interval bounds how long that
+// lasts. A recount is a full scan, so the interval is long, and a node skips
+// its round while another one recounts
+@Component
+@EnableConfigurationProperties(CustomerStatsProperties.class)
+public class CustomerStatsReconciler implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomerStatsReconciler.class);
+
+    private final CustomerDao customerDao;
+    private final CustomerStatsProperties properties;
+    private final Counter driftedAges;
+    private ScheduledExecutorService scheduler;
+
+    public CustomerStatsReconciler(@Qualifier("cached") CustomerDao customerDao,
+                                   CustomerStatsProperties properties,
+                                   MeterRegistry meterRegistry) {
+        this.customerDao = customerDao;
+        this.properties = properties;
+        this.driftedAges = Counter.builder("customer.stats.drifted.ages")
+                .description("Ages whose kept customer count was found off and corrected")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "customer-stats-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.reconcileInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    void reconcile() {
+        int drifted = customerDao.reconcileAgeCounts();
+        if (drifted < 0) {
+            LOGGER.debug("skipped reconciling customer age counts, writes were in flight or another node was at it");
+        } else if (drifted > 0) {
+            driftedAges.increment(drifted);
+            LOGGER.warn("corrected the customer counts of {} ages", drifted);
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            LOGGER.warn("could not reconcile customer age counts", e);
+        }
+    }
+}
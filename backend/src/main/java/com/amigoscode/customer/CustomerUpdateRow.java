@@ -0,0 +1,21 @@
+package com.amigoscode.customer;
+
+// what the single-statement update of the sql daos returns: the updated
+// customer, or, when the update did not fire, the row as the statement first
+// saw it and whether that row still differed from the requested values
+record CustomerUpdateRow(
+        Customer customer,
+        boolean changed,
+        boolean differs
+) {
+
+    // a row showing another version was stale before the request came in;
+    // one that still carried the expected version and asked for a change only
+    // held the update off because a concurrent writer committed first
+    boolean modifiedSince(Long expectedVersion) {
+        if (expectedVersion == null) {
+            return false;
+        }
+        return !expectedVersion.equals(customer.getVersion()) || differs;
+    }
+}
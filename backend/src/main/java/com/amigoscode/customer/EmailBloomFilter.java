@@ -0,0 +1,113 @@
+package com.amigoscode.customer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// lock-free Bloom filter over email addresses; it never forgets an email it
+// was given, so an absent answer is definite while a present answer may be a
+// false positive at roughly the rate it was sized for
+class EmailBloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final long expectedInsertions;
+
+    private EmailBloomFilter(long bitSize, int hashFunctions, long expectedInsertions) {
+        this.bits = new AtomicLongArray(Math.toIntExact(bitSize / Long.SIZE));
+        this.bitSize = bitSize;
+        this.hashFunctions = hashFunctions;
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    // sizes the filter for the expected insertions and false positive rate,
+    // but never beyond maxBytes; a capped filter just answers "maybe" more often
+    static EmailBloomFilter create(long expectedInsertions, double falsePositiveRate, long maxBytes) {
+        long expected = Math.max(1, expectedInsertions);
+        long optimalBits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (LN2 * LN2));
+        long maxBits = Math.max(Long.SIZE, Math.min(maxBytes * Byte.SIZE, (long) Integer.MAX_VALUE * Long.SIZE));
+        long bitSize = roundUpToWord(Math.min(optimalBits, maxBits));
+        int hashFunctions = (int) Math.max(1, Math.round((double) bitSize / expected * LN2));
+        return new EmailBloomFilter(bitSize, hashFunctions, expected);
+    }
+
+    void put(String email) {
+        long hash = hash(email);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            long mask = 1L << index;
+            int word = (int) (index >>> 6);
+            if ((bits.get(word) & mask) == 0) {
+                bits.getAndAccumulate(word, mask, (current, bit) -> current | bit);
+            }
+        }
+    }
+
+    boolean mightContain(String email) {
+        long hash = hash(email);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long byteSize() {
+        return bitSize / Byte.SIZE;
+    }
+
+    long expectedInsertions() {
+        return expectedInsertions;
+    }
+
+    // estimates the distinct emails from the share of set bits (Swamidass & Baldi)
+    long approximateElementCount() {
+        long setBits = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            setBits += Long.bitCount(bits.get(i));
+        }
+        if (setBits == bitSize) {
+            return Long.MAX_VALUE;
+        }
+        return Math.round(-(double) bitSize / hashFunctions * Math.log1p(-(double) setBits / bitSize));
+    }
+
+    double expectedFalsePositiveRate() {
+        long count = approximateElementCount();
+        if (count == Long.MAX_VALUE) {
+            return 1.0;
+        }
+        return Math.pow(-Math.expm1(-(double) hashFunctions * count / bitSize), hashFunctions);
+    }
+
+    private static long roundUpToWord(long bits) {
+        return (bits + Long.SIZE - 1) / Long.SIZE * Long.SIZE;
+    }
+
+    // FNV-1a over the chars, so a lookup does not allocate
+    private static long hash(String email) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < email.length(); i++) {
+            hash ^= email.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // murmur3 finalizer, spreads the FNV bits over the whole word
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,19 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@ConfigurationProperties("app.customer-email-filter")
+public record EmailFilterProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("0.01") double falsePositiveRate,
+        @DefaultValue("32MB") DataSize maxMemory,
+        @DefaultValue("1000000") long expectedInsertions,
+        @DefaultValue("2.0") double growthFactor,
+        @DefaultValue("1h") Duration rebuildInterval,
+        @DefaultValue("1s") Duration followInterval
+) {
+}
@@ -0,0 +1,345 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.datasource.ReplicaRoutingDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// answers "is this email taken" from a Bloom filter when the answer is no,
+// which it almost always is; a maybe still goes to the database. The filter
+// only learns emails, so it is rebuilt from a full scan every rebuild interval
+// to forget deleted and changed ones. Emails written through other nodes are
+// learnt from the outbox every follow interval; a check in between can miss
+// one, and the write it guards is then turned away by the unique constraint.
+// Registered as "bloom" by CustomerDaoConfig
+public class EmailFilteringCustomerDao implements CustomerDao, InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmailFilteringCustomerDao.class);
+
+    private static final int FOLLOW_BATCH_SIZE = 1000;
+
+    private final CustomerDao customerDao;
+    private final EmailFilterProperties properties;
+    private final Counter skipped;
+    private final Counter confirmed;
+    private final Counter falsePositives;
+    // null until the first scan finishes, lookups go to the database until then
+    private volatile EmailBloomFilter filter;
+    // the filter being scanned into, so writes racing the scan are not lost
+    private volatile EmailBloomFilter building;
+    // the outbox offset the filter has every email up to, only touched by
+    // rebuild and follow, which take turns on the scheduler
+    private long followed;
+    private ScheduledExecutorService scheduler;
+
+    public EmailFilteringCustomerDao(CustomerDao customerDao,
+                                     EmailFilterProperties properties,
+                                     MeterRegistry meterRegistry) {
+        this.customerDao = customerDao;
+        this.properties = properties;
+        this.skipped = checks(meterRegistry, "skipped");
+        this.confirmed = checks(meterRegistry, "confirmed");
+        this.falsePositives = checks(meterRegistry, "false_positive");
+        Gauge.builder("customer.email.filter.skip.ratio", this, EmailFilteringCustomerDao::skipRatio)
+                .description("Share of email checks answered without the database")
+                .register(meterRegistry);
+        Gauge.builder("customer.email.filter.size", this,
+                        dao -> dao.filter == null ? 0 : dao.filter.byteSize())
+                .description("Memory held by the email Bloom filter")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("customer.email.filter.false.positive.rate", this,
+                        dao -> dao.filter == null ? 1.0 : dao.filter.expectedFalsePositiveRate())
+                .description("False positive rate expected from the filter's current fill")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.enabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-filter-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.rebuildInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::rebuildQuietly, 0, interval, TimeUnit.MILLISECONDS);
+        long followInterval = properties.followInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::followQuietly, followInterval, followInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void rebuild() {
+        EmailBloomFilter previous = filter;
+        long expected = properties.expectedInsertions();
+        if (previous != null) {
+            expected = Math.max(expected,
+                    Math.round(previous.approximateElementCount() * properties.growthFactor()));
+        }
+        EmailBloomFilter next = EmailBloomFilter.create(
+                expected,
+                properties.falsePositiveRate(),
+                properties.maxMemory().toBytes()
+        );
+
+        building = next;
+        long offset;
+        try {
+            // a replica could still be missing emails the primary already has
+            offset = ReplicaRoutingDataSource.onPrimary(() -> {
+                // taken before the scan, changes made during it are followed again
+                long latest = customerDao.selectChangeOffsets().latest();
+                customerDao.streamAllCustomers(customer -> next.put(customer.getEmail()));
+                return latest;
+            });
+            // published before building is cleared, see remember
+            filter = next;
+        } finally {
+            building = null;
+        }
+        followed = offset;
+
+        long count = next.approximateElementCount();
+        LOGGER.info("email filter rebuilt with about {} emails in {} bytes, expected false positive rate {}",
+                count, next.byteSize(), String.format("%.4f", next.expectedFalsePositiveRate()));
+        if (count > next.expectedInsertions() && scheduler != null) {
+            // sized from a stale count, resize right away rather than run saturated
+            scheduler.execute(this::rebuildQuietly);
+        }
+    }
+
+    void follow() {
+        if (filter == null) {
+            return;
+        }
+        long offset = followed;
+        List<CustomerChange> changes;
+        do {
+            changes = customerDao.selectChanges(offset, FOLLOW_BATCH_SIZE);
+            for (CustomerChange change : changes) {
+                if (change.customer() != null) {
+                    remember(change.customer().getEmail());
+                }
+            }
+            if (!changes.isEmpty()) {
+                offset = changes.get(changes.size() - 1).offset();
+            }
+        } while (changes.size() == FOLLOW_BATCH_SIZE);
+        // read after the changes, so changes pruned before they were read show
+        if (!customerDao.selectChangeOffsets().canResumeFrom(followed)) {
+            LOGGER.info("email filter fell behind the customer outbox, rebuilding it");
+            rebuild();
+            return;
+        }
+        followed = offset;
+    }
+
+    private void followQuietly() {
+        try {
+            follow();
+        } catch (RuntimeException e) {
+            LOGGER.warn("could not follow the customer outbox into the email filter", e);
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            LOGGER.warn("could not rebuild email filter, keeping the previous one", e);
+        }
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return customerDao.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomers(Long afterId, int limit) {
+        return customerDao.selectCustomers(afterId, limit);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search) {
+        return customerDao.searchCustomers(search);
+    }
+
+    @Override
+    public List<CustomerMatch> fuzzySearchCustomers(String name, int limit) {
+        return customerDao.fuzzySearchCustomers(name, limit);
+    }
+
+    @Override
+    public Map<Integer, Long> selectAgeCounts() {
+        return customerDao.selectAgeCounts();
+    }
+
+    @Override
+    public int reconcileAgeCounts() {
+        return customerDao.reconcileAgeCounts();
+    }
+
+    @Override
+    public int sequenceChanges(int limit) {
+        return customerDao.sequenceChanges(limit);
+    }
+
+    @Override
+    public List<CustomerChange> selectChanges(long afterOffset, int limit) {
+        return customerDao.selectChanges(afterOffset, limit);
+    }
+
+    @Override
+    public CustomerChangeOffsets selectChangeOffsets() {
+        return customerDao.selectChangeOffsets();
+    }
+
+    @Override
+    public int pruneChanges(Instant before, int limit) {
+        return customerDao.pruneChanges(before, limit);
+    }
+
+    @Override
+    public void streamAllCustomers(Consumer<Customer> consumer) {
+        customerDao.streamAllCustomers(consumer);
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Long customerId) {
+        return customerDao.selectCustomerById(customerId);
+    }
+
+    // emails are remembered before the write, so no reader can see the row
+    // without the filter knowing it, and again after it, so a rebuild scan
+    // that started before the commit still gets them
+    @Override
+    public Long insertCustomer(Customer customer) {
+        remember(customer.getEmail());
+        Long id = customerDao.insertCustomer(customer);
+        remember(customer.getEmail());
+        return id;
+    }
+
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        customers.forEach(customer -> remember(customer.getEmail()));
+        Set<String> inserted = customerDao.insertCustomers(customers);
+        customers.forEach(customer -> remember(customer.getEmail()));
+        return inserted;
+    }
+
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        EmailBloomFilter current = filter;
+        if (current == null) {
+            return customerDao.existsPersonWithEmail(email);
+        }
+        if (!current.mightContain(email)) {
+            skipped.increment();
+            return false;
+        }
+        boolean exists = customerDao.existsPersonWithEmail(email);
+        (exists ? confirmed : falsePositives).increment();
+        return exists;
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        EmailBloomFilter current = filter;
+        if (current == null) {
+            return customerDao.selectExistingEmails(emails);
+        }
+        List<String> candidates = new ArrayList<>();
+        for (String email : emails) {
+            if (current.mightContain(email)) {
+                candidates.add(email);
+            } else {
+                skipped.increment();
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> existing = customerDao.selectExistingEmails(candidates);
+        confirmed.increment(existing.size());
+        falsePositives.increment(candidates.size() - existing.size());
+        return existing;
+    }
+
+    @Override
+    public void deleteCustomerById(Long customerId) {
+        customerDao.deleteCustomerById(customerId);
+    }
+
+    @Override
+    public boolean existsCustomerById(Long customerId) {
+        return customerDao.existsCustomerById(customerId);
+    }
+
+    @Override
+    public CustomerChangeMarker selectChangeMarker() {
+        return customerDao.selectChangeMarker();
+    }
+
+    @Override
+    public Customer updateCustomer(Customer update) {
+        if (update.getEmail() == null) {
+            return customerDao.updateCustomer(update);
+        }
+        remember(update.getEmail());
+        Customer updated = customerDao.updateCustomer(update);
+        remember(update.getEmail());
+        return updated;
+    }
+
+    // reads building before filter: rebuild publishes the new filter before
+    // clearing building, so whichever order we race in the new filter gets it
+    private void remember(String email) {
+        EmailBloomFilter scanning = building;
+        EmailBloomFilter current = filter;
+        if (scanning != null) {
+            scanning.put(email);
+        }
+        if (current != null) {
+            current.put(email);
+        }
+    }
+
+    private double skipRatio() {
+        double skips = skipped.count();
+        double total = skips + confirmed.count() + falsePositives.count();
+        return total == 0 ? 0 : skips / total;
+    }
+
+    private static Counter checks(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("customer.email.filter.checks")
+                .description("Email uniqueness checks by how the filter answered them")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
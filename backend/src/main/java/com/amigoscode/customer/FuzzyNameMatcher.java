@@ -0,0 +1,162 @@
+package com.amigoscode.customer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// scores names the way FuzzyNameSearch ranks them in postgres, for the
+// in-memory daos: the words of a 'simple' tsvector, the completions of a
+// searched word and pg_trgm's similarity to pick the corrections of a
+// misspelled one from the dictionary of all name words, and word_similarity,
+// i.e. the best similarity between the trigrams of the search and any run of
+// consecutive trigrams of the name
+final class FuzzyNameMatcher {
+
+    static final double WHOLE_WORDS = 2;
+
+    static final double WORD_PREFIXES = 1;
+
+    // how many dictionary words a searched word completes to
+    static final int PREFIXED_WORDS = 20;
+
+    // how many of the nearest dictionary words are looked at per misspelled
+    // word, and how similar the best of them must be
+    static final int NEAREST_WORDS = 3;
+
+    static final double MIN_CORRECTION_SIMILARITY = 0.2;
+
+    record Correction(String word, double similarity) {
+    }
+
+    private final List<String> words;
+    private final Set<String> trigrams;
+    // per search word, the words of a name that may stand for it
+    private final List<Set<String>> completions = new ArrayList<>();
+    private final List<Set<String>> corrections = new ArrayList<>();
+
+    FuzzyNameMatcher(String search, Collection<String> dictionary) {
+        this.words = words(search).stream().distinct().toList();
+        this.trigrams = new HashSet<>(trigrams(words(search)));
+        for (String word : words) {
+            completions.add(new HashSet<>(dictionary.stream()
+                    .filter(candidate -> candidate.startsWith(word))
+                    .sorted(Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()))
+                    .limit(PREFIXED_WORDS)
+                    .toList()));
+            List<Correction> nearest = dictionary.stream()
+                    .map(candidate -> new Correction(candidate, similarity(word, candidate)))
+                    .sorted(Comparator.comparingDouble(Correction::similarity).reversed()
+                            .thenComparing(Correction::word))
+                    .limit(NEAREST_WORDS)
+                    .toList();
+            corrections.add(new LinkedHashSet<>(best(nearest)));
+        }
+    }
+
+    // see CustomerMatch; -1 when the name does not match
+    double score(String name) {
+        if (words.isEmpty()) {
+            return -1;
+        }
+        List<String> nameWords = words(name);
+        if (nameWords.containsAll(words)) {
+            return WHOLE_WORDS;
+        }
+        if (completions.stream().noneMatch(completed -> Collections.disjoint(completed, nameWords))) {
+            return WORD_PREFIXES;
+        }
+        // a completion beyond the first PREFIXED_WORDS, found by neither tier
+        if (words.stream().allMatch(word -> nameWords.stream().anyMatch(nameWord -> nameWord.startsWith(word)))) {
+            return -1;
+        }
+        for (Set<String> alternatives : corrections) {
+            if (Collections.disjoint(alternatives, nameWords)) {
+                return -1;
+            }
+        }
+        return wordSimilarity(trigrams, trigrams(nameWords));
+    }
+
+    // the nearest words, most similar first, that are as similar as the best
+    // one; none when even that is too far off
+    static List<String> best(List<Correction> nearest) {
+        if (nearest.isEmpty() || nearest.get(0).similarity() < MIN_CORRECTION_SIMILARITY) {
+            return List.of();
+        }
+        double best = nearest.get(0).similarity();
+        return nearest.stream()
+                .filter(correction -> correction.similarity() >= best)
+                .map(Correction::word)
+                .toList();
+    }
+
+    // lower-cased runs of letters and digits
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    static double similarity(String word, String other) {
+        Set<String> left = new HashSet<>(trigrams(List.of(word)));
+        Set<String> right = new HashSet<>(trigrams(List.of(other)));
+        int common = 0;
+        for (String trigram : left) {
+            if (right.contains(trigram)) {
+                common++;
+            }
+        }
+        return (double) common / (left.size() + right.size() - common);
+    }
+
+    static double wordSimilarity(String search, String name) {
+        return wordSimilarity(new HashSet<>(trigrams(words(search))), trigrams(words(name)));
+    }
+
+    private static double wordSimilarity(Set<String> searchTrigrams, List<String> nameTrigrams) {
+        double best = 0;
+        for (int from = 0; from < nameTrigrams.size(); from++) {
+            if (!searchTrigrams.contains(nameTrigrams.get(from))) {
+                // an extent starting on a foreign trigram is never the best
+                continue;
+            }
+            Set<String> extent = new HashSet<>();
+            int common = 0;
+            for (int to = from; to < nameTrigrams.size(); to++) {
+                String trigram = nameTrigrams.get(to);
+                if (extent.add(trigram) && searchTrigrams.contains(trigram)) {
+                    common++;
+                }
+                best = Math.max(best, (double) common / (searchTrigrams.size() + extent.size() - common));
+            }
+        }
+        return best;
+    }
+
+    // pg_trgm pads every word with two blanks in front and one behind
+    private static List<String> trigrams(List<String> words) {
+        List<String> trigrams = new ArrayList<>();
+        for (String word : words) {
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,120 @@
+package com.amigoscode.customer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// the fuzzy name search of the sql daos, scored and ranked like
+// CustomerMatch, one query per tier until the page is full. Every tier looks
+// up whole words in the name_tsv GIN index: the searched words, then the
+// words of customer_name_word they are a prefix of, then the ones nearest to
+// them by trigram similarity (GiST index). Going through the word table keeps
+// the planner's estimates sound (it guesses how common a tsquery prefix is
+// and would rather scan the table for a LIMIT) and spares matching pg_trgm
+// against the names themselves, which has to fetch and rank every candidate
+// row and takes hundreds of milliseconds on a big table. The daos only run
+// the queries
+final class FuzzyNameSearch {
+
+    private static final String COLUMNS = "id, name, email, age, version, updated_at";
+
+    private FuzzyNameSearch() {
+    }
+
+    static List<CustomerMatch> run(String name,
+                                   int limit,
+                                   Function<CustomerSearchQuery, List<CustomerMatch>> matches,
+                                   Function<CustomerSearchQuery, List<FuzzyNameMatcher.Correction>> words) {
+        List<String> searched = FuzzyNameMatcher.words(name).stream().distinct().toList();
+        if (searched.isEmpty()) {
+            return List.of();
+        }
+
+        List<CustomerMatch> found = new ArrayList<>(matches.apply(wholeWordMatches(searched, limit)));
+        if (found.size() < limit) {
+            List<List<String>> expansions = new ArrayList<>();
+            for (String word : searched) {
+                expansions.add(words.apply(prefixedWords(word)).stream()
+                        .map(FuzzyNameMatcher.Correction::word)
+                        .toList());
+            }
+            if (expansions.stream().noneMatch(List::isEmpty)) {
+                found.addAll(matches.apply(prefixMatches(searched, expansions, limit - found.size())));
+            }
+        }
+        if (found.size() < limit) {
+            List<List<String>> corrections = new ArrayList<>();
+            for (String word : searched) {
+                corrections.add(FuzzyNameMatcher.best(words.apply(nearestWords(word))));
+            }
+            if (corrections.stream().noneMatch(List::isEmpty)) {
+                found.addAll(matches.apply(correctedMatches(name, searched, corrections, limit - found.size())));
+            }
+        }
+        // the tiers are unordered, so that a common word stops after limit
+        // rows instead of sorting all of them; order the page here
+        found.sort(CustomerMatch.RANKING);
+        return found;
+    }
+
+    static CustomerSearchQuery wholeWordMatches(List<String> searched, int limit) {
+        return new CustomerSearchQuery(
+                "select " + COLUMNS + ", " + FuzzyNameMatcher.WHOLE_WORDS + " AS score from customer"
+                        + " where name_tsv @@ to_tsquery('simple', ?) limit ?",
+                List.of(String.join(" & ", searched), limit)
+        );
+    }
+
+    // the shortest words first, they are the likeliest completions
+    static CustomerSearchQuery prefixedWords(String word) {
+        return new CustomerSearchQuery(
+                "select word, similarity(word, ?) AS similarity from customer_name_word"
+                        + " where word LIKE ? order by length(word), word COLLATE \"C\" limit ?",
+                List.of(word, word + "%", FuzzyNameMatcher.PREFIXED_WORDS)
+        );
+    }
+
+    static CustomerSearchQuery prefixMatches(List<String> searched, List<List<String>> expansions, int limit) {
+        return new CustomerSearchQuery(
+                "select " + COLUMNS + ", " + FuzzyNameMatcher.WORD_PREFIXES + " AS score from customer"
+                        + " where name_tsv @@ to_tsquery('simple', ?)"
+                        + " AND NOT name_tsv @@ to_tsquery('simple', ?) limit ?",
+                List.of(alternatives(expansions), String.join(" & ", searched), limit)
+        );
+    }
+
+    static CustomerSearchQuery nearestWords(String word) {
+        return new CustomerSearchQuery(
+                "select word, similarity(word, ?) AS similarity from customer_name_word"
+                        + " order by word <-> ? limit ?",
+                List.of(word, word, FuzzyNameMatcher.NEAREST_WORDS)
+        );
+    }
+
+    // leaves out every name the prefix tier could have found, it ranks them
+    // higher
+    static CustomerSearchQuery correctedMatches(String name,
+                                                List<String> searched,
+                                                List<List<String>> corrections,
+                                                int limit) {
+        return new CustomerSearchQuery(
+                "select " + COLUMNS + ", CAST(word_similarity(?, name) AS double precision) AS score from customer"
+                        + " where name_tsv @@ to_tsquery('simple', ?)"
+                        + " AND NOT name_tsv @@ to_tsquery('simple', ?) limit ?",
+                List.of(
+                        name,
+                        alternatives(corrections),
+                        searched.stream().map(word -> word + ":*").collect(Collectors.joining(" & ")),
+                        limit
+                )
+        );
+    }
+
+    // '(a | b) & (c)': one of the words standing for each searched word
+    private static String alternatives(List<List<String>> words) {
+        return words.stream()
+                .map(alternatives -> "(" + String.join(" | ", alternatives) + ")")
+                .collect(Collectors.joining(" & "));
+    }
+}
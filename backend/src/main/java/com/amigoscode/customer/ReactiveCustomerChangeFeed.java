@@ -0,0 +1,127 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// the /changes stream of the reactive stack, sent like CustomerChangeFeed
+// sends it. A stream fetches its next batch only once the previous event
+// was asked for, so a slow consumer gets fewer, bigger batches. Streams that
+// have caught up wait on one shared poll of the newest offset. The outbox is
+// numbered by CustomerChangeFeed, which runs on this stack too
+@Component
+@Profile("reactive")
+public class ReactiveCustomerChangeFeed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveCustomerChangeFeed.class);
+
+    private final ReactiveCustomerDao customerDao;
+    private final CustomerChangesProperties properties;
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final Counter sentChanges;
+    private final Counter resets;
+    // the newest offset, polled while any stream waits for it
+    private final Flux<Long> head;
+
+    public ReactiveCustomerChangeFeed(ReactiveCustomerDao customerDao,
+                                      CustomerChangesProperties properties,
+                                      MeterRegistry meterRegistry) {
+        this.customerDao = customerDao;
+        this.properties = properties;
+        this.sentChanges = Counter.builder("customer.changes.sent")
+                .description("Changes sent to /changes streams")
+                .register(meterRegistry);
+        this.resets = Counter.builder("customer.changes.resets")
+                .description("Streams told to read the customers again, their offset could not be resumed from")
+                .register(meterRegistry);
+        this.head = Flux.interval(properties.pollInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> customerDao.selectChangeOffsets()
+                        .map(CustomerChangeOffsets::latest)
+                        .onErrorResume(e -> {
+                            LOGGER.warn("could not read the newest customer change", e);
+                            return Mono.empty();
+                        }))
+                .replay(1)
+                .refCount();
+    }
+
+    // without an offset only changes from now on are sent
+    public Flux<ServerSentEvent<Object>> subscribe(Long after) {
+        if (openStreams.incrementAndGet() > properties.maxStreams()) {
+            openStreams.decrementAndGet();
+            throw new ServiceUnavailableException("too many change streams, try again later");
+        }
+        return customerDao.selectChangeOffsets()
+                .map(offsets -> start(after, offsets))
+                .expand(step -> next(step.offset()))
+                .filter(step -> step.event() != null)
+                .map(Step::event)
+                .doFinally(signal -> openStreams.decrementAndGet());
+    }
+
+    private Step start(Long after, CustomerChangeOffsets offsets) {
+        if (after == null) {
+            return new Step(offsets.latest(), null);
+        }
+        if (offsets.canResumeFrom(after)) {
+            return new Step(after, null);
+        }
+        return reset(offsets);
+    }
+
+    private Mono<Step> next(long offset) {
+        return customerDao.selectChanges(offset, properties.batchSize())
+                .collectList()
+                // read after the batch: whatever was pruned before it was
+                // fetched shows in the watermark
+                .zipWhen(batch -> customerDao.selectChangeOffsets())
+                .flatMap(fetched -> {
+                    if (offset < fetched.getT2().pruned()) {
+                        return Mono.just(reset(fetched.getT2()));
+                    }
+                    if (!fetched.getT1().isEmpty()) {
+                        long latest = fetched.getT1().get(fetched.getT1().size() - 1).offset();
+                        sentChanges.increment(fetched.getT1().size());
+                        return Mono.just(new Step(latest, ServerSentEvent.builder()
+                                .id(Long.toString(latest))
+                                .event(CustomerChangeFeed.CHANGES_EVENT)
+                                .data(fetched.getT1())
+                                .build()));
+                    }
+                    return awaitChangesAfter(offset);
+                });
+    }
+
+    // a heartbeat when the interval passes first, it finds a consumer that
+    // went away while nothing changed
+    private Mono<Step> awaitChangesAfter(long offset) {
+        return head.filter(latest -> latest > offset)
+                .next()
+                .map(latest -> new Step(offset, null))
+                .timeout(properties.heartbeatInterval(), Mono.fromSupplier(() ->
+                        new Step(offset, ServerSentEvent.builder().comment("").build())));
+    }
+
+    private Step reset(CustomerChangeOffsets offsets) {
+        resets.increment();
+        return new Step(offsets.latest(), ServerSentEvent.builder()
+                .id(Long.toString(offsets.latest()))
+                .event(CustomerChangeFeed.RESET_EVENT)
+                .data(offsets)
+                .build());
+    }
+
+    // the offset the stream has sent, and the event that got it there, if any
+    private record Step(long offset, ServerSentEvent<Object> event) {
+    }
+}
@@ -0,0 +1,160 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.client.ClientIdentity;
+import com.amigoscode.idempotency.IdempotentRequests;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RestController
+@RequestMapping("api/v1/customers/")
+@Profile("reactive")
+public class ReactiveCustomerController {
+
+    private final ReactiveCustomerService customerService;
+
+    private final ReactiveCustomerChangeFeed customerChangeFeed;
+
+    private final IdempotentRequests idempotentRequests;
+
+    private final ClientIdentity clientIdentity;
+
+    public ReactiveCustomerController(ReactiveCustomerService customerService,
+                                      ReactiveCustomerChangeFeed customerChangeFeed,
+                                      IdempotentRequests idempotentRequests,
+                                      ClientIdentity clientIdentity) {
+        this.customerService = customerService;
+        this.customerChangeFeed = customerChangeFeed;
+        this.idempotentRequests = idempotentRequests;
+        this.clientIdentity = clientIdentity;
+    }
+
+    // the result handler answers If-None-Match / If-Modified-Since from the
+    // entity headers before it subscribes to the body, so a 304 never
+    // queries the customer table
+    @GetMapping(params = {"!limit", "!after"})
+    public Mono<ResponseEntity<Flux<Customer>>> getCustomers(){
+        return customerService.getChangeMarker()
+                .map(marker -> ResponseEntity.ok()
+                        .eTag(CustomerETags.of(marker))
+                        .lastModified(marker.changedAt())
+                        .body(customerService.getAllCustomers()));
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<Mono<CustomerPage>>> getCustomers(
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "after", required = false) Long after){
+        return customerService.getChangeMarker()
+                .map(marker -> ResponseEntity.ok()
+                        .eTag(CustomerETags.of(marker))
+                        .lastModified(marker.changedAt())
+                        .body(customerService.getCustomers(after, limit)));
+    }
+
+    @GetMapping("search")
+    public Mono<CustomerSearchPage> searchCustomers(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "email", required = false) String email,
+            @RequestParam(value = "minAge", required = false) Integer minAge,
+            @RequestParam(value = "maxAge", required = false) Integer maxAge,
+            @RequestParam(value = "sort", defaultValue = "id") String sort,
+            @RequestParam(value = "direction", defaultValue = "asc") String direction,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", defaultValue = "50") int limit){
+        return customerService.searchCustomers(name, email, minAge, maxAge, sort, direction, after, limit);
+    }
+
+    @GetMapping("search/fuzzy")
+    public Mono<List<CustomerMatch>> fuzzySearchCustomers(
+            @RequestParam("name") String name,
+            @RequestParam(value = "limit", defaultValue = "20") int limit){
+        return customerService.fuzzySearchCustomers(name, limit);
+    }
+
+    @GetMapping("stats")
+    public Mono<CustomerStats> getCustomerStats(){
+        return customerService.getCustomerStats();
+    }
+
+    // a reconnecting EventSource sends the id of the last event it got as
+    // Last-Event-ID, it takes precedence over after
+    @GetMapping(path = "changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamChanges(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId){
+        return customerChangeFeed.subscribe(lastEventId != null ? lastEventId : after);
+    }
+
+    @GetMapping(value = "export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Customer> exportCustomers(){
+        return customerService.getAllCustomers();
+    }
+
+    @GetMapping("{customerId}")
+    public Mono<ResponseEntity<Customer>> getCustomer(@PathVariable("customerId") Long customerId){
+        return customerService.getCustomer(customerId)
+                .map(customer -> ResponseEntity.ok()
+                        .eTag(CustomerETags.of(customer))
+                        .lastModified(customer.getUpdatedAt())
+                        .body(customer));
+    }
+
+    // a retry from the same client with the same Idempotency-Key gets the
+    // first answer replayed
+    @PostMapping
+    public Mono<ResponseEntity<CustomerRegistrationResponse>> registerCustomer(
+            @RequestHeader(value = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            @RequestBody CustomerRigistrationRequest request,
+            ServerHttpRequest httpRequest){
+        return idempotentRequests.executeReactive(
+                clientIdentity.of(httpRequest),
+                idempotencyKey,
+                List.of("register", request),
+                CustomerRegistrationResponse.class,
+                () -> customerService.addCustomer(request)
+                        .map(id -> ResponseEntity.ok(new CustomerRegistrationResponse(id)))
+        );
+    }
+
+    @PostMapping("batch")
+    public Mono<List<CustomerRegistrationResult>> registerCustomers(@RequestBody List<CustomerRigistrationRequest> requests){
+        return customerService.addCustomers(requests);
+    }
+
+    @DeleteMapping("{customerId}")
+    public Mono<Void> deleteCustomer(@PathVariable("customerId") Long customerId){
+        return customerService.deleteCustomer(customerId);
+    }
+
+    @PutMapping("{customerId}")
+    public Mono<ResponseEntity<Customer>> updateCustomer(
+            @PathVariable("customerId") Long customerId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            @RequestBody CustomerRigistrationRequest request,
+            ServerHttpRequest httpRequest){
+        return idempotentRequests.executeReactive(
+                clientIdentity.of(httpRequest),
+                idempotencyKey,
+                Arrays.asList("update", customerId, ifMatch, request),
+                Customer.class,
+                () -> Mono.fromCallable(() -> CustomerETags.expectedVersions(ifMatch))
+                        .flatMap(expectedVersions -> customerService.updateCustomerMatching(
+                                customerId, request, expectedVersions))
+                        .map(customer -> ResponseEntity.ok()
+                                .eTag(CustomerETags.of(customer))
+                                .lastModified(customer.getUpdatedAt())
+                                .body(customer))
+        );
+    }
+}
@@ -0,0 +1,32 @@
+package com.amigoscode.customer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface ReactiveCustomerDao {
+
+    Flux<Customer> selectAllCustomers();
+    Flux<Customer> selectCustomers(Long afterId, int limit);
+    Flux<Customer> searchCustomers(CustomerSearch search);
+    Mono<List<CustomerMatch>> fuzzySearchCustomers(String name, int limit);
+    Mono<Customer> selectCustomerById(Long customerId);
+    Mono<Long> insertCustomer(Customer customer);
+    // skips the customers whose email is already taken; the emails of the
+    // customers it inserted
+    Mono<Set<String>> insertCustomers(List<Customer> customers);
+    Mono<Boolean> existsPersonWithEmail(String email);
+    Mono<Set<String>> selectExistingEmails(Collection<String> emails);
+    Mono<Void> deleteCustomerById(Long customerId);
+    Mono<Boolean> existsCustomerById(Long customerId);
+    Mono<CustomerChangeMarker> selectChangeMarker();
+    Mono<Customer> updateCustomer(Customer update);
+    Mono<Map<Integer, Long>> selectAgeCounts();
+    // the outbox, numbered by the blocking daos' change feed, see CustomerDao
+    Flux<CustomerChange> selectChanges(long afterOffset, int limit);
+    Mono<CustomerChangeOffsets> selectChangeOffsets();
+}
@@ -0,0 +1,120 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@Service
+@Profile("reactive")
+public class ReactiveCustomerService {
+
+    private final ReactiveCustomerDao customerDao;
+
+    public ReactiveCustomerService(ReactiveCustomerDao customerDao) {
+        this.customerDao = customerDao;
+    }
+
+    public Flux<Customer> getAllCustomers(){
+        return customerDao.selectAllCustomers();
+    }
+
+    public Mono<CustomerPage> getCustomers(Long after, int limit){
+        return Mono.fromRunnable(() -> CustomerService.validatePageLimit(limit))
+                .then(Mono.defer(() -> customerDao.selectCustomers(after == null ? 0L : after, limit + 1)
+                        .collectList()))
+                .map(customers -> CustomerPage.of(customers, limit));
+    }
+
+    public Mono<CustomerSearchPage> searchCustomers(String name,
+                                                    String email,
+                                                    Integer minAge,
+                                                    Integer maxAge,
+                                                    String sort,
+                                                    String direction,
+                                                    String after,
+                                                    int limit){
+        return Mono.fromCallable(() -> CustomerService.toSearch(
+                        name, email, minAge, maxAge, sort, direction, after, limit))
+                .flatMap(search -> customerDao.searchCustomers(search)
+                        .collectList()
+                        .map(customers -> CustomerSearchPage.of(customers, limit, search.sort())));
+    }
+
+    public Mono<List<CustomerMatch>> fuzzySearchCustomers(String name, int limit){
+        return Mono.fromCallable(() -> {
+                    CustomerService.validatePageLimit(limit);
+                    return CustomerService.toFuzzySearchName(name);
+                })
+                .flatMap(searched -> customerDao.fuzzySearchCustomers(searched, limit));
+    }
+
+    public Mono<CustomerStats> getCustomerStats(){
+        return customerDao.selectAgeCounts().map(CustomerStats::of);
+    }
+
+    public Mono<CustomerChangeMarker> getChangeMarker(){
+        return customerDao.selectChangeMarker();
+    }
+
+    public Mono<Customer> getCustomer(Long customerId){
+        return customerDao.selectCustomerById(customerId)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException(
+                        "customer with id [%s] not found".formatted(customerId))));
+    }
+
+    public Mono<Long> addCustomer(CustomerRigistrationRequest request){
+        Customer customer = new Customer(
+                request.name(),
+                request.email(),
+                request.age()
+        );
+        return customerDao.insertCustomer(customer);
+    }
+
+    public Mono<List<CustomerRegistrationResult>> addCustomers(List<CustomerRigistrationRequest> requests){
+        return Mono.fromRunnable(() -> CustomerService.validateBatchSize(requests.size()))
+                .then(Mono.defer(() -> {
+                    if(requests.isEmpty()){
+                        return Mono.just(List.<CustomerRegistrationResult>of());
+                    }
+                    return customerDao.selectExistingEmails(
+                                    requests.stream().map(CustomerRigistrationRequest::email).toList())
+                            .map(existingEmails -> CustomerBatchPlan.of(requests, existingEmails))
+                            .flatMap(plan -> plan.customers().isEmpty()
+                                    ? Mono.just(plan.results())
+                                    : customerDao.insertCustomers(plan.customers()).map(plan::resultsAfter));
+                }));
+    }
+
+    public Mono<Void> deleteCustomer(Long customerId){
+        return customerDao.existsCustomerById(customerId)
+                .flatMap(exists -> exists
+                        ? customerDao.deleteCustomerById(customerId)
+                        : Mono.error(new ResourceNotFoundException("id does not exist")));
+    }
+
+    public Mono<Customer> updateCustomer(Long customerId, CustomerRigistrationRequest request, Long expectedVersion){
+        return Mono.fromCallable(() -> CustomerService.toUpdate(customerId, request, expectedVersion))
+                .flatMap(customerDao::updateCustomer);
+    }
+
+    // see CustomerService#updateCustomerMatching
+    public Mono<Customer> updateCustomerMatching(Long customerId,
+                                                 CustomerRigistrationRequest request,
+                                                 List<Long> expectedVersions){
+        if(expectedVersions.isEmpty()){
+            return updateCustomer(customerId, request, null);
+        }
+        Mono<Customer> updated = updateCustomer(customerId, request, expectedVersions.get(0));
+        if(expectedVersions.size() == 1){
+            return updated;
+        }
+        return updated.onErrorResume(PreconditionFailedException.class, e -> updateCustomerMatching(
+                customerId, request, expectedVersions.subList(1, expectedVersions.size())));
+    }
+}
@@ -0,0 +1,122 @@
+package com.amigoscode.customer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// append-only UTF-8 storage in fixed-size chunks, on or off heap; a record
+// never spans two chunks, so its address is the chunk index in the high and
+// the position in the low 32 bits. Not thread-safe, callers lock around it
+class Utf8Arena {
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final int chunkSize;
+    private final boolean direct;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+    private long capacityBytes;
+    private long usedBytes;
+    private long liveBytes;
+
+    Utf8Arena(int chunkSize, boolean direct) {
+        this.chunkSize = chunkSize;
+        this.direct = direct;
+    }
+
+    long append(byte[] first, byte[] second) {
+        int length = first.length + second.length;
+        if (current == null || current.remaining() < length) {
+            current = allocate(Math.max(chunkSize, length));
+            chunks.add(current);
+            capacityBytes += current.capacity();
+        }
+        long address = ((long) (chunks.size() - 1) << 32) | current.position();
+        current.put(first).put(second);
+        usedBytes += length;
+        liveBytes += length;
+        return address;
+    }
+
+    long copy(Utf8Arena source, long address, int length) {
+        byte[] bytes = new byte[length];
+        source.chunk(address).get(position(address), bytes);
+        return append(bytes, NO_BYTES);
+    }
+
+    String read(long address, int offset, int length) {
+        byte[] bytes = new byte[length];
+        chunk(address).get(position(address) + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    boolean matches(long address, int offset, int length, byte[] bytes) {
+        if (length != bytes.length) {
+            return false;
+        }
+        ByteBuffer chunk = chunk(address);
+        int start = position(address) + offset;
+        for (int i = 0; i < length; i++) {
+            if (chunk.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int hash(long address, int offset, int length) {
+        ByteBuffer chunk = chunk(address);
+        int start = position(address) + offset;
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (chunk.get(start + i) & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // must agree with the arena hash for the same bytes
+    static int hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // the bytes stay allocated until the owner compacts into a new arena
+    void release(int length) {
+        liveBytes -= length;
+    }
+
+    long capacityBytes() {
+        return capacityBytes;
+    }
+
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    long liveBytes() {
+        return liveBytes;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private ByteBuffer chunk(long address) {
+        return chunks.get((int) (address >>> 32));
+    }
+
+    private static int position(long address) {
+        return (int) address;
+    }
+
+    private static int mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+}
@@ -0,0 +1,114 @@
+package com.amigoscode.datasource;
+
+import com.amigoscode.datasource.ConnectionPoolMetrics.PoolSample;
+import com.amigoscode.datasource.ConnectionPoolMetrics.PoolStatistics;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// grows a pool while callers queue for connections and the database keeps
+// answering at its usual speed, and shrinks it again when connections sit idle;
+// when the database itself slows down more connections would only queue
+// inside it, so the size is held instead
+public class AdaptivePoolSizer implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+
+    private static final double SLOWDOWN_FACTOR = 1.5;
+
+    private static final double BASELINE_WEIGHT = 0.1;
+
+    private final ConnectionPoolMetrics connectionPoolMetrics;
+    private final PoolSizingProperties properties;
+    private final Map<String, Double> usageBaselines = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public AdaptivePoolSizer(ConnectionPoolMetrics connectionPoolMetrics, PoolSizingProperties properties) {
+        this.connectionPoolMetrics = connectionPoolMetrics;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pool-sizing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.interval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::resizePools, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void resizePools() {
+        connectionPoolMetrics.pools().forEach((poolName, statistics) -> {
+            try {
+                resizePool(poolName, statistics);
+            } catch (RuntimeException e) {
+                LOGGER.warn("could not resize pool {}", poolName, e);
+            }
+        });
+    }
+
+    private void resizePool(String poolName, PoolStatistics statistics) {
+        PoolSample sample = statistics.sampleAndReset();
+        double baseline = usageBaselines.getOrDefault(poolName, sample.meanUsageMillis());
+        if (sample.meanUsageMillis() > 0) {
+            usageBaselines.put(poolName,
+                    baseline + BASELINE_WEIGHT * (sample.meanUsageMillis() - baseline));
+        }
+
+        HikariConfigMXBean config = statistics.dataSource().getHikariConfigMXBean();
+        int current = config.getMaximumPoolSize();
+        int next = nextMaximumPoolSize(current, sample, baseline, properties);
+        if (next != current) {
+            LOGGER.info("resizing pool {} from {} to {} connections "
+                            + "(acquire {}ms, usage {}ms against {}ms, {} pending, {} timeouts)",
+                    poolName, current, next,
+                    Math.round(sample.meanAcquireMillis()),
+                    Math.round(sample.meanUsageMillis()),
+                    Math.round(baseline),
+                    sample.pending(),
+                    sample.timeouts());
+            if (config.getMinimumIdle() > next) {
+                config.setMinimumIdle(next);
+            }
+            config.setMaximumPoolSize(next);
+        }
+    }
+
+    static int nextMaximumPoolSize(int current,
+                                   PoolSample sample,
+                                   double usageBaselineMillis,
+                                   PoolSizingProperties properties) {
+        boolean starved = sample.timeouts() > 0
+                || sample.pending() > 0
+                || sample.meanAcquireMillis() > properties.targetAcquireTime().toMillis();
+        boolean databaseSlow = usageBaselineMillis > 0
+                && sample.meanUsageMillis() > usageBaselineMillis * SLOWDOWN_FACTOR;
+        // by Little's law, the average number of connections in use over the interval
+        double busy = sample.totalUsageMillis() / (double) properties.interval().toMillis();
+
+        int next = current;
+        if (starved && !databaseSlow) {
+            next = current + Math.max(1, current / 4);
+        } else if (!starved && busy < current * 0.5) {
+            next = current - 1;
+        }
+        return Math.max(properties.minPoolSize(), Math.min(properties.maxPoolSize(), next));
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
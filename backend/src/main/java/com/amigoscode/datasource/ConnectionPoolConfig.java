@@ -0,0 +1,50 @@
+package com.amigoscode.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(PoolSizingProperties.class)
+public class ConnectionPoolConfig {
+
+    @Bean
+    public ConnectionPoolMetrics connectionPoolMetrics(MeterRegistry meterRegistry) {
+        return new ConnectionPoolMetrics(meterRegistry);
+    }
+
+    // instruments HikariDataSource beans before Spring Boot binds its own
+    // metrics tracker, and defers borrowing so the connection wait is charged
+    // to the DAO call that needed it; pools built elsewhere do both themselves
+    @Bean
+    public static BeanPostProcessor hikariInstrumentingPostProcessor(
+            ObjectProvider<ConnectionPoolMetrics> connectionPoolMetrics) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource) {
+                    connectionPoolMetrics.getObject().instrument(dataSource);
+                    return new LazyPooledDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public CustomerDaoConnectionWaitAspect customerDaoConnectionWaitAspect(MeterRegistry meterRegistry) {
+        return new CustomerDaoConnectionWaitAspect(meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "app.datasource.pool-sizing.enabled", havingValue = "true")
+    public AdaptivePoolSizer adaptivePoolSizer(ConnectionPoolMetrics connectionPoolMetrics,
+                                               PoolSizingProperties properties) {
+        return new AdaptivePoolSizer(connectionPoolMetrics, properties);
+    }
+}
@@ -0,0 +1,138 @@
+package com.amigoscode.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// publishes the standard hikaricp.connections.* meters for every pool, tagged
+// by pool name, and keeps the running totals the pool-sizing controller and
+// the per-call connection wait need
+public class ConnectionPoolMetrics {
+
+    private static final ThreadLocal<long[]> CONNECTION_WAIT_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final MicrometerMetricsTrackerFactory micrometerMetricsTrackerFactory;
+    private final Map<String, PoolStatistics> pools = new ConcurrentHashMap<>();
+
+    public ConnectionPoolMetrics(MeterRegistry meterRegistry) {
+        this.micrometerMetricsTrackerFactory = new MicrometerMetricsTrackerFactory(meterRegistry);
+    }
+
+    public void instrument(HikariDataSource dataSource) {
+        if (dataSource.getMetricsTrackerFactory() != null || dataSource.getMetricRegistry() != null) {
+            return;
+        }
+        dataSource.setMetricsTrackerFactory((poolName, poolStats) -> {
+            PoolStatistics statistics = new PoolStatistics(dataSource);
+            pools.put(poolName, statistics);
+            return new Tracker(micrometerMetricsTrackerFactory.create(poolName, poolStats), statistics);
+        });
+    }
+
+    // total time the current thread has spent waiting for pooled connections;
+    // callers take the difference around the work they want to measure
+    public static long connectionWaitNanos() {
+        return CONNECTION_WAIT_NANOS.get()[0];
+    }
+
+    // callers queued for a connection right now, across every pool; cheap
+    // enough to read on each request
+    public int threadsAwaitingConnection() {
+        int pending = 0;
+        for (PoolStatistics statistics : pools.values()) {
+            HikariPoolMXBean pool = statistics.dataSource().getHikariPoolMXBean();
+            if (pool != null) {
+                pending += pool.getThreadsAwaitingConnection();
+            }
+        }
+        return pending;
+    }
+
+    Map<String, PoolStatistics> pools() {
+        return pools;
+    }
+
+    static final class PoolStatistics {
+
+        private final HikariDataSource dataSource;
+        private final LongAdder acquireCount = new LongAdder();
+        private final LongAdder acquireNanos = new LongAdder();
+        private final LongAdder usageCount = new LongAdder();
+        private final LongAdder usageMillis = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+
+        PoolStatistics(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        HikariDataSource dataSource() {
+            return dataSource;
+        }
+
+        PoolSample sampleAndReset() {
+            long acquires = acquireCount.sumThenReset();
+            long acquireTotalNanos = acquireNanos.sumThenReset();
+            long usages = usageCount.sumThenReset();
+            long usageTotalMillis = usageMillis.sumThenReset();
+            int pending = dataSource.getHikariPoolMXBean() == null
+                    ? 0
+                    : dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection();
+            return new PoolSample(
+                    acquires == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(acquireTotalNanos) / (double) acquires,
+                    usages == 0 ? 0 : usageTotalMillis / (double) usages,
+                    usageTotalMillis,
+                    timeouts.sumThenReset(),
+                    pending
+            );
+        }
+    }
+
+    record PoolSample(double meanAcquireMillis,
+                      double meanUsageMillis,
+                      long totalUsageMillis,
+                      long timeouts,
+                      int pending) {
+    }
+
+    private record Tracker(IMetricsTracker delegate, PoolStatistics statistics) implements IMetricsTracker {
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            delegate.recordConnectionCreatedMillis(connectionCreatedMillis);
+        }
+
+        // Hikari calls this on the thread that asked for the connection
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            delegate.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+            statistics.acquireCount.increment();
+            statistics.acquireNanos.add(elapsedAcquiredNanos);
+            CONNECTION_WAIT_NANOS.get()[0] += elapsedAcquiredNanos;
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            delegate.recordConnectionUsageMillis(elapsedBorrowedMillis);
+            statistics.usageCount.increment();
+            statistics.usageMillis.add(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            delegate.recordConnectionTimeout();
+            statistics.timeouts.increment();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
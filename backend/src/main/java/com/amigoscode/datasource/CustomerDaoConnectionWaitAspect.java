@@ -0,0 +1,46 @@
+package com.amigoscode.datasource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// records, per CustomerDao implementation and method, how long each call
+// waited for pooled connections before it could talk to the database. The
+// decorators CustomerDaoConfig stacks in front of the store are left out, a
+// call through them would otherwise be recorded once per layer
+@Aspect
+public class CustomerDaoConnectionWaitAspect {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public CustomerDaoConnectionWaitAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* com.amigoscode.customer.CustomerDao.*(..))"
+            + " && !within(com.amigoscode.customer.CachingCustomerDao)"
+            + " && !within(com.amigoscode.customer.EmailFilteringCustomerDao)")
+    public Object recordConnectionWait(ProceedingJoinPoint joinPoint) throws Throwable {
+        long waitBefore = ConnectionPoolMetrics.connectionWaitNanos();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            long waited = ConnectionPoolMetrics.connectionWaitNanos() - waitBefore;
+            String dao = joinPoint.getTarget().getClass().getSimpleName();
+            String method = joinPoint.getSignature().getName();
+            timers.computeIfAbsent(dao + "." + method, key -> Timer.builder("customer.dao.connection.wait")
+                            .description("Time CustomerDao calls spent waiting for a pooled connection")
+                            .tag("dao", dao)
+                            .tag("method", method)
+                            .register(meterRegistry))
+                    .record(waited, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.amigoscode.datasource;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+
+// borrows the pooled connection on the first statement instead of when a
+// transaction begins; close() lets the container still shut the pool down
+class LazyPooledDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    LazyPooledDataSource(DataSource pool) {
+        super(pool);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (getTargetDataSource() instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.amigoscode.datasource;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("app.datasource.pool-sizing")
+public record PoolSizingProperties(
+        boolean enabled,
+        @DefaultValue("5") int minPoolSize,
+        @DefaultValue("30") int maxPoolSize,
+        @DefaultValue("10s") Duration interval,
+        @DefaultValue("20ms") Duration targetAcquireTime
+) {
+}
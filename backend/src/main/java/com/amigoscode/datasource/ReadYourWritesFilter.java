@@ -0,0 +1,78 @@
+package com.amigoscode.datasource;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+
+// replicas lag behind the primary, so a client that just wrote reads from
+// the primary for a short window and sees its own change. The window goes
+// out with the write's response as a cookie holding when it ends: it
+// belongs to that client alone, whatever address the load balancer shows,
+// and any node it reaches next honours it
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE = "read-primary-until";
+
+    private static final Set<String> WRITE_METHODS = Set.of("POST", "PUT", "PATCH", "DELETE");
+
+    private final Duration window;
+    private final Clock clock;
+
+    public ReadYourWritesFilter(Duration window, Clock clock) {
+        this.window = window;
+        this.clock = clock;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        boolean write = WRITE_METHODS.contains(request.getMethod());
+        // set before the write, while the response can still take headers
+        if (write) {
+            response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie
+                    .from(COOKIE, Long.toString(clock.millis() + window.toMillis()))
+                    .path("/")
+                    .maxAge(window)
+                    .httpOnly(true)
+                    .sameSite("Lax")
+                    .build()
+                    .toString());
+        }
+
+        ReplicaRoutingDataSource.setPrimaryRequired(write || wroteRecently(request));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.setPrimaryRequired(false);
+        }
+    }
+
+    // a window ending further out than one write gives was not set here, it
+    // is ignored rather than letting a client pin its reads to the primary
+    boolean wroteRecently(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE);
+        if (cookie == null) {
+            return false;
+        }
+        long until;
+        try {
+            until = Long.parseLong(cookie.getValue());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        long now = clock.millis();
+        return until > now && until - now <= window.toMillis();
+    }
+}
@@ -0,0 +1,83 @@
+package com.amigoscode.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConditionalOnProperty(value = "app.datasource.replicas.enabled", havingValue = "true")
+@EnableConfigurationProperties(ReplicaRoutingProperties.class)
+public class ReplicaRoutingConfig {
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties dataSourceProperties,
+                                                             ReplicaRoutingProperties replicaProperties,
+                                                             ConnectionPoolMetrics connectionPoolMetrics,
+                                                             Environment environment) {
+        HikariDataSource primary = hikari(dataSourceProperties, environment);
+        if (primary.getPoolName() == null) {
+            primary.setPoolName("primary");
+        }
+        connectionPoolMetrics.instrument(primary);
+
+        List<DataSource> replicas = new ArrayList<>();
+        List<String> urls = replicaProperties.urls() == null ? List.of() : replicaProperties.urls();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = hikari(dataSourceProperties, environment);
+            replica.setJdbcUrl(urls.get(i));
+            if (StringUtils.hasText(replicaProperties.username())) {
+                replica.setUsername(replicaProperties.username());
+                replica.setPassword(replicaProperties.password());
+            }
+            replica.setPoolName("replica-" + i);
+            replica.setReadOnly(true);
+            connectionPoolMetrics.instrument(replica);
+            replicas.add(replica);
+        }
+
+        return new ReplicaRoutingDataSource(
+                primary,
+                replicas,
+                replicaProperties.healthCheckInterval(),
+                replicaProperties.maxLag()
+        );
+    }
+
+    // the lazy proxy defers picking a target until the first statement, by
+    // which time the transaction manager has flagged the transaction read-only
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(ReplicaRoutingProperties replicaProperties) {
+        return new ReadYourWritesFilter(
+                replicaProperties.readYourWritesWindow(),
+                Clock.systemUTC()
+        );
+    }
+
+    private static HikariDataSource hikari(DataSourceProperties properties, Environment environment) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        return dataSource;
+    }
+}
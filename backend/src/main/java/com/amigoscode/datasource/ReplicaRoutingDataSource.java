@@ -0,0 +1,188 @@
+package com.amigoscode.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// sends connections of read-only transactions to a healthy replica and
+// everything else to the primary; wrap it in a LazyConnectionDataSourceProxy
+// so the connection is only picked once the transaction's read-only flag is set
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    // zero when the server is not a standby or has replayed everything it received
+    private static final String LAG_SQL = """
+            SELECT CASE
+                WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)
+            END
+            """;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final Duration healthCheckInterval;
+    private final Duration maxLag;
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService healthChecks;
+
+    public ReplicaRoutingDataSource(DataSource primary,
+                                    List<DataSource> replicas,
+                                    Duration healthCheckInterval,
+                                    Duration maxLag) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.healthCheckInterval = healthCheckInterval;
+        this.maxLag = maxLag;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < this.replicas.size(); i++) {
+            targets.put(replicaKey(i), this.replicas.get(i).dataSource);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    // keeps the current thread on the primary, e.g. right after the client wrote
+    public static void setPrimaryRequired(boolean primaryRequired) {
+        if (primaryRequired) {
+            PRIMARY_REQUIRED.set(Boolean.TRUE);
+        } else {
+            PRIMARY_REQUIRED.remove();
+        }
+    }
+
+    public static <T> T onPrimary(Supplier<T> work) {
+        boolean required = isPrimaryRequired();
+        setPrimaryRequired(true);
+        try {
+            return work.get();
+        } finally {
+            setPrimaryRequired(required);
+        }
+    }
+
+    static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get() != null;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        checkReplicas();
+        healthChecks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecks.scheduleWithFixedDelay(
+                this::checkReplicas,
+                healthCheckInterval.toMillis(),
+                healthCheckInterval.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || isPrimaryRequired()) {
+            return PRIMARY;
+        }
+
+        // round robin over the healthy replicas, falling back to the primary
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (replicas.get(index).healthy) {
+                return replicaKey(index);
+            }
+        }
+        return PRIMARY;
+    }
+
+    void checkReplicas() {
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            boolean healthy = isHealthy(replica.dataSource);
+            if (healthy && !replica.healthy) {
+                LOGGER.info("{} is healthy, routing reads to it", replicaKey(i));
+            } else if (!healthy && replica.healthy) {
+                LOGGER.warn("{} is unhealthy or lagging, routing its reads elsewhere", replicaKey(i));
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    boolean isHealthy(int replicaIndex) {
+        return replicas.get(replicaIndex).healthy;
+    }
+
+    private boolean isHealthy(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(2);
+            try (ResultSet resultSet = statement.executeQuery(LAG_SQL)) {
+                resultSet.next();
+                return resultSet.getDouble(1) * 1000 <= maxLag.toMillis();
+            }
+        } catch (SQLException e) {
+            LOGGER.debug("replica health check failed", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (healthChecks != null) {
+            healthChecks.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            closeIfPossible(replica.dataSource);
+        }
+        closeIfPossible(primary);
+    }
+
+    private static void closeIfPossible(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    private static String replicaKey(int index) {
+        return "replica-" + index;
+    }
+
+    private static final class Replica {
+        private final DataSource dataSource;
+        private volatile boolean healthy;
+
+        private Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+}
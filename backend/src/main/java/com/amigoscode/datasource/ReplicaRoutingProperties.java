@@ -0,0 +1,20 @@
+package com.amigoscode.datasource;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties("app.datasource.replicas")
+public record ReplicaRoutingProperties(
+        boolean enabled,
+        List<String> urls,
+        // default to the spring.datasource credentials when left empty
+        String username,
+        String password,
+        @DefaultValue("5s") Duration healthCheckInterval,
+        @DefaultValue("10s") Duration maxLag,
+        @DefaultValue("5s") Duration readYourWritesWindow
+) {
+}
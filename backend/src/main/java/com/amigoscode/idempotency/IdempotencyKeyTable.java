@@ -0,0 +1,108 @@
+package com.amigoscode.idempotency;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+// idempotency_key (see V10 and V12), shared by every node: a client's key is
+// claimed by inserting it without a status, and the outcome is filled in
+// once the request is done. Each call is a statement of its own, outside the
+// request's transaction
+class IdempotencyKeyTable {
+
+    // an expired key, or one whose request was abandoned (its node went
+    // away before finishing), is taken over as if it were new
+    private static final String CLAIM = """
+            INSERT INTO idempotency_key (client, key, fingerprint, created_at)
+            VALUES (?, ?, ?, now())
+            ON CONFLICT (client, key) DO UPDATE
+            SET fingerprint = EXCLUDED.fingerprint,
+                status = NULL,
+                headers = NULL,
+                body = NULL,
+                message = NULL,
+                created_at = now()
+            WHERE idempotency_key.created_at < now() - make_interval(secs => ?)
+               OR (idempotency_key.status IS NULL
+                   AND idempotency_key.created_at < now() - make_interval(secs => ?))
+            RETURNING key
+            """;
+
+    private static final String SELECT = """
+            SELECT fingerprint, status, headers, body, message
+            FROM idempotency_key
+            WHERE client = ? AND key = ?
+            """;
+
+    private static final String COMPLETE = """
+            UPDATE idempotency_key
+            SET status = ?, headers = ?, body = ?, message = ?
+            WHERE client = ? AND key = ? AND status IS NULL
+            """;
+
+    private static final String RELEASE =
+            "DELETE FROM idempotency_key WHERE client = ? AND key = ? AND status IS NULL";
+
+    private static final String PRUNE = """
+            DELETE FROM idempotency_key
+            WHERE (client, key) IN (
+                SELECT client, key FROM idempotency_key
+                WHERE created_at < ?
+                ORDER BY created_at
+                LIMIT ?
+            )
+            """;
+
+    // claimed: the caller runs the request; otherwise outcome is what
+    // another request with the key answered, null while it is in progress
+    record Claim(boolean claimed, IdempotentOutcome outcome) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration timeToLive;
+    private final Duration abandonedAfter;
+
+    IdempotencyKeyTable(JdbcTemplate jdbcTemplate, Duration timeToLive, Duration abandonedAfter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timeToLive = timeToLive;
+        this.abandonedAfter = abandonedAfter;
+    }
+
+    Claim claim(String client, String key, byte[] fingerprint) {
+        boolean claimed = !jdbcTemplate.queryForList(
+                CLAIM, String.class, client, key, fingerprint, timeToLive.toSeconds(), abandonedAfter.toSeconds()
+        ).isEmpty();
+        if (claimed) {
+            return new Claim(true, null);
+        }
+        List<IdempotentOutcome> outcomes = jdbcTemplate.query(SELECT, (rs, rowNum) -> {
+            int status = rs.getInt("status");
+            return rs.wasNull() ? null : new IdempotentOutcome(
+                    rs.getBytes("fingerprint"),
+                    status,
+                    rs.getString("headers"),
+                    rs.getBytes("body"),
+                    rs.getString("message")
+            );
+        }, client, key);
+        // gone again since the claim failed, pruned: answered as in
+        // progress, the client's next retry claims it
+        return new Claim(false, outcomes.isEmpty() ? null : outcomes.get(0));
+    }
+
+    void complete(String client, String key, IdempotentOutcome outcome) {
+        jdbcTemplate.update(
+                COMPLETE, outcome.status(), outcome.headers(), outcome.body(), outcome.message(), client, key);
+    }
+
+    void release(String client, String key) {
+        jdbcTemplate.update(RELEASE, client, key);
+    }
+
+    int prune(Instant before, int limit) {
+        return jdbcTemplate.update(PRUNE, Timestamp.from(before), limit);
+    }
+}
@@ -0,0 +1,19 @@
+package com.amigoscode.idempotency;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@ConfigurationProperties("app.idempotency")
+public record IdempotencyProperties(
+        @DefaultValue("32MB") DataSize maxMemory,
+        @DefaultValue("24h") Duration timeToLive,
+        @DefaultValue("10s") Duration waitTimeout,
+        @DefaultValue("false") boolean persistent,
+        @DefaultValue("1m") Duration abandonedAfter,
+        @DefaultValue("10m") Duration pruneInterval,
+        @DefaultValue("1000") int pruneBatchSize
+) {
+}
@@ -0,0 +1,26 @@
+package com.amigoscode.idempotency;
+
+// what the first request with a key answered, kept as the bytes that were
+// sent rather than the objects they came from. A failure keeps its status
+// and message, it has no body or headers
+record IdempotentOutcome(
+        byte[] fingerprint,
+        int status,
+        String headers,
+        byte[] body,
+        String message
+) {
+
+    // roughly what the entry holds on the heap, for the cache's weigher
+    int weight() {
+        return 64
+                + fingerprint.length
+                + (headers == null ? 0 : headers.length() * 2)
+                + (body == null ? 0 : body.length)
+                + (message == null ? 0 : message.length() * 2);
+    }
+
+    boolean failed() {
+        return status >= 400;
+    }
+}
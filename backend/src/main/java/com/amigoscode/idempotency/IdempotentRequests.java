@@ -0,0 +1,435 @@
+package com.amigoscode.idempotency;
+
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.IdempotencyKeyReusedException;
+import com.amigoscode.exception.RequestValidationException;
+import com.amigoscode.exception.ServiceUnavailableException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// answers a retried write with what its first attempt answered, without
+// running it again. Outcomes are kept per client (see ClientIdentity) and
+// Idempotency-Key, so clients that pick the same key never see each other's
+// answers, in a cache bounded by bytes and time to live; a duplicate that arrives while the first is
+// still running waits for its outcome, so only one of them does the work.
+// With app.idempotency.persistent the keys are also claimed in a table,
+// which covers retries that land on another node or after a restart.
+// Answers and the 4xx failures of the exception package are kept, any other
+// failure lets the next attempt run again
+@Component
+@EnableConfigurationProperties(IdempotencyProperties.class)
+public class IdempotentRequests implements InitializingBean, DisposableBean {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotentRequests.class);
+
+    private final IdempotencyProperties properties;
+    private final ObjectMapper objectMapper;
+    // null unless persistent
+    private final IdempotencyKeyTable table;
+    private final AsyncCache<ClientKey, IdempotentOutcome> outcomes;
+    private final Counter replayed;
+    private ScheduledExecutorService scheduler;
+
+    public IdempotentRequests(IdempotencyProperties properties,
+                              ObjectMapper objectMapper,
+                              JdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.table = properties.persistent()
+                ? new IdempotencyKeyTable(jdbcTemplate, properties.timeToLive(), properties.abandonedAfter())
+                : null;
+        // a request in progress weighs nothing until its outcome is in
+        this.outcomes = Caffeine.newBuilder()
+                .maximumWeight(properties.maxMemory().toBytes())
+                .<ClientKey, IdempotentOutcome>weigher((key, outcome) -> key.weight() + outcome.weight())
+                .expireAfterWrite(properties.timeToLive())
+                .recordStats()
+                .buildAsync();
+        this.replayed = Counter.builder("idempotency.replayed")
+                .description("Requests answered with the outcome of an earlier request with the same key")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, outcomes.synchronous(), "idempotency");
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (table == null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idempotency-prune");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.pruneInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::pruneQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // runs action unless a request of the client with the same key has
+    // already run, or is running; request holds whatever identifies what was
+    // asked for, a key reused for anything else is rejected
+    public <T> ResponseEntity<T> execute(String client,
+                                         String key,
+                                         List<?> request,
+                                         Class<T> type,
+                                         Supplier<ResponseEntity<T>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        validate(key);
+        byte[] fingerprint = fingerprint(request);
+        ClientKey clientKey = new ClientKey(client, key);
+        while (true) {
+            CompletableFuture<IdempotentOutcome> mine = new CompletableFuture<>();
+            CompletableFuture<IdempotentOutcome> first = outcomes.asMap().putIfAbsent(clientKey, mine);
+            if (first == null) {
+                return run(clientKey, fingerprint, type, action, mine);
+            }
+            IdempotentOutcome outcome = await(first);
+            // null: the first gave up without an outcome, run it again
+            if (outcome != null) {
+                return replay(outcome, fingerprint, type);
+            }
+        }
+    }
+
+    // execute for the reactive stack: neither the action nor the wait for a
+    // duplicate holds a thread, only the calls to the table are offloaded
+    public <T> Mono<ResponseEntity<T>> executeReactive(String client,
+                                                       String key,
+                                                       List<?> request,
+                                                       Class<T> type,
+                                                       Supplier<Mono<ResponseEntity<T>>> action) {
+        if (key == null) {
+            return Mono.defer(action);
+        }
+        return Mono.defer(() -> {
+            validate(key);
+            return attempt(new ClientKey(client, key), fingerprint(request), type, action);
+        });
+    }
+
+    private <T> Mono<ResponseEntity<T>> attempt(ClientKey key,
+                                                byte[] fingerprint,
+                                                Class<T> type,
+                                                Supplier<Mono<ResponseEntity<T>>> action) {
+        CompletableFuture<IdempotentOutcome> mine = new CompletableFuture<>();
+        CompletableFuture<IdempotentOutcome> first = outcomes.asMap().putIfAbsent(key, mine);
+        if (first == null) {
+            return running(key, fingerprint, type, action, mine);
+        }
+        // a waiter that goes away must not cancel the future of the first
+        return Mono.fromFuture(first, true)
+                .timeout(properties.waitTimeout(), Mono.error(InProgressException::new))
+                // empty: the first gave up without an outcome, run it again
+                .onErrorResume(e -> !(e instanceof InProgressException), e -> Mono.empty())
+                .map(outcome -> replay(outcome, fingerprint, type))
+                .switchIfEmpty(Mono.defer(() -> attempt(key, fingerprint, type, action)));
+    }
+
+    private <T> Mono<ResponseEntity<T>> running(ClientKey key,
+                                                byte[] fingerprint,
+                                                Class<T> type,
+                                                Supplier<Mono<ResponseEntity<T>>> action,
+                                                CompletableFuture<IdempotentOutcome> mine) {
+        Mono<ResponseEntity<T>> ran = Mono.defer(action)
+                .onErrorResume(RuntimeException.class, e -> {
+                    HttpStatus status = keptStatus(e);
+                    Mono<Void> settled = status == null
+                            ? forgetting(key, mine, e)
+                            : remembering(key, mine, new IdempotentOutcome(fingerprint, status.value(), null, null, e.getMessage()));
+                    return settled.then(Mono.error(e));
+                })
+                .flatMap(response -> remembering(key, mine, new IdempotentOutcome(
+                        fingerprint,
+                        response.getStatusCode().value(),
+                        headers(response.getHeaders()),
+                        json(response.getBody()),
+                        null
+                )).thenReturn(response));
+        Mono<ResponseEntity<T>> claimed = table == null
+                ? ran
+                : offloaded(() -> table.claim(key.client(), key.key(), fingerprint))
+                        .onErrorResume(RuntimeException.class, e -> forgetting(key, mine, e).then(Mono.error(e)))
+                        .flatMap(claim -> {
+                            if (claim.claimed()) {
+                                return ran;
+                            }
+                            if (claim.outcome() == null) {
+                                InProgressException inProgress = new InProgressException();
+                                return forgetting(key, mine, inProgress).then(Mono.error(inProgress));
+                            }
+                            mine.complete(claim.outcome());
+                            return Mono.fromCallable(() -> replay(claim.outcome(), fingerprint, type));
+                        });
+        // cancelled, or failed with something that is no RuntimeException
+        return claimed.doFinally(signal -> {
+            if (!mine.isDone()) {
+                forgetting(key, mine, new CancellationException()).subscribe();
+            }
+        });
+    }
+
+    private <T> ResponseEntity<T> run(ClientKey key,
+                                      byte[] fingerprint,
+                                      Class<T> type,
+                                      Supplier<ResponseEntity<T>> action,
+                                      CompletableFuture<IdempotentOutcome> mine) {
+        if (table != null) {
+            IdempotencyKeyTable.Claim claim;
+            try {
+                claim = table.claim(key.client(), key.key(), fingerprint);
+            } catch (RuntimeException e) {
+                forget(key, mine, e);
+                throw e;
+            }
+            if (!claim.claimed()) {
+                if (claim.outcome() == null) {
+                    InProgressException inProgress = new InProgressException();
+                    forget(key, mine, inProgress);
+                    throw inProgress;
+                }
+                mine.complete(claim.outcome());
+                return replay(claim.outcome(), fingerprint, type);
+            }
+        }
+
+        ResponseEntity<T> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            HttpStatus status = keptStatus(e);
+            if (status == null) {
+                forget(key, mine, e);
+            } else {
+                remember(key, mine, new IdempotentOutcome(fingerprint, status.value(), null, null, e.getMessage()));
+            }
+            throw e;
+        }
+        remember(key, mine, new IdempotentOutcome(
+                fingerprint,
+                response.getStatusCode().value(),
+                headers(response.getHeaders()),
+                json(response.getBody()),
+                null
+        ));
+        return response;
+    }
+
+    // waiters take the outcome from the future, the table only has to
+    // know for other nodes
+    private void remember(ClientKey key, CompletableFuture<IdempotentOutcome> mine, IdempotentOutcome outcome) {
+        mine.complete(outcome);
+        store(key, outcome);
+    }
+
+    private void forget(ClientKey key, CompletableFuture<IdempotentOutcome> mine, RuntimeException cause) {
+        outcomes.asMap().remove(key, mine);
+        mine.completeExceptionally(cause);
+        if (!(cause instanceof InProgressException)) {
+            release(key);
+        }
+    }
+
+    private Mono<Void> remembering(ClientKey key, CompletableFuture<IdempotentOutcome> mine, IdempotentOutcome outcome) {
+        mine.complete(outcome);
+        return table == null ? Mono.empty() : offloaded(() -> store(key, outcome));
+    }
+
+    private Mono<Void> forgetting(ClientKey key, CompletableFuture<IdempotentOutcome> mine, RuntimeException cause) {
+        outcomes.asMap().remove(key, mine);
+        mine.completeExceptionally(cause);
+        return table == null || cause instanceof InProgressException ? Mono.empty() : offloaded(() -> release(key));
+    }
+
+    private void store(ClientKey key, IdempotentOutcome outcome) {
+        if (table != null) {
+            try {
+                table.complete(key.client(), key.key(), outcome);
+            } catch (RuntimeException e) {
+                LOGGER.warn("could not store the outcome of idempotency key {} of {}", key.key(), key.client(), e);
+            }
+        }
+    }
+
+    private void release(ClientKey key) {
+        if (table != null) {
+            try {
+                table.release(key.client(), key.key());
+            } catch (RuntimeException e) {
+                LOGGER.warn("could not release idempotency key {} of {}", key.key(), key.client(), e);
+            }
+        }
+    }
+
+    // the table is plain JDBC
+    private static <V> Mono<V> offloaded(Callable<V> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static Mono<Void> offloaded(Runnable task) {
+        return Mono.<Void>fromRunnable(task).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private IdempotentOutcome await(CompletableFuture<IdempotentOutcome> first) {
+        try {
+            return first.get(properties.waitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InProgressException inProgress) {
+                throw inProgress;
+            }
+            return null;
+        } catch (TimeoutException e) {
+            throw new InProgressException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("interrupted while waiting for a request with the same " + HEADER);
+        }
+    }
+
+    private <T> ResponseEntity<T> replay(IdempotentOutcome outcome, byte[] fingerprint, Class<T> type) {
+        if (!Arrays.equals(outcome.fingerprint(), fingerprint)) {
+            throw new IdempotencyKeyReusedException(
+                    "%s was already used for a different request".formatted(HEADER));
+        }
+        replayed.increment();
+        if (outcome.failed()) {
+            throw new ResponseStatusException(HttpStatus.valueOf(outcome.status()), outcome.message());
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (outcome.headers() != null) {
+            outcome.headers().lines().forEach(line -> {
+                int colon = line.indexOf(':');
+                headers.add(line.substring(0, colon), line.substring(colon + 1));
+            });
+        }
+        headers.set(REPLAYED_HEADER, "true");
+        try {
+            T body = outcome.body() == null ? null : objectMapper.readValue(outcome.body(), type);
+            return ResponseEntity.status(outcome.status()).headers(headers).body(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void validate(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new RequestValidationException(
+                    "%s must be between 1 and %s characters".formatted(HEADER, MAX_KEY_LENGTH));
+        }
+    }
+
+    private byte[] fingerprint(List<?> request) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] json(Object body) {
+        try {
+            return body == null ? null : objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // one "name:value" line per value
+    private static String headers(HttpHeaders headers) {
+        if (headers.isEmpty()) {
+            return null;
+        }
+        StringBuilder lines = new StringBuilder();
+        headers.forEach((name, values) -> values.forEach(value ->
+                lines.append(name).append(':').append(value).append('\n')));
+        return lines.toString();
+    }
+
+    // the status a failure is answered with when it is one to keep
+    private static HttpStatus keptStatus(RuntimeException e) {
+        ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+        if (responseStatus == null || !responseStatus.code().is4xxClientError()) {
+            return null;
+        }
+        return responseStatus.code();
+    }
+
+    private void pruneQuietly() {
+        try {
+            Instant before = Instant.now().minus(properties.timeToLive());
+            int pruned;
+            do {
+                pruned = table.prune(before, properties.pruneBatchSize());
+            } while (pruned == properties.pruneBatchSize() && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException e) {
+            LOGGER.warn("could not prune idempotency keys", e);
+        }
+    }
+
+    private record ClientKey(String client, String key) {
+
+        int weight() {
+            return (client.length() + key.length()) * 2;
+        }
+    }
+
+    private static class InProgressException extends DuplicateResourceException {
+
+        InProgressException() {
+            super("a request with this %s is still in progress".formatted(HEADER));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.amigoscode.ratelimit;
+
+import com.amigoscode.client.ClientIdentity;
+import com.amigoscode.datasource.ConnectionPoolMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Clock;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(value = "app.rate-limit.enabled", havingValue = "true")
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitConfig {
+
+    // ahead of the other filters, a rejected request should cost nothing else
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(RateLimitProperties properties,
+                                                                   ClientIdentity clientIdentity,
+                                                                   ConnectionPoolMetrics connectionPoolMetrics,
+                                                                   MeterRegistry meterRegistry) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(new RateLimitFilter(
+                properties,
+                clientIdentity,
+                connectionPoolMetrics::threadsAwaitingConnection,
+                Clock.systemUTC(),
+                meterRegistry
+        ));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
@@ -0,0 +1,174 @@
+package com.amigoscode.ratelimit;
+
+import com.amigoscode.client.ClientIdentity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+// limits every client, as ClientIdentity names it, to the rate of the
+// endpoint it calls, and answers 429 with a Retry-After once it has used up
+// its burst. While callers queue for database connections the
+// endpoints that read every customer are turned away first, with a 503, so
+// the pool is left to the requests that need a connection only briefly.
+// A request costs a pattern match per endpoint and a compare-and-set
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final int DEFAULT_ENDPOINT = -1;
+
+    private final ClientIdentity clientIdentity;
+    private final List<EndpointLimit> endpoints;
+    private final EndpointLimit defaultLimit;
+    private final RateLimitProperties.Shedding shedding;
+    private final TokenBuckets buckets;
+    private final IntSupplier pendingConnections;
+    private final Clock clock;
+    private final Counter limited;
+    private final Counter shed;
+
+    public RateLimitFilter(RateLimitProperties properties,
+                           ClientIdentity clientIdentity,
+                           IntSupplier pendingConnections,
+                           Clock clock,
+                           MeterRegistry meterRegistry) {
+        this.clientIdentity = clientIdentity;
+        this.endpoints = new ArrayList<>();
+        List<RateLimitProperties.Endpoint> configured =
+                properties.endpoints() == null ? List.of() : properties.endpoints();
+        for (int i = 0; i < configured.size(); i++) {
+            endpoints.add(EndpointLimit.of(i, configured.get(i)));
+        }
+        this.defaultLimit = new EndpointLimit(
+                DEFAULT_ENDPOINT, null, null, List.of(),
+                intervalNanos(properties.defaultLimit().requestsPerSecond(), properties.defaultLimit().burst()),
+                properties.defaultLimit().burst(),
+                false
+        );
+        this.shedding = properties.shedding();
+        this.buckets = new TokenBuckets(properties.shards(), properties.maxClientsPerShard());
+        this.pendingConnections = pendingConnections;
+        this.clock = clock;
+        this.limited = Counter.builder("rate.limit.rejected")
+                .description("Requests answered 429, their client was over its rate")
+                .register(meterRegistry);
+        this.shed = Counter.builder("rate.limit.shed")
+                .description("Full-table requests answered 503 while callers queued for connections")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        EndpointLimit endpoint = endpointOf(request);
+        if (endpoint.fullTable() && pendingConnections.getAsInt() >= shedding.pendingConnections()) {
+            shed.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, shedding.retryAfter().toNanos(),
+                    "too busy to read every customer, try again later");
+            return;
+        }
+
+        long nowNanos = TimeUnit.MILLISECONDS.toNanos(clock.millis());
+        long waitNanos = buckets.tryTake(
+                new ClientKey(endpoint.index(), clientIdentity.of(request)),
+                endpoint.intervalNanos(),
+                endpoint.burst(),
+                nowNanos
+        );
+        if (waitNanos > 0) {
+            limited.increment();
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, waitNanos, "too many requests, slow down");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private EndpointLimit endpointOf(HttpServletRequest request) {
+        // parsed once the method and parameters of an endpoint match
+        PathContainer path = null;
+        for (EndpointLimit endpoint : endpoints) {
+            if (!endpoint.matchesMethodAndParams(request)) {
+                continue;
+            }
+            if (path == null) {
+                path = PathContainer.parsePath(
+                        request.getRequestURI().substring(request.getContextPath().length()));
+            }
+            if (endpoint.path().matches(path)) {
+                return endpoint;
+            }
+        }
+        return defaultLimit;
+    }
+
+    // goes through the error page, so the body looks like any other error
+    private static void reject(HttpServletResponse response,
+                               HttpStatus status,
+                               long retryAfterNanos,
+                               String message) throws IOException {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999));
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        response.sendError(status.value(), message);
+    }
+
+    private static long intervalNanos(double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("a rate limit needs requests-per-second above 0 and a burst of at least 1");
+        }
+        return Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+    }
+
+    private record ClientKey(int endpoint, String client) {
+    }
+
+    private record EndpointLimit(int index,
+                                 String method,
+                                 PathPattern path,
+                                 List<String> withoutParams,
+                                 long intervalNanos,
+                                 int burst,
+                                 boolean fullTable) {
+
+        static EndpointLimit of(int index, RateLimitProperties.Endpoint endpoint) {
+            if (endpoint.path() == null) {
+                throw new IllegalArgumentException("rate limit endpoint " + index + " has no path");
+            }
+            return new EndpointLimit(
+                    index,
+                    endpoint.method() == null || endpoint.method().isBlank() ? null : endpoint.method(),
+                    PathPatternParser.defaultInstance.parse(endpoint.path()),
+                    endpoint.withoutParams() == null ? List.of() : endpoint.withoutParams(),
+                    RateLimitFilter.intervalNanos(endpoint.requestsPerSecond(), endpoint.burst()),
+                    endpoint.burst(),
+                    endpoint.fullTable()
+            );
+        }
+
+        boolean matchesMethodAndParams(HttpServletRequest request) {
+            if (method != null && !method.equalsIgnoreCase(request.getMethod())) {
+                return false;
+            }
+            for (String param : withoutParams) {
+                if (request.getParameter(param) != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.amigoscode.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties("app.rate-limit")
+public record RateLimitProperties(
+        boolean enabled,
+        // shared by the requests no endpoint below matches
+        @DefaultValue Limit defaultLimit,
+        List<Endpoint> endpoints,
+        @DefaultValue Shedding shedding,
+        @DefaultValue("16") int shards,
+        // a shard forgets its idle clients once it holds more than this many
+        @DefaultValue("10000") int maxClientsPerShard
+) {
+
+    public record Limit(
+            @DefaultValue("50") double requestsPerSecond,
+            @DefaultValue("100") int burst
+    ) {
+    }
+
+    // the first endpoint that matches a request limits it
+    public record Endpoint(
+            // any method when empty
+            String method,
+            // a path pattern, e.g. /api/v1/customers/{customerId}
+            String path,
+            // only matches requests without these parameters, like the
+            // !param conditions of a request mapping
+            List<String> withoutParams,
+            double requestsPerSecond,
+            int burst,
+            // reads every customer; shed while callers queue for connections
+            boolean fullTable
+    ) {
+    }
+
+    public record Shedding(
+            // full-table requests are turned away while this many callers
+            // wait for a connection
+            @DefaultValue("5") int pendingConnections,
+            @DefaultValue("1s") Duration retryAfter
+    ) {
+    }
+}
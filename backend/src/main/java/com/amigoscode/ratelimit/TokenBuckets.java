@@ -0,0 +1,97 @@
+package com.amigoscode.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// token buckets kept as the time the bucket will be full again (the
+// "theoretical arrival time" of GCRA): one long per bucket, moved on with a
+// compare-and-set, so taking a token never locks. Buckets are spread over
+// shards by key; a shard that grows past its size forgets the buckets that
+// are full again, which loses nothing, and only then sweeps that shard, so
+// no request ever waits on a sweep of every client
+final class TokenBuckets {
+
+    private final Shard[] shards;
+    private final int maxKeysPerShard;
+
+    TokenBuckets(int shards, int maxKeysPerShard) {
+        if (shards < 1 || maxKeysPerShard < 1) {
+            throw new IllegalArgumentException("shards and keys per shard must be at least 1");
+        }
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(maxKeysPerShard);
+        }
+        this.maxKeysPerShard = maxKeysPerShard;
+    }
+
+    // takes a token from the bucket of key, which refills one token every
+    // intervalNanos and holds burst tokens; 0 when one was taken, otherwise
+    // how many nanos until one will be there
+    long tryTake(Object key, long intervalNanos, int burst, long nowNanos) {
+        Shard shard = shards[Math.floorMod(spread(key.hashCode()), shards.length)];
+        AtomicLong fullAt = shard.buckets.get(key);
+        if (fullAt == null) {
+            fullAt = shard.add(key, nowNanos, maxKeysPerShard);
+        }
+        long capacityNanos = intervalNanos * burst;
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long wait = next - nowNanos - capacityNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.buckets.size();
+        }
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Shard {
+
+        private final ConcurrentMap<Object, AtomicLong> buckets = new ConcurrentHashMap<>();
+        // the size that sets off the next sweep; raised while the shard is
+        // full of busy clients so the sweep does not run on every new one
+        private volatile int sweepAt;
+
+        Shard(int maxKeys) {
+            this.sweepAt = maxKeys;
+        }
+
+        AtomicLong add(Object key, long nowNanos, int maxKeys) {
+            AtomicLong added = new AtomicLong(nowNanos);
+            AtomicLong existing = buckets.putIfAbsent(key, added);
+            if (existing != null) {
+                return existing;
+            }
+            if (buckets.size() > sweepAt) {
+                sweep(nowNanos, maxKeys);
+            }
+            return added;
+        }
+
+        // a token taken from a bucket while it is removed is forgotten with
+        // it, which at worst lets that client have one more
+        private synchronized void sweep(long nowNanos, int maxKeys) {
+            if (buckets.size() <= sweepAt) {
+                return;
+            }
+            buckets.values().removeIf(fullAt -> fullAt.get() <= nowNanos);
+            sweepAt = Math.max(maxKeys, buckets.size() * 2);
+        }
+    }
+}
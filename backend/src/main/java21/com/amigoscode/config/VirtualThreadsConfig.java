@@ -0,0 +1,77 @@
+package com.amigoscode.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+// Spring Boot 3.1 has no built-in virtual thread support yet; the property
+// name matches the one Boot 3.2 introduces so the switch keeps working
+// after an upgrade
+@Configuration
+@ConditionalOnProperty(value = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadsConfig.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(
+                Executors.newVirtualThreadPerTaskExecutor()
+        );
+    }
+
+    // runs MVC async work such as the streaming export on virtual threads
+    @Bean(name = {
+            TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            "taskExecutor"
+    })
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    // a virtual thread blocking inside synchronized code (or a native frame)
+    // keeps its carrier thread busy; report every such pin above 20ms
+    @Bean(destroyMethod = "close")
+    public RecordingStream virtualThreadPinnedRecordingStream(MeterRegistry meterRegistry) {
+        Counter pinned = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads that blocked while pinned to their carrier")
+                .register(meterRegistry);
+        Timer pinnedDuration = Timer.builder("jvm.threads.virtual.pinned.duration")
+                .description("Time virtual threads spent blocked while pinned")
+                .register(meterRegistry);
+
+        RecordingStream recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT)
+                .withThreshold(Duration.ofMillis(20))
+                .withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, event -> {
+            pinned.increment();
+            pinnedDuration.record(event.getDuration());
+            if (event.getStackTrace() != null && !event.getStackTrace().getFrames().isEmpty()) {
+                RecordedFrame top = event.getStackTrace().getFrames().get(0);
+                LOGGER.warn("virtual thread pinned for {} at {}.{}",
+                        event.getDuration(),
+                        top.getMethod().getType().getName(),
+                        top.getMethod().getName());
+            }
+        });
+        recordingStream.startAsync();
+        return recordingStream;
+    }
+}
@@ -0,0 +1,15 @@
+-- Idempotency-Key outcomes shared by every node, used with
+-- app.idempotency.persistent. A row without a status is a request still in
+-- progress; the body is the JSON that was sent
+CREATE TABLE idempotency_key(
+    key TEXT PRIMARY KEY,
+    -- SHA-256 of what was asked for, a key reused for anything else is rejected
+    fingerprint BYTEA NOT NULL,
+    status INT,
+    headers TEXT,
+    body BYTEA,
+    message TEXT,
+    created_at TIMESTAMPTZ NOT NULL
+);
+
+CREATE INDEX idempotency_key_created_at_idx ON idempotency_key (created_at);
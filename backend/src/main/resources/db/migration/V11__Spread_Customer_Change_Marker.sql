@@ -0,0 +1,76 @@
+-- the change marker was one row that every write transaction updated and
+-- held locked until commit, so customer writes queued up behind each other.
+-- A transaction now bumps the slot of its backend, as customer_age_count
+-- does; the marker is the sum of the slots, which only grows, and the
+-- newest change among them
+CREATE TABLE customer_change_slot(
+    slot SMALLINT PRIMARY KEY,
+    version BIGINT NOT NULL,
+    changed_at TIMESTAMPTZ NOT NULL
+);
+
+INSERT INTO customer_change_slot (slot, version, changed_at)
+SELECT 0, version, changed_at FROM customer_change_marker;
+
+CREATE OR REPLACE FUNCTION customer_mark_changed() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO customer_change_slot (slot, version, changed_at)
+    VALUES (pg_backend_pid() % 16, 1, now())
+    ON CONFLICT (slot) DO UPDATE
+    SET version = customer_change_slot.version + 1,
+        changed_at = greatest(customer_change_slot.changed_at, EXCLUDED.changed_at);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TABLE customer_change_marker;
+
+-- read as the table was, by the daos, the notifications and their listener
+CREATE VIEW customer_change_marker AS
+SELECT sum(version)::BIGINT AS version, max(changed_at) AS changed_at
+FROM customer_change_slot;
+
+-- outbox ids came in commit order only because they were taken under the
+-- marker's row lock. Changes are now numbered after they commit instead:
+-- customer_outbox_sequence gives the committed changes without an offset
+-- the next offsets, one caller at a time, so a change numbered later was
+-- committed later and a reader that sees an offset has seen every offset
+-- below it. Readers only read numbered changes; the watermark counts offsets
+ALTER TABLE customer_outbox ADD COLUMN feed_offset BIGINT;
+
+UPDATE customer_outbox SET feed_offset = id;
+
+CREATE UNIQUE INDEX customer_outbox_feed_offset_idx ON customer_outbox (feed_offset);
+
+CREATE INDEX customer_outbox_unsequenced_idx ON customer_outbox (id) WHERE feed_offset IS NULL;
+
+-- each statement sees what was committed before it, so the newest offset is
+-- read after the lock is taken; a caller that finds it taken leaves the
+-- changes to the one holding it. Within a call, changes go in id order,
+-- which is commit order for changes to the same customer
+CREATE FUNCTION customer_outbox_sequence(max_changes INT) RETURNS INT AS $$
+DECLARE
+    latest BIGINT;
+    sequenced INT;
+BEGIN
+    IF NOT pg_try_advisory_xact_lock(hashtext('customer_outbox_sequence')) THEN
+        RETURN 0;
+    END IF;
+    latest := greatest(
+        (SELECT max(feed_offset) FROM customer_outbox),
+        (SELECT through FROM customer_outbox_pruned),
+        0);
+    UPDATE customer_outbox
+    SET feed_offset = latest + pending.position
+    FROM (
+        SELECT id, row_number() OVER (ORDER BY id) AS position
+        FROM customer_outbox
+        WHERE feed_offset IS NULL
+        ORDER BY id
+        LIMIT max_changes
+    ) pending
+    WHERE customer_outbox.id = pending.id;
+    GET DIAGNOSTICS sequenced = ROW_COUNT;
+    RETURN sequenced;
+END;
+$$ LANGUAGE plpgsql;
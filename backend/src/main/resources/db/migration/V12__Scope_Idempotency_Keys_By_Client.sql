@@ -0,0 +1,10 @@
+-- keys were global, so two clients that happened to pick the same key got
+-- each other's answers. A key now belongs to the client that sent it (see
+-- ClientIdentity); keys stored before belong to no client and expire unused
+ALTER TABLE idempotency_key ADD COLUMN client TEXT NOT NULL DEFAULT '';
+
+ALTER TABLE idempotency_key ALTER COLUMN client DROP DEFAULT;
+
+ALTER TABLE idempotency_key DROP CONSTRAINT idempotency_key_pkey;
+
+ALTER TABLE idempotency_key ADD PRIMARY KEY (client, key);
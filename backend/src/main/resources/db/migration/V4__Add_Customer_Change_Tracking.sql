@@ -0,0 +1,22 @@
+ALTER TABLE customer
+    ADD COLUMN updated_at TIMESTAMPTZ NOT NULL DEFAULT now();
+
+CREATE TABLE customer_change_marker(
+    id BOOLEAN PRIMARY KEY DEFAULT TRUE CHECK (id),
+    version BIGINT NOT NULL,
+    changed_at TIMESTAMPTZ NOT NULL
+);
+
+INSERT INTO customer_change_marker (version, changed_at) VALUES (0, now());
+
+CREATE FUNCTION customer_mark_changed() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE customer_change_marker
+    SET version = version + 1, changed_at = now();
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER customer_mark_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON customer
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_mark_changed();
\ No newline at end of file
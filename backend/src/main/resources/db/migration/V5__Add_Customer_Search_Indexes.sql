@@ -0,0 +1,8 @@
+-- name prefix filters (LIKE 'abc%') and ordering by name, id
+CREATE INDEX customer_name_pattern_idx ON customer (name text_pattern_ops, id);
+
+-- age ranges and ordering by age, id
+CREATE INDEX customer_age_idx ON customer (age, id);
+
+-- case-insensitive email lookups
+CREATE INDEX customer_email_lower_idx ON customer (lower(email));
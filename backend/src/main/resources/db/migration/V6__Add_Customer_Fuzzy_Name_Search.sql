@@ -0,0 +1,38 @@
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- whole-word and word-prefix name matches
+ALTER TABLE customer
+    ADD COLUMN name_tsv TSVECTOR GENERATED ALWAYS AS (to_tsvector('simple', name)) STORED;
+
+CREATE INDEX customer_name_tsv_idx ON customer USING gin (name_tsv);
+
+-- the words of all names, to expand searched word prefixes and to correct
+-- misspelled words by trigram similarity; a word stays after the last
+-- customer using it is gone
+CREATE TABLE customer_name_word(
+    word TEXT PRIMARY KEY
+);
+
+CREATE INDEX customer_name_word_prefix_idx ON customer_name_word (word text_pattern_ops);
+
+CREATE INDEX customer_name_word_trgm_idx ON customer_name_word USING gist (word gist_trgm_ops);
+
+CREATE FUNCTION customer_add_name_words() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO customer_name_word (word)
+    SELECT word
+    FROM unnest(tsvector_to_array(NEW.name_tsv)) AS word
+    WHERE word ~ '^[[:alnum:]]+$'
+    ON CONFLICT DO NOTHING;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER customer_add_name_words
+    AFTER INSERT OR UPDATE OF name ON customer
+    FOR EACH ROW EXECUTE FUNCTION customer_add_name_words();
+
+INSERT INTO customer_name_word (word)
+SELECT DISTINCT word
+FROM customer, unnest(tsvector_to_array(name_tsv)) AS word
+WHERE word ~ '^[[:alnum:]]+$';
@@ -0,0 +1,65 @@
+-- customers per age, kept by statement triggers so that every writer is
+-- counted. A transaction adds to the slot of its backend, so concurrent
+-- writes do not queue up on one row lock; an age's count is the sum of its
+-- slots
+CREATE TABLE customer_age_count(
+    age INT NOT NULL,
+    slot SMALLINT NOT NULL,
+    customers BIGINT NOT NULL,
+    PRIMARY KEY (age, slot)
+);
+
+INSERT INTO customer_age_count (age, slot, customers)
+SELECT age, 0, count(*) FROM customer GROUP BY age;
+
+CREATE FUNCTION customer_add_age_count(counted_age INT, added BIGINT) RETURNS VOID AS $$
+    INSERT INTO customer_age_count (age, slot, customers)
+    VALUES (counted_age, pg_backend_pid() % 16, added)
+    ON CONFLICT (age, slot) DO UPDATE
+    SET customers = customer_age_count.customers + EXCLUDED.customers;
+$$ LANGUAGE sql;
+
+-- each branch only names the transition tables its trigger has
+CREATE FUNCTION customer_count_ages() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM customer_add_age_count(age, count(*))
+        FROM new_customers GROUP BY age;
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM customer_add_age_count(age, -count(*))
+        FROM old_customers GROUP BY age;
+    ELSIF TG_OP = 'UPDATE' THEN
+        PERFORM customer_add_age_count(age, sum(delta))
+        FROM (
+            SELECT age, 1 AS delta FROM new_customers
+            UNION ALL
+            SELECT age, -1 AS delta FROM old_customers
+        ) changes
+        GROUP BY age
+        HAVING sum(delta) <> 0;
+    ELSE
+        DELETE FROM customer_age_count;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- a trigger with transition tables takes a single event
+CREATE TRIGGER customer_count_inserted_ages
+    AFTER INSERT ON customer
+    REFERENCING NEW TABLE AS new_customers
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_count_ages();
+
+CREATE TRIGGER customer_count_updated_ages
+    AFTER UPDATE ON customer
+    REFERENCING OLD TABLE AS old_customers NEW TABLE AS new_customers
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_count_ages();
+
+CREATE TRIGGER customer_count_deleted_ages
+    AFTER DELETE ON customer
+    REFERENCING OLD TABLE AS old_customers
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_count_ages();
+
+CREATE TRIGGER customer_count_truncated_ages
+    AFTER TRUNCATE ON customer
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_count_ages();
@@ -0,0 +1,59 @@
+-- tells every node which customers changed, so they can evict them from
+-- their caches. NOTIFY is delivered on commit, and only then; a statement
+-- sends its ids in notifications of up to 500, prefixed with the change
+-- marker version (for a listener to tell whether it missed any while
+-- reconnecting) and the time in epoch millis (to measure the lag)
+CREATE FUNCTION customer_notify_changes(ids BIGINT[]) RETURNS VOID AS $$
+DECLARE
+    header TEXT;
+    chunk INT;
+BEGIN
+    IF coalesce(array_length(ids, 1), 0) = 0 THEN
+        RETURN;
+    END IF;
+    header := (SELECT version FROM customer_change_marker) || ':'
+        || (extract(epoch FROM clock_timestamp()) * 1000)::BIGINT || ':';
+    FOR chunk IN 0 .. (array_length(ids, 1) - 1) / 500 LOOP
+        PERFORM pg_notify('customer_changes',
+            header || array_to_string(ids[chunk * 500 + 1 : chunk * 500 + 500], ','));
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- runs after customer_mark_changed (triggers fire in name order), so the
+-- version is the one of this change; each branch only names the transition
+-- tables its trigger has
+CREATE FUNCTION customer_notify_changed_rows() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' OR TG_OP = 'UPDATE' THEN
+        PERFORM customer_notify_changes(ARRAY(SELECT id FROM new_customers));
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM customer_notify_changes(ARRAY(SELECT id FROM old_customers));
+    ELSE
+        -- every customer is gone
+        PERFORM pg_notify('customer_changes',
+            (SELECT version FROM customer_change_marker) || ':'
+                || (extract(epoch FROM clock_timestamp()) * 1000)::BIGINT || ':*');
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER customer_notify_inserted
+    AFTER INSERT ON customer
+    REFERENCING NEW TABLE AS new_customers
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_notify_changed_rows();
+
+CREATE TRIGGER customer_notify_updated
+    AFTER UPDATE ON customer
+    REFERENCING NEW TABLE AS new_customers
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_notify_changed_rows();
+
+CREATE TRIGGER customer_notify_deleted
+    AFTER DELETE ON customer
+    REFERENCING OLD TABLE AS old_customers
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_notify_changed_rows();
+
+CREATE TRIGGER customer_notify_truncated
+    AFTER TRUNCATE ON customer
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_notify_changed_rows();
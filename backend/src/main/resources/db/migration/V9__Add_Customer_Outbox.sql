@@ -0,0 +1,65 @@
+-- every change to a customer, in the order the changes were committed, for
+-- the /changes stream. Rows are written by statement triggers, so by the
+-- same transaction as the change, whichever dao or client made it. The
+-- triggers run after customer_mark_changed (triggers fire in name order),
+-- whose row lock on the change marker is held until commit; ids are taken
+-- under that lock, so a reader that sees an id has seen every id below it
+-- and an offset is a safe place to resume from. TRUNCATE is not recorded,
+-- no dao truncates
+CREATE TABLE customer_outbox(
+    id BIGSERIAL PRIMARY KEY,
+    operation TEXT NOT NULL,
+    customer_id BIGINT NOT NULL,
+    -- the customer after the change, null for a delete
+    name TEXT,
+    email TEXT,
+    age INT,
+    version BIGINT,
+    updated_at TIMESTAMPTZ,
+    -- clock time under the lock, so it grows with the id
+    created_at TIMESTAMPTZ NOT NULL
+);
+
+CREATE INDEX customer_outbox_created_at_idx ON customer_outbox (created_at);
+
+-- the newest id pruned, offsets at or below it can no longer be resumed from
+CREATE TABLE customer_outbox_pruned(
+    id BOOLEAN PRIMARY KEY DEFAULT TRUE CHECK (id),
+    through BIGINT NOT NULL
+);
+
+INSERT INTO customer_outbox_pruned (through) VALUES (0);
+
+-- each branch only names the transition tables its trigger has
+CREATE FUNCTION customer_record_changes() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' OR TG_OP = 'UPDATE' THEN
+        INSERT INTO customer_outbox (operation, customer_id, name, email, age, version, updated_at, created_at)
+        SELECT CASE TG_OP WHEN 'INSERT' THEN 'CREATED' ELSE 'UPDATED' END,
+               id, name, email, age, version, updated_at, clock_timestamp()
+        FROM new_customers
+        ORDER BY id;
+    ELSE
+        INSERT INTO customer_outbox (operation, customer_id, created_at)
+        SELECT 'DELETED', id, clock_timestamp()
+        FROM old_customers
+        ORDER BY id;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER customer_outbox_inserted
+    AFTER INSERT ON customer
+    REFERENCING NEW TABLE AS new_customers
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_record_changes();
+
+CREATE TRIGGER customer_outbox_updated
+    AFTER UPDATE ON customer
+    REFERENCING NEW TABLE AS new_customers
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_record_changes();
+
+CREATE TRIGGER customer_outbox_deleted
+    AFTER DELETE ON customer
+    REFERENCING OLD TABLE AS old_customers
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_record_changes();
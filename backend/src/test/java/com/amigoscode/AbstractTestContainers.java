@@ -1,10 +1,13 @@
 package com.amigoscode;
 
 import com.github.javafaker.Faker;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
 import org.flywaydb.core.Flyway;
 import org.junit.jupiter.api.BeforeAll;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.testcontainers.containers.PostgreSQLContainer;
@@ -60,6 +63,17 @@ public abstract class AbstractTestContainers {
         return  new JdbcTemplate(getDataSource());
     }
 
+    protected static DatabaseClient getDatabaseClient() {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(
+                        postgreSQLContainer.getJdbcUrl().replaceFirst("^jdbc:", "r2dbc:"))
+                .mutate()
+                .option(ConnectionFactoryOptions.USER, postgreSQLContainer.getUsername())
+                .option(ConnectionFactoryOptions.PASSWORD, postgreSQLContainer.getPassword())
+                .build();
+
+        return DatabaseClient.create(ConnectionFactories.get(options));
+    }
+
     protected static final Faker FAKER = new Faker();
 
 }
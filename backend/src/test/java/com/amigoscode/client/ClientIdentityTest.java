@@ -0,0 +1,81 @@
+package com.amigoscode.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClientIdentityTest {
+
+    private final ClientIdentity underTest = new ClientIdentity(new ClientProperties(
+            "X-API-Key",
+            Map.of("billing", "key-billing"),
+            List.of("10.1.0.0/16", "192.168.0.7", "fd00::/8")
+    ));
+
+    @Test
+    void aConfiguredApiKeyNamesItsClient() {
+        //WHEN
+        String fromOne = underTest.of("key-billing", "203.0.113.1", null);
+        String fromAnother = underTest.of("key-billing", "203.0.113.2", null);
+
+        //THEN
+        assertThat(fromOne).isEqualTo("key:billing").isEqualTo(fromAnother);
+    }
+
+    @Test
+    void anUnknownApiKeyIsIgnored() {
+        //WHEN
+        String actual = underTest.of("made-up", "203.0.113.1", null);
+
+        //THEN
+        assertThat(actual).isEqualTo("address:203.0.113.1");
+    }
+
+    @Test
+    void forwardedForIsOnlyBelievedFromTrustedProxies() {
+        //WHEN
+        String throughProxy = underTest.of(null, "10.1.2.3", "198.51.100.9");
+        String direct = underTest.of(null, "203.0.113.1", "198.51.100.9");
+
+        //THEN
+        assertThat(throughProxy).isEqualTo("address:198.51.100.9");
+        assertThat(direct).isEqualTo("address:203.0.113.1");
+    }
+
+    @Test
+    void theClientIsTheNearestHopNoTrustedProxyWrote() {
+        //WHEN
+        // the client put 1.2.3.4 in the header itself, its proxy appended it
+        String actual = underTest.of(null, "10.1.2.3", "1.2.3.4, 198.51.100.9, 192.168.0.7");
+
+        //THEN
+        assertThat(actual).isEqualTo("address:198.51.100.9");
+    }
+
+    @Test
+    void hopsThatAreNoAddressEndTheWalk() {
+        //WHEN
+        String hostName = underTest.of(null, "10.1.2.3", "198.51.100.9, attacker.example");
+        String ipv6 = underTest.of(null, "fd00::1", "2001:db8::5");
+
+        //THEN
+        assertThat(hostName).isEqualTo("address:10.1.2.3");
+        assertThat(ipv6).isEqualTo("address:2001:db8:0:0:0:0:0:5");
+    }
+
+    @Test
+    void willThrowWhenATrustedProxyIsNoAddress() {
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> new ClientIdentity(new ClientProperties(
+                "X-API-Key", null, List.of("proxy.internal"))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ClientIdentity(new ClientProperties(
+                "X-API-Key", null, List.of("10.0.0.0/33"))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
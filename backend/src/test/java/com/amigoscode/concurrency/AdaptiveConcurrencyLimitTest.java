@@ -0,0 +1,112 @@
+package com.amigoscode.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    private final ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties(
+            true,
+            new ConcurrencyLimitProperties.Limit(20, 4, 200),
+            new ConcurrencyLimitProperties.Limit(10, 2, 50),
+            Duration.ofSeconds(1),
+            10,
+            60,
+            1.5,
+            0.2
+    );
+
+    private final AdaptiveConcurrencyLimit underTest =
+            new AdaptiveConcurrencyLimit(properties, properties.reads(), 0);
+
+    private long now;
+
+    @Test
+    void callsOverTheLimitAreRefused() {
+        //GIVEN
+        for (int i = 0; i < 20; i++) {
+            assertThat(underTest.tryAcquire()).isTrue();
+        }
+
+        //WHEN
+        boolean actual = underTest.tryAcquire();
+
+        //THEN
+        assertThat(actual).isFalse();
+        assertThat(underTest.inFlight()).isEqualTo(20);
+        assertThat(underTest.rejected()).isEqualTo(1);
+    }
+
+    @Test
+    void theLimitGrowsWhileLatencyHolds() {
+        //WHEN
+        for (int i = 0; i < 10; i++) {
+            busyWindow(200, 5 * MILLI);
+        }
+
+        //THEN
+        assertThat(underTest.limit()).isGreaterThan(20);
+    }
+
+    @Test
+    void theLimitShrinksWhenLatencyRises() {
+        //GIVEN
+        for (int i = 0; i < 10; i++) {
+            busyWindow(200, 5 * MILLI);
+        }
+        int before = underTest.limit();
+
+        //WHEN
+        for (int i = 0; i < 10; i++) {
+            busyWindow(200, 50 * MILLI);
+        }
+
+        //THEN
+        assertThat(underTest.limit()).isLessThan(before);
+        assertThat(underTest.limit()).isGreaterThanOrEqualTo(4);
+    }
+
+    @Test
+    void anUnusedLimitDoesNotGrow() {
+        //WHEN
+        for (int i = 0; i < 10; i++) {
+            busyWindow(2, 5 * MILLI);
+        }
+
+        //THEN
+        assertThat(underTest.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void boundsMustBeOrdered() {
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> new AdaptiveConcurrencyLimit(
+                properties, new ConcurrencyLimitProperties.Limit(1, 4, 200), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // up to concurrency calls in flight together, each taking latency, over
+    // one window
+    private void busyWindow(int concurrency, long latency) {
+        now += WINDOW;
+        for (int round = 0; round < 10; round++) {
+            int acquired = 0;
+            while (acquired < concurrency && underTest.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                underTest.release(now - latency, now);
+            }
+        }
+    }
+}
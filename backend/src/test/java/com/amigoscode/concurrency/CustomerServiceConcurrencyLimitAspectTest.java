@@ -0,0 +1,79 @@
+package com.amigoscode.concurrency;
+
+import com.amigoscode.customer.CustomerDao;
+import com.amigoscode.customer.CustomerService;
+import com.amigoscode.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CustomerServiceConcurrencyLimitAspectTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CustomerDao customerDao = mock(CustomerDao.class);
+
+    private CustomerService customerService;
+
+    @BeforeEach
+    void setUp() {
+        ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties(
+                true,
+                new ConcurrencyLimitProperties.Limit(2, 1, 10),
+                new ConcurrencyLimitProperties.Limit(1, 1, 10),
+                Duration.ofSeconds(1),
+                10,
+                60,
+                1.5,
+                0.2
+        );
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new CustomerService(customerDao));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new CustomerServiceConcurrencyLimitAspect(properties, meterRegistry));
+        customerService = proxyFactory.getProxy();
+    }
+
+    @Test
+    void writesOverTheirLimitAreRefusedWhileReadsGoOn() throws Exception {
+        //GIVEN
+        CountDownLatch deleting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(customerDao.existsCustomerById(1L)).thenAnswer(invocation -> {
+            deleting.countDown();
+            release.await();
+            return true;
+        });
+        when(customerDao.selectCustomerById(2L)).thenReturn(Optional.empty());
+        CompletableFuture<Void> slowDelete = CompletableFuture.runAsync(() -> customerService.deleteCustomer(1L));
+        deleting.await();
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerService.deleteCustomer(3L))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThatThrownBy(() -> customerService.getCustomer(2L))
+                .hasMessageContaining("not found");
+        release.countDown();
+        slowDelete.get();
+
+        assertThat(meterRegistry.get("customer.concurrency.rejected").tag("type", "write").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("customer.concurrency.rejected").tag("type", "read").functionCounter().count())
+                .isZero();
+        assertThat(meterRegistry.get("customer.concurrency.limit").tag("type", "read").gauge().value())
+                .isEqualTo(2);
+        assertThat(meterRegistry.get("customer.concurrency.in.flight").tag("type", "write").gauge().value())
+                .isZero();
+    }
+}
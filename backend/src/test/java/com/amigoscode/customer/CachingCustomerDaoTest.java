@@ -0,0 +1,165 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.PreconditionFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingCustomerDaoTest {
+
+    @Mock
+    private CustomerDao customerDao;
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private CachingCustomerDao underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CachingCustomerDao(
+                customerDao,
+                new CustomerCacheProperties(100, Duration.ofMinutes(10), Duration.ofSeconds(5)),
+                nanos::get
+        );
+    }
+
+    @Test
+    void repeatedReadsAreServedFromCache() {
+        //GIVEN
+        Customer customer = new Customer(1L, "Alex", "alex@gmail.com", 19);
+        when(customerDao.selectCustomerById(1L)).thenReturn(Optional.of(customer));
+
+        //WHEN
+        underTest.selectCustomerById(1L);
+        Optional<Customer> actual = underTest.selectCustomerById(1L);
+
+        //THEN
+        assertThat(actual).contains(customer);
+        verify(customerDao, times(1)).selectCustomerById(1L);
+        assertThat(underTest.stats().hitCount()).isEqualTo(1);
+        assertThat(underTest.stats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void notFoundIsCachedOnlyBriefly() {
+        //GIVEN
+        when(customerDao.selectCustomerById(1L)).thenReturn(Optional.empty());
+        underTest.selectCustomerById(1L);
+        underTest.selectCustomerById(1L);
+
+        //WHEN
+        advance(Duration.ofSeconds(6));
+        underTest.selectCustomerById(1L);
+
+        //THEN
+        verify(customerDao, times(2)).selectCustomerById(1L);
+    }
+
+    @Test
+    void foundCustomerExpiresAfterTimeToLive() {
+        //GIVEN
+        when(customerDao.selectCustomerById(1L))
+                .thenReturn(Optional.of(new Customer(1L, "Alex", "alex@gmail.com", 19)));
+        underTest.selectCustomerById(1L);
+        advance(Duration.ofMinutes(9));
+        underTest.selectCustomerById(1L);
+
+        //WHEN
+        advance(Duration.ofMinutes(2));
+        underTest.selectCustomerById(1L);
+
+        //THEN
+        verify(customerDao, times(2)).selectCustomerById(1L);
+    }
+
+    @Test
+    void insertCustomerForgetsCachedMissForNewId() {
+        //GIVEN
+        Customer customer = new Customer(1L, "Alex", "alex@gmail.com", 19);
+        when(customerDao.selectCustomerById(1L))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(customer));
+        underTest.selectCustomerById(1L);
+        when(customerDao.insertCustomer(any())).thenReturn(1L);
+
+        //WHEN
+        underTest.insertCustomer(new Customer("Alex", "alex@gmail.com", 19));
+
+        //THEN
+        assertThat(underTest.selectCustomerById(1L)).contains(customer);
+    }
+
+    @Test
+    void insertCustomersForgetsCachedMissesOnly() {
+        //GIVEN
+        when(customerDao.selectCustomerById(1L))
+                .thenReturn(Optional.of(new Customer(1L, "Alex", "alex@gmail.com", 19)));
+        when(customerDao.selectCustomerById(2L)).thenReturn(Optional.empty());
+        underTest.selectCustomerById(1L);
+        underTest.selectCustomerById(2L);
+
+        //WHEN
+        underTest.insertCustomers(List.of(new Customer("Julie", "julie@gmail.com", 20)));
+        underTest.selectCustomerById(1L);
+        underTest.selectCustomerById(2L);
+
+        //THEN
+        verify(customerDao, times(1)).selectCustomerById(1L);
+        verify(customerDao, times(2)).selectCustomerById(2L);
+    }
+
+    @Test
+    void updateCustomerInvalidatesEvenWhenItFails() {
+        //GIVEN
+        when(customerDao.selectCustomerById(1L))
+                .thenReturn(Optional.of(new Customer(1L, "Alex", "alex@gmail.com", 19)));
+        underTest.selectCustomerById(1L);
+        Customer update = new Customer();
+        update.setId(1L);
+        update.setAge(30);
+        update.setVersion(0L);
+        when(customerDao.updateCustomer(update))
+                .thenThrow(new PreconditionFailedException("customer with id [1] has been modified"));
+
+        //WHEN
+        assertThatThrownBy(() -> underTest.updateCustomer(update))
+                .isInstanceOf(PreconditionFailedException.class);
+        underTest.selectCustomerById(1L);
+
+        //THEN
+        verify(customerDao, times(2)).selectCustomerById(1L);
+    }
+
+    @Test
+    void deleteCustomerByIdInvalidates() {
+        //GIVEN
+        when(customerDao.selectCustomerById(1L))
+                .thenReturn(Optional.of(new Customer(1L, "Alex", "alex@gmail.com", 19)))
+                .thenReturn(Optional.empty());
+        underTest.selectCustomerById(1L);
+
+        //WHEN
+        underTest.deleteCustomerById(1L);
+
+        //THEN
+        assertThat(underTest.selectCustomerById(1L)).isEmpty();
+        assertThat(underTest.existsCustomerById(1L)).isFalse();
+        verify(customerDao, never()).existsCustomerById(1L);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,59 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class CustomerAgeCountsTest {
+
+    private final CustomerAgeCounts underTest = new CustomerAgeCounts();
+
+    @Test
+    void reconcileCorrectsDriftedAges() {
+        //GIVEN
+        underTest.added(20);
+        underTest.added(20);
+        underTest.added(30);
+        underTest.changed(30, 31);
+
+        //WHEN
+        // the customers are 20, 31 and 40
+        int actual = underTest.reconcile(ages -> List.of(20, 31, 40).forEach(ages::accept));
+
+        //THEN
+        assertThat(actual).isEqualTo(2);
+        assertThat(underTest.snapshot()).containsExactly(entry(20, 1L), entry(31, 1L), entry(40, 1L));
+    }
+
+    @Test
+    void reconcileSkipsWhileAWriteIsInFlight() {
+        //GIVEN
+        underTest.writeStarted();
+        underTest.added(20);
+
+        //WHEN
+        int actual = underTest.reconcile(ages -> {
+        });
+
+        //THEN
+        assertThat(actual).isEqualTo(-1);
+        assertThat(underTest.snapshot()).containsExactly(entry(20, 1L));
+    }
+
+    @Test
+    void reconcileSkipsWhenAWriteStartsDuringTheScan() {
+        //WHEN
+        int actual = underTest.reconcile(ages -> {
+            underTest.writeStarted();
+            underTest.added(20);
+            underTest.writeFinished();
+        });
+
+        //THEN
+        assertThat(actual).isEqualTo(-1);
+        assertThat(underTest.snapshot()).containsExactly(entry(20, 1L));
+    }
+}
@@ -0,0 +1,116 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// write throughput of durable (group fsynced) appends by writer count, and
+// the time a restart of the list store spends replaying the log per million
+// records; run with mvn test -Pbenchmark
+class CustomerAppendLogBenchmark {
+
+    private static final int[] WRITERS = {1, 8, 64};
+
+    private static final int WRITES = 20_000;
+
+    private static final int[] ROWS = Arrays.stream(
+                    System.getProperty("benchmark.rows", "1000000").split(","))
+            .mapToInt(Integer::parseInt)
+            .toArray();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void durableWriteThroughput() throws Exception {
+        for (int writers : WRITERS) {
+            Path logDirectory = directory.resolve("writers-" + writers);
+            ExecutorService executor = Executors.newFixedThreadPool(writers);
+            try (CustomerAppendLog log = open(logDirectory)) {
+                long start = System.nanoTime();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int writer = 0; writer < writers; writer++) {
+                    int first = writer;
+                    futures.add(executor.submit(() -> {
+                        for (int i = first; i < WRITES; i += writers) {
+                            log.awaitDurable(log.appendUpsert(customer(i)));
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                long nanos = System.nanoTime() - start;
+
+                System.out.printf("%3d writers  %,9.0f durable writes/s  %,6.1f writes per fsync%n",
+                        writers, WRITES / (nanos / 1e9), (double) WRITES / log.syncs());
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void recoveryTime() {
+        for (int rows : ROWS) {
+            Path logDirectory = directory.resolve("rows-" + rows);
+            try (CustomerAppendLog log = open(logDirectory)) {
+                long position = 0;
+                for (int i = 0; i < rows; i++) {
+                    position = log.appendUpsert(customer(i));
+                }
+                log.awaitDurable(position);
+            }
+            report("log", rows, logDirectory);
+
+            try (CustomerAppendLog log = open(logDirectory)) {
+                log.compact();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            report("snapshot", rows, logDirectory);
+        }
+    }
+
+    private static void report(String source, int rows, Path logDirectory) {
+        long start = System.nanoTime();
+        CustomerListDataAccessService store = new CustomerListDataAccessService(properties(logDirectory));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        try {
+            assertThat(store.existsPersonWithEmail("customer-" + (rows - 1) + "@example.com")).isTrue();
+        } finally {
+            store.destroy();
+        }
+        System.out.printf("replayed %,11d rows from %-8s in %,7d ms  %,7d ms per million%n",
+                rows, source, millis, millis * 1_000_000L / rows);
+    }
+
+    private static CustomerAppendLog open(Path logDirectory) {
+        return CustomerAppendLog.open(properties(logDirectory), customer -> { }, id -> { });
+    }
+
+    private static CustomerLogProperties properties(Path logDirectory) {
+        return new CustomerLogProperties(
+                true, logDirectory, DataSize.ofMegabytes(64), 1, Duration.ofHours(1));
+    }
+
+    private static Customer customer(long id) {
+        Customer customer = new Customer(id + 1, "Customer " + id, "customer-" + id + "@example.com", 18 + (int) (id % 80));
+        customer.setVersion(0L);
+        customer.setUpdatedAt(Instant.now());
+        return customer;
+    }
+}
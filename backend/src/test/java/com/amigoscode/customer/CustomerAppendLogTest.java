@@ -0,0 +1,225 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerAppendLogTest {
+
+    @TempDir
+    private Path directory;
+
+    private final Map<Long, Customer> replayed = new TreeMap<>();
+
+    @Test
+    void replaysUpsertsAndDeletesInOrder() {
+        //GIVEN
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+            assertThat(log.created()).isTrue();
+            log.appendUpsert(customer(1, "alex@gmail.com", 0));
+            log.appendUpsert(customer(2, "jamila@gmail.com", 0));
+            log.appendUpsert(customer(1, "alexandre@gmail.com", 1));
+            log.awaitDurable(log.appendDelete(2));
+        }
+
+        //WHEN
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+
+            //THEN
+            assertThat(log.created()).isFalse();
+            assertThat(replayed).containsOnlyKeys(1L);
+            Customer actual = replayed.get(1L);
+            assertThat(actual.getEmail()).isEqualTo("alexandre@gmail.com");
+            assertThat(actual.getVersion()).isEqualTo(1L);
+            assertThat(actual.getName()).isEqualTo("Zoë 1");
+            assertThat(actual.getAge()).isEqualTo(21);
+            assertThat(actual.getUpdatedAt()).isEqualTo(Instant.ofEpochSecond(1_700_000_000, 123_456_789));
+        }
+    }
+
+    @Test
+    void appendsCarryOnAfterARestart() {
+        //GIVEN
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+            log.awaitDurable(log.appendUpsert(customer(1, "alex@gmail.com", 0)));
+        }
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+            log.awaitDurable(log.appendUpsert(customer(2, "jamila@gmail.com", 0)));
+        }
+        replayed.clear();
+
+        //WHEN
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+
+            //THEN
+            assertThat(replayed).containsOnlyKeys(1L, 2L);
+        }
+    }
+
+    @Test
+    void tornTailIsDiscarded() throws IOException {
+        //GIVEN
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+            log.appendUpsert(customer(1, "alex@gmail.com", 0));
+            log.awaitDurable(log.appendUpsert(customer(2, "jamila@gmail.com", 0)));
+        }
+        // a record whose checksum never made it to disk
+        corrupt(segments().get(0), offsetAfterRecords(segments().get(0)));
+
+        //WHEN
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+            log.awaitDurable(log.appendUpsert(customer(3, "ali@gmail.com", 0)));
+        }
+        replayed.clear();
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+
+            //THEN
+            assertThat(replayed).containsOnlyKeys(1L, 2L, 3L);
+        }
+    }
+
+    @Test
+    void corruptClosedSegmentStopsTheReplay() throws IOException {
+        //GIVEN
+        try (CustomerAppendLog log = open(DataSize.ofKilobytes(1))) {
+            for (int i = 1; i <= 50; i++) {
+                log.appendUpsert(customer(i, "customer-" + i + "@gmail.com", 0));
+            }
+        }
+        assertThat(segments()).hasSizeGreaterThan(1);
+        corrupt(segments().get(0), 0);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> open(DataSize.ofKilobytes(1)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("is corrupt at offset 0");
+    }
+
+    @Test
+    void compactionFoldsClosedSegmentsIntoASnapshot() throws IOException {
+        //GIVEN
+        try (CustomerAppendLog log = open(DataSize.ofKilobytes(1))) {
+            for (int i = 1; i <= 50; i++) {
+                log.appendUpsert(customer(i, "customer-" + i + "@gmail.com", 0));
+            }
+            for (int i = 1; i <= 50; i += 2) {
+                log.appendDelete(i);
+            }
+            log.awaitDurable(log.appendUpsert(customer(2, "two@gmail.com", 1)));
+            int segmentsBefore = segments().size();
+
+            //WHEN
+            log.compact();
+
+            //THEN
+            assertThat(segments()).hasSize(1);
+            assertThat(segmentsBefore).isGreaterThan(1);
+            assertThat(files("snapshot-")).hasSize(1);
+
+            // and once more on top of the first snapshot
+            for (int i = 51; i <= 100; i++) {
+                log.appendUpsert(customer(i, "customer-" + i + "@gmail.com", 0));
+            }
+            log.awaitDurable(log.appendDelete(4));
+            log.compact();
+            assertThat(files("snapshot-")).hasSize(1);
+        }
+        replayed.clear();
+
+        try (CustomerAppendLog log = open(DataSize.ofKilobytes(1))) {
+            assertThat(replayed).hasSize(24 + 50);
+            assertThat(replayed.get(2L).getEmail()).isEqualTo("two@gmail.com");
+            assertThat(replayed).doesNotContainKeys(1L, 3L, 4L);
+        }
+    }
+
+    @Test
+    void concurrentWritersShareFsyncs() throws Exception {
+        //GIVEN
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+
+            //WHEN
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 1; i <= 1_000; i++) {
+                long id = i;
+                futures.add(executor.submit(() ->
+                        log.awaitDurable(log.appendUpsert(customer(id, "customer-" + id + "@gmail.com", 0)))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            //THEN
+            assertThat(log.syncs()).isLessThan(1_000);
+        } finally {
+            executor.shutdown();
+        }
+        replayed.clear();
+        try (CustomerAppendLog log = open(DataSize.ofMegabytes(1))) {
+            assertThat(replayed).hasSize(1_000);
+        }
+    }
+
+    private CustomerAppendLog open(DataSize segmentSize) {
+        return CustomerAppendLog.open(
+                new CustomerLogProperties(true, directory, segmentSize, 1, Duration.ofHours(1)),
+                customer -> replayed.put(customer.getId(), customer),
+                replayed::remove
+        );
+    }
+
+    private List<Path> segments() throws IOException {
+        return files("segment-");
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+
+    private static int offsetAfterRecords(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int offset = 0;
+        while (buffer.getInt(offset) != 0) {
+            offset += 2 * Integer.BYTES + buffer.getInt(offset);
+        }
+        return offset;
+    }
+
+    private static void corrupt(Path segment, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(12).putInt(20).putInt(0xBADC0DE).put((byte) 1).flip(), offset);
+        }
+    }
+
+    private static Customer customer(long id, String email, long version) {
+        Customer customer = new Customer(id, "Zoë " + id, email, 20 + (int) id);
+        customer.setVersion(version);
+        customer.setUpdatedAt(Instant.ofEpochSecond(1_700_000_000, 123_456_789));
+        return customer;
+    }
+}
@@ -0,0 +1,127 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerChangeFeedTest {
+
+    private final CustomerListDataAccessService customerDao = new CustomerListDataAccessService();
+    private CustomerChangeFeed underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerChangeFeed(
+                customerDao,
+                new CustomerChangesProperties(
+                        2, Duration.ofMillis(20), Duration.ofMillis(200), 1,
+                        Duration.ofDays(7), Duration.ofMinutes(1), 1000, 10000
+                ),
+                new SimpleMeterRegistry()
+        );
+        underTest.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.destroy();
+    }
+
+    @Test
+    void resumesAfterTheOffsetInBatchesAndFollowsNewChanges() throws InterruptedException {
+        //GIVEN
+        for (int i = 0; i < 4; i++) {
+            customerDao.insertCustomer(new Customer("Ali", "ali-" + i + "@gmail.com", 20));
+        }
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        //WHEN
+        underTest.subscribe(1L, emitter);
+
+        //THEN
+        assertThat(emitter.next()).isEqualTo(new Event("3", CustomerChangeFeed.CHANGES_EVENT, List.of(2L, 3L)));
+        assertThat(emitter.next()).isEqualTo(new Event("4", CustomerChangeFeed.CHANGES_EVENT, List.of(4L)));
+
+        customerDao.deleteCustomerById(1L);
+        assertThat(emitter.next()).isEqualTo(new Event("5", CustomerChangeFeed.CHANGES_EVENT, List.of(5L)));
+    }
+
+    @Test
+    void resetsAConsumerWhoseOffsetWasPruned() throws InterruptedException {
+        //GIVEN
+        for (int i = 0; i < 3; i++) {
+            customerDao.insertCustomer(new Customer("Ali", "ali-" + i + "@gmail.com", 20));
+        }
+        customerDao.pruneChanges(Instant.now().plusSeconds(1), 2);
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        //WHEN
+        underTest.subscribe(1L, emitter);
+
+        //THEN
+        assertThat(emitter.next()).isEqualTo(new Event("3", CustomerChangeFeed.RESET_EVENT, List.of()));
+    }
+
+    @Test
+    void turnsAwayStreamsOverTheLimit() {
+        //GIVEN
+        underTest.subscribe(null, new RecordingEmitter());
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.subscribe(null, new RecordingEmitter()))
+                .isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    // the offsets of the changes an event carries
+    private record Event(String id, String name, List<Long> offsets) {
+    }
+
+    // keeps what would have been written, heartbeats left out
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String id = null;
+            String name = null;
+            List<Long> offsets = List.of();
+            for (DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof String text) {
+                    for (String line : text.split("\n")) {
+                        if (line.startsWith("id:")) {
+                            id = line.substring("id:".length());
+                        } else if (line.startsWith("event:")) {
+                            name = line.substring("event:".length());
+                        }
+                    }
+                } else if (data.getData() instanceof List<?> changes) {
+                    offsets = changes.stream().map(change -> ((CustomerChange) change).offset()).toList();
+                }
+            }
+            if (name != null) {
+                events.add(new Event(id, name, offsets));
+            }
+        }
+
+        Event next() throws InterruptedException {
+            Event event = events.poll(5, TimeUnit.SECONDS);
+            assertThat(event).as("an event within 5s").isNotNull();
+            return event;
+        }
+    }
+}
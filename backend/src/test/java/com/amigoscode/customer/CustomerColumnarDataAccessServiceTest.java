@@ -0,0 +1,284 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
+
+class CustomerColumnarDataAccessServiceTest {
+
+    private CustomerColumnarDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerColumnarDataAccessService(
+                new CustomerColumnarProperties(false, 16, DataSize.ofBytes(256))
+        );
+    }
+
+    @Test
+    void insertCustomerRoundTripsEveryField() {
+        //GIVEN
+        Customer customer = new Customer("Zoë Ångström", "zoë@gmail.com", 20);
+
+        //WHEN
+        Long id = underTest.insertCustomer(customer);
+
+        //THEN
+        assertThat(id).isEqualTo(1L);
+        assertThat(customer.getId()).isEqualTo(1L);
+        assertThat(underTest.selectCustomerById(id)).hasValueSatisfying(c -> {
+            assertThat(c.getId()).isEqualTo(1L);
+            assertThat(c.getName()).isEqualTo("Zoë Ångström");
+            assertThat(c.getEmail()).isEqualTo("zoë@gmail.com");
+            assertThat(c.getAge()).isEqualTo(20);
+            assertThat(c.getVersion()).isZero();
+            assertThat(c.getUpdatedAt()).isNotNull();
+        });
+        assertThat(underTest.existsPersonWithEmail("zoë@gmail.com")).isTrue();
+        assertThat(underTest.existsPersonWithEmail("zoe@gmail.com")).isFalse();
+    }
+
+    @Test
+    void insertCustomerRejectsTakenEmail() {
+        //GIVEN
+        underTest.insertCustomer(new Customer("Alex", "alex@gmail.com", 20));
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.insertCustomer(new Customer("Alex", "alex@gmail.com", 30)))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("email already taken");
+    }
+
+    @Test
+    void insertCustomersSkipsTakenEmails() {
+        //GIVEN
+        underTest.insertCustomer(new Customer("Alex", "alex@gmail.com", 30));
+        List<Customer> customers = List.of(
+                new Customer("Ali", "ali@gmail.com", 20),
+                new Customer("Ali", "ali@gmail.com", 21),
+                new Customer("Alex", "alex@gmail.com", 31)
+        );
+
+        //WHEN
+        Set<String> actual = underTest.insertCustomers(customers);
+
+        //THEN
+        assertThat(actual).containsExactly("ali@gmail.com");
+        assertThat(underTest.selectCustomerById(customers.get(0).getId()))
+                .hasValueSatisfying(customer -> assertThat(customer.getAge()).isEqualTo(20));
+        assertThat(underTest.selectAllCustomers()).hasSize(2);
+    }
+
+    @Test
+    void ageCountsFollowWrites() {
+        //GIVEN
+        underTest.insertCustomers(List.of(
+                new Customer("Ali", "ali@gmail.com", 20),
+                new Customer("Alex", "alex@gmail.com", 20),
+                new Customer("Bob", "bob@gmail.com", 40)
+        ));
+
+        //WHEN
+        underTest.updateCustomer(new Customer(2L, null, null, 41));
+        underTest.deleteCustomerById(3L);
+
+        //THEN
+        assertThat(underTest.selectAgeCounts()).containsExactly(entry(20, 1L), entry(41, 1L));
+        assertThat(underTest.reconcileAgeCounts()).isZero();
+    }
+
+    @Test
+    void changesAreRecordedInTheOrderTheyWereMade() {
+        //GIVEN
+        underTest.insertCustomers(List.of(
+                new Customer("Ali", "ali@gmail.com", 20),
+                new Customer("Bob", "bob@gmail.com", 40)
+        ));
+
+        //WHEN
+        underTest.updateCustomer(new Customer(2L, "Bobby", null, null));
+        underTest.deleteCustomerById(1L);
+
+        //THEN
+        assertThat(underTest.selectChanges(1, 10))
+                .extracting(CustomerChange::type, CustomerChange::customerId)
+                .containsExactly(
+                        tuple(CustomerChange.Type.CREATED, 2L),
+                        tuple(CustomerChange.Type.UPDATED, 2L),
+                        tuple(CustomerChange.Type.DELETED, 1L)
+                );
+        assertThat(underTest.selectChanges(2, 1).get(0).customer().getName()).isEqualTo("Bobby");
+        assertThat(underTest.selectChanges(3, 10).get(0).customer()).isNull();
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        //WHEN
+        underTest.insertCustomers(customers(10_000));
+
+        //THEN
+        assertThat(underTest.selectAllCustomers()).hasSize(10_000);
+        assertThat(underTest.selectCustomerById(9_999L))
+                .hasValueSatisfying(c -> assertThat(c.getEmail()).isEqualTo("customer-9998@gmail.com"));
+        assertThat(underTest.selectExistingEmails(List.of("customer-0@gmail.com", "customer-10000@gmail.com")))
+                .containsExactly("customer-0@gmail.com");
+    }
+
+    @Test
+    void searchCustomersPagesByAgeDescending() {
+        //GIVEN
+        underTest.insertCustomers(IntStream.range(0, 6)
+                .mapToObj(i -> new Customer("Ali", "ali-" + i + "@gmail.com", 20 + i % 3))
+                .toList());
+        underTest.deleteCustomerById(3L);
+
+        //WHEN
+        List<Customer> first = underTest.searchCustomers(new CustomerSearch(
+                null, null, 21, null, CustomerSearch.Sort.AGE, true, null, 2));
+        List<Customer> next = underTest.searchCustomers(new CustomerSearch(
+                null, null, 21, null, CustomerSearch.Sort.AGE, true, CustomerSearchCursor.of(first.get(1)), 2));
+        List<Customer> byEmail = underTest.searchCustomers(new CustomerSearch(
+                null, "ALI-4@gmail.com", null, null, CustomerSearch.Sort.ID, false, null, 10));
+
+        //THEN
+        assertThat(first).extracting(Customer::getId).containsExactly(6L, 5L);
+        assertThat(next).extracting(Customer::getId).containsExactly(2L);
+        assertThat(byEmail).extracting(Customer::getId).containsExactly(5L);
+    }
+
+    @Test
+    void selectCustomersSkipsDeletedRows() {
+        //GIVEN
+        underTest.insertCustomers(customers(10));
+        underTest.deleteCustomerById(4L);
+
+        //WHEN
+        List<Customer> actual = underTest.selectCustomers(2L, 3);
+
+        //THEN
+        assertThat(actual).extracting(Customer::getId).containsExactly(3L, 5L, 6L);
+        assertThat(underTest.existsCustomerById(4L)).isFalse();
+        assertThat(underTest.existsPersonWithEmail("customer-3@gmail.com")).isFalse();
+    }
+
+    @Test
+    void deletedEmailCanBeTakenAgain() {
+        //GIVEN
+        underTest.insertCustomer(new Customer("Alex", "alex@gmail.com", 20));
+        underTest.deleteCustomerById(1L);
+
+        //WHEN
+        Long id = underTest.insertCustomer(new Customer("Alex", "alex@gmail.com", 21));
+
+        //THEN
+        assertThat(id).isEqualTo(2L);
+        assertThat(underTest.existsPersonWithEmail("alex@gmail.com")).isTrue();
+    }
+
+    @Test
+    void updateCustomerRewritesTextAndIndex() {
+        //GIVEN
+        underTest.insertCustomers(customers(3));
+
+        //WHEN
+        Customer actual = underTest.updateCustomer(new Customer(2L, "Alexandre", "alex@gmail.com", 40));
+
+        //THEN
+        assertThat(actual.getName()).isEqualTo("Alexandre");
+        assertThat(actual.getEmail()).isEqualTo("alex@gmail.com");
+        assertThat(actual.getAge()).isEqualTo(40);
+        assertThat(actual.getVersion()).isEqualTo(1L);
+        assertThat(underTest.existsPersonWithEmail("alex@gmail.com")).isTrue();
+        assertThat(underTest.existsPersonWithEmail("customer-1@gmail.com")).isFalse();
+        assertThat(underTest.selectCustomerById(3L))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Customer 2"));
+    }
+
+    @Test
+    void updateCustomerRejectsInvalidChanges() {
+        //GIVEN
+        underTest.insertCustomers(customers(2));
+        Customer stale = new Customer(1L, "Alexandre", null, null);
+        stale.setVersion(3L);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.updateCustomer(new Customer(1L, null, "customer-1@gmail.com", null)))
+                .isInstanceOf(DuplicateResourceException.class);
+        assertThatThrownBy(() -> underTest.updateCustomer(new Customer(1L, "Customer 0", null, null)))
+                .isInstanceOf(NoDataChangeException.class);
+        assertThatThrownBy(() -> underTest.updateCustomer(stale))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThatThrownBy(() -> underTest.updateCustomer(new Customer(9L, "Ghost", null, null)))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThat(underTest.selectCustomerById(1L))
+                .hasValueSatisfying(c -> assertThat(c.getVersion()).isZero());
+    }
+
+    @Test
+    void repeatedUpdatesCompactTheArena() {
+        //GIVEN
+        underTest.insertCustomers(customers(5));
+
+        //WHEN
+        for (int i = 0; i < 1_000; i++) {
+            underTest.updateCustomer(new Customer(1L, "Name " + i, null, null));
+        }
+
+        //THEN
+        // 256 byte chunks: without compaction the dead names alone need dozens
+        assertThat(underTest.footprintBytes()).isLessThan(4_096);
+        assertThat(underTest.selectAllCustomers()).extracting(Customer::getName)
+                .containsExactly("Name 999", "Customer 1", "Customer 2", "Customer 3", "Customer 4");
+    }
+
+    @Test
+    void storesTextOffHeap() {
+        //GIVEN
+        underTest = new CustomerColumnarDataAccessService(
+                new CustomerColumnarProperties(true, 16, DataSize.ofKilobytes(1))
+        );
+
+        //WHEN
+        underTest.insertCustomers(customers(100));
+
+        //THEN
+        assertThat(underTest.selectCustomerById(100L))
+                .hasValueSatisfying(c -> assertThat(c.getEmail()).isEqualTo("customer-99@gmail.com"));
+        assertThat(underTest.existsPersonWithEmail("customer-42@gmail.com")).isTrue();
+    }
+
+    @Test
+    void streamAllCustomersCrossesBatches() {
+        //GIVEN
+        underTest.insertCustomers(customers(2_500));
+        List<Long> ids = new ArrayList<>();
+
+        //WHEN
+        underTest.streamAllCustomers(customer -> ids.add(customer.getId()));
+
+        //THEN
+        assertThat(ids).containsExactlyElementsOf(IntStream.rangeClosed(1, 2_500).mapToObj(Long::valueOf).toList());
+    }
+
+    private static List<Customer> customers(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Customer("Customer " + i, "customer-" + i + "@gmail.com", 20 + i % 50))
+                .toList();
+    }
+}
@@ -0,0 +1,48 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.PreconditionFailedException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerETagsTest {
+
+    @Test
+    void withoutIfMatchTheUpdateIsUnconditional() {
+        //WHEN
+        //THEN
+        assertThat(CustomerETags.expectedVersions(null)).isEmpty();
+        assertThat(CustomerETags.expectedVersions(" * ")).isEmpty();
+    }
+
+    @Test
+    void everyListedTagIsAnExpectedVersion() {
+        //WHEN
+        List<Long> actual = CustomerETags.expectedVersions("\"1\", \"2\",\"3\"");
+
+        //THEN
+        assertThat(actual).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void weakTagsAndForeignTagsMatchNothing() {
+        //WHEN
+        List<Long> actual = CustomerETags.expectedVersions("W/\"1\", \"customers-7\", \"2\"");
+
+        //THEN
+        assertThat(actual).containsExactly(2L);
+    }
+
+    @Test
+    void willThrowWhenNoTagCanMatch() {
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> CustomerETags.expectedVersions("W/\"1\""))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThatThrownBy(() -> CustomerETags.expectedVersions("1"))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+}
@@ -0,0 +1,126 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// fuzzy name search latency on a table of benchmark.rows (default 2 million)
+// random first and last name pairs, next to the LIKE '%x%' table scan it
+// replaces; run with mvn test -Pbenchmark
+class CustomerFuzzySearchBenchmark extends AbstractTestContainers {
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 2_000_000);
+
+    private static final int WARMUP = 20;
+
+    private static final int ITERATIONS = 200;
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private static final CustomerJDBCDataAccessService underTest =
+            new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper());
+
+    @BeforeAll
+    static void insertCustomers() {
+        Set<String> firstNames = new TreeSet<>();
+        Set<String> lastNames = new TreeSet<>();
+        IntStream.range(0, 50_000).forEach(i -> {
+            firstNames.add(FAKER.name().firstName());
+            lastNames.add(FAKER.name().lastName());
+        });
+
+        long start = System.nanoTime();
+        jdbcTemplate.update("""
+                INSERT INTO customer (name, email, age)
+                SELECT f[1 + floor(random() * cardinality(f))::int] || ' ' || l[1 + floor(random() * cardinality(l))::int],
+                       'fuzzy-' || g || '@example.com',
+                       16 + g % 80
+                FROM (SELECT CAST(? AS text[]) AS f, CAST(? AS text[]) AS l) names, generate_series(1, ?) g
+                """, firstNames.toArray(String[]::new), lastNames.toArray(String[]::new), ROWS);
+        jdbcTemplate.execute("VACUUM ANALYZE customer");
+        System.out.printf("inserted %,d customers (%,d first and %,d last names) in %,d s%n",
+                ROWS, firstNames.size(), lastNames.size(),
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+    }
+
+    @Test
+    void fuzzySearchLatency() {
+        // a word of five letters or more, to misspell and cut short
+        List<String> names = jdbcTemplate.queryForList(
+                        "SELECT name FROM customer TABLESAMPLE SYSTEM (1) LIMIT 10000", String.class)
+                .stream()
+                .filter(name -> longestWord(name).length() >= 5)
+                .limit(WARMUP + ITERATIONS)
+                .toList();
+        assertThat(names).hasSize(WARMUP + ITERATIONS);
+
+        report("whole word", names, name -> longestWord(name));
+        report("partial", names, name -> longestWord(name).substring(0, 4));
+        report("misspelled", names, name -> swap(longestWord(name)));
+
+        // no index covers lower(name), and the misspelled word matches no row
+        long[] scans = measure(names, name -> () -> jdbcTemplate.queryForList(
+                "SELECT id FROM customer WHERE lower(name) LIKE ? LIMIT 20",
+                Long.class, "%" + swap(longestWord(name)) + "%"), 5);
+        System.out.printf("%-12s p50 %,8.2f ms  p99 %,8.2f ms%n",
+                "like scan", scans[scans.length / 2] / 1e6, scans[scans.length * 99 / 100] / 1e6);
+    }
+
+    private static void report(String kind, List<String> names, Function<String, String> search) {
+        int[] found = {0};
+        long[] latencies = measure(names, name -> () -> {
+            List<CustomerMatch> matches = underTest.fuzzySearchCustomers(search.apply(name), 20);
+            // a name sharing the word is as good a hit as the sampled one
+            if (matches.stream().anyMatch(match -> match.customer().getName().toLowerCase(Locale.ROOT)
+                    .contains(longestWord(name)))) {
+                found[0]++;
+            }
+            return matches;
+        }, ITERATIONS);
+        System.out.printf("%-12s p50 %,8.2f ms  p99 %,8.2f ms  %3d%% found the searched word%n",
+                kind, latencies[latencies.length / 2] / 1e6, latencies[latencies.length * 99 / 100] / 1e6,
+                found[0] * 100 / (WARMUP + ITERATIONS));
+    }
+
+    // the first names are warmup, the latencies come back sorted
+    private static long[] measure(List<String> names, Function<String, Supplier<?>> query, int iterations) {
+        for (int i = 0; i < Math.min(WARMUP, iterations); i++) {
+            query.apply(names.get(i)).get();
+        }
+        long[] latencies = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            Supplier<?> run = query.apply(names.get(WARMUP + i));
+            long start = System.nanoTime();
+            run.get();
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static String longestWord(String name) {
+        return FuzzyNameMatcher.words(name).stream()
+                .max(Comparator.comparingInt(String::length))
+                .orElseThrow();
+    }
+
+    // two letters in the middle swapped
+    private static String swap(String word) {
+        int i = word.length() / 2 - 1;
+        return word.substring(0, i) + word.charAt(i + 1) + word.charAt(i) + word.substring(i + 2);
+    }
+}
@@ -0,0 +1,115 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.Cache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class CustomerInvalidationListenerTest extends AbstractTestContainers {
+
+    private static final String APPLICATION_NAME = "customer-invalidation-test";
+
+    private final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Cache secondLevelCache = mock(Cache.class);
+    private CachingCustomerDao customerCache;
+    private CustomerInvalidationListener underTest;
+
+    @BeforeEach
+    void setUp() {
+        customerCache = new CachingCustomerDao(
+                new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper()),
+                new CustomerCacheProperties(100, Duration.ofMinutes(10), Duration.ofMinutes(10)),
+                meterRegistry
+        );
+        underTest = new CustomerInvalidationListener(
+                new SimpleDriverDataSource(
+                        new org.postgresql.Driver(),
+                        withApplicationName(postgreSQLContainer.getJdbcUrl()),
+                        postgreSQLContainer.getUsername(),
+                        postgreSQLContainer.getPassword()
+                ),
+                customerCache,
+                secondLevelCache,
+                new CustomerInvalidationProperties(true, Duration.ofSeconds(1), Duration.ofMillis(200)),
+                meterRegistry
+        );
+        underTest.afterPropertiesSet();
+        await(underTest::isConnected);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        underTest.destroy();
+    }
+
+    @Test
+    void evictsCustomersChangedByAnotherNode() {
+        //GIVEN
+        Long id = insertCustomer("Alex");
+        assertThat(customerCache.selectCustomerById(id)).hasValueSatisfying(c ->
+                assertThat(c.getName()).isEqualTo("Alex"));
+
+        //WHEN
+        // another node's write, the cache in front of this one never sees it
+        jdbcTemplate.update("UPDATE customer SET name = 'Alexander' WHERE id = ?", id);
+
+        //THEN
+        await(() -> customerCache.selectCustomerById(id).orElseThrow().getName().equals("Alexander"));
+        verify(secondLevelCache, atLeastOnce()).evictEntityData(Customer.class, id.intValue());
+        assertThat(meterRegistry.get("customer.cache.invalidation.lag").timer().count()).isPositive();
+    }
+
+    @Test
+    void evictsEverythingWhenChangesWereMissedWhileReconnecting() {
+        //GIVEN
+        Long id = insertCustomer("Jamila");
+        customerCache.selectCustomerById(id);
+        jdbcTemplate.queryForList(
+                "SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE application_name = ?", APPLICATION_NAME);
+        await(() -> !underTest.isConnected());
+
+        //WHEN
+        jdbcTemplate.update("UPDATE customer SET name = 'Jamila Ahmed' WHERE id = ?", id);
+
+        //THEN
+        await(underTest::isConnected);
+        assertThat(customerCache.selectCustomerById(id).orElseThrow().getName()).isEqualTo("Jamila Ahmed");
+        assertThat(meterRegistry.get("customer.cache.invalidation.missed").counter().count()).isEqualTo(1);
+    }
+
+    private Long insertCustomer(String name) {
+        return new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper())
+                .insertCustomer(new Customer(name, UUID.randomUUID() + "@gmail.com", 20));
+    }
+
+    // tells the listening connection apart in pg_stat_activity
+    private static String withApplicationName(String url) {
+        return url + (url.contains("?") ? "&" : "?") + "ApplicationName=" + APPLICATION_NAME;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("waited 10s").isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
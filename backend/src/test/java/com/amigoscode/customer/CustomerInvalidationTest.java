@@ -0,0 +1,38 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerInvalidationTest {
+
+    @Test
+    void parsesChangedIds() {
+        //WHEN
+        CustomerInvalidation actual = CustomerInvalidation.parse("42:1700000000000:1,2,30");
+
+        //THEN
+        assertThat(actual).isEqualTo(new CustomerInvalidation(42, 1700000000000L, false, List.of(1L, 2L, 30L)));
+    }
+
+    @Test
+    void parsesATruncate() {
+        //WHEN
+        CustomerInvalidation actual = CustomerInvalidation.parse("7:1700000000000:*");
+
+        //THEN
+        assertThat(actual.all()).isTrue();
+        assertThat(actual.customerIds()).isEmpty();
+    }
+
+    @Test
+    void rejectsAnUnknownPayload() {
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> CustomerInvalidation.parse("1,2,3"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -1,14 +1,30 @@
 package com.amigoscode.customer;
 
 import com.amigoscode.AbstractTestContainers;
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 
 class CustomerJDBCDataAccessServiceTest extends AbstractTestContainers {
 
@@ -40,6 +56,95 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainers {
         assertThat(customers).isNotEmpty();
     }
 
+    @Test
+    void selectCustomersReturnsNextPageAfterCursor() {
+        //GIVEN
+        for (int i = 0; i < 3; i++) {
+            customerJDBCDataAccessService.insertCustomer(new Customer(
+                    FAKER.name().fullName(),
+                    FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                    20
+            ));
+        }
+        List<Customer> firstPage = customerJDBCDataAccessService.selectCustomers(0L, 2);
+        Long cursor = firstPage.get(firstPage.size() - 1).getId();
+
+        //WHEN
+        List<Customer> nextPage = customerJDBCDataAccessService.selectCustomers(cursor, 2);
+
+        //THEN
+        assertThat(firstPage).hasSize(2);
+        assertThat(firstPage).extracting(Customer::getId).isSorted();
+        assertThat(nextPage).isNotEmpty();
+        assertThat(nextPage).allSatisfy(c -> assertThat(c.getId()).isGreaterThan(cursor));
+    }
+
+    @Test
+    void searchCustomersPagesThroughEqualNames() {
+        //GIVEN
+        String name = "Search " + UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            customerJDBCDataAccessService.insertCustomer(new Customer(
+                    name,
+                    FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                    20 + i
+            ));
+        }
+        CustomerSearch firstPage = new CustomerSearch(
+                name.substring(0, 20), null, 21, null, CustomerSearch.Sort.NAME, false, null, 1);
+
+        //WHEN
+        List<Customer> first = customerJDBCDataAccessService.searchCustomers(firstPage);
+        List<Customer> next = customerJDBCDataAccessService.searchCustomers(new CustomerSearch(
+                name.substring(0, 20), null, 21, null, CustomerSearch.Sort.NAME, false,
+                CustomerSearchCursor.of(first.get(0)), 10));
+
+        //THEN
+        assertThat(first).extracting(Customer::getAge).containsExactly(21);
+        assertThat(next).extracting(Customer::getAge).containsExactly(22);
+    }
+
+    @Test
+    void fuzzySearchCustomersFindsMisspelledNames() {
+        //GIVEN
+        String lastName = FAKER.letterify("??????????");
+        Customer customer = new Customer(
+                "Jamila " + lastName,
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        customerJDBCDataAccessService.insertCustomer(customer);
+        String misspelled = lastName.substring(0, 4) + lastName.charAt(5) + lastName.charAt(4) + lastName.substring(6);
+
+        //WHEN
+        List<CustomerMatch> actual = customerJDBCDataAccessService.fuzzySearchCustomers(misspelled, 20);
+
+        //THEN
+        assertThat(actual).extracting(match -> match.customer().getName())
+                .contains(customer.getName());
+    }
+
+    @Test
+    void streamAllCustomers() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        );
+        customerJDBCDataAccessService.insertCustomer(customer);
+        List<Customer> streamed = new ArrayList<>();
+
+        //WHEN
+        customerJDBCDataAccessService.streamAllCustomers(streamed::add);
+
+        //THEN
+        assertThat(streamed)
+                .hasSameSizeAs(customerJDBCDataAccessService.selectAllCustomers())
+                .anyMatch(c -> c.getEmail().equals(email));
+    }
+
     @Test
     void selectCustomerById() {
         //GIVEN
@@ -109,6 +214,108 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainers {
                 .orElseThrow());
     }
 
+    @Test
+    void insertCustomers() {
+        //GIVEN
+        List<Customer> customers = IntStream.range(0, 5)
+                .mapToObj(i -> new Customer(
+                        FAKER.name().fullName(),
+                        FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                        20 + i
+                ))
+                .toList();
+        List<String> emails = customers.stream().map(Customer::getEmail).toList();
+
+        //WHEN
+        Set<String> actual = customerJDBCDataAccessService.insertCustomers(customers);
+
+        //THEN
+        assertThat(actual).containsExactlyInAnyOrderElementsOf(emails);
+        assertThat(customerJDBCDataAccessService.selectExistingEmails(emails))
+                .containsExactlyInAnyOrderElementsOf(emails);
+        assertThat(customerJDBCDataAccessService.selectCustomerById(customers.get(0).getId()))
+                .hasValueSatisfying(customer -> assertThat(customer.getEmail()).isEqualTo(emails.get(0)));
+    }
+
+    @Test
+    void insertCustomersSkipsEmailsTakenSinceTheCheck() {
+        //GIVEN
+        String taken = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        String free = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        // registered by someone else after the caller checked the emails
+        customerJDBCDataAccessService.insertCustomer(new Customer(FAKER.name().fullName(), taken, 30));
+
+        //WHEN
+        Set<String> actual = customerJDBCDataAccessService.insertCustomers(List.of(
+                new Customer(FAKER.name().fullName(), taken, 20),
+                new Customer(FAKER.name().fullName(), free, 21)
+        ));
+
+        //THEN
+        assertThat(actual).containsExactly(free);
+        assertThat(customerJDBCDataAccessService.selectExistingEmails(List.of(taken, free)))
+                .containsExactlyInAnyOrder(taken, free);
+    }
+
+    @Test
+    void selectExistingEmailsOnlyReturnsTakenEmails() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        ));
+        String freeEmail = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+
+        //WHEN
+        var actual = customerJDBCDataAccessService.selectExistingEmails(List.of(email, freeEmail));
+
+        //THEN
+        assertThat(actual).containsExactly(email);
+    }
+
+    @Test
+    void insertCustomerReturnsGeneratedId() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        );
+
+        //WHEN
+        Long id = customerJDBCDataAccessService.insertCustomer(customer);
+
+        //THEN
+        assertThat(customerJDBCDataAccessService.selectCustomerById(id))
+                .isPresent()
+                .hasValueSatisfying(c -> assertThat(c.getEmail()).isEqualTo(email));
+    }
+
+    @Test
+    void willThrowWhenInsertingCustomerWithTakenEmail() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        ));
+        Customer duplicate = new Customer(
+                FAKER.name().fullName(),
+                email,
+                30
+        );
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerJDBCDataAccessService.insertCustomer(duplicate))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("email already taken");
+    }
+
     @Test
     void existsPersonWithEmail() {
         //GIVEN
@@ -345,6 +552,224 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainers {
                 .hasValue(updatedCustomer);
     }
 
+    @Test
+    void updateCustomerReturnsUpdatedRow() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        ));
+        Customer update = new Customer(id, null, null, 21);
+
+        //WHEN
+        Customer actual = customerJDBCDataAccessService.updateCustomer(update);
+
+        //THEN
+        assertThat(actual.getId()).isEqualTo(id);
+        assertThat(actual.getEmail()).isEqualTo(email);
+        assertThat(actual.getAge()).isEqualTo(21);
+    }
+
+    @Test
+    void updateCustomerWithMatchingVersionBumpsVersion() {
+        //GIVEN
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        ));
+        Long version = customerJDBCDataAccessService.selectCustomerById(id).orElseThrow().getVersion();
+        Customer update = new Customer(id, null, null, 21);
+        update.setVersion(version);
+
+        //WHEN
+        Customer actual = customerJDBCDataAccessService.updateCustomer(update);
+
+        //THEN
+        assertThat(actual.getAge()).isEqualTo(21);
+        assertThat(actual.getVersion()).isEqualTo(version + 1);
+    }
+
+    @Test
+    void willThrowWhenUpdatedVersionIsStale() {
+        //GIVEN
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        ));
+        customerJDBCDataAccessService.updateCustomer(new Customer(id, null, null, 21));
+        Customer staleUpdate = new Customer(id, null, null, 22);
+        staleUpdate.setVersion(0L);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerJDBCDataAccessService.updateCustomer(staleUpdate))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessage("customer with id [%s] has been modified".formatted(id));
+        assertThat(customerJDBCDataAccessService.selectCustomerById(id))
+                .hasValueSatisfying(c -> assertThat(c.getAge()).isEqualTo(21));
+    }
+
+    @Test
+    void willThrowWhenVersionIsBumpedWhileTheUpdateWaits() throws Exception {
+        //GIVEN
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        ));
+        Long version = customerJDBCDataAccessService.selectCustomerById(id).orElseThrow().getVersion();
+        Customer update = new Customer(id, null, null, 22);
+        update.setVersion(version);
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        TransactionTemplate concurrentWrite = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+
+        //WHEN
+        CompletableFuture<Customer> waiting = concurrentWrite.execute(status -> {
+            jdbcTemplate.update("UPDATE customer SET name = 'concurrent', version = version + 1 WHERE id = ?", id);
+            CompletableFuture<Customer> future = CompletableFuture.supplyAsync(
+                    () -> customerJDBCDataAccessService.updateCustomer(update));
+            // commit only once the update is blocked on the row lock
+            while (!future.isDone() && jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_locks WHERE NOT granted", Integer.class) == 0) {
+                Thread.onSpinWait();
+            }
+            return future;
+        });
+
+        //THEN
+        assertThatThrownBy(waiting::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(PreconditionFailedException.class);
+        assertThat(customerJDBCDataAccessService.selectCustomerById(id))
+                .hasValueSatisfying(c -> assertThat(c.getAge()).isEqualTo(20));
+    }
+
+    @Test
+    void updateWaitingOnAConcurrentWriteAppliesOnTopOfIt() {
+        //GIVEN
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        ));
+        Long version = customerJDBCDataAccessService.selectCustomerById(id).orElseThrow().getVersion();
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        TransactionTemplate concurrentWrite = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+
+        //WHEN
+        CompletableFuture<Customer> waiting = concurrentWrite.execute(status -> {
+            jdbcTemplate.update("UPDATE customer SET name = 'concurrent', version = version + 1 WHERE id = ?", id);
+            CompletableFuture<Customer> future = CompletableFuture.supplyAsync(
+                    () -> customerJDBCDataAccessService.updateCustomer(new Customer(id, null, null, 22)));
+            while (!future.isDone() && jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_locks WHERE NOT granted", Integer.class) == 0) {
+                Thread.onSpinWait();
+            }
+            return future;
+        });
+
+        //THEN
+        assertThat(waiting.join())
+                .returns("concurrent", Customer::getName)
+                .returns(22, Customer::getAge)
+                .returns(version + 2, Customer::getVersion);
+    }
+
+    @Test
+    void writesAdvanceChangeMarker() {
+        //GIVEN
+        CustomerChangeMarker before = customerJDBCDataAccessService.selectChangeMarker();
+
+        //WHEN
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        ));
+        customerJDBCDataAccessService.deleteCustomerById(id);
+
+        //THEN
+        CustomerChangeMarker after = customerJDBCDataAccessService.selectChangeMarker();
+        assertThat(after.version()).isGreaterThanOrEqualTo(before.version() + 2);
+        assertThat(after.changedAt()).isAfterOrEqualTo(before.changedAt());
+    }
+
+    @Test
+    void updateCustomerRefreshesUpdatedAt() {
+        //GIVEN
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        ));
+        Customer inserted = customerJDBCDataAccessService.selectCustomerById(id).orElseThrow();
+
+        //WHEN
+        Customer actual = customerJDBCDataAccessService.updateCustomer(new Customer(id, null, null, 21));
+
+        //THEN
+        assertThat(actual.getUpdatedAt()).isAfterOrEqualTo(inserted.getUpdatedAt());
+    }
+
+    @Test
+    void willThrowWhenUpdatedValuesEqualStoredValues() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        ));
+        Customer update = new Customer(id, null, email, 20);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerJDBCDataAccessService.updateCustomer(update))
+                .isInstanceOf(NoDataChangeException.class)
+                .hasMessage("no data changes founded");
+    }
+
+    @Test
+    void willThrowWhenUpdatingCustomerThatDoesNotExist() {
+        //GIVEN
+        Customer update = new Customer(-1L, "Alex", null, null);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerJDBCDataAccessService.updateCustomer(update))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id [-1] not found");
+    }
+
+    @Test
+    void willThrowWhenUpdatingToTakenEmail() {
+        //GIVEN
+        String takenEmail = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                takenEmail,
+                20
+        ));
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        ));
+        Customer update = new Customer(id, null, takenEmail, null);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerJDBCDataAccessService.updateCustomer(update))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("email already taken");
+    }
+
     @Test
     void willNotUpdateCustomerWhenNothingChange() {
         //GIVEN
@@ -367,7 +792,8 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainers {
 
 
         //WHEN
-        customerJDBCDataAccessService.updateCustomer(updatedCustomer);
+        assertThatThrownBy(() -> customerJDBCDataAccessService.updateCustomer(updatedCustomer))
+                .isInstanceOf(NoDataChangeException.class);
 
         //THEN
         assertThat(customerJDBCDataAccessService.selectCustomerById(id))
@@ -378,4 +804,170 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainers {
                     assertThat(c.getAge()).isEqualTo(customer.getAge());
                 });
     }
-}
\ No newline at end of file
+
+    @Test
+    void ageCountsFollowWrites() {
+        //GIVEN
+        // an age no other test uses
+        int age = 10_000 + FAKER.number().numberBetween(0, 10_000) * 2;
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                age
+        ));
+        customerJDBCDataAccessService.insertCustomers(List.of(
+                new Customer(FAKER.name().fullName(), FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), age),
+                new Customer(FAKER.name().fullName(), FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), age)
+        ));
+
+        //WHEN
+        customerJDBCDataAccessService.updateCustomer(new Customer(id, null, null, age + 1));
+        Long deleted = customerJDBCDataAccessService.selectAllCustomers().stream()
+                .filter(c -> c.getAge() == age)
+                .map(Customer::getId)
+                .findFirst()
+                .orElseThrow();
+        customerJDBCDataAccessService.deleteCustomerById(deleted);
+
+        //THEN
+        assertThat(customerJDBCDataAccessService.selectAgeCounts())
+                .containsEntry(age, 1L)
+                .containsEntry(age + 1, 1L);
+    }
+
+    @Test
+    void reconcileAgeCountsCorrectsDrift() {
+        //GIVEN
+        int age = 10_000 + FAKER.number().numberBetween(0, 10_000) * 2;
+        customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                age
+        ));
+        getJdbcTemplate().update(
+                "UPDATE customer_age_count SET customers = customers + 5 WHERE age = ?", age);
+
+        //WHEN
+        int actual = customerJDBCDataAccessService.reconcileAgeCounts();
+
+        //THEN
+        assertThat(actual).isPositive();
+        assertThat(customerJDBCDataAccessService.selectAgeCounts()).containsEntry(age, 1L);
+    }
+
+    @Test
+    void reconcileAgeCountsSkipsTheRoundWhileAnotherNodeReconciles() {
+        //GIVEN
+        int age = 10_000 + FAKER.number().numberBetween(0, 10_000) * 2 + 1;
+        customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                age
+        ));
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        jdbcTemplate.update("UPDATE customer_age_count SET customers = customers + 5 WHERE age = ?", age);
+        TransactionTemplate otherNode = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+
+        //WHEN
+        int actual = otherNode.execute(status -> {
+            jdbcTemplate.queryForObject(
+                    "SELECT pg_advisory_xact_lock(hashtext('customer_age_count_reconcile'))", Object.class);
+            return CompletableFuture.supplyAsync(customerJDBCDataAccessService::reconcileAgeCounts).join();
+        });
+
+        //THEN
+        assertThat(actual).isEqualTo(-1);
+        assertThat(customerJDBCDataAccessService.selectAgeCounts()).containsEntry(age, 6L);
+    }
+
+    @Test
+    void changesAreRecordedWithTheirWrites() {
+        //GIVEN
+        customerJDBCDataAccessService.sequenceChanges(1000);
+        long before = customerJDBCDataAccessService.selectChangeOffsets().latest();
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Long id = customerJDBCDataAccessService.insertCustomer(new Customer(FAKER.name().fullName(), email, 20));
+
+        //WHEN
+        customerJDBCDataAccessService.updateCustomer(new Customer(id, null, null, 21));
+        customerJDBCDataAccessService.deleteCustomerById(id);
+        // rolled back with the batch, so never recorded
+        assertThatThrownBy(() -> customerJDBCDataAccessService.insertCustomers(List.of(
+                new Customer(FAKER.name().fullName(), FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), 20),
+                new Customer(null, email + "-nameless", 20)
+        )));
+
+        //THEN
+        customerJDBCDataAccessService.sequenceChanges(100);
+        List<CustomerChange> actual = customerJDBCDataAccessService.selectChanges(before, 100);
+        assertThat(actual)
+                .extracting(CustomerChange::type, CustomerChange::customerId)
+                .containsExactly(
+                        tuple(CustomerChange.Type.CREATED, id),
+                        tuple(CustomerChange.Type.UPDATED, id),
+                        tuple(CustomerChange.Type.DELETED, id)
+                );
+        assertThat(actual.get(1).customer().getAge()).isEqualTo(21);
+        assertThat(actual.get(1).customer().getVersion()).isEqualTo(1L);
+        assertThat(actual.get(2).customer()).isNull();
+        assertThat(customerJDBCDataAccessService.selectChangeOffsets().latest())
+                .isEqualTo(actual.get(2).offset());
+    }
+
+    @Test
+    void changesAreNumberedInCommitOrderWithoutWritersWaiting() throws Exception {
+        //GIVEN
+        Long first = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(), FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), 20));
+        Long second = customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(), FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), 20));
+        customerJDBCDataAccessService.sequenceChanges(100);
+        long before = customerJDBCDataAccessService.selectChangeOffsets().latest();
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        TransactionTemplate openWrite = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+
+        //WHEN
+        openWrite.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE customer SET age = 30 WHERE id = ?", first);
+            // other connections, neither waits for the open transaction
+            CompletableFuture.runAsync(() -> {
+                customerJDBCDataAccessService.updateCustomer(new Customer(second, null, null, 31));
+                customerJDBCDataAccessService.sequenceChanges(100);
+            }).orTimeout(5, TimeUnit.SECONDS).join();
+        });
+        customerJDBCDataAccessService.sequenceChanges(100);
+
+        //THEN
+        assertThat(customerJDBCDataAccessService.selectChanges(before, 100))
+                .extracting(CustomerChange::offset, CustomerChange::customerId)
+                .containsExactly(
+                        tuple(before + 1, second),
+                        tuple(before + 2, first)
+                );
+    }
+
+    @Test
+    void pruneChangesMovesTheWatermark() {
+        //GIVEN
+        customerJDBCDataAccessService.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        ));
+        customerJDBCDataAccessService.sequenceChanges(100);
+        long latest = customerJDBCDataAccessService.selectChangeOffsets().latest();
+
+        //WHEN
+        int pruned;
+        do {
+            pruned = customerJDBCDataAccessService.pruneChanges(Instant.now().plusSeconds(60), 1000);
+        } while (pruned > 0);
+
+        //THEN
+        assertThat(customerJDBCDataAccessService.selectChanges(0, 10)).isEmpty();
+        assertThat(customerJDBCDataAccessService.selectChangeOffsets())
+                .isEqualTo(new CustomerChangeOffsets(latest, latest));
+    }
+}
@@ -1,12 +1,37 @@
 package com.amigoscode.customer;
 
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class CustomerJPADataAccessServiceTest {
 
@@ -16,11 +41,23 @@ class CustomerJPADataAccessServiceTest {
 
     @Mock
     private CustomerRepository customerRepository;
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private SessionFactory sessionFactory;
+    @Mock
+    private Cache secondLevelCache;
 
     @BeforeEach
     void setUp() {
         autoCloseable = MockitoAnnotations.openMocks(this);
-        customerJPADataAccessService = new CustomerJPADataAccessService(customerRepository);
+        when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+        when(sessionFactory.getCache()).thenReturn(secondLevelCache);
+        when(entityManagerFactory.createEntityManager()).thenReturn(entityManager);
+        customerJPADataAccessService = new CustomerJPADataAccessService(
+                customerRepository, entityManagerFactory);
     }
 
     @AfterEach
@@ -39,6 +76,43 @@ class CustomerJPADataAccessServiceTest {
         verify(customerRepository).findAll();
     }
 
+    @Test
+    void selectCustomers() {
+        //GIVEN
+        Long afterId = 10L;
+        int limit = 5;
+
+        //WHEN
+        customerJPADataAccessService.selectCustomers(afterId, limit);
+
+        //THEN
+        verify(customerRepository).findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.ofSize(limit));
+    }
+
+    @Test
+    void streamAllCustomersWalksEveryPage() {
+        //GIVEN
+        List<Customer> firstPage = LongStream.rangeClosed(1, 500)
+                .mapToObj(id -> new Customer(id, "Ali", "ali" + id + "@gmail.com", 12))
+                .toList();
+        List<Customer> lastPage = List.of(new Customer(501L, "Ali", "ali501@gmail.com", 12));
+        when(customerRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.ofSize(500)))
+                .thenReturn(firstPage);
+        when(customerRepository.findByIdGreaterThanOrderByIdAsc(500L, PageRequest.ofSize(500)))
+                .thenReturn(lastPage);
+        List<Customer> streamed = new ArrayList<>();
+
+        //WHEN
+        customerJPADataAccessService.streamAllCustomers(streamed::add);
+
+        //THEN
+        assertThat(streamed).hasSize(501);
+        assertThat(streamed).last().isEqualTo(lastPage.get(0));
+        // nothing stays in the persistence context once it was streamed
+        verify(entityManager, times(501)).detach(any(Customer.class));
+        verify(entityManager).detach(lastPage.get(0));
+    }
+
     @Test
     void selectCustomerById() {
         //GIVEN
@@ -55,13 +129,66 @@ class CustomerJPADataAccessServiceTest {
     void insertCustomer() {
         //GIVEN
         Customer customer = new Customer(
-                1L, "Ali", "ali@gmail.com", 12);
+                "Ali", "ali@gmail.com", 12);
+        when(customerRepository.insertIfEmailAbsent("Ali", "ali@gmail.com", 12))
+                .thenReturn(Optional.of(1L));
 
         //WHEN
-        customerJPADataAccessService.insertCustomer(customer);
+        Long actual = customerJPADataAccessService.insertCustomer(customer);
 
         //THEN
-        verify(customerRepository).save(customer);
+        assertThat(actual).isEqualTo(1L);
+        assertThat(customer.getId()).isEqualTo(1L);
+        verify(secondLevelCache).evictQueryRegion(CustomerRepository.EMAIL_EXISTS_CACHE_REGION);
+    }
+
+    @Test
+    void willThrowWhenInsertCustomerEmailIsTaken() {
+        //GIVEN
+        Customer customer = new Customer(
+                "Ali", "ali@gmail.com", 12);
+        when(customerRepository.insertIfEmailAbsent("Ali", "ali@gmail.com", 12))
+                .thenReturn(Optional.empty());
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerJPADataAccessService.insertCustomer(customer))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("email already taken");
+    }
+
+    @Test
+    void insertCustomers() {
+        //GIVEN
+        List<Customer> customers = List.of(
+                new Customer("Ali", "ali@gmail.com", 12),
+                new Customer("Jamila", "jamila@gmail.com", 19)
+        );
+
+        when(customerRepository.insertIfEmailsAbsent(
+                new String[]{"Ali", "Jamila"},
+                new String[]{"ali@gmail.com", "jamila@gmail.com"},
+                new Integer[]{12, 19}
+        )).thenReturn(List.of("jamila@gmail.com"));
+
+        //WHEN
+        Set<String> actual = customerJPADataAccessService.insertCustomers(customers);
+
+        //THEN
+        assertThat(actual).containsExactly("jamila@gmail.com");
+        verify(secondLevelCache).evictQueryRegion(CustomerRepository.EMAIL_EXISTS_CACHE_REGION);
+    }
+
+    @Test
+    void selectExistingEmails() {
+        //GIVEN
+        List<String> emails = List.of("ali@gmail.com", "jamila@gmail.com");
+
+        //WHEN
+        customerJPADataAccessService.selectExistingEmails(emails);
+
+        //THEN
+        verify(customerRepository).findEmailsIn(emails);
     }
 
     @Test
@@ -97,15 +224,119 @@ class CustomerJPADataAccessServiceTest {
         verify(customerRepository).existsCustomerById(id);
     }
 
+    @Test
+    void selectChangeMarker() {
+        //GIVEN
+        CustomerRepository.ChangeMarkerView view = mock(CustomerRepository.ChangeMarkerView.class);
+        when(view.getVersion()).thenReturn(4L);
+        when(view.getChangedAtMillis()).thenReturn(1_685_614_530_000L);
+        when(customerRepository.findChangeMarker()).thenReturn(view);
+
+        //WHEN
+        CustomerChangeMarker actual = customerJPADataAccessService.selectChangeMarker();
+
+        //THEN
+        assertThat(actual).isEqualTo(new CustomerChangeMarker(
+                4L, Instant.ofEpochMilli(1_685_614_530_000L)));
+    }
+
     @Test
     void updateCustomer() {
         //GIVEN
         Customer customer = new Customer(
                 1L, "Ali", "ali@gmail.com", 12);
+        when(customerRepository.findById(1)).thenReturn(Optional.of(customer));
+        Customer update = new Customer();
+        update.setId(1L);
+        update.setAge(13);
+
+        //WHEN
+        customerJPADataAccessService.updateCustomer(update);
+
+        //THEN
+        verify(customerRepository).saveAndFlush(new Customer(1L, "Ali", "ali@gmail.com", 13));
+    }
+
+    @Test
+    void willThrowWhenUpdatedVersionIsStale() {
+        //GIVEN
+        Customer customer = new Customer(
+                1L, "Ali", "ali@gmail.com", 12);
+        customer.setVersion(3L);
+        when(customerRepository.findById(1)).thenReturn(Optional.of(customer));
+        Customer update = new Customer(1L, "Jamila", null, null);
+        update.setVersion(2L);
+
+        //WHEN
+        assertThatThrownBy(() -> customerJPADataAccessService.updateCustomer(update))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessage("customer with id [1] has been modified");
+
+        //THEN
+        verify(customerRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void willThrowWhenConcurrentUpdateWinsTheRace() {
+        //GIVEN
+        Customer customer = new Customer(
+                1L, "Ali", "ali@gmail.com", 12);
+        customer.setVersion(3L);
+        when(customerRepository.findById(1)).thenReturn(Optional.of(customer));
+        when(customerRepository.saveAndFlush(any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Customer.class, 1L));
+        Customer update = new Customer(1L, "Jamila", null, null);
+        update.setVersion(3L);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerJPADataAccessService.updateCustomer(update))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessage("customer with id [1] has been modified");
+    }
+
+    @Test
+    void willThrowWhenUpdatedCustomerDoesNotExist() {
+        //GIVEN
+        when(customerRepository.findById(1)).thenReturn(Optional.empty());
+        Customer update = new Customer(1L, "Ali", null, null);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerJPADataAccessService.updateCustomer(update))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id [1] not found");
+    }
+
+    @Test
+    void willThrowWhenUpdateChangesNothing() {
+        //GIVEN
+        when(customerRepository.findById(1)).thenReturn(Optional.of(new Customer(
+                1L, "Ali", "ali@gmail.com", 12)));
+        Customer update = new Customer(1L, "Ali", "ali@gmail.com", null);
+
         //WHEN
-        customerJPADataAccessService.updateCustomer(customer);
+        assertThatThrownBy(() -> customerJPADataAccessService.updateCustomer(update))
+                .isInstanceOf(NoDataChangeException.class)
+                .hasMessage("no data changes founded");
+
+        //THEN
+        verify(customerRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void willThrowWhenUpdatedEmailIsTaken() {
+        //GIVEN
+        when(customerRepository.findById(1)).thenReturn(Optional.of(new Customer(
+                1L, "Ali", "ali@gmail.com", 12)));
+        when(customerRepository.saveAndFlush(any()))
+                .thenThrow(new DataIntegrityViolationException("customer_email_unique"));
+        Customer update = new Customer(1L, null, "jamila@gmail.com", null);
 
+        //WHEN
         //THEN
-        verify(customerRepository).save(customer);
+        assertThatThrownBy(() -> customerJPADataAccessService.updateCustomer(update))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("email already taken");
     }
 }
\ No newline at end of file
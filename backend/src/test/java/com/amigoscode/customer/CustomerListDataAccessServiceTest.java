@@ -0,0 +1,317 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
+
+class CustomerListDataAccessServiceTest {
+
+    private CustomerListDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerListDataAccessService();
+    }
+
+    @Test
+    void insertCustomerAssignsTheNextId() {
+        //GIVEN
+        Customer customer = new Customer("Ali", "ali@gmail.com", 20);
+
+        //WHEN
+        Long id = underTest.insertCustomer(customer);
+
+        //THEN
+        assertThat(id).isEqualTo(3L);
+        assertThat(customer.getId()).isEqualTo(3L);
+        assertThat(underTest.selectCustomerById(id)).hasValueSatisfying(c -> {
+            assertThat(c.getEmail()).isEqualTo("ali@gmail.com");
+            assertThat(c.getVersion()).isZero();
+        });
+        assertThat(underTest.existsPersonWithEmail("ali@gmail.com")).isTrue();
+        assertThat(underTest.existsCustomerById(id)).isTrue();
+    }
+
+    @Test
+    void insertCustomerRejectsTakenEmail() {
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.insertCustomer(new Customer("Alex", "@alex.com", 30)))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("email already taken");
+        assertThat(underTest.selectAllCustomers()).hasSize(2);
+    }
+
+    @Test
+    void insertCustomersSkipsTakenEmails() {
+        //GIVEN
+        List<Customer> customers = List.of(
+                new Customer("Ali", "ali@gmail.com", 20),
+                new Customer("Alex", "@alex.com", 30),
+                new Customer("Ali", "ali@gmail.com", 21)
+        );
+
+        //WHEN
+        Set<String> actual = underTest.insertCustomers(customers);
+
+        //THEN
+        assertThat(actual).containsExactly("ali@gmail.com");
+        assertThat(customers.get(0).getId()).isNotNull();
+        assertThat(underTest.selectCustomerById(customers.get(0).getId()))
+                .hasValueSatisfying(customer -> assertThat(customer.getAge()).isEqualTo(20));
+        assertThat(underTest.selectAllCustomers()).hasSize(3);
+    }
+
+    @Test
+    void selectCustomersPagesInIdOrder() {
+        //GIVEN
+        underTest.insertCustomers(IntStream.range(0, 10)
+                .mapToObj(i -> new Customer("Ali", "ali-" + i + "@gmail.com", 20))
+                .toList());
+        underTest.deleteCustomerById(4L);
+
+        //WHEN
+        List<Customer> actual = underTest.selectCustomers(2L, 3);
+
+        //THEN
+        assertThat(actual).extracting(Customer::getId).containsExactly(3L, 5L, 6L);
+    }
+
+    @Test
+    void searchCustomersFiltersAndPagesByName() {
+        //GIVEN
+        underTest.insertCustomers(List.of(
+                new Customer("Alma", "alma@gmail.com", 30),
+                new Customer("Ali", "ali@gmail.com", 20),
+                new Customer("Ali", "ali2@gmail.com", 40),
+                new Customer("Bob", "bob@gmail.com", 30)
+        ));
+        CustomerSearch firstPage = new CustomerSearch(
+                "Al", null, 16, null, CustomerSearch.Sort.NAME, false, null, 2);
+
+        //WHEN
+        List<Customer> first = underTest.searchCustomers(firstPage);
+        List<Customer> next = underTest.searchCustomers(new CustomerSearch(
+                "Al", null, 16, null, CustomerSearch.Sort.NAME, false,
+                CustomerSearchCursor.of(first.get(1)), 2));
+
+        //THEN
+        // the seeded Alex is 15
+        assertThat(first).extracting(Customer::getEmail)
+                .containsExactly("ali@gmail.com", "ali2@gmail.com");
+        assertThat(next).extracting(Customer::getEmail)
+                .containsExactly("alma@gmail.com");
+    }
+
+    @Test
+    void fuzzySearchCustomersRanksWholeWordsFirst() {
+        //GIVEN
+        underTest.insertCustomers(List.of(
+                new Customer("Jamila Ahmed", "jamila.ahmed@gmail.com", 30),
+                new Customer("Jamilah Smith", "jamilah@gmail.com", 20),
+                new Customer("Bob", "bob@gmail.com", 30)
+        ));
+
+        //WHEN
+        List<CustomerMatch> actual = underTest.fuzzySearchCustomers("jamila", 10);
+
+        //THEN
+        // the seeded Jamila and Jamila Ahmed match the whole word
+        assertThat(actual).extracting(match -> match.customer().getName())
+                .containsExactly("Jamila", "Jamila Ahmed", "Jamilah Smith");
+        assertThat(actual.get(0).score()).isEqualTo(2.0);
+    }
+
+    @Test
+    void ageCountsFollowWrites() {
+        //GIVEN
+        Long id = underTest.insertCustomer(new Customer("Bob", "bob@gmail.com", 30));
+
+        //WHEN
+        underTest.updateCustomer(new Customer(id, null, null, 31));
+        underTest.deleteCustomerById(1L);
+
+        //THEN
+        // Jamila, seeded at 14, and Bob
+        assertThat(underTest.selectAgeCounts()).containsExactly(entry(14, 1L), entry(31, 1L));
+        assertThat(underTest.reconcileAgeCounts()).isZero();
+    }
+
+    @Test
+    void changesAreRecordedInTheOrderTheyWereMade() {
+        //GIVEN
+        Long id = underTest.insertCustomer(new Customer("Bob", "bob@gmail.com", 30));
+
+        //WHEN
+        underTest.updateCustomer(new Customer(id, null, null, 31));
+        underTest.deleteCustomerById(id);
+
+        //THEN
+        assertThat(underTest.selectChanges(0, 10))
+                .extracting(CustomerChange::offset, CustomerChange::type, CustomerChange::customerId)
+                .containsExactly(
+                        tuple(1L, CustomerChange.Type.CREATED, id),
+                        tuple(2L, CustomerChange.Type.UPDATED, id),
+                        tuple(3L, CustomerChange.Type.DELETED, id)
+                );
+        assertThat(underTest.selectChanges(1, 10).get(0).customer().getAge()).isEqualTo(31);
+        assertThat(underTest.selectChangeOffsets()).isEqualTo(new CustomerChangeOffsets(0, 3));
+    }
+
+    @Test
+    void deleteCustomerByIdFreesTheEmail() {
+        //WHEN
+        underTest.deleteCustomerById(1L);
+
+        //THEN
+        assertThat(underTest.existsCustomerById(1L)).isFalse();
+        assertThat(underTest.existsPersonWithEmail("@alex.com")).isFalse();
+        assertThat(underTest.selectChangeMarker().version()).isEqualTo(1);
+    }
+
+    @Test
+    void updateCustomerMovesTheEmailIndex() {
+        //WHEN
+        Customer actual = underTest.updateCustomer(new Customer(1L, null, "alex@gmail.com", null));
+
+        //THEN
+        assertThat(actual.getVersion()).isEqualTo(1L);
+        assertThat(underTest.existsPersonWithEmail("alex@gmail.com")).isTrue();
+        assertThat(underTest.existsPersonWithEmail("@alex.com")).isFalse();
+        assertThat(underTest.selectExistingEmails(List.of("alex@gmail.com", "@alex.com")))
+                .containsExactly("alex@gmail.com");
+    }
+
+    @Test
+    void updateCustomerRejectsTakenEmailAndKeepsTheCustomer() {
+        //WHEN
+        assertThatThrownBy(() -> underTest.updateCustomer(new Customer(1L, "Alexander", "@jamila.com", null)))
+                .isInstanceOf(DuplicateResourceException.class);
+
+        //THEN
+        assertThat(underTest.selectCustomerById(1L)).hasValueSatisfying(c -> {
+            assertThat(c.getName()).isEqualTo("Alex");
+            assertThat(c.getVersion()).isZero();
+        });
+        assertThat(underTest.existsPersonWithEmail("@alex.com")).isTrue();
+    }
+
+    @Test
+    void updateCustomerChecksVersionAndExistence() {
+        //GIVEN
+        Customer stale = new Customer(1L, "Alexander", null, null);
+        stale.setVersion(7L);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.updateCustomer(stale))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThatThrownBy(() -> underTest.updateCustomer(new Customer(99L, "Ghost", null, null)))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void parallelInsertsGetDistinctIdsAndOneWinnerPerEmail() throws Exception {
+        //GIVEN
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        //WHEN
+        List<Future<?>> futures = IntStream.range(0, 8_000)
+                .<Future<?>>mapToObj(i -> executor.submit(() -> {
+                    try {
+                        // every email is tried by two writers
+                        ids.add(underTest.insertCustomer(new Customer("Ali", "ali-" + i / 2 + "@gmail.com", 20)));
+                    } catch (DuplicateResourceException ignored) {
+                    }
+                }))
+                .toList();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //THEN
+        assertThat(ids).hasSize(4_000);
+        assertThat(underTest.selectAllCustomers()).hasSize(4_002);
+        assertThat(underTest.selectChangeMarker().version()).isEqualTo(4_000);
+    }
+
+    @Test
+    void parallelVersionedUpdatesLoseNothing() throws Exception {
+        //GIVEN
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        //WHEN
+        // each writer retries its optimistic increment until it applies
+        List<Future<?>> futures = IntStream.range(0, 2_000)
+                .<Future<?>>mapToObj(i -> executor.submit(() -> {
+                    while (true) {
+                        Customer current = underTest.selectCustomerById(1L).orElseThrow();
+                        Customer update = new Customer(1L, null, null, current.getAge() + 1);
+                        update.setVersion(current.getVersion());
+                        try {
+                            underTest.updateCustomer(update);
+                            return;
+                        } catch (PreconditionFailedException retry) {
+                        }
+                    }
+                }))
+                .toList();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //THEN
+        Customer actual = underTest.selectCustomerById(1L).orElseThrow();
+        assertThat(actual.getAge()).isEqualTo(15 + 2_000);
+        assertThat(actual.getVersion()).isEqualTo(2_000L);
+    }
+
+    @Test
+    void loggedChangesSurviveARestart(@TempDir Path directory) {
+        //GIVEN
+        CustomerLogProperties properties = new CustomerLogProperties(
+                true, directory, DataSize.ofMegabytes(1), 4, Duration.ofHours(1));
+        underTest = new CustomerListDataAccessService(properties);
+        Long id = underTest.insertCustomer(new Customer("Ali", "ali@gmail.com", 20));
+        underTest.insertCustomers(List.of(new Customer("Bea", "bea@gmail.com", 30)));
+        underTest.updateCustomer(new Customer(1L, null, "alex@gmail.com", null));
+        underTest.deleteCustomerById(2L);
+        underTest.destroy();
+
+        //WHEN
+        underTest = new CustomerListDataAccessService(properties);
+
+        //THEN
+        assertThat(underTest.selectAllCustomers())
+                .extracting(Customer::getEmail)
+                .containsExactly("alex@gmail.com", "ali@gmail.com", "bea@gmail.com");
+        assertThat(underTest.selectCustomerById(1L))
+                .hasValueSatisfying(c -> assertThat(c.getVersion()).isEqualTo(1L));
+        assertThat(underTest.existsPersonWithEmail("@jamila.com")).isFalse();
+        assertThat(underTest.insertCustomer(new Customer("Cem", "cem@gmail.com", 40)))
+                .isGreaterThan(id + 1);
+        underTest.destroy();
+    }
+}
@@ -0,0 +1,46 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerOutboxTest {
+
+    private final CustomerOutbox underTest = new CustomerOutbox();
+
+    @Test
+    void afterPagesByOffset() {
+        //GIVEN
+        for (long id = 1; id <= 5; id++) {
+            underTest.deleted(id);
+        }
+
+        //WHEN
+        //THEN
+        assertThat(underTest.after(1, 2)).extracting(CustomerChange::offset).containsExactly(2L, 3L);
+        assertThat(underTest.after(5, 2)).isEmpty();
+    }
+
+    @Test
+    void pruneRemovesTheOldestChangesAndMovesTheWatermark() {
+        //GIVEN
+        for (long id = 1; id <= 3; id++) {
+            underTest.deleted(id);
+        }
+
+        //WHEN
+        int batch = underTest.prune(Instant.now().plusSeconds(1), 2);
+        int nothingOldEnough = underTest.prune(Instant.EPOCH, 2);
+
+        //THEN
+        assertThat(batch).isEqualTo(2);
+        assertThat(nothingOldEnough).isZero();
+        assertThat(underTest.after(0, 10)).extracting(CustomerChange::offset).containsExactly(3L);
+        assertThat(underTest.offsets()).isEqualTo(new CustomerChangeOffsets(2, 3));
+        assertThat(underTest.offsets().canResumeFrom(1)).isFalse();
+        assertThat(underTest.offsets().canResumeFrom(2)).isTrue();
+        assertThat(underTest.offsets().canResumeFrom(4)).isFalse();
+    }
+}
@@ -0,0 +1,305 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class CustomerR2DBCDataAccessServiceTest extends AbstractTestContainers {
+
+    private CustomerR2DBCDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerR2DBCDataAccessService(getDatabaseClient());
+    }
+
+    @Test
+    void insertCustomerReturnsGeneratedIdAndCanBeSelected() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer(FAKER.name().fullName(), email, 20);
+
+        //WHEN
+        Long id = underTest.insertCustomer(customer).block();
+
+        //THEN
+        Customer actual = underTest.selectCustomerById(id).block();
+        assertThat(actual).isNotNull();
+        assertThat(actual.getEmail()).isEqualTo(email);
+        assertThat(actual.getVersion()).isZero();
+        assertThat(actual.getUpdatedAt()).isNotNull();
+    }
+
+    @Test
+    void insertCustomerWithTakenEmailThrows() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(new Customer("Alex", email, 20)).block();
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.insertCustomer(new Customer("Alex", email, 21)).block())
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("email already taken");
+    }
+
+    @Test
+    void selectCustomersReturnsNextPageAfterCursor() {
+        //GIVEN
+        for (int i = 0; i < 3; i++) {
+            underTest.insertCustomer(new Customer(
+                    FAKER.name().fullName(),
+                    FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                    20
+            )).block();
+        }
+        List<Customer> firstPage = underTest.selectCustomers(0L, 2).collectList().block();
+
+        //WHEN
+        List<Customer> secondPage = underTest.selectCustomers(firstPage.get(1).getId(), 2)
+                .collectList().block();
+
+        //THEN
+        assertThat(firstPage).hasSize(2);
+        assertThat(secondPage).isNotEmpty();
+        assertThat(secondPage.get(0).getId()).isGreaterThan(firstPage.get(1).getId());
+    }
+
+    @Test
+    void insertCustomersAndSelectExistingEmails() {
+        //GIVEN
+        String first = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        String second = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        String missing = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(new Customer("Jamila", second, 22)).block();
+
+        //WHEN
+        Set<String> inserted = underTest.insertCustomers(List.of(
+                new Customer("Alex", first, 20),
+                new Customer("Julie", second, 21)
+        )).block();
+
+        //THEN
+        assertThat(inserted).containsExactly(first);
+        Set<String> actual = underTest.selectExistingEmails(List.of(first, second, missing)).block();
+        assertThat(actual).containsExactlyInAnyOrder(first, second);
+    }
+
+    @Test
+    void deleteCustomerById() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Long id = underTest.insertCustomer(new Customer("Alex", email, 20)).block();
+
+        //WHEN
+        underTest.deleteCustomerById(id).block();
+
+        //THEN
+        assertThat(underTest.existsCustomerById(id).block()).isFalse();
+        assertThat(underTest.existsPersonWithEmail(email).block()).isFalse();
+    }
+
+    @Test
+    void updateCustomerReturnsUpdatedRowAndBumpsVersion() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Long id = underTest.insertCustomer(new Customer("Alex", email, 20)).block();
+        Customer update = new Customer();
+        update.setId(id);
+        update.setAge(30);
+        update.setVersion(0L);
+
+        //WHEN
+        Customer actual = underTest.updateCustomer(update).block();
+
+        //THEN
+        assertThat(actual.getName()).isEqualTo("Alex");
+        assertThat(actual.getAge()).isEqualTo(30);
+        assertThat(actual.getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    void updateCustomerWithStaleVersionThrows() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Long id = underTest.insertCustomer(new Customer("Alex", email, 20)).block();
+        Customer first = new Customer();
+        first.setId(id);
+        first.setAge(30);
+        underTest.updateCustomer(first).block();
+
+        Customer stale = new Customer();
+        stale.setId(id);
+        stale.setAge(31);
+        stale.setVersion(0L);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.updateCustomer(stale).block())
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessage("customer with id [%s] has been modified".formatted(id));
+    }
+
+    @Test
+    void updateCustomerWithoutChangesThrows() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Long id = underTest.insertCustomer(new Customer("Alex", email, 20)).block();
+        Customer update = new Customer();
+        update.setId(id);
+        update.setAge(20);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.updateCustomer(update).block())
+                .isInstanceOf(NoDataChangeException.class);
+    }
+
+    @Test
+    void updateCustomerThatDoesNotExistThrows() {
+        //GIVEN
+        Customer update = new Customer();
+        update.setId(-1L);
+        update.setAge(20);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.updateCustomer(update).block())
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id [-1] not found");
+    }
+
+    @Test
+    void updateCustomerToTakenEmailThrows() {
+        //GIVEN
+        String taken = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(new Customer("Alex", taken, 20)).block();
+        Long id = underTest.insertCustomer(new Customer(
+                "Julie", FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), 21)).block();
+        Customer update = new Customer();
+        update.setId(id);
+        update.setEmail(taken);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.updateCustomer(update).block())
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("email already taken");
+    }
+
+    @Test
+    void searchCustomersPagesThroughEqualNames() {
+        //GIVEN
+        String name = "Search " + UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            underTest.insertCustomer(new Customer(
+                    name,
+                    FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                    20 + i
+            )).block();
+        }
+
+        //WHEN
+        List<Customer> first = underTest.searchCustomers(new CustomerSearch(
+                name.substring(0, 20), null, 21, null, CustomerSearch.Sort.NAME, false, null, 1))
+                .collectList().block();
+        List<Customer> next = underTest.searchCustomers(new CustomerSearch(
+                name.substring(0, 20), null, 21, null, CustomerSearch.Sort.NAME, false,
+                CustomerSearchCursor.of(first.get(0)), 10))
+                .collectList().block();
+
+        //THEN
+        assertThat(first).extracting(Customer::getAge).containsExactly(21);
+        assertThat(next).extracting(Customer::getAge).containsExactly(22);
+    }
+
+    @Test
+    void fuzzySearchCustomersFindsMisspelledNames() {
+        //GIVEN
+        String lastName = FAKER.letterify("??????????");
+        Customer customer = new Customer(
+                "Jamila " + lastName,
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        underTest.insertCustomer(customer).block();
+        String misspelled = lastName.substring(0, 4) + lastName.charAt(5) + lastName.charAt(4) + lastName.substring(6);
+
+        //WHEN
+        List<CustomerMatch> actual = underTest.fuzzySearchCustomers(misspelled, 20).block();
+
+        //THEN
+        assertThat(actual).extracting(match -> match.customer().getName())
+                .contains(customer.getName());
+    }
+
+    @Test
+    void selectAgeCountsCountsInsertedCustomers() {
+        //GIVEN
+        Map<Integer, Long> before = underTest.selectAgeCounts().block();
+
+        //WHEN
+        underTest.insertCustomer(new Customer(
+                "Alex", FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), 117)).block();
+
+        //THEN
+        Map<Integer, Long> after = underTest.selectAgeCounts().block();
+        assertThat(after.get(117)).isEqualTo(before.getOrDefault(117, 0L) + 1);
+    }
+
+    @Test
+    void selectChangesReadsNumberedChanges() {
+        //GIVEN
+        sequenceChanges();
+        long before = underTest.selectChangeOffsets().block().latest();
+        Long id = underTest.insertCustomer(new Customer(
+                "Alex", FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), 20)).block();
+        underTest.deleteCustomerById(id).block();
+
+        //WHEN
+        sequenceChanges();
+        List<CustomerChange> actual = underTest.selectChanges(before, 100).collectList().block();
+
+        //THEN
+        assertThat(actual)
+                .extracting(CustomerChange::type, CustomerChange::customerId)
+                .containsExactly(
+                        tuple(CustomerChange.Type.CREATED, id),
+                        tuple(CustomerChange.Type.DELETED, id)
+                );
+        assertThat(actual.get(0).customer().getUpdatedAt()).isNotNull();
+        assertThat(underTest.selectChangeOffsets().block().latest()).isEqualTo(actual.get(1).offset());
+    }
+
+    @Test
+    void selectChangeMarkerAdvancesOnWrite() {
+        //GIVEN
+        CustomerChangeMarker before = underTest.selectChangeMarker().block();
+
+        //WHEN
+        underTest.insertCustomer(new Customer(
+                "Alex", FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), 20)).block();
+
+        //THEN
+        CustomerChangeMarker after = underTest.selectChangeMarker().block();
+        assertThat(after.version()).isGreaterThan(before.version());
+    }
+
+    // the blocking daos number the outbox, see CustomerChangeFeed
+    private void sequenceChanges() {
+        getJdbcTemplate().queryForObject(CustomerOutboxSql.SEQUENCE, Integer.class, 1000);
+    }
+}
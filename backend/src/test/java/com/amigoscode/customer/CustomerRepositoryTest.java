@@ -1,12 +1,14 @@
 package com.amigoscode.customer;
 
 import com.amigoscode.AbstractTestContainers;
+import com.amigoscode.config.HibernateCacheConfig;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Import;
 
 import java.util.UUID;
 
@@ -14,6 +16,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 @DataJpaTest
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(HibernateCacheConfig.class)
 class CustomerRepositoryTest extends AbstractTestContainers {
 
     @Autowired
@@ -46,6 +49,20 @@ class CustomerRepositoryTest extends AbstractTestContainers {
         assertThat(actual).isTrue();
     }
 
+    @Test
+    void insertIfEmailAbsentReturnsEmptyWhenEmailIsTaken() {
+        //GIVEN
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        var first = customerRepository.insertIfEmailAbsent(FAKER.name().fullName(), email, 20);
+
+        //WHEN
+        var second = customerRepository.insertIfEmailAbsent(FAKER.name().fullName(), email, 30);
+
+        //THEN
+        assertThat(first).isPresent();
+        assertThat(second).isEmpty();
+    }
+
     @Test
     void existsCustomerByEmailFailsWhenEmailDoesNotExist() {
         //GIVEN
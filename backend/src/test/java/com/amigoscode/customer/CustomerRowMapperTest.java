@@ -4,6 +4,8 @@ import org.junit.jupiter.api.Test;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -15,12 +17,15 @@ class CustomerRowMapperTest {
     @Test
     void mapRow() throws SQLException {
         //GIVEN
+        Instant updatedAt = Instant.parse("2023-06-01T10:15:30Z");
         CustomerRowMapper customerRowMapper = new CustomerRowMapper();
         ResultSet resultSetMock = mock(ResultSet.class);
         when(resultSetMock.getLong("id")).thenReturn(10L);
         when(resultSetMock.getString("name")).thenReturn("jamila");
         when(resultSetMock.getString("email")).thenReturn("jamila@gmail.com");
         when(resultSetMock.getInt("age")).thenReturn(19);
+        when(resultSetMock.getLong("version")).thenReturn(2L);
+        when(resultSetMock.getTimestamp("updated_at")).thenReturn(Timestamp.from(updatedAt));
 
         //WHEN
         Customer actual = customerRowMapper.mapRow(resultSetMock, 1);
@@ -31,5 +36,7 @@ class CustomerRowMapperTest {
         );
 
         assertThat(actual).isEqualTo(expected);
+        assertThat(actual.getVersion()).isEqualTo(2L);
+        assertThat(actual.getUpdatedAt()).isEqualTo(updatedAt);
     }
 }
\ No newline at end of file
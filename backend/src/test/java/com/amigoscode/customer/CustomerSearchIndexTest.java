@@ -0,0 +1,114 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// checks the plans of the search queries on a table big enough that the
+// planner would rather scan it than use a useless index
+class CustomerSearchIndexTest extends AbstractTestContainers {
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    @BeforeAll
+    static void insertCustomers() {
+        jdbcTemplate.update("""
+                INSERT INTO customer (name, email, age)
+                SELECT 'Customer ' || md5(g::text), 'customer-' || g || '@example.com', 16 + g % 80
+                FROM generate_series(1, 100000) g
+                """);
+        jdbcTemplate.execute("ANALYZE customer");
+    }
+
+    @Test
+    void namePrefixSearchUsesTheNamePatternIndex() {
+        //WHEN
+        String plan = explain(new CustomerSearch(
+                "Customer ab", null, null, null, CustomerSearch.Sort.NAME, false, null, 51));
+
+        //THEN
+        assertThat(plan).contains("customer_name_pattern_idx").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void nextNamePageUsesTheNamePatternIndex() {
+        //WHEN
+        String plan = explain(new CustomerSearch(
+                null, null, null, null, CustomerSearch.Sort.NAME, true,
+                new CustomerSearchCursor(500L, "Customer 8", null), 51));
+
+        //THEN
+        assertThat(plan).contains("customer_name_pattern_idx").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void ageRangeSearchUsesTheAgeIndex() {
+        //WHEN
+        String plan = explain(new CustomerSearch(
+                null, null, 30, 40, CustomerSearch.Sort.AGE, false,
+                new CustomerSearchCursor(500L, null, 35), 51));
+
+        //THEN
+        assertThat(plan).contains("customer_age_idx").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void emailSearchUsesTheLowerEmailIndex() {
+        //WHEN
+        String plan = explain(new CustomerSearch(
+                null, "Customer-42@Example.com", null, null, CustomerSearch.Sort.ID, false, null, 51));
+
+        //THEN
+        assertThat(plan).contains("customer_email_lower_idx").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void nextIdPageUsesThePrimaryKey() {
+        //WHEN
+        String plan = explain(new CustomerSearch(
+                null, null, null, null, CustomerSearch.Sort.ID, false,
+                new CustomerSearchCursor(50000L, null, null), 51));
+
+        //THEN
+        assertThat(plan).contains("customer_pkey").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void fuzzyNameSearchUsesTheTsvectorAndNameWordIndexes() {
+        //GIVEN
+        // md5('42') and a misspelling of it
+        String word = "a1d0c6e83f027327d8461063f4ac58a6";
+        String misspelled = "a1d0c6e83f027372d8461063f4ac58a6";
+
+        //WHEN
+        String wholeWordMatches = explain(FuzzyNameSearch.wholeWordMatches(List.of(word), 20));
+        String prefixedWords = explain(FuzzyNameSearch.prefixedWords(word.substring(0, 6)));
+        String prefixMatches = explain(FuzzyNameSearch.prefixMatches(
+                List.of(word.substring(0, 6)), List.of(List.of(word)), 20));
+        String nearestWords = explain(FuzzyNameSearch.nearestWords(misspelled));
+        String correctedMatches = explain(FuzzyNameSearch.correctedMatches(
+                misspelled, List.of(misspelled), List.of(List.of(word)), 20));
+
+        //THEN
+        assertThat(wholeWordMatches).contains("customer_name_tsv_idx").doesNotContain("Seq Scan");
+        assertThat(prefixedWords).contains("customer_name_word_prefix_idx").doesNotContain("Seq Scan");
+        assertThat(prefixMatches).contains("customer_name_tsv_idx").doesNotContain("Seq Scan");
+        assertThat(nearestWords).contains("customer_name_word_trgm_idx").doesNotContain("Seq Scan");
+        assertThat(correctedMatches).contains("customer_name_tsv_idx").doesNotContain("Seq Scan");
+    }
+
+    private static String explain(CustomerSearch search) {
+        return explain(CustomerSearchQuery.of(search));
+    }
+
+    private static String explain(CustomerSearchQuery query) {
+        List<String> plan = jdbcTemplate.queryForList(
+                "EXPLAIN " + query.sql(), String.class, query.args().toArray());
+        return String.join("\n", plan);
+    }
+}
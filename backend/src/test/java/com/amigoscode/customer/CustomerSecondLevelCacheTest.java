@@ -0,0 +1,141 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import com.amigoscode.config.HibernateCacheConfig;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// every repository call outside the template runs in its own session, so the
+// statement counts below show what the second-level and query caches absorb
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({HibernateCacheConfig.class, CustomerJPADataAccessService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CustomerSecondLevelCacheTest extends AbstractTestContainers {
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private CustomerJPADataAccessService customerDao;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void repeatedReadsAcrossSessionsSkipSql() {
+        //GIVEN
+        Long id = insertCustomer();
+        customerRepository.findById(id.intValue());
+        statistics.clear();
+
+        //WHEN
+        for (int i = 0; i < 3; i++) {
+            assertThat(customerRepository.findById(id.intValue())).isPresent();
+        }
+        boolean exists = customerRepository.existsCustomerById(id);
+
+        //THEN
+        assertThat(exists).isTrue();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(4);
+    }
+
+    @Test
+    void repeatedReadsInsideOneSessionSkipSql() {
+        //GIVEN
+        Long id = insertCustomer();
+        statistics.clear();
+
+        //WHEN
+        transactionTemplate.executeWithoutResult(status -> {
+            customerRepository.findById(id.intValue());
+            customerRepository.findById(id.intValue());
+        });
+        customerRepository.findById(id.intValue());
+
+        //THEN
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void existsCustomerByEmailIsServedFromQueryCache() {
+        //GIVEN
+        String email = newEmail();
+        customerRepository.existsCustomerByEmail(email);
+        statistics.clear();
+
+        //WHEN
+        boolean first = customerRepository.existsCustomerByEmail(email);
+        boolean second = customerRepository.existsCustomerByEmail(email);
+
+        //THEN
+        assertThat(first).isFalse();
+        assertThat(second).isFalse();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void insertCustomerEvictsCachedEmailLookups() {
+        //GIVEN
+        String email = newEmail();
+        assertThat(customerRepository.existsCustomerByEmail(email)).isFalse();
+
+        //WHEN
+        customerDao.insertCustomer(new Customer(FAKER.name().fullName(), email, 20));
+
+        //THEN
+        assertThat(customerRepository.existsCustomerByEmail(email)).isTrue();
+    }
+
+    @Test
+    void updateCustomerRefreshesCachedEntity() {
+        //GIVEN
+        Long id = insertCustomer();
+        customerRepository.findById(id.intValue());
+        Customer update = new Customer();
+        update.setId(id);
+        update.setAge(42);
+
+        //WHEN
+        customerDao.updateCustomer(update);
+
+        //THEN
+        assertThat(customerRepository.findById(id.intValue()))
+                .hasValueSatisfying(customer -> assertThat(customer.getAge()).isEqualTo(42));
+    }
+
+    private Long insertCustomer() {
+        return customerDao.insertCustomer(new Customer(FAKER.name().fullName(), newEmail(), 20));
+    }
+
+    private static String newEmail() {
+        return FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+    }
+}
@@ -2,15 +2,24 @@ package com.amigoscode.customer;
 
 import com.amigoscode.exception.DuplicateResourceException;
 import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.RequestValidationException;
 import com.amigoscode.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -22,6 +31,9 @@ class CustomerServiceTest {
     @Mock
     private CustomerDao customerDao;
 
+    @Captor
+    private ArgumentCaptor<List<Customer>> customersArgumentCaptor;
+
     private CustomerService customerService;
 
 
@@ -38,6 +50,210 @@ class CustomerServiceTest {
         verify(customerDao).selectAllCustomers();
     }
 
+    @Test
+    void canGetFirstPageOfCustomers() {
+        //GIVEN
+        List<Customer> customers = List.of(
+                new Customer(1L, "Alex", "alex@gmail.com", 19),
+                new Customer(2L, "Julie", "julie@gmail.com", 20),
+                new Customer(3L, "Jamila", "jamila@gmail.com", 21)
+        );
+        when(customerDao.selectCustomers(0L, 3)).thenReturn(customers);
+
+        //WHEN
+        CustomerPage actual = customerService.getCustomers(null, 2);
+
+        //THEN
+        assertThat(actual.customers()).containsExactlyElementsOf(customers.subList(0, 2));
+        assertThat(actual.nextCursor()).isEqualTo(2L);
+    }
+
+    @Test
+    void lastPageOfCustomersHasNoNextCursor() {
+        //GIVEN
+        List<Customer> customers = List.of(
+                new Customer(3L, "Jamila", "jamila@gmail.com", 21)
+        );
+        when(customerDao.selectCustomers(2L, 3)).thenReturn(customers);
+
+        //WHEN
+        CustomerPage actual = customerService.getCustomers(2L, 2);
+
+        //THEN
+        assertThat(actual.customers()).containsExactlyElementsOf(customers);
+        assertThat(actual.nextCursor()).isNull();
+    }
+
+    @Test
+    void willThrowWhenPageLimitIsOutOfRange() {
+        //WHEN
+        assertThatThrownBy(() -> customerService.getCustomers(null, 0))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("limit must be between 1 and 1000");
+
+        //THEN
+        verify(customerDao, never()).selectCustomers(any(), anyInt());
+    }
+
+    @Test
+    void canSearchCustomers() {
+        //GIVEN
+        List<Customer> customers = List.of(
+                new Customer(1L, "Alex", "alex@gmail.com", 19),
+                new Customer(3L, "Ali", "ali@gmail.com", 20),
+                new Customer(2L, "Alice", "alice@gmail.com", 21)
+        );
+        when(customerDao.searchCustomers(any())).thenReturn(customers);
+
+        //WHEN
+        CustomerSearchPage actual = customerService.searchCustomers(
+                "Al", null, 18, null, "name", "asc", null, 2);
+
+        //THEN
+        ArgumentCaptor<CustomerSearch> searchArgumentCaptor = ArgumentCaptor.forClass(CustomerSearch.class);
+        verify(customerDao).searchCustomers(searchArgumentCaptor.capture());
+        assertThat(searchArgumentCaptor.getValue()).isEqualTo(new CustomerSearch(
+                "Al", null, 18, null, CustomerSearch.Sort.NAME, false, null, 3));
+        assertThat(actual.customers()).containsExactlyElementsOf(customers.subList(0, 2));
+        assertThat(CustomerSearchCursor.decode(actual.nextCursor(), CustomerSearch.Sort.NAME))
+                .isEqualTo(new CustomerSearchCursor(3L, "Ali", null));
+    }
+
+    @Test
+    void canContinueSearchFromCursor() {
+        //GIVEN
+        String after = new CustomerSearchCursor(7L, null, 30).encode(CustomerSearch.Sort.AGE);
+        when(customerDao.searchCustomers(any())).thenReturn(List.of());
+
+        //WHEN
+        CustomerSearchPage actual = customerService.searchCustomers(
+                null, "ALEX@gmail.com", null, null, "age", "desc", after, 50);
+
+        //THEN
+        ArgumentCaptor<CustomerSearch> searchArgumentCaptor = ArgumentCaptor.forClass(CustomerSearch.class);
+        verify(customerDao).searchCustomers(searchArgumentCaptor.capture());
+        CustomerSearch search = searchArgumentCaptor.getValue();
+        assertThat(search.sort()).isEqualTo(CustomerSearch.Sort.AGE);
+        assertThat(search.descending()).isTrue();
+        assertThat(search.after()).isEqualTo(new CustomerSearchCursor(7L, null, 30));
+        assertThat(actual.nextCursor()).isNull();
+    }
+
+    @Test
+    void willThrowWhenSearchIsInvalid() {
+        //GIVEN
+        String idCursor = new CustomerSearchCursor(7L, null, null).encode(CustomerSearch.Sort.ID);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerService.searchCustomers(
+                null, null, 30, 20, "id", "asc", null, 50))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("minAge must not be greater than maxAge");
+        assertThatThrownBy(() -> customerService.searchCustomers(
+                null, null, null, null, "email", "asc", null, 50))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("sort must be one of id, name, age");
+        assertThatThrownBy(() -> customerService.searchCustomers(
+                null, null, null, null, "id", "up", null, 50))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("direction must be asc or desc");
+        // a cursor only continues the sort it came from
+        assertThatThrownBy(() -> customerService.searchCustomers(
+                null, null, null, null, "name", "asc", idCursor, 50))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("invalid cursor");
+        assertThatThrownBy(() -> customerService.searchCustomers(
+                null, null, null, null, "id", "asc", "not a cursor", 50))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("invalid cursor");
+        verify(customerDao, never()).searchCustomers(any());
+    }
+
+    @Test
+    void canFuzzySearchCustomers() {
+        //GIVEN
+        List<CustomerMatch> matches = List.of(
+                new CustomerMatch(new Customer(1L, "Jamila", "jamila@gmail.com", 19), 0.43)
+        );
+        when(customerDao.fuzzySearchCustomers("jamlia", 20)).thenReturn(matches);
+
+        //WHEN
+        List<CustomerMatch> actual = customerService.fuzzySearchCustomers(" jamlia ", 20);
+
+        //THEN
+        assertThat(actual).isEqualTo(matches);
+    }
+
+    @Test
+    void canGetCustomerStats() {
+        //GIVEN
+        when(customerDao.selectAgeCounts()).thenReturn(Map.of(19, 2L, 21, 1L, 45, 1L, 50, 0L));
+
+        //WHEN
+        CustomerStats actual = customerService.getCustomerStats();
+
+        //THEN
+        assertThat(actual.count()).isEqualTo(4);
+        assertThat(actual.minAge()).isEqualTo(19);
+        assertThat(actual.maxAge()).isEqualTo(45);
+        assertThat(actual.meanAge()).isEqualTo(26.0);
+        // empty buckets are left out
+        assertThat(actual.ageHistogram()).containsExactly(
+                new CustomerStats.AgeBucket(10, 19, 2),
+                new CustomerStats.AgeBucket(20, 29, 1),
+                new CustomerStats.AgeBucket(40, 49, 1)
+        );
+    }
+
+    @Test
+    void customerStatsWithoutCustomersHaveNoAges() {
+        //GIVEN
+        when(customerDao.selectAgeCounts()).thenReturn(Map.of());
+
+        //WHEN
+        CustomerStats actual = customerService.getCustomerStats();
+
+        //THEN
+        assertThat(actual).isEqualTo(new CustomerStats(0, null, null, null, List.of()));
+    }
+
+    @Test
+    void willThrowWhenFuzzySearchIsTooShort() {
+        //WHEN
+        assertThatThrownBy(() -> customerService.fuzzySearchCustomers(" al ", 20))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("name must have at least 3 characters");
+
+        //THEN
+        verify(customerDao, never()).fuzzySearchCustomers(any(), anyInt());
+    }
+
+    @Test
+    void getChangeMarker() {
+        //GIVEN
+        CustomerChangeMarker marker = new CustomerChangeMarker(3, Instant.now());
+        when(customerDao.selectChangeMarker()).thenReturn(marker);
+
+        //WHEN
+        CustomerChangeMarker actual = customerService.getChangeMarker();
+
+        //THEN
+        assertThat(actual).isEqualTo(marker);
+    }
+
+    @Test
+    void exportCustomers() {
+        //GIVEN
+        Consumer<Customer> consumer = customer -> {};
+
+        //WHEN
+        customerService.exportCustomers(consumer);
+
+        //THEN
+        verify(customerDao).streamAllCustomers(consumer);
+    }
+
     @Test
     void canGetCustomer() {
         //GIVEN
@@ -68,20 +284,21 @@ class CustomerServiceTest {
     @Test
     void addCustomer() {
         //GIVEN
-        String email = "alex@gmail.com";
-
-        when(customerDao.existsPersonWithEmail(email)).thenReturn(false);
+        when(customerDao.insertCustomer(any())).thenReturn(10L);
 
         CustomerRigistrationRequest request = new CustomerRigistrationRequest(
                 "Alex", "alex@gmail.com",  19
         );
 
         //WHEN
-        customerService.addCustomer(request);
+        Long actual = customerService.addCustomer(request);
 
         //THEN
+        assertThat(actual).isEqualTo(10L);
+
         ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
         verify(customerDao).insertCustomer(customerArgumentCaptor.capture());
+        verify(customerDao, never()).existsPersonWithEmail(any());
 
         Customer capturedCustomer = customerArgumentCaptor.getValue();
 
@@ -94,9 +311,8 @@ class CustomerServiceTest {
     @Test
     void willThrowExceptionWhenEmailExistWhileAddingCustomer() {
         //GIVEN
-        String email = "alex@gmail.com";
-
-        when(customerDao.existsPersonWithEmail(email)).thenReturn(true);
+        when(customerDao.insertCustomer(any()))
+                .thenThrow(new DuplicateResourceException("email already taken"));
 
         CustomerRigistrationRequest request = new CustomerRigistrationRequest(
                 "Alex", "alex@gmail.com",  19
@@ -106,12 +322,93 @@ class CustomerServiceTest {
         assertThatThrownBy(() -> customerService.addCustomer(request))
                 .isInstanceOf(DuplicateResourceException.class)
                 .hasMessage("email already taken");
+    }
+
+
+
+    @Test
+    void addCustomersSkipsTakenAndRepeatedEmails() {
+        //GIVEN
+        List<CustomerRigistrationRequest> requests = List.of(
+                new CustomerRigistrationRequest("Alex", "alex@gmail.com", 19),
+                new CustomerRigistrationRequest("Julie", "julie@gmail.com", 20),
+                new CustomerRigistrationRequest("Jamila", "jamila@gmail.com", 21),
+                new CustomerRigistrationRequest("Alex", "alex@gmail.com", 19)
+        );
+        when(customerDao.selectExistingEmails(anyCollection())).thenReturn(Set.of("julie@gmail.com"));
+        when(customerDao.insertCustomers(anyList())).thenReturn(Set.of("alex@gmail.com", "jamila@gmail.com"));
+
+        //WHEN
+        List<CustomerRegistrationResult> actual = customerService.addCustomers(requests);
+
+        //THEN
+        assertThat(actual).extracting(CustomerRegistrationResult::status).containsExactly(
+                CustomerRegistrationResult.Status.CREATED,
+                CustomerRegistrationResult.Status.EMAIL_TAKEN,
+                CustomerRegistrationResult.Status.CREATED,
+                CustomerRegistrationResult.Status.EMAIL_TAKEN
+        );
+
+        verify(customerDao).insertCustomers(customersArgumentCaptor.capture());
+
+        assertThat(customersArgumentCaptor.getValue())
+                .extracting(Customer::getEmail)
+                .containsExactly("alex@gmail.com", "jamila@gmail.com");
+    }
+
+    @Test
+    void addCustomersReportsAnEmailTakenAfterTheCheck() {
+        //GIVEN
+        List<CustomerRigistrationRequest> requests = List.of(
+                new CustomerRigistrationRequest("Alex", "alex@gmail.com", 19),
+                new CustomerRigistrationRequest("Julie", "julie@gmail.com", 20)
+        );
+        when(customerDao.selectExistingEmails(anyCollection())).thenReturn(Set.of());
+        // julie registered concurrently, so the dao skipped her
+        when(customerDao.insertCustomers(anyList())).thenReturn(Set.of("alex@gmail.com"));
+
+        //WHEN
+        List<CustomerRegistrationResult> actual = customerService.addCustomers(requests);
 
         //THEN
-        verify(customerDao, never()).insertCustomer(any());
+        assertThat(actual).containsExactly(
+                new CustomerRegistrationResult("alex@gmail.com", CustomerRegistrationResult.Status.CREATED),
+                new CustomerRegistrationResult("julie@gmail.com", CustomerRegistrationResult.Status.EMAIL_TAKEN)
+        );
     }
 
+    @Test
+    void addCustomersDoesNotInsertWhenAllEmailsAreTaken() {
+        //GIVEN
+        List<CustomerRigistrationRequest> requests = List.of(
+                new CustomerRigistrationRequest("Alex", "alex@gmail.com", 19)
+        );
+        when(customerDao.selectExistingEmails(anyCollection())).thenReturn(Set.of("alex@gmail.com"));
+
+        //WHEN
+        List<CustomerRegistrationResult> actual = customerService.addCustomers(requests);
+
+        //THEN
+        assertThat(actual).containsExactly(new CustomerRegistrationResult(
+                "alex@gmail.com", CustomerRegistrationResult.Status.EMAIL_TAKEN));
+        verify(customerDao, never()).insertCustomers(any());
+    }
+
+    @Test
+    void willThrowWhenBatchIsTooLarge() {
+        //GIVEN
+        List<CustomerRigistrationRequest> requests = Collections.nCopies(
+                10_001, new CustomerRigistrationRequest("Alex", "alex@gmail.com", 19)
+        );
+
+        //WHEN
+        assertThatThrownBy(() -> customerService.addCustomers(requests))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("batch must not contain more than 10000 customers");
 
+        //THEN
+        verifyNoInteractions(customerDao);
+    }
 
     @Test
     void deleteCustomer() {
@@ -147,21 +444,20 @@ class CustomerServiceTest {
     void canUpdateAllCustomersProperties() {
         //GIVEN
         Long id = 10L;
-        String email = "julie@gmail.com";
-        Customer customer = new Customer(
-                id, "Alex", "alex@gmail.com",  19
-        );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        when(customerDao.existsPersonWithEmail(email)).thenReturn(false);
-
         CustomerRigistrationRequest request = new CustomerRigistrationRequest(
                 "Julie", "julie@gmail.com", 20
         );
+        Customer updated = new Customer(
+                id, "Julie", "julie@gmail.com", 20
+        );
+        when(customerDao.updateCustomer(any())).thenReturn(updated);
 
         //WHEN
-        customerService.updateCustomer(id, request);
+        Customer actual = customerService.updateCustomer(id, request);
 
         //THEN
+        assertThat(actual).isEqualTo(updated);
+
         ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
         verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
 
@@ -171,18 +467,14 @@ class CustomerServiceTest {
         assertThat(capturedCustomer.getName()).isEqualTo(request.name());
         assertThat(capturedCustomer.getEmail()).isEqualTo(request.email());
         assertThat(capturedCustomer.getAge()).isEqualTo(request.age());
+        verify(customerDao, never()).selectCustomerById(any());
+        verify(customerDao, never()).existsPersonWithEmail(any());
     }
 
     @Test
     void canOnlyUpdateCustomerName() {
         //GIVEN
         Long id = 10L;
-        String email = "julie@gmail.com";
-        Customer customer = new Customer(
-                id, "Alex", "alex@gmail.com",  19
-        );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-
         CustomerRigistrationRequest request = new CustomerRigistrationRequest(
                 "Julie", null, null
         );
@@ -198,8 +490,8 @@ class CustomerServiceTest {
 
         assertThat(capturedCustomer.getId()).isEqualTo(id);
         assertThat(capturedCustomer.getName()).isEqualTo(request.name());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(customer.getEmail());
-        assertThat(capturedCustomer.getAge()).isEqualTo(customer.getAge());
+        assertThat(capturedCustomer.getEmail()).isNull();
+        assertThat(capturedCustomer.getAge()).isNull();
     }
 
     @Test
@@ -207,12 +499,6 @@ class CustomerServiceTest {
         //GIVEN
         Long id = 10L;
         String email = "julie@gmail.com";
-        Customer customer = new Customer(
-                id, "Alex", "alex@gmail.com",  19
-        );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        when(customerDao.existsPersonWithEmail(email)).thenReturn(false);
-
         CustomerRigistrationRequest request = new CustomerRigistrationRequest(
                 null, email, null
         );
@@ -227,20 +513,15 @@ class CustomerServiceTest {
         Customer capturedCustomer = customerArgumentCaptor.getValue();
 
         assertThat(capturedCustomer.getId()).isEqualTo(id);
-        assertThat(capturedCustomer.getName()).isEqualTo(customer.getName());
+        assertThat(capturedCustomer.getName()).isNull();
         assertThat(capturedCustomer.getEmail()).isEqualTo(request.email());
-        assertThat(capturedCustomer.getAge()).isEqualTo(customer.getAge());
+        assertThat(capturedCustomer.getAge()).isNull();
     }
 
     @Test
     void canOnlyUpdateCustomerAge() {
         //GIVEN
         Long id = 10L;
-        Customer customer = new Customer(
-                id, "Alex", "alex@gmail.com",  19
-        );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-
         CustomerRigistrationRequest request = new CustomerRigistrationRequest(
                 null, null, 22
         );
@@ -255,48 +536,100 @@ class CustomerServiceTest {
         Customer capturedCustomer = customerArgumentCaptor.getValue();
 
         assertThat(capturedCustomer.getId()).isEqualTo(id);
-        assertThat(capturedCustomer.getName()).isEqualTo(customer.getName());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(customer.getEmail());
+        assertThat(capturedCustomer.getName()).isNull();
+        assertThat(capturedCustomer.getEmail()).isNull();
         assertThat(capturedCustomer.getAge()).isEqualTo(request.age());
     }
 
+    @Test
+    void updateCustomerPassesExpectedVersionToDao() {
+        //GIVEN
+        Long id = 10L;
+        CustomerRigistrationRequest request = new CustomerRigistrationRequest(
+                "Julie", null, null
+        );
+
+        //WHEN
+        customerService.updateCustomer(id, request, 3L);
+
+        //THEN
+        ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
+        verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
+
+        assertThat(customerArgumentCaptor.getValue().getVersion()).isEqualTo(3L);
+    }
+
+    @Test
+    void updateCustomerMatchingTriesEachExpectedVersion() {
+        //GIVEN
+        Long id = 10L;
+        CustomerRigistrationRequest request = new CustomerRigistrationRequest(
+                "Julie", null, null
+        );
+        Customer updated = new Customer(id, "Julie", "julie@gmail.com", 20);
+        // the customer is at version 2
+        when(customerDao.updateCustomer(any())).thenAnswer(invocation -> {
+            if(invocation.<Customer>getArgument(0).getVersion() != 2L){
+                throw new PreconditionFailedException("customer with id [10] has been modified");
+            }
+            return updated;
+        });
+
+        //WHEN
+        Customer actual = customerService.updateCustomerMatching(id, request, List.of(1L, 2L, 3L));
+
+        //THEN
+        assertThat(actual).isEqualTo(updated);
+        verify(customerDao, times(2)).updateCustomer(any());
+        assertThatThrownBy(() -> customerService.updateCustomerMatching(id, request, List.of(1L, 3L)))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
     @Test
     void willThrowExceptionWhenTryingToUpdateCustomerEmailWhenAlreadyTaken() {
         //GIVEN
         Long id = 10L;
         String email = "julie@gmail.com";
-        Customer customer = new Customer(
-                id, "Alex", "alex@gmail.com",  19
-        );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        when(customerDao.existsPersonWithEmail(email)).thenReturn(true);
+        when(customerDao.updateCustomer(any()))
+                .thenThrow(new DuplicateResourceException("email already taken"));
 
         CustomerRigistrationRequest request = new CustomerRigistrationRequest(
                 null, email, null
         );
 
         //WHEN
+        //THEN
         assertThatThrownBy(() -> customerService.updateCustomer(id, request))
                 .isInstanceOf(DuplicateResourceException.class)
                 .hasMessage("email already taken");
-
-        //THEN
-        verify(customerDao, never()).updateCustomer(any());
     }
 
     @Test
     void willThrowExceptionWhenCustomerUpdateHasNoChanges() {
         //GIVEN
         Long id = 10L;
-        Customer customer = new Customer(
-                id, "Alex", "alex@gmail.com",  19
-        );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
+        when(customerDao.updateCustomer(any()))
+                .thenThrow(new NoDataChangeException("no data changes founded"));
 
         CustomerRigistrationRequest request = new CustomerRigistrationRequest(
                 "Alex", "alex@gmail.com", 19
         );
 
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> customerService.updateCustomer(id, request))
+                .isInstanceOf(NoDataChangeException.class)
+                .hasMessage("no data changes founded");
+    }
+
+    @Test
+    void willThrowExceptionWhenCustomerUpdateIsEmpty() {
+        //GIVEN
+        Long id = 10L;
+        CustomerRigistrationRequest request = new CustomerRigistrationRequest(
+                null, null, null
+        );
+
         //WHEN
         assertThatThrownBy(() -> customerService.updateCustomer(id, request))
                 .isInstanceOf(NoDataChangeException.class)
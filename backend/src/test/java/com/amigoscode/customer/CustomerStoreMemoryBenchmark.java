@@ -0,0 +1,84 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// memory held per row by the in-memory stores, measured as the heap (and
+// direct buffer) growth after loading; run with mvn test -Pbenchmark and
+// -Dbenchmark.rows=... to pick the sizes
+class CustomerStoreMemoryBenchmark {
+
+    private static final int[] ROWS = Arrays.stream(
+                    System.getProperty("benchmark.rows", "1000000,10000000").split(","))
+            .mapToInt(Integer::parseInt)
+            .toArray();
+
+    private static final int LOAD_BATCH_SIZE = 10_000;
+
+    @Test
+    void listStore() {
+        measure("list", CustomerListDataAccessService::new);
+    }
+
+    @Test
+    void columnarStore() {
+        measure("columnar", () -> new CustomerColumnarDataAccessService(
+                new CustomerColumnarProperties(false, 1024, DataSize.ofMegabytes(1))));
+    }
+
+    @Test
+    void columnarStoreOffHeap() {
+        measure("columnar off-heap", () -> new CustomerColumnarDataAccessService(
+                new CustomerColumnarProperties(true, 1024, DataSize.ofMegabytes(1))));
+    }
+
+    private static void measure(String name, Supplier<CustomerDao> stores) {
+        for (int rows : ROWS) {
+            long heapBefore = usedHeap();
+            long directBefore = usedDirect();
+
+            CustomerDao store = stores.get();
+            for (int from = 0; from < rows; from += LOAD_BATCH_SIZE) {
+                List<Customer> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+                for (int i = from; i < Math.min(rows, from + LOAD_BATCH_SIZE); i++) {
+                    batch.add(new Customer("Customer " + i, "customer-" + i + "@example.com", 18 + i % 80));
+                }
+                store.insertCustomers(batch);
+            }
+
+            long heap = usedHeap() - heapBefore;
+            long direct = usedDirect() - directBefore;
+            System.out.printf("%-18s %,11d rows  heap %,7d MB  direct %,7d MB  %,5d bytes/row%n",
+                    name, rows, heap >> 20, direct >> 20, (heap + direct) / rows);
+
+            assertThat(store.existsPersonWithEmail("customer-" + (rows - 1) + "@example.com")).isTrue();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // settle the heap, a single System.gc() may leave garbage behind
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static long usedDirect() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+}
@@ -0,0 +1,59 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailBloomFilterTest {
+
+    @Test
+    void neverForgetsAnEmail() {
+        //GIVEN
+        EmailBloomFilter underTest = EmailBloomFilter.create(10_000, 0.01, 1 << 20);
+
+        //WHEN
+        IntStream.range(0, 10_000).forEach(i -> underTest.put("user-" + i + "@gmail.com"));
+
+        //THEN
+        assertThat(IntStream.range(0, 10_000))
+                .allMatch(i -> underTest.mightContain("user-" + i + "@gmail.com"));
+    }
+
+    @Test
+    void falsePositivesStayNearTheConfiguredRate() {
+        //GIVEN
+        EmailBloomFilter underTest = EmailBloomFilter.create(10_000, 0.01, 1 << 20);
+        IntStream.range(0, 10_000).forEach(i -> underTest.put("user-" + i + "@gmail.com"));
+
+        //WHEN
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> underTest.mightContain("other-" + i + "@gmail.com"))
+                .count();
+
+        //THEN
+        assertThat(falsePositives).isLessThan(2_000);
+        assertThat(underTest.expectedFalsePositiveRate()).isBetween(0.005, 0.02);
+        assertThat(underTest.approximateElementCount()).isBetween(9_500L, 10_500L);
+    }
+
+    @Test
+    void memoryIsCappedAtTheBudget() {
+        //WHEN
+        EmailBloomFilter underTest = EmailBloomFilter.create(10_000_000, 0.01, 1024);
+
+        //THEN
+        assertThat(underTest.byteSize()).isEqualTo(1024);
+    }
+
+    @Test
+    void isSizedForTheExpectedInsertions() {
+        //WHEN
+        EmailBloomFilter underTest = EmailBloomFilter.create(1_000_000, 0.01, 1 << 30);
+
+        //THEN
+        // about 9.6 bits per email at a 1% false positive rate
+        assertThat(underTest.byteSize()).isBetween(1_190_000L, 1_210_000L);
+    }
+}
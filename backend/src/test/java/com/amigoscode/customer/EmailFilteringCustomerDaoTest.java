@@ -0,0 +1,239 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailFilteringCustomerDaoTest {
+
+    @Mock
+    private CustomerDao customerDao;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private EmailFilteringCustomerDao underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new EmailFilteringCustomerDao(
+                customerDao,
+                new EmailFilterProperties(true, 0.01, DataSize.ofKilobytes(64), 1000, 2.0,
+                        Duration.ofHours(1), Duration.ofSeconds(1)),
+                meterRegistry
+        );
+        lenient().when(customerDao.selectChangeOffsets()).thenReturn(new CustomerChangeOffsets(0, 0));
+    }
+
+    @Test
+    void checksGoToTheDatabaseUntilTheFilterIsBuilt() {
+        //GIVEN
+        when(customerDao.existsPersonWithEmail("alex@gmail.com")).thenReturn(false);
+
+        //WHEN
+        boolean actual = underTest.existsPersonWithEmail("alex@gmail.com");
+
+        //THEN
+        assertThat(actual).isFalse();
+        verify(customerDao).existsPersonWithEmail("alex@gmail.com");
+    }
+
+    @Test
+    void unknownEmailSkipsTheDatabase() {
+        //GIVEN
+        rebuildWith("alex@gmail.com");
+
+        //WHEN
+        boolean actual = underTest.existsPersonWithEmail("julie@gmail.com");
+
+        //THEN
+        assertThat(actual).isFalse();
+        verify(customerDao, never()).existsPersonWithEmail(any());
+        assertThat(checks("skipped")).isEqualTo(1);
+        assertThat(meterRegistry.get("customer.email.filter.skip.ratio").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void knownEmailIsConfirmedByTheDatabase() {
+        //GIVEN
+        rebuildWith("alex@gmail.com");
+        when(customerDao.existsPersonWithEmail("alex@gmail.com")).thenReturn(true);
+
+        //WHEN
+        boolean actual = underTest.existsPersonWithEmail("alex@gmail.com");
+
+        //THEN
+        assertThat(actual).isTrue();
+        assertThat(checks("confirmed")).isEqualTo(1);
+    }
+
+    @Test
+    void selectExistingEmailsOnlyQueriesPossibleMatches() {
+        //GIVEN
+        rebuildWith("alex@gmail.com");
+        when(customerDao.selectExistingEmails(List.of("alex@gmail.com"))).thenReturn(Set.of("alex@gmail.com"));
+
+        //WHEN
+        Set<String> actual = underTest.selectExistingEmails(List.of("alex@gmail.com", "julie@gmail.com"));
+
+        //THEN
+        assertThat(actual).containsExactly("alex@gmail.com");
+        assertThat(checks("skipped")).isEqualTo(1);
+        assertThat(checks("confirmed")).isEqualTo(1);
+    }
+
+    @Test
+    void selectExistingEmailsSkipsTheDatabaseWhenNothingCanMatch() {
+        //GIVEN
+        rebuildWith("alex@gmail.com");
+
+        //WHEN
+        Set<String> actual = underTest.selectExistingEmails(List.of("julie@gmail.com"));
+
+        //THEN
+        assertThat(actual).isEmpty();
+        verify(customerDao, never()).selectExistingEmails(any());
+    }
+
+    @Test
+    void insertedEmailsAreRemembered() {
+        //GIVEN
+        rebuildWith();
+        Customer customer = new Customer("Alex", "alex@gmail.com", 19);
+        when(customerDao.insertCustomer(customer)).thenReturn(1L);
+        when(customerDao.existsPersonWithEmail("alex@gmail.com")).thenReturn(true);
+
+        //WHEN
+        underTest.insertCustomer(customer);
+
+        //THEN
+        assertThat(underTest.existsPersonWithEmail("alex@gmail.com")).isTrue();
+    }
+
+    @Test
+    void changedEmailsAreRemembered() {
+        //GIVEN
+        rebuildWith();
+        Customer update = new Customer(1L, null, "alex@gmail.com", null);
+        when(customerDao.existsPersonWithEmail("alex@gmail.com")).thenReturn(true);
+
+        //WHEN
+        underTest.updateCustomer(update);
+
+        //THEN
+        assertThat(underTest.existsPersonWithEmail("alex@gmail.com")).isTrue();
+    }
+
+    @Test
+    void emailsWrittenDuringARebuildSurviveIt() {
+        //GIVEN
+        rebuildWith();
+        Customer customer = new Customer("Alex", "alex@gmail.com", 19);
+        when(customerDao.existsPersonWithEmail("alex@gmail.com")).thenReturn(true);
+        // the insert lands after the scan has passed its row
+        doAnswer(invocation -> {
+            underTest.insertCustomer(customer);
+            return null;
+        }).when(customerDao).streamAllCustomers(any());
+
+        //WHEN
+        underTest.rebuild();
+
+        //THEN
+        assertThat(underTest.existsPersonWithEmail("alex@gmail.com")).isTrue();
+    }
+
+    @Test
+    void rebuildForgetsDeletedEmails() {
+        //GIVEN
+        rebuildWith("alex@gmail.com");
+
+        //WHEN
+        rebuildWith();
+
+        //THEN
+        assertThat(underTest.existsPersonWithEmail("alex@gmail.com")).isFalse();
+        verify(customerDao, never()).existsPersonWithEmail(any());
+    }
+
+    @Test
+    void failedRebuildKeepsThePreviousFilter() {
+        //GIVEN
+        rebuildWith("alex@gmail.com");
+        doThrow(new IllegalStateException("connection refused")).when(customerDao).streamAllCustomers(any());
+        when(customerDao.existsPersonWithEmail("alex@gmail.com")).thenReturn(true);
+
+        //WHEN
+        assertThatThrownBy(() -> underTest.rebuild())
+                .isInstanceOf(IllegalStateException.class);
+
+        //THEN
+        assertThat(underTest.existsPersonWithEmail("alex@gmail.com")).isTrue();
+        assertThat(underTest.existsPersonWithEmail("julie@gmail.com")).isFalse();
+        verify(customerDao, never()).existsPersonWithEmail("julie@gmail.com");
+    }
+
+    @Test
+    void emailsWrittenThroughOtherNodesAreFollowed() {
+        //GIVEN
+        rebuildWith();
+        Customer julie = new Customer(1L, "Julie", "julie@gmail.com", 19);
+        when(customerDao.selectChanges(0, 1000)).thenReturn(List.of(
+                new CustomerChange(1, CustomerChange.Type.CREATED, 1L, julie, Instant.now())));
+        when(customerDao.selectChangeOffsets()).thenReturn(new CustomerChangeOffsets(0, 1));
+        when(customerDao.existsPersonWithEmail("julie@gmail.com")).thenReturn(true);
+
+        //WHEN
+        underTest.follow();
+
+        //THEN
+        assertThat(underTest.existsPersonWithEmail("julie@gmail.com")).isTrue();
+        verify(customerDao).existsPersonWithEmail("julie@gmail.com");
+    }
+
+    @Test
+    void followRebuildsOnceItsOffsetWasPruned() {
+        //GIVEN
+        rebuildWith("alex@gmail.com");
+        when(customerDao.selectChanges(0, 1000)).thenReturn(List.of());
+        when(customerDao.selectChangeOffsets()).thenReturn(new CustomerChangeOffsets(5, 9));
+
+        //WHEN
+        underTest.follow();
+
+        //THEN
+        verify(customerDao, times(2)).streamAllCustomers(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rebuildWith(String... emails) {
+        doAnswer(invocation -> {
+            Consumer<Customer> consumer = invocation.getArgument(0);
+            for (String email : emails) {
+                consumer.accept(new Customer("Alex", email, 19));
+            }
+            return null;
+        }).when(customerDao).streamAllCustomers(any());
+        underTest.rebuild();
+    }
+
+    private double checks(String result) {
+        return meterRegistry.get("customer.email.filter.checks").tag("result", result).counter().count();
+    }
+}
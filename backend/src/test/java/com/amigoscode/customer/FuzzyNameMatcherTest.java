@@ -0,0 +1,79 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class FuzzyNameMatcherTest {
+
+    private static final Set<String> DICTIONARY = Set.of(
+            "alexander", "smith", "jamila", "ahmed", "hermann", "hegmann", "ziemann"
+    );
+
+    @Test
+    void similaritiesMatchPgTrgm() {
+        //WHEN
+        //THEN
+        // the expected values are postgres' similarity and word_similarity
+        assertThat(FuzzyNameMatcher.similarity("hremann", "hermann")).isCloseTo(0.33333334, within(1e-6));
+        assertThat(FuzzyNameMatcher.similarity("smtih", "smith")).isCloseTo(0.2, within(1e-6));
+        assertThat(FuzzyNameMatcher.wordSimilarity("jamlia", "Jamila Ahmed")).isCloseTo(0.42857143, within(1e-6));
+        assertThat(FuzzyNameMatcher.wordSimilarity("smiht", "Alexander Smith")).isCloseTo(0.5, within(1e-6));
+        assertThat(FuzzyNameMatcher.wordSimilarity("Alex Smiht", "Alexander Smith")).isCloseTo(0.4117647, within(1e-6));
+        assertThat(FuzzyNameMatcher.wordSimilarity("anna", "Hannah Smith")).isCloseTo(0.4, within(1e-6));
+    }
+
+    @Test
+    void wordMatchesRankAboveCorrectedNames() {
+        //WHEN
+        //THEN
+        assertThat(new FuzzyNameMatcher("smith ALEXANDER", DICTIONARY).score("Alexander Smith")).isEqualTo(2.0);
+        assertThat(new FuzzyNameMatcher("alex smi", DICTIONARY).score("Alexander Smith")).isEqualTo(1.0);
+        assertThat(new FuzzyNameMatcher("Alex Smiht", DICTIONARY).score("Alexander Smith"))
+                .isCloseTo(0.4117647, within(1e-6));
+    }
+
+    @Test
+    void prefixesCompleteToTheShortestDictionaryWords() {
+        //GIVEN
+        // jo, joo, jooo, ... one more than PREFIXED_WORDS
+        Set<String> dictionary = IntStream.rangeClosed(1, FuzzyNameMatcher.PREFIXED_WORDS + 1)
+                .mapToObj(i -> "j" + "o".repeat(i))
+                .collect(Collectors.toSet());
+        FuzzyNameMatcher underTest = new FuzzyNameMatcher("jo", dictionary);
+        String longest = "j" + "o".repeat(FuzzyNameMatcher.PREFIXED_WORDS + 1);
+
+        //WHEN
+        //THEN
+        assertThat(underTest.score("Joo Smith")).isEqualTo(1.0);
+        // the sql search does not find it either
+        assertThat(underTest.score(longest + " Smith")).isEqualTo(-1);
+    }
+
+    @Test
+    void misspelledWordsMatchTheirNearestDictionaryWords() {
+        //GIVEN
+        // hermann, hegmann and ziemann are all equally similar to hremann
+        FuzzyNameMatcher underTest = new FuzzyNameMatcher("hremann", DICTIONARY);
+
+        //WHEN
+        //THEN
+        assertThat(underTest.score("Jamila Hermann")).isPositive();
+        assertThat(underTest.score("Jamila Ziemann")).isPositive();
+        assertThat(underTest.score("Jamila Ahmed")).isEqualTo(-1);
+    }
+
+    @Test
+    void wordsWithoutACloseDictionaryWordDoNotMatch() {
+        //WHEN
+        //THEN
+        assertThat(new FuzzyNameMatcher("xyzzy", DICTIONARY).score("Alexander Smith")).isEqualTo(-1);
+        assertThat(FuzzyNameMatcher.best(List.of(new FuzzyNameMatcher.Correction("smith", 0.1)))).isEmpty();
+    }
+}
@@ -0,0 +1,111 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReactiveCustomerChangeFeedTest {
+
+    private final CustomerListDataAccessService outbox = new CustomerListDataAccessService();
+    private ReactiveCustomerChangeFeed underTest;
+
+    @BeforeEach
+    void setUp() {
+        ReactiveCustomerDao customerDao = mock(ReactiveCustomerDao.class);
+        when(customerDao.selectChanges(anyLong(), anyInt())).thenAnswer(invocation -> Flux.defer(() ->
+                Flux.fromIterable(outbox.selectChanges(invocation.getArgument(0), invocation.getArgument(1)))));
+        when(customerDao.selectChangeOffsets()).thenAnswer(invocation -> Mono.fromSupplier(outbox::selectChangeOffsets));
+        underTest = new ReactiveCustomerChangeFeed(
+                customerDao,
+                new CustomerChangesProperties(
+                        2, Duration.ofMillis(20), Duration.ofMillis(200), 1,
+                        Duration.ofDays(7), Duration.ofMinutes(1), 1000, 10000
+                ),
+                new SimpleMeterRegistry()
+        );
+    }
+
+    @Test
+    void resumesAfterTheOffsetInBatchesAndFollowsNewChanges() {
+        //GIVEN
+        for (int i = 0; i < 4; i++) {
+            outbox.insertCustomer(new Customer("Ali", "ali-" + i + "@gmail.com", 20));
+        }
+
+        //WHEN
+        List<Event> actual = events(underTest.subscribe(1L)
+                .doOnNext(event -> {
+                    if ("4".equals(event.id())) {
+                        outbox.deleteCustomerById(1L);
+                    }
+                }), 3);
+
+        //THEN
+        assertThat(actual).containsExactly(
+                new Event("3", CustomerChangeFeed.CHANGES_EVENT, List.of(2L, 3L)),
+                new Event("4", CustomerChangeFeed.CHANGES_EVENT, List.of(4L)),
+                new Event("5", CustomerChangeFeed.CHANGES_EVENT, List.of(5L))
+        );
+    }
+
+    @Test
+    void resetsAConsumerWhoseOffsetWasPruned() {
+        //GIVEN
+        for (int i = 0; i < 3; i++) {
+            outbox.insertCustomer(new Customer("Ali", "ali-" + i + "@gmail.com", 20));
+        }
+        outbox.pruneChanges(Instant.now().plusSeconds(1), 2);
+
+        //WHEN
+        List<Event> actual = events(underTest.subscribe(1L), 1);
+
+        //THEN
+        assertThat(actual).containsExactly(new Event("3", CustomerChangeFeed.RESET_EVENT, List.of()));
+    }
+
+    @Test
+    void turnsAwayStreamsOverTheLimit() {
+        //GIVEN
+        Disposable open = underTest.subscribe(null).subscribe();
+
+        //WHEN
+        //THEN
+        try {
+            assertThatThrownBy(() -> underTest.subscribe(null))
+                    .isInstanceOf(ServiceUnavailableException.class);
+        } finally {
+            open.dispose();
+        }
+    }
+
+    // the first named events, heartbeats left out
+    private static List<Event> events(Flux<ServerSentEvent<Object>> stream, int count) {
+        return stream.filter(event -> event.event() != null)
+                .map(event -> new Event(event.id(), event.event(), event.data() instanceof List<?> changes
+                        ? changes.stream().map(change -> ((CustomerChange) change).offset()).toList()
+                        : List.of()))
+                .take(count)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+    }
+
+    // the offsets of the changes an event carries
+    private record Event(String id, String name, List<Long> offsets) {
+    }
+}
@@ -0,0 +1,209 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.NoDataChangeException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.RequestValidationException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveCustomerServiceTest {
+
+    @Mock
+    private ReactiveCustomerDao customerDao;
+
+    private ReactiveCustomerService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ReactiveCustomerService(customerDao);
+    }
+
+    @Test
+    void canGetFirstPageOfCustomers() {
+        //GIVEN
+        when(customerDao.selectCustomers(0L, 3)).thenReturn(Flux.just(
+                new Customer(1L, "Alex", "alex@gmail.com", 19),
+                new Customer(2L, "Julie", "julie@gmail.com", 20),
+                new Customer(3L, "Jamila", "jamila@gmail.com", 21)
+        ));
+
+        //WHEN
+        CustomerPage actual = underTest.getCustomers(null, 2).block();
+
+        //THEN
+        assertThat(actual.customers()).extracting(Customer::getId).containsExactly(1L, 2L);
+        assertThat(actual.nextCursor()).isEqualTo(2L);
+    }
+
+    @Test
+    void willThrowWhenPageLimitIsOutOfRange() {
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.getCustomers(null, 0).block())
+                .isInstanceOf(RequestValidationException.class);
+        verifyNoInteractions(customerDao);
+    }
+
+    @Test
+    void canSearchCustomers() {
+        //GIVEN
+        List<Customer> customers = List.of(
+                new Customer(1L, "Alex", "alex@gmail.com", 19),
+                new Customer(3L, "Ali", "ali@gmail.com", 20),
+                new Customer(2L, "Alice", "alice@gmail.com", 21)
+        );
+        when(customerDao.searchCustomers(any())).thenReturn(Flux.fromIterable(customers));
+
+        //WHEN
+        CustomerSearchPage actual = underTest.searchCustomers(
+                "Al", null, 18, null, "name", "asc", null, 2).block();
+
+        //THEN
+        verify(customerDao).searchCustomers(new CustomerSearch(
+                "Al", null, 18, null, CustomerSearch.Sort.NAME, false, null, 3));
+        assertThat(actual.customers()).containsExactlyElementsOf(customers.subList(0, 2));
+        assertThat(CustomerSearchCursor.decode(actual.nextCursor(), CustomerSearch.Sort.NAME))
+                .isEqualTo(new CustomerSearchCursor(3L, "Ali", null));
+    }
+
+    @Test
+    void willThrowWhenSearchIsInvalid() {
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.searchCustomers(
+                null, null, 30, 20, "id", "asc", null, 50).block())
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("minAge must not be greater than maxAge");
+        assertThatThrownBy(() -> underTest.fuzzySearchCustomers(" al ", 20).block())
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("name must have at least 3 characters");
+        verifyNoInteractions(customerDao);
+    }
+
+    @Test
+    void canFuzzySearchCustomers() {
+        //GIVEN
+        List<CustomerMatch> matches = List.of(
+                new CustomerMatch(new Customer(1L, "Jamila", "jamila@gmail.com", 19), 0.43)
+        );
+        when(customerDao.fuzzySearchCustomers("jamlia", 20)).thenReturn(Mono.just(matches));
+
+        //WHEN
+        List<CustomerMatch> actual = underTest.fuzzySearchCustomers(" jamlia ", 20).block();
+
+        //THEN
+        assertThat(actual).isEqualTo(matches);
+    }
+
+    @Test
+    void canGetCustomerStats() {
+        //GIVEN
+        when(customerDao.selectAgeCounts()).thenReturn(Mono.just(Map.of(19, 2L, 45, 1L)));
+
+        //WHEN
+        CustomerStats actual = underTest.getCustomerStats().block();
+
+        //THEN
+        assertThat(actual.count()).isEqualTo(3);
+        assertThat(actual.minAge()).isEqualTo(19);
+        assertThat(actual.maxAge()).isEqualTo(45);
+    }
+
+    @Test
+    void willThrowWhenGetCustomerReturnEmpty() {
+        //GIVEN
+        when(customerDao.selectCustomerById(10L)).thenReturn(Mono.empty());
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.getCustomer(10L).block())
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id [10] not found");
+    }
+
+    @Test
+    void addCustomersSkipsEmailsThatAlreadyExist() {
+        //GIVEN
+        List<CustomerRigistrationRequest> requests = List.of(
+                new CustomerRigistrationRequest("Alex", "alex@gmail.com", 19),
+                new CustomerRigistrationRequest("Julie", "julie@gmail.com", 20)
+        );
+        when(customerDao.selectExistingEmails(List.of("alex@gmail.com", "julie@gmail.com")))
+                .thenReturn(Mono.just(Set.of("julie@gmail.com")));
+        when(customerDao.insertCustomers(any())).thenReturn(Mono.just(Set.of("alex@gmail.com")));
+
+        //WHEN
+        List<CustomerRegistrationResult> actual = underTest.addCustomers(requests).block();
+
+        //THEN
+        assertThat(actual).extracting(CustomerRegistrationResult::status).containsExactly(
+                CustomerRegistrationResult.Status.CREATED,
+                CustomerRegistrationResult.Status.EMAIL_TAKEN
+        );
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Customer>> captor = ArgumentCaptor.forClass(List.class);
+        verify(customerDao).insertCustomers(captor.capture());
+        assertThat(captor.getValue()).extracting(Customer::getEmail).containsExactly("alex@gmail.com");
+    }
+
+    @Test
+    void willThrowWhenDeletingCustomerThatDoesNotExist() {
+        //GIVEN
+        when(customerDao.existsCustomerById(10L)).thenReturn(Mono.just(false));
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.deleteCustomer(10L).block())
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("id does not exist");
+        verify(customerDao, never()).deleteCustomerById(any());
+    }
+
+    @Test
+    void willThrowWhenUpdateRequestHasNoFields() {
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.updateCustomer(
+                10L, new CustomerRigistrationRequest(null, null, null), null).block())
+                .isInstanceOf(NoDataChangeException.class);
+        verifyNoInteractions(customerDao);
+    }
+
+    @Test
+    void updateCustomerMatchingTriesEachExpectedVersion() {
+        //GIVEN
+        Customer updated = new Customer(10L, "Julie", "julie@gmail.com", 20);
+        // the customer is at version 2
+        when(customerDao.updateCustomer(any())).thenAnswer(invocation ->
+                invocation.<Customer>getArgument(0).getVersion() == 2L
+                        ? Mono.just(updated)
+                        : Mono.error(new PreconditionFailedException("customer with id [10] has been modified")));
+        CustomerRigistrationRequest request = new CustomerRigistrationRequest("Julie", null, null);
+
+        //WHEN
+        Customer actual = underTest.updateCustomerMatching(10L, request, List.of(1L, 2L, 3L)).block();
+
+        //THEN
+        assertThat(actual).isEqualTo(updated);
+        verify(customerDao, times(2)).updateCustomer(any());
+        assertThatThrownBy(() -> underTest.updateCustomerMatching(10L, request, List.of(1L, 3L)).block())
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+}
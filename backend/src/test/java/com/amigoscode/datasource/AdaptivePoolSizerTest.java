@@ -0,0 +1,63 @@
+package com.amigoscode.datasource;
+
+import com.amigoscode.datasource.ConnectionPoolMetrics.PoolSample;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptivePoolSizerTest {
+
+    private final PoolSizingProperties properties = new PoolSizingProperties(
+            true, 5, 30, Duration.ofSeconds(10), Duration.ofMillis(20)
+    );
+
+    @Test
+    void growsWhenCallersWaitAndDatabaseIsHealthy() {
+        //GIVEN
+        PoolSample sample = new PoolSample(45, 8, 95_000, 0, 3);
+
+        //WHEN
+        int actual = AdaptivePoolSizer.nextMaximumPoolSize(10, sample, 8, properties);
+
+        //THEN
+        assertThat(actual).isEqualTo(12);
+    }
+
+    @Test
+    void holdsWhenDatabaseItselfIsSlow() {
+        //GIVEN
+        PoolSample sample = new PoolSample(45, 30, 100_000, 2, 3);
+
+        //WHEN
+        int actual = AdaptivePoolSizer.nextMaximumPoolSize(10, sample, 8, properties);
+
+        //THEN
+        assertThat(actual).isEqualTo(10);
+    }
+
+    @Test
+    void shrinksWhenConnectionsSitIdle() {
+        //GIVEN
+        PoolSample sample = new PoolSample(0.1, 5, 20_000, 0, 0);
+
+        //WHEN
+        int actual = AdaptivePoolSizer.nextMaximumPoolSize(10, sample, 5, properties);
+
+        //THEN
+        assertThat(actual).isEqualTo(9);
+    }
+
+    @Test
+    void staysWithinBounds() {
+        //GIVEN
+        PoolSample starved = new PoolSample(100, 8, 300_000, 5, 20);
+        PoolSample idle = new PoolSample(0, 0, 0, 0, 0);
+
+        //WHEN
+        //THEN
+        assertThat(AdaptivePoolSizer.nextMaximumPoolSize(29, starved, 8, properties)).isEqualTo(30);
+        assertThat(AdaptivePoolSizer.nextMaximumPoolSize(5, idle, 8, properties)).isEqualTo(5);
+    }
+}
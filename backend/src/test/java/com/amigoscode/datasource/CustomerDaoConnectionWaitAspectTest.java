@@ -0,0 +1,107 @@
+package com.amigoscode.datasource;
+
+import com.amigoscode.customer.CachingCustomerDao;
+import com.amigoscode.customer.CustomerCacheProperties;
+import com.amigoscode.customer.CustomerDao;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CustomerDaoConnectionWaitAspectTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private IMetricsTracker tracker;
+
+    private CustomerDao customerDao;
+
+    private CustomerDao cachedCustomerDao;
+
+    @BeforeEach
+    void setUp() {
+        ConnectionPoolMetrics connectionPoolMetrics = new ConnectionPoolMetrics(meterRegistry);
+        HikariDataSource dataSource = new HikariDataSource();
+        connectionPoolMetrics.instrument(dataSource);
+        tracker = dataSource.getMetricsTrackerFactory().create("test-pool", new PoolStats(0) {
+            @Override
+            protected void update() {
+            }
+        });
+
+        CustomerDao target = mock(CustomerDao.class);
+        // stands in for a DAO whose query had to wait 3ms for a connection
+        when(target.selectCustomerById(1L)).thenAnswer(invocation -> {
+            tracker.recordConnectionAcquiredNanos(TimeUnit.MILLISECONDS.toNanos(3));
+            return Optional.empty();
+        });
+        customerDao = withAspect(target);
+        cachedCustomerDao = withAspect(new CachingCustomerDao(
+                customerDao,
+                new CustomerCacheProperties(100, Duration.ofMinutes(10), Duration.ofSeconds(5)),
+                meterRegistry
+        ));
+    }
+
+    @Test
+    void recordsConnectionWaitPerDaoMethod() {
+        //WHEN
+        customerDao.selectCustomerById(1L);
+        customerDao.selectCustomerById(1L);
+        customerDao.existsCustomerById(1L);
+
+        //THEN
+        Timer selectById = meterRegistry.get("customer.dao.connection.wait")
+                .tag("method", "selectCustomerById")
+                .timer();
+        Timer existsById = meterRegistry.get("customer.dao.connection.wait")
+                .tag("method", "existsCustomerById")
+                .timer();
+        assertThat(selectById.count()).isEqualTo(2);
+        assertThat(selectById.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(6);
+        assertThat(existsById.count()).isEqualTo(1);
+        assertThat(existsById.totalTime(TimeUnit.MILLISECONDS)).isZero();
+    }
+
+    @Test
+    void recordsACallThroughTheDecoratorsOnceForTheStore() {
+        //WHEN
+        cachedCustomerDao.selectCustomerById(1L);
+
+        //THEN
+        assertThat(meterRegistry.get("customer.dao.connection.wait").timers())
+                .singleElement()
+                .satisfies(timer -> assertThat(timer.count()).isEqualTo(1))
+                .satisfies(timer -> assertThat(timer.getId().getTag("dao")).doesNotContain("CachingCustomerDao"));
+    }
+
+    @Test
+    void publishesHikariMetersPerPool() {
+        //WHEN
+        tracker.recordConnectionAcquiredNanos(TimeUnit.MILLISECONDS.toNanos(3));
+
+        //THEN
+        assertThat(meterRegistry.get("hikaricp.connections.acquire").tag("pool", "test-pool").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.find("hikaricp.connections.pending").tag("pool", "test-pool").gauge())
+                .isNotNull();
+    }
+
+    private CustomerDao withAspect(CustomerDao target) {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+        proxyFactory.addAspect(new CustomerDaoConnectionWaitAspect(meterRegistry));
+        return proxyFactory.getProxy();
+    }
+}
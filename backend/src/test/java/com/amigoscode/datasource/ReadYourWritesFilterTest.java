@@ -0,0 +1,98 @@
+package com.amigoscode.datasource;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReadYourWritesFilterTest {
+
+    private final Clock clock = mock(Clock.class);
+
+    private ReadYourWritesFilter underTest;
+
+    private boolean primaryRequired;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ReadYourWritesFilter(Duration.ofSeconds(5), clock);
+    }
+
+    @Test
+    void readsStayOnPrimaryRightAfterClientWrote() throws Exception {
+        //GIVEN
+        when(clock.millis()).thenReturn(1_000L);
+        Cookie[] cookies = send("POST", "10.0.0.1").getCookies();
+
+        //WHEN
+        when(clock.millis()).thenReturn(4_000L);
+        send("GET", "10.0.0.2", cookies);
+
+        //THEN
+        assertThat(cookies).extracting(Cookie::getName, Cookie::getValue, Cookie::getMaxAge)
+                .containsExactly(tuple(ReadYourWritesFilter.COOKIE, "6000", 5));
+        assertThat(primaryRequired).isTrue();
+        assertThat(ReplicaRoutingDataSource.isPrimaryRequired()).isFalse();
+    }
+
+    @Test
+    void readsGoBackToReplicasOnceWindowHasPassed() throws Exception {
+        //GIVEN
+        when(clock.millis()).thenReturn(1_000L);
+        Cookie[] cookies = send("POST", "10.0.0.1").getCookies();
+
+        //WHEN
+        when(clock.millis()).thenReturn(6_000L);
+        send("GET", "10.0.0.1", cookies);
+
+        //THEN
+        assertThat(primaryRequired).isFalse();
+    }
+
+    @Test
+    void otherClientsStillReadFromReplicas() throws Exception {
+        //GIVEN
+        when(clock.millis()).thenReturn(1_000L);
+        send("PUT", "10.0.0.1");
+
+        //WHEN
+        send("GET", "10.0.0.1");
+
+        //THEN
+        assertThat(primaryRequired).isFalse();
+    }
+
+    @Test
+    void windowsLongerThanAWriteGivesAreIgnored() throws Exception {
+        //GIVEN
+        when(clock.millis()).thenReturn(1_000L);
+
+        //WHEN
+        send("GET", "10.0.0.1", new Cookie(ReadYourWritesFilter.COOKIE, "60000"));
+
+        //THEN
+        assertThat(primaryRequired).isFalse();
+    }
+
+    private MockHttpServletResponse send(String method, String client, Cookie... cookies) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/api/v1/customers/");
+        request.setRemoteAddr(client);
+        if (cookies.length > 0) {
+            request.setCookies(cookies);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> primaryRequired = ReplicaRoutingDataSource.isPrimaryRequired();
+        underTest.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,135 @@
+package com.amigoscode.datasource;
+
+import com.amigoscode.AbstractTestContainers;
+import com.amigoscode.customer.Customer;
+import com.amigoscode.customer.CustomerJDBCDataAccessService;
+import com.amigoscode.customer.CustomerRowMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the replica is a second, independent container with the same schema, so a
+// row written through the primary is only visible when a read is routed there
+class ReplicaRoutingDataSourceTest extends AbstractTestContainers {
+
+    @Container
+    private static final PostgreSQLContainer<?> replicaContainer =
+            new PostgreSQLContainer<>("postgres:latest")
+                    .withDatabaseName("amigoscode-dao-unit-test-replica")
+                    .withUsername("amigoscode")
+                    .withPassword("password");
+
+    private HikariDataSource replica;
+    private ReplicaRoutingDataSource routingDataSource;
+    private CustomerJDBCDataAccessService customerDao;
+    private TransactionTemplate readOnlyTransaction;
+
+    @BeforeAll
+    static void migrateReplica() {
+        Flyway.configure().dataSource(
+                replicaContainer.getJdbcUrl(),
+                replicaContainer.getUsername(),
+                replicaContainer.getPassword()
+        ).load().migrate();
+    }
+
+    @BeforeEach
+    void setUp() {
+        replica = hikari(replicaContainer);
+        routingDataSource = new ReplicaRoutingDataSource(
+                hikari(postgreSQLContainer),
+                List.of(replica),
+                Duration.ofMinutes(1),
+                Duration.ofSeconds(10)
+        );
+        routingDataSource.afterPropertiesSet();
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        customerDao = new CustomerJDBCDataAccessService(new JdbcTemplate(dataSource), new CustomerRowMapper());
+        readOnlyTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        ReplicaRoutingDataSource.setPrimaryRequired(false);
+        routingDataSource.close();
+    }
+
+    @Test
+    void readOnlyTransactionsAreRoutedToReplica() {
+        //GIVEN
+        Long id = insertCustomer();
+
+        //WHEN
+        Optional<Customer> fromReplica = readOnlyTransaction.execute(status -> customerDao.selectCustomerById(id));
+        Optional<Customer> fromPrimary = customerDao.selectCustomerById(id);
+
+        //THEN
+        assertThat(routingDataSource.isHealthy(0)).isTrue();
+        assertThat(fromReplica).isEmpty();
+        assertThat(fromPrimary).isPresent();
+    }
+
+    @Test
+    void primaryRequiredKeepsReadOnlyTransactionsOnPrimary() {
+        //GIVEN
+        Long id = insertCustomer();
+        ReplicaRoutingDataSource.setPrimaryRequired(true);
+
+        //WHEN
+        Optional<Customer> actual = readOnlyTransaction.execute(status -> customerDao.selectCustomerById(id));
+
+        //THEN
+        assertThat(actual).isPresent();
+    }
+
+    @Test
+    void unhealthyReplicaFallsBackToPrimary() {
+        //GIVEN
+        Long id = insertCustomer();
+        replica.close();
+
+        //WHEN
+        routingDataSource.checkReplicas();
+        Optional<Customer> actual = readOnlyTransaction.execute(status -> customerDao.selectCustomerById(id));
+
+        //THEN
+        assertThat(routingDataSource.isHealthy(0)).isFalse();
+        assertThat(actual).isPresent();
+    }
+
+    private Long insertCustomer() {
+        return customerDao.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        ));
+    }
+
+    private static HikariDataSource hikari(PostgreSQLContainer<?> container) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(container.getJdbcUrl());
+        dataSource.setUsername(container.getUsername());
+        dataSource.setPassword(container.getPassword());
+        dataSource.setMaximumPoolSize(2);
+        return dataSource;
+    }
+}
@@ -0,0 +1,89 @@
+package com.amigoscode.idempotency;
+
+import com.amigoscode.AbstractTestContainers;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyKeyTableTest extends AbstractTestContainers {
+
+    private static final String CLIENT = "address:10.0.0.1";
+
+    private static final byte[] FINGERPRINT = "fingerprint".getBytes(StandardCharsets.UTF_8);
+
+    private final IdempotencyKeyTable underTest =
+            new IdempotencyKeyTable(getJdbcTemplate(), Duration.ofHours(1), Duration.ofMinutes(1));
+
+    @Test
+    void aClaimedKeyIsInProgressUntilItsOutcomeIsStored() {
+        //GIVEN
+        String key = UUID.randomUUID().toString();
+        IdempotentOutcome outcome = new IdempotentOutcome(
+                FINGERPRINT, 200, "ETag:\"0\"\n", "{\"id\":1}".getBytes(StandardCharsets.UTF_8), null);
+
+        //WHEN
+        IdempotencyKeyTable.Claim first = underTest.claim(CLIENT, key, FINGERPRINT);
+        IdempotencyKeyTable.Claim whileInProgress = underTest.claim(CLIENT, key, FINGERPRINT);
+        underTest.complete(CLIENT, key, outcome);
+        IdempotencyKeyTable.Claim afterwards = underTest.claim(CLIENT, key, FINGERPRINT);
+
+        //THEN
+        assertThat(first.claimed()).isTrue();
+        assertThat(whileInProgress).isEqualTo(new IdempotencyKeyTable.Claim(false, null));
+        assertThat(afterwards.claimed()).isFalse();
+        assertThat(afterwards.outcome().status()).isEqualTo(200);
+        assertThat(afterwards.outcome().headers()).isEqualTo("ETag:\"0\"\n");
+        assertThat(afterwards.outcome().body()).isEqualTo(outcome.body());
+    }
+
+    @Test
+    void eachClientHasKeysOfItsOwn() {
+        //GIVEN
+        String key = UUID.randomUUID().toString();
+        underTest.claim(CLIENT, key, FINGERPRINT);
+        underTest.complete(CLIENT, key, new IdempotentOutcome(FINGERPRINT, 200, null, null, null));
+
+        //WHEN
+        IdempotencyKeyTable.Claim other = underTest.claim("address:10.0.0.2", key, FINGERPRINT);
+
+        //THEN
+        assertThat(other.claimed()).isTrue();
+        assertThat(underTest.claim(CLIENT, key, FINGERPRINT).outcome().status()).isEqualTo(200);
+    }
+
+    @Test
+    void aReleasedOrAbandonedKeyCanBeClaimedAgain() {
+        //GIVEN
+        String released = UUID.randomUUID().toString();
+        String abandoned = UUID.randomUUID().toString();
+        IdempotencyKeyTable impatient = new IdempotencyKeyTable(getJdbcTemplate(), Duration.ofHours(1), Duration.ZERO);
+        underTest.claim(CLIENT, released, FINGERPRINT);
+        underTest.claim(CLIENT, abandoned, FINGERPRINT);
+
+        //WHEN
+        underTest.release(CLIENT, released);
+
+        //THEN
+        assertThat(underTest.claim(CLIENT, released, FINGERPRINT).claimed()).isTrue();
+        assertThat(impatient.claim(CLIENT, abandoned, FINGERPRINT).claimed()).isTrue();
+    }
+
+    @Test
+    void pruneRemovesExpiredKeys() {
+        //GIVEN
+        String key = UUID.randomUUID().toString();
+        underTest.claim(CLIENT, key, FINGERPRINT);
+
+        //WHEN
+        int pruned = underTest.prune(Instant.now().plusSeconds(60), 100_000);
+
+        //THEN
+        assertThat(pruned).isPositive();
+        assertThat(underTest.claim(CLIENT, key, FINGERPRINT).claimed()).isTrue();
+    }
+}
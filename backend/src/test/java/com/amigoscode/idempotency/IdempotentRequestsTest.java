@@ -0,0 +1,235 @@
+package com.amigoscode.idempotency;
+
+import com.amigoscode.exception.DuplicateResourceException;
+import com.amigoscode.exception.IdempotencyKeyReusedException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotentRequestsTest {
+
+    private static final String CLIENT = "address:10.0.0.1";
+
+    private final IdempotentRequests underTest = new IdempotentRequests(
+            new IdempotencyProperties(
+                    DataSize.ofMegabytes(1), Duration.ofHours(1), Duration.ofSeconds(5),
+                    false, Duration.ofMinutes(1), Duration.ofMinutes(10), 1000
+            ),
+            new ObjectMapper(),
+            null,
+            new SimpleMeterRegistry()
+    );
+    private final AtomicInteger runs = new AtomicInteger();
+
+    record Answer(int run) {
+    }
+
+    @Test
+    void replaysTheFirstAnswerWithoutRunningAgain() {
+        //GIVEN
+        underTest.execute(CLIENT, "key-1", List.of("register", "Alex"), Answer.class, answer());
+
+        //WHEN
+        ResponseEntity<Answer> actual = underTest.execute(CLIENT, "key-1", List.of("register", "Alex"), Answer.class, answer());
+
+        //THEN
+        assertThat(runs).hasValue(1);
+        assertThat(actual.getBody()).isEqualTo(new Answer(1));
+        assertThat(actual.getHeaders().getETag()).isEqualTo("\"1\"");
+        assertThat(actual.getHeaders().getFirst(IdempotentRequests.REPLAYED_HEADER)).isEqualTo("true");
+    }
+
+    @Test
+    void replaysAClientError() {
+        //GIVEN
+        Supplier<ResponseEntity<Answer>> taken = () -> {
+            runs.incrementAndGet();
+            throw new DuplicateResourceException("email already taken");
+        };
+        assertThatThrownBy(() -> underTest.execute(CLIENT, "key-1", List.of("register"), Answer.class, taken))
+                .isInstanceOf(DuplicateResourceException.class);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.execute(CLIENT, "key-1", List.of("register"), Answer.class, taken))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+                    assertThat(e.getReason()).isEqualTo("email already taken");
+                });
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void runsAgainAfterAnUnexpectedFailure() {
+        //GIVEN
+        assertThatThrownBy(() -> underTest.execute(CLIENT, "key-1", List.of("register"), Answer.class, () -> {
+            throw new IllegalStateException("connection refused");
+        })).isInstanceOf(IllegalStateException.class);
+
+        //WHEN
+        ResponseEntity<Answer> actual = underTest.execute(CLIENT, "key-1", List.of("register"), Answer.class, answer());
+
+        //THEN
+        assertThat(actual.getBody()).isEqualTo(new Answer(1));
+        assertThat(actual.getHeaders().containsKey(IdempotentRequests.REPLAYED_HEADER)).isFalse();
+    }
+
+    @Test
+    void rejectsAKeyReusedForAnotherRequest() {
+        //GIVEN
+        underTest.execute(CLIENT, "key-1", List.of("register", "Alex"), Answer.class, answer());
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> underTest.execute(CLIENT, "key-1", List.of("register", "Jamila"), Answer.class, answer()))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void keysOfDifferentClientsAreKeptApart() {
+        //GIVEN
+        underTest.execute(CLIENT, "key-1", List.of("register", "Alex"), Answer.class, answer());
+
+        //WHEN
+        ResponseEntity<Answer> sameRequest = underTest.execute(
+                "address:10.0.0.2", "key-1", List.of("register", "Alex"), Answer.class, answer());
+        ResponseEntity<Answer> otherRequest = underTest.execute(
+                "key:billing", "key-1", List.of("register", "Jamila"), Answer.class, answer());
+
+        //THEN
+        assertThat(sameRequest.getBody()).isEqualTo(new Answer(2));
+        assertThat(otherRequest.getBody()).isEqualTo(new Answer(3));
+        assertThat(runs).hasValue(3);
+    }
+
+    @Test
+    void runsEveryRequestWithoutAKey() {
+        //WHEN
+        underTest.execute(CLIENT, null, List.of("register"), Answer.class, answer());
+        underTest.execute(CLIENT, null, List.of("register"), Answer.class, answer());
+
+        //THEN
+        assertThat(runs).hasValue(2);
+    }
+
+    @Test
+    void concurrentDuplicatesShareOneRun() throws Exception {
+        //GIVEN
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<ResponseEntity<Answer>> slow = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return answer().get();
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        //WHEN
+        List<Future<ResponseEntity<Answer>>> responses = new ArrayList<>();
+        responses.add(executor.submit(() -> underTest.execute(CLIENT, "key-1", List.of("register"), Answer.class, slow)));
+        started.await();
+        for (int i = 0; i < 3; i++) {
+            responses.add(executor.submit(() -> underTest.execute(CLIENT, "key-1", List.of("register"), Answer.class, slow)));
+        }
+        // the duplicates are waiting by now or find the outcome later, either way they do not run
+        Thread.sleep(100);
+        release.countDown();
+
+        //THEN
+        for (Future<ResponseEntity<Answer>> response : responses) {
+            assertThat(response.get().getBody()).isEqualTo(new Answer(1));
+        }
+        assertThat(runs).hasValue(1);
+        executor.shutdown();
+    }
+
+    @Test
+    void reactiveDuplicatesWaitForTheFirstWithoutBlocking() {
+        //GIVEN
+        Sinks.One<ResponseEntity<Answer>> first = Sinks.one();
+        Mono<ResponseEntity<Answer>> running = underTest.executeReactive(
+                CLIENT, "key-1", List.of("register"), Answer.class, () -> {
+                    runs.incrementAndGet();
+                    return first.asMono();
+                });
+        Mono<ResponseEntity<Answer>> duplicate = underTest.executeReactive(
+                CLIENT, "key-1", List.of("register"), Answer.class, answerLater());
+
+        //WHEN
+        CompletableFuture<ResponseEntity<Answer>> firstResponse = running.toFuture();
+        CompletableFuture<ResponseEntity<Answer>> duplicateResponse = duplicate.toFuture();
+        first.tryEmitValue(ResponseEntity.ok(new Answer(1)));
+
+        //THEN
+        assertThat(firstResponse.join().getBody()).isEqualTo(new Answer(1));
+        assertThat(duplicateResponse.join().getBody()).isEqualTo(new Answer(1));
+        assertThat(duplicateResponse.join().getHeaders().getFirst(IdempotentRequests.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void reactiveReplaysAnswersOfTheBlockingPath() {
+        //GIVEN
+        underTest.execute(CLIENT, "key-1", List.of("register", "Alex"), Answer.class, answer());
+
+        //WHEN
+        ResponseEntity<Answer> actual = underTest.executeReactive(
+                CLIENT, "key-1", List.of("register", "Alex"), Answer.class, answerLater()).block();
+
+        //THEN
+        assertThat(runs).hasValue(1);
+        assertThat(actual.getBody()).isEqualTo(new Answer(1));
+        assertThatThrownBy(() -> underTest.executeReactive(
+                CLIENT, "key-1", List.of("register", "Jamila"), Answer.class, answerLater()).block())
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void aCancelledReactiveRequestLetsTheNextOneRun() {
+        //GIVEN
+        underTest.executeReactive(CLIENT, "key-1", List.of("register"), Answer.class, Mono::never)
+                .subscribe()
+                .dispose();
+
+        //WHEN
+        ResponseEntity<Answer> actual = underTest.executeReactive(
+                CLIENT, "key-1", List.of("register"), Answer.class, answerLater()).block();
+
+        //THEN
+        assertThat(actual.getBody()).isEqualTo(new Answer(1));
+        assertThat(actual.getHeaders().containsKey(IdempotentRequests.REPLAYED_HEADER)).isFalse();
+    }
+
+    private Supplier<Mono<ResponseEntity<Answer>>> answerLater() {
+        return () -> Mono.fromSupplier(answer());
+    }
+
+    private Supplier<ResponseEntity<Answer>> answer() {
+        return () -> ResponseEntity.ok().eTag("\"1\"").body(new Answer(runs.incrementAndGet()));
+    }
+}
@@ -0,0 +1,86 @@
+package com.amigoscode.ratelimit;
+
+import com.amigoscode.client.ClientIdentity;
+import com.amigoscode.client.ClientProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the time the rate limit adds to a request, with every thread calling from
+// its own clients over the endpoints of application.yml; run with
+// mvn test -Pbenchmark
+class RateLimitFilterBenchmark {
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int CLIENTS_PER_THREAD = 1_000;
+
+    private static final int REQUESTS_PER_THREAD = 2_000_000;
+
+    @Test
+    void nanosPerRequest() throws Exception {
+        RateLimitProperties properties = new RateLimitProperties(
+                true,
+                new RateLimitProperties.Limit(1_000_000, 1_000_000),
+                List.of(
+                        new RateLimitProperties.Endpoint(
+                                "GET", "/api/v1/customers/", List.of("limit", "after"), 2, 10, true),
+                        new RateLimitProperties.Endpoint(
+                                "GET", "/api/v1/customers/export", null, 0.1, 2, true)
+                ),
+                new RateLimitProperties.Shedding(5, Duration.ofSeconds(1)),
+                16,
+                10_000
+        );
+        ClientIdentity clientIdentity = new ClientIdentity(new ClientProperties("X-API-Key", null, null));
+        RateLimitFilter underTest = new RateLimitFilter(
+                properties, clientIdentity, () -> 0, Clock.systemUTC(), new SimpleMeterRegistry());
+        FilterChain chain = (request, response) -> {
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Long>> nanos = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            nanos.add(executor.submit(() -> {
+                MockHttpServletRequest[] requests = new MockHttpServletRequest[CLIENTS_PER_THREAD];
+                for (int c = 0; c < CLIENTS_PER_THREAD; c++) {
+                    requests[c] = new MockHttpServletRequest("GET", "/api/v1/customers/" + c);
+                    requests[c].setRemoteAddr("10." + thread + "." + c / 256 + "." + c % 256);
+                }
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                // warm up
+                for (int i = 0; i < REQUESTS_PER_THREAD / 10; i++) {
+                    underTest.doFilter(requests[i % CLIENTS_PER_THREAD], response, chain);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                    underTest.doFilter(requests[i % CLIENTS_PER_THREAD], response, chain);
+                }
+                return System.nanoTime() - start;
+            }));
+        }
+        long total = 0;
+        for (Future<Long> future : nanos) {
+            total += future.get();
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        System.out.printf("%d threads, %,d clients: %,d ns per request%n",
+                THREADS, THREADS * CLIENTS_PER_THREAD, total / ((long) THREADS * REQUESTS_PER_THREAD));
+    }
+}
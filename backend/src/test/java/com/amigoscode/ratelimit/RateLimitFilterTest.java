@@ -0,0 +1,168 @@
+package com.amigoscode.ratelimit;
+
+import com.amigoscode.client.ClientIdentity;
+import com.amigoscode.client.ClientProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RateLimitFilterTest {
+
+    private final Clock clock = mock(Clock.class);
+
+    private final AtomicInteger pendingConnections = new AtomicInteger();
+
+    private RateLimitFilter underTest;
+
+    private int passed;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties properties = new RateLimitProperties(
+                true,
+                new RateLimitProperties.Limit(1, 3),
+                List.of(
+                        new RateLimitProperties.Endpoint(
+                                "GET", "/api/v1/customers/", List.of("limit", "after"), 0.5, 1, true),
+                        new RateLimitProperties.Endpoint(
+                                null, "/api/v1/customers/{customerId}", null, 1, 2, false)
+                ),
+                new RateLimitProperties.Shedding(5, Duration.ofSeconds(2)),
+                4,
+                100
+        );
+        ClientIdentity clientIdentity = new ClientIdentity(new ClientProperties(
+                "X-API-Key",
+                Map.of("integration-a", "key-a", "integration-b", "key-b"),
+                List.of()
+        ));
+        underTest = new RateLimitFilter(
+                properties, clientIdentity, pendingConnections::get, clock, new SimpleMeterRegistry());
+        when(clock.millis()).thenReturn(1_000L);
+    }
+
+    @Test
+    void aClientOverItsRateGetsTooManyRequests() throws Exception {
+        //GIVEN
+        send("GET", "/api/v1/customers/1", "10.0.0.1", null);
+        send("PUT", "/api/v1/customers/1", "10.0.0.1", null);
+
+        //WHEN
+        MockHttpServletResponse actual = send("GET", "/api/v1/customers/1", "10.0.0.1", null);
+
+        //THEN
+        assertThat(passed).isEqualTo(2);
+        assertThat(actual.getStatus()).isEqualTo(429);
+        assertThat(actual.getHeader("Retry-After")).isEqualTo("1");
+    }
+
+    @Test
+    void clientsAreCountedByApiKeyBeforeAddress() throws Exception {
+        //GIVEN
+        send("GET", "/api/v1/customers/", "10.0.0.1", "key-a");
+
+        //WHEN
+        MockHttpServletResponse sameAddress = send("GET", "/api/v1/customers/", "10.0.0.1", "key-b");
+        MockHttpServletResponse sameKey = send("GET", "/api/v1/customers/", "10.0.0.2", "key-a");
+
+        //THEN
+        assertThat(sameAddress.getStatus()).isEqualTo(200);
+        assertThat(sameKey.getStatus()).isEqualTo(429);
+        assertThat(sameKey.getHeader("Retry-After")).isEqualTo("2");
+    }
+
+    @Test
+    void anUnknownApiKeyIsCountedByAddress() throws Exception {
+        //GIVEN
+        send("GET", "/api/v1/customers/", "10.0.0.1", null);
+
+        //WHEN
+        MockHttpServletResponse actual = send("GET", "/api/v1/customers/", "10.0.0.1", "made-up");
+
+        //THEN
+        assertThat(actual.getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    void endpointsHaveBucketsOfTheirOwn() throws Exception {
+        //GIVEN
+        send("GET", "/api/v1/customers/", "10.0.0.1", null);
+
+        //WHEN
+        MockHttpServletResponse paged = sendPaged("10.0.0.1");
+        MockHttpServletResponse other = send("GET", "/api/v1/customers/1", "10.0.0.1", null);
+
+        //THEN
+        assertThat(paged.getStatus()).isEqualTo(200);
+        assertThat(other.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void fullTableRequestsAreShedWhileCallersWaitForConnections() throws Exception {
+        //GIVEN
+        pendingConnections.set(5);
+
+        //WHEN
+        MockHttpServletResponse fullTable = send("GET", "/api/v1/customers/", "10.0.0.1", null);
+        MockHttpServletResponse paged = sendPaged("10.0.0.1");
+
+        //THEN
+        assertThat(fullTable.getStatus()).isEqualTo(503);
+        assertThat(fullTable.getHeader("Retry-After")).isEqualTo("2");
+        assertThat(paged.getStatus()).isEqualTo(200);
+        // a shed request took no token
+        pendingConnections.set(0);
+        assertThat(send("GET", "/api/v1/customers/", "10.0.0.1", null).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void theBucketRefillsOverTime() throws Exception {
+        //GIVEN
+        send("GET", "/api/v1/customers/", "10.0.0.1", null);
+        assertThat(send("GET", "/api/v1/customers/", "10.0.0.1", null).getStatus()).isEqualTo(429);
+
+        //WHEN
+        when(clock.millis()).thenReturn(3_000L);
+        MockHttpServletResponse actual = send("GET", "/api/v1/customers/", "10.0.0.1", null);
+
+        //THEN
+        assertThat(actual.getStatus()).isEqualTo(200);
+    }
+
+    private MockHttpServletResponse sendPaged(String client) throws Exception {
+        MockHttpServletRequest request = request("GET", "/api/v1/customers/", client, null);
+        request.setParameter("limit", "50");
+        return send(request);
+    }
+
+    private MockHttpServletResponse send(String method, String uri, String client, String apiKey) throws Exception {
+        return send(request(method, uri, client, apiKey));
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        underTest.doFilter(request, response, (req, res) -> passed++);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String uri, String client, String apiKey) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setRemoteAddr(client);
+        if (apiKey != null) {
+            request.addHeader("X-API-Key", apiKey);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,95 @@
+package com.amigoscode.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketsTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final TokenBuckets underTest = new TokenBuckets(4, 100);
+
+    @Test
+    void aFullBucketLetsTheBurstThrough() {
+        //WHEN
+        //THEN
+        for (int i = 0; i < 5; i++) {
+            assertThat(underTest.tryTake("client", SECOND, 5, 0)).isZero();
+        }
+        assertThat(underTest.tryTake("client", SECOND, 5, 0)).isEqualTo(SECOND);
+    }
+
+    @Test
+    void anEmptyBucketRefillsAtTheRate() {
+        //GIVEN
+        for (int i = 0; i < 2; i++) {
+            underTest.tryTake("client", SECOND, 2, 0);
+        }
+
+        //WHEN
+        long tooEarly = underTest.tryTake("client", SECOND, 2, SECOND / 4);
+        long refilled = underTest.tryTake("client", SECOND, 2, SECOND);
+
+        //THEN
+        assertThat(tooEarly).isEqualTo(SECOND * 3 / 4);
+        assertThat(refilled).isZero();
+        assertThat(underTest.tryTake("client", SECOND, 2, SECOND)).isPositive();
+    }
+
+    @Test
+    void everyKeyHasItsOwnBucket() {
+        //GIVEN
+        underTest.tryTake("client-1", SECOND, 1, 0);
+
+        //WHEN
+        long actual = underTest.tryTake("client-2", SECOND, 1, 0);
+
+        //THEN
+        assertThat(actual).isZero();
+    }
+
+    @Test
+    void fullBucketsAreForgottenOnceAShardIsTooBig() {
+        //GIVEN
+        for (int i = 0; i < 1_000; i++) {
+            underTest.tryTake("client-" + i, SECOND, 1, 0);
+        }
+
+        //WHEN
+        for (int i = 0; i < 1_000; i++) {
+            underTest.tryTake("later-" + i, SECOND, 1, 10 * SECOND);
+        }
+
+        //THEN
+        assertThat(underTest.size()).isLessThan(1_000);
+    }
+
+    @Test
+    void concurrentTakersNeverGetMoreThanTheBurst() throws Exception {
+        //GIVEN
+        AtomicInteger taken = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        //WHEN
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 1_000; j++) {
+                    if (underTest.tryTake("client", SECOND, 100, 0) == 0) {
+                        taken.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        //THEN
+        assertThat(taken).hasValue(100);
+    }
+}